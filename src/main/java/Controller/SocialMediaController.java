@@ -2,26 +2,100 @@ package Controller;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import DAO.ReadConsistency;
+import DAO.ReplicaSet;
 import Model.Account;
+import Model.AccountSummary;
+import Model.ChangeEvent;
+import Model.LeaderboardEntry;
 import Model.Message;
+import Model.MessageAnalytics;
+import Model.MessageChanges;
+import Model.MessagePoll;
+import Model.TrendingTerm;
 import Service.AccountService;
+import Service.Leaderboard;
+import Service.MessageFeed;
 import Service.MessageService;
+import Service.MessageWaiters;
+import Service.TrendingTags;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
 import io.javalin.http.HttpStatus;
+import io.javalin.http.sse.SseClient;
 
 public class SocialMediaController {
 
     private static final Logger logger = LoggerFactory.getLogger(SocialMediaController.class);
 
+    /**
+     * How long GET /messages/poll waits without a ?timeout=.
+     */
+    private static final long DEFAULT_POLL_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * The longest GET /messages/poll waits, whatever its ?timeout=, see MessageWaiters.MAX_TIMEOUT_PROPERTY.
+     */
+    private static final long MAX_POLL_TIMEOUT_MILLIS = MessageWaiters.maxTimeoutFromSystemProperties();
+
+    /**
+     * Page size of GET /messages/search without a ?limit=, and the largest allowed.
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    /**
+     * Page size of the tag and mention lists without a ?limit=, and the largest allowed.
+     */
+    private static final int DEFAULT_PAGE_LIMIT = 100;
+    private static final int MAX_PAGE_LIMIT = 1000;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * Sends the events of a MessageFeed subscription as Server-Sent Events: the event name is the ChangeEvent type in
+     * lower case, the data the message as JSON and the id the seq, so a reconnecting EventSource resumes after it.
+     */
+    private class SseSink implements MessageFeed.Sink {
+        private final SseClient client;
+        private volatile boolean closed;
+
+        SseSink(SseClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public boolean send(ChangeEvent event) {
+            try {
+                client.sendEvent(event.type.name().toLowerCase(), objectMapper.writeValueAsString(event.message),
+                    Long.toString(event.seq));
+            } catch (JsonProcessingException ex) {
+                logger.error("send threw an exception, seq: {}, message: {}", event.seq, ex.getMessage());
+            }
+            return !closed;
+        }
+
+        @Override
+        public void ping() {
+            client.sendComment("ping");
+        }
+
+        @Override
+        public void close(String reason) {
+            client.sendEvent("evicted", reason);
+            client.close();
+        }
+    }
+
     private AccountService accountService;
     private MessageService messageService;
 
@@ -83,12 +157,36 @@ public class SocialMediaController {
         app.patch("messages/{message_id}", this::messageUpdateHandler);
 
         app.get("messages", this::allMessagesHandler);
+        app.get("messages/poll", this::messagePollHandler);
+        app.get("messages/search", this::messageSearchHandler);
+        app.get("messages/batch", this::messagesByIdsHandler);
         app.get("messages/{message_id}", this::messageByIdHandler);
 
         app.get("accounts/{account_id}/messages", this::messageByAccountIdHandler);
+        app.get("accounts/{account_id}/messages/changes", this::messageChangesByAccountIdHandler);
+        app.get("accounts/{account_id}/mentions", this::mentionsByAccountIdHandler);
+        app.get("accounts/batch", this::accountsByIdsHandler);
+        app.get("accounts/summaries", this::accountSummariesHandler);
+        app.get("accounts/{account_id}/summary", this::accountSummaryHandler);
+        app.get("accounts/{account_id}/following", this::followingHandler);
+        app.put("accounts/{account_id}/following/{followee_id}", this::followHandler);
+        app.delete("accounts/{account_id}/following/{followee_id}", this::unfollowHandler);
+        app.get("accounts/{account_id}/home", this::homeTimelineHandler);
+        app.get("tags/{tag}/messages", this::messagesByTagHandler);
+        app.get("trending", this::trendingHandler);
+        app.get("analytics", this::analyticsHandler);
+        app.get("leaderboard", this::leaderboardHandler);
 
         app.delete("messages/{message_id}", this::messageDeleteByIdHandler);
 
+        app.get("replication", this::replicationHandler);
+
+        app.sse("feed", this::feedHandler);
+
+        // Read consistency for the read replicas, see ReadConsistency.
+        app.before(this::beginReadConsistency);
+        app.after(this::endReadConsistency);
+
         return app;
     }
 
@@ -219,12 +317,17 @@ public class SocialMediaController {
      * @return the request context
      */
     private Context allMessagesHandler(Context context) {
+        Boolean embed = embedsAuthors(context);
+        if (embed == null) {
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+
         try {
             // Retrieve all the messages.
             List<Message> messages = messageService.getAllMessages();
 
             // Success, return the messages.
-            return context.json(messages);
+            return listMessages(context, messages, embed);
         } catch (Exception ex) {
             logger.error("allMessagesHandler threw an exception, message: {}", ex.getMessage());
 
@@ -233,6 +336,93 @@ public class SocialMediaController {
         }
     }
 
+    /**
+     * Handler for GET /messages/poll, waits until messages are created after ?since= (a cursor from an earlier poll)
+     * and returns them with the next cursor, or none after ?timeout= milliseconds (default 30000, cut to
+     * poll.maxTimeoutMs). Without since, or with one that is too old or of another epoch of the change stream,
+     * returns the whole list right away. The request is parked while it waits and holds no thread.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context messagePollHandler(Context context) {
+        String since_str = context.queryParam("since");
+        String timeout_str = context.queryParam("timeout");
+
+        try {
+            // parse the params, no since for the whole list.
+            long timeout = timeout_str == null ? DEFAULT_POLL_TIMEOUT_MILLIS : Long.parseLong(timeout_str);
+            Boolean embed = embedsAuthors(context);
+            if (timeout < 0 || embed == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            CompletableFuture<MessagePoll> poll = messageService.waitForMessages(since_str,
+                Math.min(timeout, MAX_POLL_TIMEOUT_MILLIS));
+            if (poll == null) {
+                // Cannot wait.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the new messages once there are some.
+            context.future(() -> poll
+                .thenAccept(result -> {
+                    if (embed) {
+                        result.authors = messageService.withAuthors(result.messages).authors;
+                    }
+                    context.json(result);
+                })
+                .exceptionally(ex -> {
+                    logger.error("messagePollHandler threw an exception, since_str: {}, message: {}", since_str, ex.getMessage());
+                    context.json(new MessagePoll(since_str, false, new ArrayList<Message>(), null));
+                    return null;
+                }));
+            return context;
+        } catch (Exception ex) {
+            logger.error("messagePollHandler threw an exception, since_str: {}, timeout_str: {}, message: {}", since_str, timeout_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /messages/search, the messages matching ?q= (words, "quoted phrases" and OR), newest first,
+     * paged with ?offset= and ?limit=.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context messageSearchHandler(Context context) {
+        String q = context.queryParam("q");
+        String offset_str = context.queryParam("offset");
+        String limit_str = context.queryParam("limit");
+
+        try {
+            // parse the params, the first page by default.
+            int offset = offset_str == null ? 0 : Integer.parseInt(offset_str);
+            int limit = limit_str == null ? DEFAULT_SEARCH_LIMIT : Integer.parseInt(limit_str);
+            Boolean embed = embedsAuthors(context);
+            if (offset < 0 || limit < 0 || limit > MAX_SEARCH_LIMIT || embed == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<Message> messages = messageService.searchMessages(q, offset, limit);
+            if (messages == null) {
+                // Cannot search.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the page.
+            return listMessages(context, messages, embed);
+        } catch (Exception ex) {
+            logger.error("messageSearchHandler threw an exception, q: {}, offset_str: {}, limit_str: {}, message: {}", q, offset_str, limit_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /**
      * Handler for GET /messages/{message_id}
      * 
@@ -270,6 +460,10 @@ public class SocialMediaController {
      */
     private Context messageByAccountIdHandler(Context context) {
         String account_id_str = context.pathParam("account_id");
+        Boolean embed = embedsAuthors(context);
+        if (embed == null) {
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
 
         try {
             // parse the param to int.
@@ -279,7 +473,7 @@ public class SocialMediaController {
             List<Message> messages = messageService.getAllMessagesByAccountId(account_id);
 
             // Success, return the messages.
-            return context.json(messages);
+            return listMessages(context, messages, embed);
         } catch (Exception ex) {
             logger.error("messageByAccountIdHandler threw an exception, account_id_str: {}, message: {}", account_id_str, ex.getMessage());
 
@@ -288,6 +482,459 @@ public class SocialMediaController {
         }
     }
 
+    /**
+     * Handler for GET /accounts/{account_id}/messages/changes, what changed in the messages of an account since the
+     * ?since= cursor of the client's last sync, no since for everything.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context messageChangesByAccountIdHandler(Context context) {
+        String account_id_str = context.pathParam("account_id");
+        String since_str = context.queryParam("since");
+
+        try {
+            // parse the params, no since for a full sync.
+            int account_id = Integer.parseInt(account_id_str);
+
+            MessageChanges changes = messageService.getMessageChangesByAccountId(account_id, since_str);
+            if (changes == null) {
+                // No change stream.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the changes.
+            return context.json(changes);
+        } catch (Exception ex) {
+            logger.error("messageChangesByAccountIdHandler threw an exception, account_id_str: {}, since_str: {}, message: {}", account_id_str, since_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /accounts/{account_id}/mentions, the messages that @mention the account, paged with ?after= (the
+     * last message_id of the previous page) and ?limit=.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context mentionsByAccountIdHandler(Context context) {
+        String account_id_str = context.pathParam("account_id");
+        String after_str = context.queryParam("after");
+        String limit_str = context.queryParam("limit");
+
+        try {
+            // parse the params, the first page by default.
+            int account_id = Integer.parseInt(account_id_str);
+            int after = after_str == null ? 0 : Integer.parseInt(after_str);
+            int limit = limit_str == null ? DEFAULT_PAGE_LIMIT : Integer.parseInt(limit_str);
+            Boolean embed = embedsAuthors(context);
+            if (limit < 0 || limit > MAX_PAGE_LIMIT || embed == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<Message> messages = messageService.getMessagesMentioning(account_id, after, limit);
+            if (messages == null) {
+                // No mention index.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the page.
+            return listMessages(context, messages, embed);
+        } catch (Exception ex) {
+            logger.error("mentionsByAccountIdHandler threw an exception, account_id_str: {}, after_str: {}, limit_str: {}, message: {}", account_id_str, after_str, limit_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /tags/{tag}/messages, the messages with the #tag, paged with ?after= (the last message_id of the
+     * previous page) and ?limit=.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context messagesByTagHandler(Context context) {
+        String tag = context.pathParam("tag");
+        String after_str = context.queryParam("after");
+        String limit_str = context.queryParam("limit");
+
+        try {
+            // parse the params, the first page by default.
+            int after = after_str == null ? 0 : Integer.parseInt(after_str);
+            int limit = limit_str == null ? DEFAULT_PAGE_LIMIT : Integer.parseInt(limit_str);
+            Boolean embed = embedsAuthors(context);
+            if (limit < 0 || limit > MAX_PAGE_LIMIT || embed == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<Message> messages = messageService.getMessagesByTag(tag, after, limit);
+            if (messages == null) {
+                // No tag index.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the page.
+            return listMessages(context, messages, embed);
+        } catch (Exception ex) {
+            logger.error("messagesByTagHandler threw an exception, tag: {}, after_str: {}, limit_str: {}, message: {}", tag, after_str, limit_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /messages/batch?ids=1,2,3, up to MAX_PAGE_LIMIT messages in the order asked for, null for a
+     * message that doesn't exist.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context messagesByIdsHandler(Context context) {
+        String ids_str = context.queryParam("ids");
+
+        try {
+            // parse the params, at least one id.
+            List<Integer> message_ids = parseIds(ids_str);
+            Boolean embed = embedsAuthors(context);
+            if (message_ids == null || embed == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            // Success, return the messages.
+            return listMessages(context, messageService.getMessagesByIds(message_ids), embed);
+        } catch (Exception ex) {
+            logger.error("messagesByIdsHandler threw an exception, ids_str: {}, message: {}", ids_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /accounts/batch?ids=1,2,3, the account_id and username of up to MAX_PAGE_LIMIT accounts in the
+     * order asked for, null for an account that doesn't exist.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context accountsByIdsHandler(Context context) {
+        String ids_str = context.queryParam("ids");
+
+        try {
+            // parse the params, at least one id.
+            List<Integer> account_ids = parseIds(ids_str);
+            if (account_ids == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            // Success, return the profiles.
+            return context.json(accountService.getAccountProfiles(account_ids));
+        } catch (Exception ex) {
+            logger.error("accountsByIdsHandler threw an exception, ids_str: {}, message: {}", ids_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /accounts/{account_id}/summary, how many messages the account has posted and when it last did.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context accountSummaryHandler(Context context) {
+        String account_id_str = context.pathParam("account_id");
+
+        try {
+            // parse the params.
+            int account_id = Integer.parseInt(account_id_str);
+
+            AccountSummary summary = messageService.getAccountSummary(account_id);
+            if (summary == null) {
+                // No such account, or no summaries.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the summary.
+            return context.json(summary);
+        } catch (Exception ex) {
+            logger.error("accountSummaryHandler threw an exception, account_id_str: {}, message: {}", account_id_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /accounts/summaries?ids=1,2,3, the summaries of up to MAX_PAGE_LIMIT accounts in the order
+     * asked for, null for an account that doesn't exist.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context accountSummariesHandler(Context context) {
+        String ids_str = context.queryParam("ids");
+
+        try {
+            // parse the params, at least one id.
+            List<Integer> account_ids = parseIds(ids_str);
+            if (account_ids == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<AccountSummary> summaries = messageService.getAccountSummaries(account_ids);
+            if (summaries == null) {
+                // No summaries.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the summaries.
+            return context.json(summaries);
+        } catch (Exception ex) {
+            logger.error("accountSummariesHandler threw an exception, ids_str: {}, message: {}", ids_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /accounts/{account_id}/following, the account_ids the account follows.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context followingHandler(Context context) {
+        String account_id_str = context.pathParam("account_id");
+
+        try {
+            // parse the params.
+            int account_id = Integer.parseInt(account_id_str);
+
+            List<Integer> following = messageService.getFollowing(account_id);
+            if (following == null) {
+                // No follow graph.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the account_ids.
+            return context.json(following);
+        } catch (Exception ex) {
+            logger.error("followingHandler threw an exception, account_id_str: {}, message: {}", account_id_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for PUT /accounts/{account_id}/following/{followee_id}, follow an account. Following an account twice is
+     * the same as once.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context followHandler(Context context) {
+        String account_id_str = context.pathParam("account_id");
+        String followee_id_str = context.pathParam("followee_id");
+
+        try {
+            // parse the params, an account cannot follow itself.
+            int account_id = Integer.parseInt(account_id_str);
+            int followee_id = Integer.parseInt(followee_id_str);
+            if (account_id == followee_id) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<Integer> following = messageService.follow(account_id, followee_id);
+            if (following == null) {
+                // No such account, or no follow graph.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the account_ids it now follows.
+            return context.json(following);
+        } catch (Exception ex) {
+            logger.error("followHandler threw an exception, account_id_str: {}, followee_id_str: {}, message: {}", account_id_str, followee_id_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for DELETE /accounts/{account_id}/following/{followee_id}, unfollow an account. Unfollowing an account
+     * that is not followed changes nothing.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context unfollowHandler(Context context) {
+        String account_id_str = context.pathParam("account_id");
+        String followee_id_str = context.pathParam("followee_id");
+
+        try {
+            // parse the params.
+            int account_id = Integer.parseInt(account_id_str);
+            int followee_id = Integer.parseInt(followee_id_str);
+
+            List<Integer> following = messageService.unfollow(account_id, followee_id);
+            if (following == null) {
+                // No such account, or no follow graph.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the account_ids it still follows.
+            return context.json(following);
+        } catch (Exception ex) {
+            logger.error("unfollowHandler threw an exception, account_id_str: {}, followee_id_str: {}, message: {}", account_id_str, followee_id_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /accounts/{account_id}/home, the newest messages of the accounts the account follows, newest
+     * first, paged with ?before= (the last message_id of the previous page) and ?limit=.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context homeTimelineHandler(Context context) {
+        String account_id_str = context.pathParam("account_id");
+        String before_str = context.queryParam("before");
+        String limit_str = context.queryParam("limit");
+
+        try {
+            // parse the params, the first page by default.
+            int account_id = Integer.parseInt(account_id_str);
+            int before = before_str == null ? Integer.MAX_VALUE : Integer.parseInt(before_str);
+            int limit = limit_str == null ? DEFAULT_PAGE_LIMIT : Integer.parseInt(limit_str);
+            Boolean embed = embedsAuthors(context);
+            if (limit < 0 || limit > MAX_PAGE_LIMIT || embed == null) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<Message> messages = messageService.getHomeTimeline(account_id, before, limit);
+            if (messages == null) {
+                // No such account, or no timelines.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the page.
+            return listMessages(context, messages, embed);
+        } catch (Exception ex) {
+            logger.error("homeTimelineHandler threw an exception, account_id_str: {}, before_str: {}, limit_str: {}, message: {}", account_id_str, before_str, limit_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /trending, the most used #tags of the ?window= (5m, 1h or 24h, default 1h), at most ?limit= of
+     * them (default 10).
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context trendingHandler(Context context) {
+        String window_str = context.queryParam("window");
+        String limit_str = context.queryParam("limit");
+
+        try {
+            // parse the params, the last hour and the top 10 by default.
+            TrendingTags.Window window = TrendingTags.Window.of(window_str == null ? "1h" : window_str);
+            int limit = limit_str == null ? 10 : Integer.parseInt(limit_str);
+            if (window == null || limit < 0 || limit > TrendingTags.MAX_LIMIT) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<TrendingTerm> terms = messageService.getTrendingTags(window, limit);
+            if (terms == null) {
+                // Not counting tags.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the ranking.
+            return context.json(terms);
+        } catch (Exception ex) {
+            logger.error("trendingHandler threw an exception, window_str: {}, limit_str: {}, message: {}", window_str, limit_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /leaderboard, the accounts with the most messages of the ?period= (all or day, default all),
+     * paged with ?offset= and ?limit=.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context leaderboardHandler(Context context) {
+        String period_str = context.queryParam("period");
+        String offset_str = context.queryParam("offset");
+        String limit_str = context.queryParam("limit");
+
+        try {
+            // parse the params, the first page of all time by default.
+            Leaderboard.Period period = Leaderboard.Period.of(period_str == null ? "all" : period_str);
+            int offset = offset_str == null ? 0 : Integer.parseInt(offset_str);
+            int limit = limit_str == null ? DEFAULT_PAGE_LIMIT : Integer.parseInt(limit_str);
+            if (period == null || offset < 0 || limit < 0 || limit > MAX_PAGE_LIMIT) {
+                return context.status(HttpStatus.BAD_REQUEST);
+            }
+
+            List<LeaderboardEntry> entries = messageService.getLeaderboard(period, offset, limit);
+            if (entries == null) {
+                // No leaderboard.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the page.
+            return context.json(entries);
+        } catch (Exception ex) {
+            logger.error("leaderboardHandler threw an exception, period_str: {}, offset_str: {}, limit_str: {}, message: {}", period_str, offset_str, limit_str, ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Handler for GET /analytics, how many messages were created and by how many distinct accounts, recently.
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context analyticsHandler(Context context) {
+        try {
+            MessageAnalytics analytics = messageService.getAnalytics();
+            if (analytics == null) {
+                // Not counting messages.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the counts.
+            return context.json(analytics);
+        } catch (Exception ex) {
+            logger.error("analyticsHandler threw an exception, message: {}", ex.getMessage());
+
+            // On error, 400.
+            return context.status(HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /**
      * Handler for DELETE /messages/{message_id}
      * 
@@ -317,4 +964,144 @@ public class SocialMediaController {
             return context.status(HttpStatus.OK);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Handler for GET /replication
+     * 
+     * @param context
+     * @return the request context
+     */
+    private Context replicationHandler(Context context) {
+        try {
+            List<ReplicaSet.ReplicaStatus> status = messageService.getReplicaStatus();
+            if (status == null) {
+                // Not replicated.
+                return context.status(HttpStatus.NOT_FOUND);
+            }
+
+            // Success, return the state of every replica.
+            return context.json(status);
+        } catch (Exception ex) {
+            logger.error("replicationHandler threw an exception, message: {}", ex.getMessage());
+
+            // On error, 500.
+            return context.status(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Handler for GET /feed, a stream of Server-Sent Events for every message created, updated or deleted from now
+     * on, or after the Last-Event-ID the client sends. ?posted_by= limits it to the messages of one account.
+     * 
+     * @param client
+     */
+    private void feedHandler(SseClient client) {
+        String posted_by_str = client.ctx.queryParam("posted_by");
+        String lastEventId = client.ctx.header("Last-Event-ID");
+
+        try {
+            // parse the params, no posted_by for every account and no Last-Event-ID for only new messages.
+            int posted_by = posted_by_str == null ? 0 : Integer.parseInt(posted_by_str);
+            long afterSeq = lastEventId == null ? -1 : Long.parseLong(lastEventId);
+
+            SseSink sink = new SseSink(client);
+            client.onClose(() -> sink.closed = true);
+
+            // Subscribe, the feed sends from its own threads.
+            if (messageService.subscribeToFeed(afterSeq, posted_by, sink) == null) {
+                // No feed.
+                client.close();
+                return;
+            }
+            client.keepAlive();
+        } catch (Exception ex) {
+            logger.error("feedHandler threw an exception, posted_by_str: {}, lastEventId: {}, message: {}", posted_by_str, lastEventId, ex.getMessage());
+
+            // On error, end the stream.
+            client.close();
+        }
+    }
+
+    /**
+     * Before every request, set where its reads may go: requests that write, and requests that ask for it, read from
+     * the primary; X-Read-After-Seq makes reads wait for a replica that has applied that write.
+     * 
+     * @param context
+     */
+    private void beginReadConsistency(Context context) {
+        boolean primary = context.method() != HandlerType.GET
+            || ReadConsistency.PRIMARY.equalsIgnoreCase(context.header(ReadConsistency.CONSISTENCY_HEADER));
+
+        long readAfterSeq = 0;
+        String readAfterSeq_str = context.header(ReadConsistency.READ_AFTER_HEADER);
+        if (readAfterSeq_str != null) {
+            try {
+                readAfterSeq = Long.parseLong(readAfterSeq_str);
+            } catch (NumberFormatException ex) {
+                logger.error("beginReadConsistency ignored a bad header, readAfterSeq_str: {}", readAfterSeq_str);
+            }
+        }
+
+        ReadConsistency.beginRequest(primary, readAfterSeq);
+    }
+
+    /**
+     * After every request, hand the sequence number of its last write to the client, to send back as
+     * X-Read-After-Seq.
+     * 
+     * @param context
+     */
+    private void endReadConsistency(Context context) {
+        long writeSeq = ReadConsistency.endRequest();
+        if (writeSeq > 0) {
+            context.header(ReadConsistency.WRITE_SEQ_HEADER, Long.toString(writeSeq));
+        }
+    }
+
+    /**
+     * Parse ?embed= of a message listing, which may ask for the authors of the messages.
+     * 
+     * @param context
+     * @return true for embed=author, false without embed, null for anything else.
+     */
+    private static Boolean embedsAuthors(Context context) {
+        String embed = context.queryParam("embed");
+        if (embed == null) {
+            return false;
+        }
+        if (embed.equals("author")) {
+            return true;
+        }
+        return null;
+    }
+
+    /**
+     * Respond with a list of messages, with embedAuthors as a MessagePage that also has every distinct author once.
+     * 
+     * @param context
+     * @param messages the messages.
+     * @param embedAuthors whether ?embed=author was asked for.
+     * @return the request context
+     */
+    private Context listMessages(Context context, List<Message> messages, boolean embedAuthors) {
+        return context.json(embedAuthors ? messageService.withAuthors(messages) : messages);
+    }
+
+    /**
+     * Parse a comma separated list of ids, e.g. ?ids=1,2,3.
+     * 
+     * @param ids_str the list.
+     * @return the ids in order, null if there are none or more than MAX_PAGE_LIMIT.
+     * @throws NumberFormatException if an id is not a number.
+     */
+    private static List<Integer> parseIds(String ids_str) {
+        if (ids_str == null || ids_str.isBlank()) {
+            return null;
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (String id_str : ids_str.split(",")) {
+            ids.add(Integer.parseInt(id_str.trim()));
+        }
+        return ids.size() > MAX_PAGE_LIMIT ? null : ids;
+    }
+}
@@ -5,6 +5,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,29 +16,48 @@ import org.slf4j.LoggerFactory;
 import Model.Account;
 import Util.ConnectionUtil;
 
-public class AccountDAO {
+public class AccountDAO implements AccountRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(AccountDAO.class);
 
+    private final Supplier<Connection> connections;
+
+    /**
+     * Default constructor, uses the database from ConnectionUtil.
+     */
+    public AccountDAO() {
+        this(ConnectionUtil::getConnection);
+    }
+
+    /**
+     * Constructor when the connections come from somewhere else, e.g. a read replica. Like ConnectionUtil's,
+     * they are not closed after use.
+     * 
+     * @param connections supplies a connection for each call.
+     */
+    public AccountDAO(Supplier<Connection> connections) {
+        this.connections = connections;
+    }
+
     /**
      * Retrieves an Account by the provided account_id.
      * 
      * @param account_id the id of the account.
      * @return the account if one exists, null if none exists.
      */
+    @Override
     public Account getAccountById(int account_id) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
 
-        try {
-            String query = "SELECT * FROM account WHERE account_id = ?";
+        String query = "SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM account WHERE account_id = ?";
 
-            PreparedStatement ps = conn.prepareStatement(query);
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setInt(1, account_id);
 
             ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
-                return getAccountFromResultSet(rs);
+                return RowMappers.toAccount(rs);
             }
         } catch (SQLException ex) {
             logger.error("getAccountById threw an excetpion, account_id: {}, message: {}", account_id, ex.getMessage());
@@ -43,25 +66,61 @@ public class AccountDAO {
         return null;
     }
 
+    /**
+     * Retrieves many Accounts by account_id, one query per MessageDAO.IN_LIST_CHUNK ids.
+     * 
+     * @param account_ids the ids of the accounts.
+     * @return the accounts that exist, by account_id.
+     */
+    @Override
+    public Map<Integer, Account> getAccountsByIds(List<Integer> account_ids) {
+        Connection conn = connections.get();
+        Map<Integer, Account> accounts = new HashMap<>();
+
+        for (int from = 0; from < account_ids.size(); from += MessageDAO.IN_LIST_CHUNK) {
+            List<Integer> chunk = account_ids.subList(from,
+                Math.min(from + MessageDAO.IN_LIST_CHUNK, account_ids.size()));
+            String query = "SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM account WHERE account_id IN ("
+                + MessageDAO.placeholders(chunk.size()) + ")";
+
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setInt(i + 1, chunk.get(i));
+                }
+
+                ResultSet rs = ps.executeQuery();
+
+                while (rs.next()) {
+                    Account account = RowMappers.toAccount(rs);
+                    accounts.put(account.getAccount_id(), account);
+                }
+            } catch (SQLException ex) {
+                logger.error("getAccountsByIds threw an exception, account_ids: {}, message: {}", chunk, ex.getMessage());
+            }
+        }
+
+        return accounts;
+    }
+
     /**
      * Retrieves an Account by the provided username.
      * 
      * @param username the name of the account.
      * @return the account if one exists, null if none exists.
      */
+    @Override
     public Account getAccountByUserame(String username) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
 
-        try {
-            String query = "SELECT * FROM account WHERE username = ?";
-            
-            PreparedStatement ps = conn.prepareStatement(query);
+        String query = "SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM account WHERE username = ?";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setString(1, username);
 
             ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
-                return getAccountFromResultSet(rs);
+                return RowMappers.toAccount(rs);
             }
         } catch (SQLException ex) {
             logger.error("getAccountByUsername threw an exception, username: {}, message: {}", username, ex.getMessage());
@@ -76,13 +135,13 @@ public class AccountDAO {
      * @param account the account to insert.
      * @return the account with the account_id field set to the inserted id, null if something went wrong.
      */
+    @Override
     public Account insertAccount(Account account) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
 
-        try {
-            String query = "INSERT INTO account (username, password) VALUES (?, ?)";
-            
-            PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+        String query = "INSERT INTO account (username, password) VALUES (?, ?)";
+
+        try (PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, account.getUsername());
             ps.setString(2, account.getPassword());
 
@@ -91,7 +150,7 @@ public class AccountDAO {
             ResultSet rs = ps.getGeneratedKeys();
             
             if (rs.next()) {
-                int inserted_id = rs.getInt("account_id");
+                int inserted_id = rs.getInt(1);
                 account.setAccount_id(inserted_id);
 
                 return account;
@@ -102,19 +161,4 @@ public class AccountDAO {
 
         return null;
     }
-
-    /**
-     * Helper method to extract the Account from the supplied ResultSet.
-     * 
-     * @param rs the ResultSet containing the account.
-     * @return the Account created from the supplied ResultSet.
-     * @throws SQLException
-     */
-    private Account getAccountFromResultSet(ResultSet rs) throws SQLException {
-        return new Account(
-            rs.getInt("account_id"), 
-            rs.getString("username"), 
-            rs.getString("password")
-        );
-    }
 }
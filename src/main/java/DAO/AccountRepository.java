@@ -0,0 +1,70 @@
+package DAO;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Model.Account;
+
+/**
+ * Storage for Accounts.
+ *
+ * AccountDAO is the JDBC implementation backed by the H2 database, InMemoryAccountRepository keeps everything in the
+ * process. Implementations must behave like the account table: ids are assigned in increasing order and never
+ * reused, and usernames are unique and at most 255 characters.
+ */
+public interface AccountRepository {
+
+    /**
+     * Retrieves an Account by the provided account_id.
+     * 
+     * @param account_id the id of the account.
+     * @return the account if one exists, null if none exists.
+     */
+    Account getAccountById(int account_id);
+
+    /**
+     * Retrieves many Accounts by account_id, e.g. the authors of one page of messages. The default looks them up one
+     * at a time; implementations that can look up many at once override this.
+     * 
+     * @param account_ids the ids of the accounts.
+     * @return the accounts that exist, by account_id.
+     */
+    default Map<Integer, Account> getAccountsByIds(List<Integer> account_ids) {
+        Map<Integer, Account> accounts = new HashMap<>();
+        for (int account_id : account_ids) {
+            Account account = getAccountById(account_id);
+            if (account != null) {
+                accounts.put(account_id, account);
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Retrieves an Account by the provided username.
+     * 
+     * @param username the name of the account.
+     * @return the account if one exists, null if none exists.
+     */
+    Account getAccountByUserame(String username);
+
+    /**
+     * Retrieves an Account by the provided username, password included, to check a login. Copies that leave the
+     * password out, such as read replicas, must not answer this. The default is getAccountByUserame.
+     * 
+     * @param username the name of the account.
+     * @return the account if one exists, null if none exists.
+     */
+    default Account getAccountWithPassword(String username) {
+        return getAccountByUserame(username);
+    }
+
+    /**
+     * Attempts to insert the provided Account.
+     * 
+     * @param account the account to insert.
+     * @return the account with the account_id field set to the inserted id, null if something went wrong.
+     */
+    Account insertAccount(Account account);
+}
@@ -0,0 +1,107 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Model.Account;
+import Util.IntCache;
+
+/**
+ * AccountRepository that keeps recently read accounts in IntCaches, by account_id and by username, so that the
+ * posted_by check of every new message and repeated logins skip the delegate.
+ *
+ * Writes by other instances arrive as invalidations from an InvalidationBus this repository is subscribed to. The
+ * username cache is keyed by the hash of the username, so invalidating one account clears it entirely; accounts are
+ * only ever inserted, so that is rare. Cached accounts are shared between callers and must not be modified.
+ */
+public class CachingAccountRepository implements AccountRepository, InvalidationBus.Listener {
+
+    private final AccountRepository delegate;
+    private final IntCache<Account> accountsById;
+    private final IntCache<Account> accountsByUsername;
+
+    /**
+     * @param delegate the repository that stores the accounts.
+     * @param capacity the number of cache slots, of each cache.
+     */
+    public CachingAccountRepository(AccountRepository delegate, int capacity) {
+        this.delegate = delegate;
+        this.accountsById = new IntCache<>(capacity);
+        this.accountsByUsername = new IntCache<>(capacity);
+    }
+
+    @Override
+    public Account getAccountById(int account_id) {
+        Account account = accountsById.get(account_id);
+        if (account != null) {
+            return account;
+        }
+        long stamp = accountsById.stamp();
+        account = delegate.getAccountById(account_id);
+        if (account != null) {
+            accountsById.put(account_id, account, stamp);
+        }
+        return account;
+    }
+
+    @Override
+    public Map<Integer, Account> getAccountsByIds(List<Integer> account_ids) {
+        Map<Integer, Account> accounts = new HashMap<>();
+        List<Integer> missed = new ArrayList<>();
+        for (int account_id : account_ids) {
+            Account account = accountsById.get(account_id);
+            if (account != null) {
+                accounts.put(account_id, account);
+            } else {
+                missed.add(account_id);
+            }
+        }
+        if (missed.isEmpty()) {
+            return accounts;
+        }
+        // One delegate call for every miss.
+        long stamp = accountsById.stamp();
+        for (Account account : delegate.getAccountsByIds(missed).values()) {
+            accountsById.put(account.getAccount_id(), account, stamp);
+            accounts.put(account.getAccount_id(), account);
+        }
+        return accounts;
+    }
+
+    @Override
+    public Account getAccountByUserame(String username) {
+        Account account = accountsByUsername.get(username.hashCode());
+        if (account != null && account.getUsername().equals(username)) {
+            return account;
+        }
+        long stamp = accountsByUsername.stamp();
+        account = delegate.getAccountByUserame(username);
+        if (account != null) {
+            accountsByUsername.put(username.hashCode(), account, stamp);
+        }
+        return account;
+    }
+
+    @Override
+    public Account insertAccount(Account account) {
+        return delegate.insertAccount(account);
+    }
+
+    @Override
+    public void invalidateAccount(int account_id) {
+        accountsById.invalidate(account_id);
+        accountsByUsername.invalidateAll();
+    }
+
+    @Override
+    public void invalidateMessage(int message_id) {
+    }
+
+    @Override
+    public void invalidateAll() {
+        accountsById.invalidateAll();
+        accountsByUsername.invalidateAll();
+    }
+}
@@ -0,0 +1,139 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Model.AccountSummary;
+import Model.Message;
+import Util.IntCache;
+
+/**
+ * MessageRepository that keeps recently read messages in an IntCache, so that repeated getMessageById calls for the
+ * same message skip the delegate.
+ *
+ * Writes through this repository invalidate the message here; writes by other instances arrive as invalidations from
+ * an InvalidationBus this repository is subscribed to. Listings and counts are not cached. Cached messages are shared
+ * between callers and must not be modified.
+ */
+public class CachingMessageRepository implements MessageRepository, InvalidationBus.Listener {
+
+    private final MessageRepository delegate;
+    private final IntCache<Message> messagesById;
+
+    /**
+     * @param delegate the repository that stores the messages.
+     * @param capacity the number of cache slots.
+     */
+    public CachingMessageRepository(MessageRepository delegate, int capacity) {
+        this.delegate = delegate;
+        this.messagesById = new IntCache<>(capacity);
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return delegate.getAllMessages();
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        return delegate.getMessagesAfter(message_id);
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id) {
+        return delegate.getAllMessagesByAccountId(account_id);
+    }
+
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        return delegate.countMessagesByAccountId(account_id);
+    }
+
+    @Override
+    public Map<Integer, Integer> countMessagesPerAccount(long from_epoch, long to_epoch) {
+        return delegate.countMessagesPerAccount(from_epoch, to_epoch);
+    }
+
+    @Override
+    public Map<Integer, AccountSummary> summarizeMessagesByAccountIds(List<Integer> account_ids) {
+        return delegate.summarizeMessagesByAccountIds(account_ids);
+    }
+
+    @Override
+    public Message getMessageById(int message_id) {
+        Message message = messagesById.get(message_id);
+        if (message != null) {
+            return message;
+        }
+        long stamp = messagesById.stamp();
+        message = delegate.getMessageById(message_id);
+        if (message != null) {
+            messagesById.put(message_id, message, stamp);
+        }
+        return message;
+    }
+
+    @Override
+    public Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+        Map<Integer, Message> messages = new HashMap<>();
+        List<Integer> missed = new ArrayList<>();
+        for (int message_id : message_ids) {
+            Message message = messagesById.get(message_id);
+            if (message != null) {
+                messages.put(message_id, message);
+            } else {
+                missed.add(message_id);
+            }
+        }
+        if (missed.isEmpty()) {
+            return messages;
+        }
+        // One delegate call for every miss.
+        long stamp = messagesById.stamp();
+        for (Message message : delegate.getMessagesByIds(missed).values()) {
+            messagesById.put(message.getMessage_id(), message, stamp);
+            messages.put(message.getMessage_id(), message);
+        }
+        return messages;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        return delegate.insertMessage(message);
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        return delegate.insertMessages(messages);
+    }
+
+    @Override
+    public boolean updateMessageById(String message_text, int message_id) {
+        boolean updated = delegate.updateMessageById(message_text, message_id);
+        messagesById.invalidate(message_id);
+        return updated;
+    }
+
+    @Override
+    public boolean deleteMessageById(int message_id) {
+        boolean deleted = delegate.deleteMessageById(message_id);
+        messagesById.invalidate(message_id);
+        return deleted;
+    }
+
+    @Override
+    public void invalidateAccount(int account_id) {
+    }
+
+    @Override
+    public void invalidateMessage(int message_id) {
+        messagesById.invalidate(message_id);
+    }
+
+    @Override
+    public void invalidateAll() {
+        messagesById.invalidateAll();
+    }
+}
@@ -0,0 +1,53 @@
+package DAO;
+
+import java.util.List;
+import java.util.Map;
+
+import Model.Account;
+import Model.ChangeEvent;
+
+/**
+ * AccountRepository that publishes an ACCOUNT_CREATED event to a ChangeStream for every account it inserts. The event
+ * leaves the password out, so it never reaches subscribers, replicas or the spill.
+ */
+public class ChangeCapturingAccountRepository implements AccountRepository {
+
+    private final AccountRepository delegate;
+    private final ChangeStream changes;
+
+    /**
+     * @param delegate the repository that stores the accounts.
+     * @param changes the stream to publish the changes to.
+     */
+    public ChangeCapturingAccountRepository(AccountRepository delegate, ChangeStream changes) {
+        this.delegate = delegate;
+        this.changes = changes;
+    }
+
+    @Override
+    public Account getAccountById(int account_id) {
+        return delegate.getAccountById(account_id);
+    }
+
+    @Override
+    public Map<Integer, Account> getAccountsByIds(List<Integer> account_ids) {
+        return delegate.getAccountsByIds(account_ids);
+    }
+
+    @Override
+    public Account getAccountByUserame(String username) {
+        return delegate.getAccountByUserame(username);
+    }
+
+    @Override
+    public Account getAccountWithPassword(String username) {
+        return delegate.getAccountWithPassword(username);
+    }
+
+    @Override
+    public Account insertAccount(Account account) {
+        return changes.capture(() -> delegate.insertAccount(account),
+            inserted -> inserted == null ? List.of() : List.of(new ChangeEvent(0, ChangeEvent.Type.ACCOUNT_CREATED, 0,
+                new Account(inserted.getAccount_id(), inserted.getUsername(), null), null)));
+    }
+}
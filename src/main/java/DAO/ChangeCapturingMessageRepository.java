@@ -0,0 +1,136 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import Model.ChangeEvent;
+import Model.AccountSummary;
+import Model.Message;
+
+/**
+ * MessageRepository that publishes an event to a ChangeStream for every message it inserts, updates or deletes.
+ *
+ * Every write is ordered by the posted_by of its messages (see ChangeStream), so the events of a message are in the
+ * order its writes committed. Updates and deletes first look the message up to learn its posted_by, and change
+ * nothing if it does not exist. Events carry the whole row: an update only changes message_text, so its row is the
+ * one looked up with the new text, and a delete carries the row it looked up, read again under the ordering lock if
+ * another write to the same account's messages was published in between.
+ */
+public class ChangeCapturingMessageRepository implements MessageRepository {
+
+    private final MessageRepository delegate;
+    private final ChangeStream changes;
+
+    /**
+     * @param delegate the repository that stores the messages.
+     * @param changes the stream to publish the changes to.
+     */
+    public ChangeCapturingMessageRepository(MessageRepository delegate, ChangeStream changes) {
+        this.delegate = delegate;
+        this.changes = changes;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return delegate.getAllMessages();
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        return delegate.getMessagesAfter(message_id);
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id) {
+        return delegate.getAllMessagesByAccountId(account_id);
+    }
+
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        return delegate.countMessagesByAccountId(account_id);
+    }
+
+    @Override
+    public Map<Integer, Integer> countMessagesPerAccount(long from_epoch, long to_epoch) {
+        return delegate.countMessagesPerAccount(from_epoch, to_epoch);
+    }
+
+    @Override
+    public Map<Integer, AccountSummary> summarizeMessagesByAccountIds(List<Integer> account_ids) {
+        return delegate.summarizeMessagesByAccountIds(account_ids);
+    }
+
+    @Override
+    public Message getMessageById(int message_id) {
+        return delegate.getMessageById(message_id);
+    }
+
+    @Override
+    public Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+        return delegate.getMessagesByIds(message_ids);
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        return changes.capture(new int[] {message.getPosted_by()}, () -> delegate.insertMessage(message),
+            inserted -> inserted == null ? List.of() : List.of(event(ChangeEvent.Type.MESSAGE_CREATED, inserted)));
+    }
+
+    /**
+     * Inserts the batch through the delegate in one go, then publishes one event per inserted message.
+     */
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        int[] keys = new int[messages.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = messages.get(i).getPosted_by();
+        }
+        return changes.capture(keys, () -> delegate.insertMessages(messages), inserted -> {
+            List<ChangeEvent> events = new ArrayList<>(inserted.size());
+            for (Message message : inserted) {
+                if (message != null) {
+                    events.add(event(ChangeEvent.Type.MESSAGE_CREATED, message));
+                }
+            }
+            return events;
+        });
+    }
+
+    @Override
+    public boolean updateMessageById(String message_text, int message_id) {
+        Message existing = delegate.getMessageById(message_id);
+        if (existing == null) {
+            return false;
+        }
+        return changes.capture(new int[] {existing.getPosted_by()},
+            () -> delegate.updateMessageById(message_text, message_id),
+            updated -> !updated ? List.of() : List.of(new ChangeEvent(0, ChangeEvent.Type.MESSAGE_UPDATED, 0, null,
+                new Message(message_id, existing.getPosted_by(), message_text, existing.getTime_posted_epoch()))));
+    }
+
+    @Override
+    public boolean deleteMessageById(int message_id) {
+        long seen = changes.lastSeq();
+        Message existing = delegate.getMessageById(message_id);
+        if (existing == null) {
+            return false;
+        }
+        int posted_by = existing.getPosted_by();
+        Message deleted = changes.capture(new int[] {posted_by}, () -> {
+            Message current = changes.lastSeqOf(posted_by) <= seen ? existing : delegate.getMessageById(message_id);
+            return current != null && delegate.deleteMessageById(message_id) ? current : null;
+        }, message -> message == null ? List.of() : List.of(event(ChangeEvent.Type.MESSAGE_DELETED, message)));
+        return deleted != null;
+    }
+
+    @Override
+    public ChangeStream getChangeStream() {
+        return changes;
+    }
+
+    private static ChangeEvent event(ChangeEvent.Type type, Message message) {
+        return new ChangeEvent(0, type, 0, null, new Message(message.getMessage_id(), message.getPosted_by(),
+            message.getMessage_text(), message.getTime_posted_epoch()));
+    }
+}
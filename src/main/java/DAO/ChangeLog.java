@@ -0,0 +1,436 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.Account;
+import Model.ChangeEvent;
+import Model.Message;
+
+/**
+ * The spill of a ChangeStream: every change event, appended to local files so that subscribers can catch up on
+ * changes the ring buffer no longer holds, also after a restart.
+ *
+ * The log is a directory of segment files named after the seq of their first event, each a run of records:
+ *
+ *   int   payload length
+ *   int   CRC32 of the payload
+ *   long  seq
+ *   byte  the ordinal of the ChangeEvent.Type
+ *   long  changed_at
+ *   then for ACCOUNT_CREATED
+ *   int   account_id
+ *   str   username
+ *   or for the MESSAGE_ types
+ *   int   message_id
+ *   int   posted_by
+ *   long  time_posted_epoch
+ *   str   message_text
+ *
+ * where str is an int length in bytes, -1 for null, followed by the UTF-8 bytes. A segment is rolled once it reaches
+ * segmentBytes, and only the newest retainedSegments are kept.
+ *
+ * Records are written with plain file writes and never fsynced: they survive the process, not the machine. Only the
+ * spiller thread of the owning ChangeStream appends; reads use positional reads and may run concurrently with it.
+ *
+ * The epoch of the seqs is kept in a file of its own, written by close() and removed when the log is opened: after a
+ * crash, which may lose events from the end of the log that were already handed out, the log starts a new epoch. So
+ * does a log that failed an append, which left a hole in it.
+ */
+class ChangeLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeLog.class);
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int FIXED_PAYLOAD_SIZE = 8 + 1 + 8;
+    private static final int NULL_STRING = -1;
+
+    /**
+     * Seqs between two entries of the sparse index of a segment.
+     */
+    private static final int INDEX_INTERVAL = 256;
+
+    private static final String EPOCH_FILE = "epoch";
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("changes-(\\d{20})\\.log");
+    private static final ChangeEvent.Type[] TYPES = ChangeEvent.Type.values();
+
+    private static final class Segment {
+        final long firstSeq;
+        final Path path;
+        final FileChannel channel;
+        /**
+         * Bytes of intact records; readers never look past it.
+         */
+        volatile long size;
+        /**
+         * offsets[k] is the position of the record with seq firstSeq + k * INDEX_INTERVAL.
+         */
+        volatile long[] offsets = new long[16];
+        int offsetCount;
+
+        Segment(long firstSeq, Path path, FileChannel channel) {
+            this.firstSeq = firstSeq;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        void indexRecord(long seq, long position) {
+            if ((seq - firstSeq) % INDEX_INTERVAL != 0) {
+                return;
+            }
+            long[] current = offsets;
+            if (offsetCount == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[offsetCount++] = position;
+            offsets = current;
+        }
+
+        /**
+         * @return where to start scanning for seq, which must have been appended.
+         */
+        long positionOf(long seq) {
+            long[] current = offsets;
+            int k = (int) ((seq - firstSeq) / INDEX_INTERVAL);
+            return k < current.length ? current[k] : 0;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int retainedSegments;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final long epoch;
+    private boolean holed;
+    private Segment active;
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(1024);
+    private final CRC32 writeCrc = new CRC32();
+
+    /**
+     * Open the log in directory, creating the directory if needed.
+     *
+     * @param directory where the segment files are.
+     * @param segmentBytes the size at which a segment is rolled.
+     * @param retainedSegments how many segments are kept, at least 1.
+     */
+    ChangeLog(Path directory, int segmentBytes, int retainedSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retainedSegments = Math.max(1, retainedSegments);
+        Files.createDirectories(directory);
+        this.epoch = takeEpoch();
+    }
+
+    /**
+     * @return the epoch of the seqs in the log, see ChangeStream.epoch().
+     */
+    long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Read every intact event, oldest first, and position the log for appends after the last one. A torn or corrupt
+     * record, e.g. from a crash in the middle of a write, ends its segment and is cut off.
+     *
+     * @param visitor receives each event.
+     * @return the seq of the last event, 0 if the log is empty.
+     */
+    long recover(Consumer<ChangeEvent> visitor) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "changes-*.log")) {
+            for (Path path : stream) {
+                if (SEGMENT_FILE.matcher(path.getFileName().toString()).matches()) {
+                    files.add(path);
+                }
+            }
+        }
+        files.sort(null);
+
+        long lastSeq = 0;
+        for (Path path : files) {
+            Matcher matcher = SEGMENT_FILE.matcher(path.getFileName().toString());
+            matcher.matches();
+            Segment segment = new Segment(Long.parseLong(matcher.group(1)), path,
+                FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+            long position = 0;
+            long fileSize = segment.channel.size();
+            while (true) {
+                ChangeEvent event = readRecord(segment.channel, position, fileSize);
+                if (event == null) {
+                    break;
+                }
+                segment.indexRecord(event.seq, position);
+                position += RECORD_HEADER_SIZE + payloadSize(event);
+                lastSeq = event.seq;
+                visitor.accept(event);
+            }
+            if (position < fileSize) {
+                logger.error("change log segment {} has a torn or corrupt record at {}, dropping {} bytes",
+                    path.getFileName(), position, fileSize - position);
+                segment.channel.truncate(position);
+            }
+            segment.size = position;
+            segments.put(segment.firstSeq, segment);
+        }
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        return lastSeq;
+    }
+
+    /**
+     * @return the seq of the oldest event kept, 0 if the log is empty.
+     */
+    long firstSeq() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first == null || first.getValue().size == 0 ? 0 : first.getKey();
+    }
+
+    /**
+     * Append an event, rolling to a new segment first if the active one is full.
+     *
+     * @param event the event, with its seq set.
+     */
+    void append(ChangeEvent event) throws IOException {
+        try {
+            write(event);
+        } catch (IOException ex) {
+            holed = true;
+            throw ex;
+        }
+    }
+
+    private void write(ChangeEvent event) throws IOException {
+        int payloadSize = payloadSize(event);
+        int recordSize = RECORD_HEADER_SIZE + payloadSize;
+        if (active == null || (active.size > 0 && active.size + recordSize > segmentBytes)) {
+            roll(event.seq);
+        }
+
+        if (writeBuffer.capacity() < recordSize) {
+            writeBuffer = ByteBuffer.allocate(Math.max(recordSize, writeBuffer.capacity() * 2));
+        }
+        ByteBuffer buffer = writeBuffer;
+        buffer.clear();
+        buffer.position(RECORD_HEADER_SIZE);
+        encode(buffer, event);
+        writeCrc.reset();
+        writeCrc.update(buffer.array(), RECORD_HEADER_SIZE, payloadSize);
+        buffer.putInt(0, payloadSize);
+        buffer.putInt(4, (int) writeCrc.getValue());
+        buffer.flip();
+
+        long position = active.size;
+        while (buffer.hasRemaining()) {
+            position += active.channel.write(buffer, position);
+        }
+        active.indexRecord(event.seq, active.size);
+        active.size = position;
+    }
+
+    /**
+     * Read the events after afterSeq, oldest first.
+     *
+     * @param afterSeq the seq of the last event the reader has.
+     * @param toSeq the seq of the last event to read, at most the last one appended.
+     * @param into receives the events.
+     * @return false if the log no longer holds the event after afterSeq.
+     */
+    boolean read(long afterSeq, long toSeq, List<ChangeEvent> into) {
+        long seq = afterSeq + 1;
+        Map.Entry<Long, Segment> entry = segments.floorEntry(seq);
+        if (entry == null) {
+            return false;
+        }
+
+        try {
+            while (entry != null && seq <= toSeq) {
+                Segment segment = entry.getValue();
+                long position = segment.positionOf(seq);
+                long size = segment.size;
+                while (seq <= toSeq) {
+                    ChangeEvent event = readRecord(segment.channel, position, size);
+                    if (event == null) {
+                        break;
+                    }
+                    position += RECORD_HEADER_SIZE + payloadSize(event);
+                    if (event.seq == seq) {
+                        into.add(event);
+                        seq++;
+                    } else if (event.seq > seq) {
+                        return false;
+                    }
+                }
+                entry = segments.higherEntry(entry.getKey());
+            }
+        } catch (IOException ex) {
+            // The segment was deleted under the reader.
+            return false;
+        }
+        return seq > toSeq;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+        if (!holed) {
+            Files.writeString(directory.resolve(EPOCH_FILE), Long.toString(epoch), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return the epoch saved by the last close(), removing it until the next one, or a new epoch if there is none.
+     */
+    private long takeEpoch() throws IOException {
+        Path path = directory.resolve(EPOCH_FILE);
+        if (Files.exists(path)) {
+            try {
+                return Long.parseLong(Files.readString(path, StandardCharsets.UTF_8).trim());
+            } catch (NumberFormatException ex) {
+                logger.error("change log epoch is corrupt, starting a new one, message: {}", ex.getMessage());
+            } finally {
+                Files.delete(path);
+            }
+        }
+        return ChangeStream.newEpoch();
+    }
+
+    private void roll(long firstSeq) throws IOException {
+        Path path = directory.resolve(String.format("changes-%020d.log", firstSeq));
+        Segment segment = new Segment(firstSeq, path, FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.put(firstSeq, segment);
+        active = segment;
+
+        while (segments.size() > retainedSegments) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            try {
+                oldest.channel.close();
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException ex) {
+                logger.error("roll threw an exception, segment: {}, message: {}", oldest.path.getFileName(),
+                    ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the event of the record at position, null if there is no intact record there.
+     */
+    private static ChangeEvent readRecord(FileChannel channel, long position, long size) throws IOException {
+        if (position + RECORD_HEADER_SIZE + FIXED_PAYLOAD_SIZE > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(channel, header, position);
+        int length = header.getInt(0);
+        if (length < FIXED_PAYLOAD_SIZE || position + RECORD_HEADER_SIZE + length > size) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, position + RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != header.getInt(4)) {
+            return null;
+        }
+        payload.flip();
+        try {
+            return decode(payload);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of change log segment");
+            }
+        }
+    }
+
+    private static int payloadSize(ChangeEvent event) {
+        if (event.type == ChangeEvent.Type.ACCOUNT_CREATED) {
+            return FIXED_PAYLOAD_SIZE + 4 + stringSize(event.account.getUsername());
+        }
+        return FIXED_PAYLOAD_SIZE + 4 + 4 + 8 + stringSize(event.message.getMessage_text());
+    }
+
+    private static int stringSize(String value) {
+        return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void encode(ByteBuffer buffer, ChangeEvent event) {
+        buffer.putLong(event.seq);
+        buffer.put((byte) event.type.ordinal());
+        buffer.putLong(event.changed_at);
+        if (event.type == ChangeEvent.Type.ACCOUNT_CREATED) {
+            buffer.putInt(event.account.getAccount_id());
+            putString(buffer, event.account.getUsername());
+        } else {
+            buffer.putInt(event.message.getMessage_id());
+            buffer.putInt(event.message.getPosted_by());
+            buffer.putLong(event.message.getTime_posted_epoch());
+            putString(buffer, event.message.getMessage_text());
+        }
+    }
+
+    private static ChangeEvent decode(ByteBuffer buffer) {
+        long seq = buffer.getLong();
+        ChangeEvent.Type type = TYPES[buffer.get()];
+        long changed_at = buffer.getLong();
+        if (type == ChangeEvent.Type.ACCOUNT_CREATED) {
+            int account_id = buffer.getInt();
+            String username = getString(buffer);
+            return new ChangeEvent(seq, type, changed_at, new Account(account_id, username, null), null);
+        }
+        int message_id = buffer.getInt();
+        int posted_by = buffer.getInt();
+        long time_posted_epoch = buffer.getLong();
+        String message_text = getString(buffer);
+        return new ChangeEvent(seq, type, changed_at, null,
+            new Message(message_id, posted_by, message_text, time_posted_epoch));
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,488 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.ChangeEvent;
+
+/**
+ * The ordered stream of every committed change to accounts and messages (change data capture).
+ *
+ * ChangeCapturingAccountRepository and ChangeCapturingMessageRepository publish a ChangeEvent for each row a write
+ * changed. Writes run concurrently; each names ordering keys (the posted_by of the messages it writes), and writes
+ * sharing a key hold one of KEY_STRIPES locks across the write and the publishing of its events. So the events of one
+ * message, and of one account's messages, are in commit order, while writes for different accounts only meet in
+ * the short critical section that hands out the seqs. Seqs start at 1 and have no gaps.
+ *
+ * The newest capacity events are kept in a ring buffer. With a spill directory a background thread also appends
+ * every event to a ChangeLog, so that a subscriber can resume from any seq the log still holds, also after a restart;
+ * publishing waits for it only when the ring would otherwise overwrite an event it has not spilled yet. An event the
+ * spiller failed to append is a hole in the spill, and a read that would need the spill at or before it is a gap.
+ *
+ * Subscribers poll: read(afterSeq, max) returns the events after the last one they have, and await(afterSeq, ...)
+ * blocks until there is one. Events are shared between subscribers and must not be modified.
+ *
+ * Seqs start over when the stream does, e.g. an in-memory one after a restart, so a seq given to a client is only
+ * meaningful with the epoch of the stream it came from; cursor() and seqOf() pair them.
+ */
+public class ChangeStream implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeStream.class);
+
+    public static final int DEFAULT_CAPACITY = 65536;
+    public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+    public static final int DEFAULT_RETAINED_SEGMENTS = 4;
+
+    /**
+     * Locks that order the writes sharing an ordering key.
+     */
+    private static final int KEY_STRIPES = 64;
+
+    /**
+     * How often an idle spiller checks whether the stream was closed.
+     */
+    private static final long CLOSE_CHECK_MILLIS = 100;
+
+    private static final int[] NO_KEYS = new int[0];
+
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    private final int mask;
+    private final ChangeLog spill;
+    private final Thread spiller;
+    private final long epoch;
+    private final ReentrantLock[] keyLocks = new ReentrantLock[KEY_STRIPES];
+    /**
+     * The seq of the last event published by a write holding each stripe.
+     */
+    private final AtomicLongArray keySeqs = new AtomicLongArray(KEY_STRIPES);
+    /**
+     * Held shared by every write from before it runs until its events are published, and exclusively by exclusive().
+     */
+    private final ReadWriteLock writes = new ReentrantReadWriteLock();
+    /**
+     * Held across the publishing of one write's events, waits for the spiller included, so their seqs are contiguous.
+     */
+    private final Lock publishLock = new ReentrantLock();
+    /**
+     * Guards spilledSeq for the publisher waiting for the spiller.
+     */
+    private final Lock seqLock = new ReentrantLock();
+    private final Condition spilled = seqLock.newCondition();
+    private final Object appended = new Object();
+    private volatile long lastSeq;
+    private volatile long spilledSeq;
+    /**
+     * The seq of the newest event the spiller failed to append, 0 if there is none.
+     */
+    private volatile long spillHoleSeq;
+    private volatile boolean closed;
+
+    /**
+     * A stream that keeps the newest DEFAULT_CAPACITY events in memory only.
+     */
+    public ChangeStream() {
+        this.ring = new AtomicReferenceArray<>(DEFAULT_CAPACITY);
+        this.mask = DEFAULT_CAPACITY - 1;
+        this.spill = null;
+        this.spiller = null;
+        this.epoch = newEpoch();
+        initKeyLocks();
+    }
+
+    /**
+     * @param capacity how many events the ring buffer holds, rounded up to a power of two.
+     * @param directory where to spill the events to, null to keep them in memory only.
+     */
+    public ChangeStream(int capacity, Path directory) throws IOException {
+        this(capacity, directory, DEFAULT_SEGMENT_BYTES, DEFAULT_RETAINED_SEGMENTS);
+    }
+
+    /**
+     * Open the stream, continuing after the last event in the spill directory if there is one.
+     *
+     * @param capacity how many events the ring buffer holds, rounded up to a power of two.
+     * @param directory where to spill the events to, null to keep them in memory only.
+     * @param segmentBytes the size at which a spill file is rolled.
+     * @param retainedSegments how many spill files are kept.
+     */
+    public ChangeStream(int capacity, Path directory, int segmentBytes, int retainedSegments) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        initKeyLocks();
+        if (directory == null) {
+            this.spill = null;
+            this.spiller = null;
+            this.epoch = newEpoch();
+        } else {
+            this.spill = new ChangeLog(directory, segmentBytes, retainedSegments);
+            this.epoch = spill.epoch();
+            this.lastSeq = spill.recover(event -> ring.set((int) event.seq & mask, event));
+            this.spilledSeq = lastSeq;
+            this.spiller = new Thread(this::spillEvents, "change-spiller");
+            spiller.setDaemon(true);
+            spiller.start();
+        }
+    }
+
+    /**
+     * @return the seq of the newest event, 0 if there is none.
+     */
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * @return the epoch of the seqs: a stream whose seqs started over has another one. A stream that continues a
+     * spill that was closed cleanly keeps its epoch.
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * @param seq a seq of this stream.
+     * @return the cursor to give a client for seq, which carries the epoch of the stream.
+     */
+    public String cursor(long seq) {
+        return Long.toHexString(epoch) + "-" + seq;
+    }
+
+    /**
+     * @param cursor a cursor from cursor(), of this stream or another one.
+     * @return the seq of cursor, -1 if it is of another epoch.
+     * @throws IllegalArgumentException if cursor is not a cursor.
+     */
+    public long seqOf(String cursor) {
+        int dash = cursor.indexOf('-');
+        if (dash <= 0) {
+            throw new IllegalArgumentException("not a cursor: " + cursor);
+        }
+        long cursorEpoch = Long.parseUnsignedLong(cursor.substring(0, dash), 16);
+        long seq = Long.parseLong(cursor.substring(dash + 1));
+        if (seq < 0) {
+            throw new IllegalArgumentException("not a cursor: " + cursor);
+        }
+        return cursorEpoch == epoch ? seq : -1;
+    }
+
+    /**
+     * @return the seq of the oldest event read() can still return, lastSeq() + 1 if there is none.
+     */
+    public long firstSeq() {
+        long last = lastSeq;
+        long oldestInRing = Math.max(1, last - mask);
+        if (spill != null) {
+            long oldestSpilled = spill.firstSeq();
+            if (oldestSpilled > 0 && oldestSpilled < oldestInRing) {
+                return oldestSpilled;
+            }
+        }
+        ChangeEvent oldest = ring.get((int) oldestInRing & mask);
+        return oldest != null && oldest.seq == oldestInRing ? oldestInRing : last + 1;
+    }
+
+    /**
+     * Read the events after afterSeq, oldest first, from the ring buffer or, for older ones, the spill.
+     *
+     * @param afterSeq the seq of the last event the caller has, 0 for all.
+     * @param max the most events to return.
+     * @return the events after afterSeq, empty if there are none yet, null if the event right after afterSeq is no
+     * longer kept and the caller has to start over from a snapshot.
+     */
+    public List<ChangeEvent> read(long afterSeq, int max) {
+        long last = lastSeq;
+        if (afterSeq >= last || max <= 0) {
+            return List.of();
+        }
+        long toSeq = Math.min(last, afterSeq + max);
+
+        List<ChangeEvent> events = new ArrayList<>((int) (toSeq - afterSeq));
+        long seq = afterSeq + 1;
+        while (seq <= toSeq) {
+            ChangeEvent event = ring.get((int) seq & mask);
+            if (event != null && event.seq == seq) {
+                events.add(event);
+                seq++;
+                continue;
+            }
+            // Overwritten by a newer event, so spilled; what the spiller has not reached yet is still in the ring. A
+            // reader behind a hole has to cross it sooner or later, so it starts over as soon as it reaches the spill.
+            long spilledTo = Math.min(toSeq, spilledSeq);
+            if (spill == null || spilledTo < seq || seq <= spillHoleSeq || !spill.read(seq - 1, spilledTo, events)) {
+                return null;
+            }
+            seq = spilledTo + 1;
+        }
+        return events;
+    }
+
+    /**
+     * Wait until there is an event after afterSeq.
+     *
+     * @param afterSeq the seq of the last event the caller has.
+     * @param timeoutMillis how long to wait at most.
+     * @return true if there is an event after afterSeq, false if the wait timed out.
+     */
+    public boolean await(long afterSeq, long timeoutMillis) throws InterruptedException {
+        if (lastSeq > afterSeq) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (appended) {
+            while (lastSeq <= afterSeq) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                appended.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop taking writes, spill what is left and close the spill.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (spiller == null) {
+            return;
+        }
+        synchronized (appended) {
+            appended.notifyAll();
+        }
+        try {
+            spiller.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        spill.close();
+    }
+
+    /**
+     * Run a write that has no ordering key, e.g. an account insert, and publish the events for the rows it changed.
+     */
+    <T> T capture(Supplier<T> write, Function<T, List<ChangeEvent>> changesOf) {
+        return capture(NO_KEYS, write, changesOf);
+    }
+
+    /**
+     * Run a write and publish the events for the rows it changed, with no other write sharing one of its ordering
+     * keys in between.
+     *
+     * @param keys the ordering keys of the write, e.g. the posted_by of the messages it writes.
+     * @param write the write.
+     * @param changesOf the events of the write given its result, with seq and changed_at left for the stream to set,
+     * empty if it changed nothing.
+     * @return the result of write.
+     */
+    <T> T capture(int[] keys, Supplier<T> write, Function<T, List<ChangeEvent>> changesOf) {
+        if (closed) {
+            throw new IllegalStateException("ChangeStream is closed");
+        }
+        int[] stripes = stripes(keys);
+        long seq;
+        T result;
+        writes.readLock().lock();
+        try {
+            for (int stripe : stripes) {
+                keyLocks[stripe].lock();
+            }
+            try {
+                result = write.get();
+                List<ChangeEvent> events = changesOf.apply(result);
+                if (events.isEmpty()) {
+                    return result;
+                }
+                seq = publish(events);
+                for (int stripe : stripes) {
+                    keySeqs.set(stripe, seq);
+                }
+            } finally {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    keyLocks[stripes[i]].unlock();
+                }
+            }
+        } finally {
+            writes.readLock().unlock();
+        }
+
+        ReadConsistency.wrote(seq);
+        synchronized (appended) {
+            appended.notifyAll();
+        }
+        return result;
+    }
+
+    /**
+     * The seq of the last event published by a write with an ordering key that shares key's lock. A write that read
+     * a row after lastSeq() was L knows, while holding the lock, that no captured write changed the row since if
+     * this is at most L.
+     *
+     * @param key an ordering key.
+     * @return the seq, 0 if there was no such write.
+     */
+    long lastSeqOf(int key) {
+        return keySeqs.get(Math.floorMod(key, KEY_STRIPES));
+    }
+
+    /**
+     * Whether every write with an ordering key that shares key's lock is in the stream by seq, e.g. to check after
+     * reading the rows of key that the read has no write the events up to seq do not have. Writes are only seen
+     * once they have published, so a write that is running counts as not in the stream.
+     *
+     * @param key an ordering key.
+     * @param seq a seq.
+     * @return true if no such write is running and the last one published at most seq.
+     */
+    public boolean settled(int key, long seq) {
+        int stripe = Math.floorMod(key, KEY_STRIPES);
+        // The lock is released after the seq is set, so a free lock means keySeqs has every write before it.
+        return !keyLocks[stripe].isLocked() && keySeqs.get(stripe) <= seq;
+    }
+
+    /**
+     * Run action with no write in flight, e.g. to take a snapshot that matches a position in the stream.
+     *
+     * @param action what to run.
+     * @return the seq of the last event before action.
+     */
+    long exclusive(Runnable action) {
+        writes.writeLock().lock();
+        try {
+            action.run();
+            return lastSeq;
+        } finally {
+            writes.writeLock().unlock();
+        }
+    }
+
+    static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    private void initKeyLocks() {
+        for (int i = 0; i < KEY_STRIPES; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @return the distinct stripes of keys in increasing order, the order they are locked in.
+     */
+    private static int[] stripes(int[] keys) {
+        if (keys.length == 0) {
+            return keys;
+        }
+        int[] stripes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            stripes[i] = Math.floorMod(keys[i], KEY_STRIPES);
+        }
+        if (stripes.length == 1) {
+            return stripes;
+        }
+        return Arrays.stream(stripes).sorted().distinct().toArray();
+    }
+
+    /**
+     * Hand out the seqs of events and put them in the ring, waiting for the spiller if the ring is full of events it
+     * has not spilled yet. No other write publishes in between, also while this one waits, so the seqs of events are
+     * contiguous.
+     *
+     * @return the seq of the last event.
+     */
+    private long publish(List<ChangeEvent> events) {
+        long now = System.currentTimeMillis();
+        long seq;
+        publishLock.lock();
+        try {
+            seq = lastSeq;
+            for (ChangeEvent event : events) {
+                if (spill != null && seq + 1 - spilledSeq > ring.length()) {
+                    awaitSpilled(seq + 1 - ring.length());
+                }
+                event.seq = ++seq;
+                event.changed_at = now;
+                ring.set((int) seq & mask, event);
+                lastSeq = seq;
+            }
+        } finally {
+            publishLock.unlock();
+        }
+        return seq;
+    }
+
+    /**
+     * Wait until the spiller has spilled up to seq.
+     */
+    private void awaitSpilled(long seq) {
+        seqLock.lock();
+        try {
+            while (spilledSeq < seq) {
+                spilled.awaitUninterruptibly();
+            }
+        } finally {
+            seqLock.unlock();
+        }
+    }
+
+    /**
+     * Body of the spiller thread: append events to the spill in seq order as they are published.
+     */
+    private void spillEvents() {
+        while (true) {
+            long last = lastSeq;
+            long from = spilledSeq;
+            if (from == last) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    await(from, CLOSE_CHECK_MILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                continue;
+            }
+
+            for (long seq = from + 1; seq <= last; seq++) {
+                ChangeEvent event = ring.get((int) seq & mask);
+                try {
+                    spill.append(event);
+                } catch (IOException ex) {
+                    // The write is committed either way; subscribers that fall behind the ring buffer get a gap
+                    // rather than skip it.
+                    logger.error("spill threw an exception, seq: {}, message: {}", seq, ex.getMessage());
+                    spillHoleSeq = seq;
+                }
+            }
+
+            seqLock.lock();
+            try {
+                spilledSeq = last;
+                spilled.signalAll();
+            } finally {
+                seqLock.unlock();
+            }
+        }
+    }
+}
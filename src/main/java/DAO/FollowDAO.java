@@ -0,0 +1,105 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Util.ConnectionUtil;
+
+/**
+ * FollowRepository against the H2 database from ConnectionUtil.
+ *
+ * Follows are kept in a follow table next to the account table, created here if it does not exist yet, since
+ * SocialMedia.sql only creates the account and message tables. It has no foreign key to account, so resetting the
+ * test database can still drop that table.
+ */
+public class FollowDAO implements FollowRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(FollowDAO.class);
+
+    /**
+     * Default constructor, creates the follow table if it does not exist.
+     */
+    public FollowDAO() {
+        try (Statement st = ConnectionUtil.getConnection().createStatement()) {
+            createTables(st);
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Could not create the follow table", ex);
+        }
+    }
+
+    @Override
+    public boolean insertFollow(int follower_id, int followee_id) {
+        Connection conn = ConnectionUtil.getConnection();
+
+        String query = "INSERT INTO follow (follower_id, followee_id) SELECT ?, ? WHERE NOT EXISTS "
+            + "(SELECT 1 FROM follow WHERE follower_id = ? AND followee_id = ?)";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, follower_id);
+            ps.setInt(2, followee_id);
+            ps.setInt(3, follower_id);
+            ps.setInt(4, followee_id);
+
+            return ps.executeUpdate() > 0;
+        } catch (SQLException ex) {
+            logger.error("insertFollow threw an exception, follower_id: {}, followee_id: {}, message: {}", follower_id, followee_id, ex.getMessage());
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean deleteFollow(int follower_id, int followee_id) {
+        Connection conn = ConnectionUtil.getConnection();
+
+        String query = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, follower_id);
+            ps.setInt(2, followee_id);
+
+            return ps.executeUpdate() > 0;
+        } catch (SQLException ex) {
+            logger.error("deleteFollow threw an exception, follower_id: {}, followee_id: {}, message: {}", follower_id, followee_id, ex.getMessage());
+        }
+
+        return false;
+    }
+
+    @Override
+    public Map<Integer, List<Integer>> getAllFollows() {
+        Connection conn = ConnectionUtil.getConnection();
+        Map<Integer, List<Integer>> follows = new HashMap<>();
+
+        String query = "SELECT follower_id, followee_id FROM follow ORDER BY follower_id, followee_id";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                follows.computeIfAbsent(rs.getInt(1), follower_id -> new ArrayList<>()).add(rs.getInt(2));
+            }
+        } catch (SQLException ex) {
+            logger.error("getAllFollows threw an exception, message: {}", ex.getMessage());
+        }
+
+        return follows;
+    }
+
+    private static void createTables(Statement st) throws SQLException {
+        st.execute("CREATE TABLE IF NOT EXISTS follow ("
+            + "follower_id int, "
+            + "followee_id int, "
+            + "PRIMARY KEY (follower_id, followee_id))");
+    }
+}
@@ -0,0 +1,38 @@
+package DAO;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for who follows whom, for HomeTimelines.
+ *
+ * FollowDAO is the JDBC implementation backed by the H2 database, InMemoryFollowRepository keeps everything in the
+ * process. A follow is a pair of account_ids and is stored at most once.
+ */
+public interface FollowRepository {
+
+    /**
+     * Store that an account follows another.
+     *
+     * @param follower_id the follower.
+     * @param followee_id the followed account.
+     * @return true if it was stored, false if it already was or an error occurred.
+     */
+    boolean insertFollow(int follower_id, int followee_id);
+
+    /**
+     * Forget that an account follows another.
+     *
+     * @param follower_id the follower.
+     * @param followee_id the followed account.
+     * @return true if it was forgotten, false if it was not stored or an error occurred.
+     */
+    boolean deleteFollow(int follower_id, int followee_id);
+
+    /**
+     * Retrieves every follow, e.g. to build the home timelines.
+     *
+     * @return the followee_ids of every follower, by follower_id, empty if nobody follows anyone.
+     */
+    Map<Integer, List<Integer>> getAllFollows();
+}
@@ -0,0 +1,42 @@
+package DAO;
+
+/**
+ * When LogMessageRepository forces appended records to disk.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Every write forces the segment before it returns. The slowest, and nothing acknowledged is ever lost.
+     */
+    PER_WRITE,
+
+    /**
+     * Every write waits until it is on disk, but concurrent writers share a single force: the first to arrive forces
+     * everything appended so far while the others wait for it. Nothing acknowledged is lost, and under load one force
+     * covers many writes.
+     */
+    GROUP,
+
+    /**
+     * Writes return as soon as they are in the mapped file, and a background thread forces the segment at a fixed
+     * interval. A crash of the machine, not just the process, can lose the writes of the last interval.
+     */
+    PERIODIC;
+
+    /**
+     * @param name per-write, group or periodic.
+     * @return the policy with that name.
+     */
+    public static FsyncPolicy fromString(String name) {
+        switch (name) {
+            case "per-write":
+                return PER_WRITE;
+            case "group":
+                return GROUP;
+            case "periodic":
+                return PERIODIC;
+            default:
+                throw new IllegalArgumentException("Unknown fsync policy: " + name);
+        }
+    }
+}
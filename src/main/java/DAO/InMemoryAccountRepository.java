@@ -0,0 +1,79 @@
+package DAO;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Account;
+import Util.IntHashMap;
+
+/**
+ * AccountRepository that keeps every account in the process.
+ *
+ * Mirrors the account table: ids start at 1 and are never reused, usernames are unique, and usernames and passwords
+ * longer than 255 characters are rejected. Stored accounts are never handed out, callers always receive copies.
+ */
+public class InMemoryAccountRepository implements AccountRepository {
+
+    private static final int MAX_COLUMN_LENGTH = 255;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntHashMap<Account> accountsById = new IntHashMap<>();
+    private final Map<String, Account> accountsByUsername = new HashMap<>();
+    private int lastAccountId;
+
+    @Override
+    public Account getAccountById(int account_id) {
+        lock.readLock().lock();
+        try {
+            return copyOf(accountsById.get(account_id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Account getAccountByUserame(String username) {
+        lock.readLock().lock();
+        try {
+            return copyOf(accountsByUsername.get(username));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Account insertAccount(Account account) {
+        String username = account.getUsername();
+        String password = account.getPassword();
+        if (username == null || username.length() > MAX_COLUMN_LENGTH
+                || (password != null && password.length() > MAX_COLUMN_LENGTH)) {
+            return null;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Unique constraint on username.
+            if (accountsByUsername.containsKey(username)) {
+                return null;
+            }
+
+            Account stored = new Account(++lastAccountId, username, password);
+            accountsById.put(stored.getAccount_id(), stored);
+            accountsByUsername.put(username, stored);
+
+            account.setAccount_id(stored.getAccount_id());
+            return account;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Account copyOf(Account account) {
+        if (account == null) {
+            return null;
+        }
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+}
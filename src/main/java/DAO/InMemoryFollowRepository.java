@@ -0,0 +1,42 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * FollowRepository that keeps every follow in the process. Thread safe.
+ */
+public class InMemoryFollowRepository implements FollowRepository {
+
+    private final Map<Integer, Set<Integer>> followeesByFollower = new HashMap<>();
+
+    @Override
+    public synchronized boolean insertFollow(int follower_id, int followee_id) {
+        return followeesByFollower.computeIfAbsent(follower_id, id -> new TreeSet<>()).add(followee_id);
+    }
+
+    @Override
+    public synchronized boolean deleteFollow(int follower_id, int followee_id) {
+        Set<Integer> followee_ids = followeesByFollower.get(follower_id);
+        if (followee_ids == null || !followee_ids.remove(followee_id)) {
+            return false;
+        }
+        if (followee_ids.isEmpty()) {
+            followeesByFollower.remove(follower_id);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Map<Integer, List<Integer>> getAllFollows() {
+        Map<Integer, List<Integer>> follows = new HashMap<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : followeesByFollower.entrySet()) {
+            follows.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return follows;
+    }
+}
@@ -0,0 +1,180 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Message;
+import Util.IntSetIndex;
+
+/**
+ * MessageRepository that keeps every message in the process.
+ *
+ * Message ids are assigned sequentially from 1, so the primary index is an array indexed by message_id; a deleted
+ * message leaves a null slot behind, exactly like the gap it leaves in the table's identity column. Listings and
+ * counts by account go through an IntSetIndex from posted_by to the ids of that account's messages.
+ *
+ * Mirrors the message table: posted_by must refer to an account in the given AccountRepository (the foreign key) and
+ * message_text is at most 255 characters. Stored messages are never handed out, callers always receive copies.
+ */
+public class InMemoryMessageRepository implements MessageRepository {
+
+    private static final int MAX_MESSAGE_TEXT_LENGTH = 255;
+
+    private final AccountRepository accountRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Message[] messagesById = new Message[1024];
+    private final IntSetIndex messageIdsByAccount = new IntSetIndex();
+    private int lastMessageId;
+
+    /**
+     * @param accountRepository the accounts that posted_by must refer to.
+     */
+    public InMemoryMessageRepository(AccountRepository accountRepository) {
+        this.accountRepository = accountRepository;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return getMessagesAfter(0);
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for (int id = Math.max(message_id, 0) + 1; id <= lastMessageId; id++) {
+                Message message = messagesById[id];
+                if (message != null) {
+                    messages.add(copyOf(message));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id) {
+        lock.readLock().lock();
+        try {
+            int[] ids = messageIdsByAccount.values(account_id);
+            List<Message> messages = new ArrayList<>(ids.length);
+            for (int message_id : ids) {
+                messages.add(copyOf(messagesById[message_id]));
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        lock.readLock().lock();
+        try {
+            return messageIdsByAccount.count(account_id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message getMessageById(int message_id) {
+        lock.readLock().lock();
+        try {
+            if (message_id <= 0 || message_id > lastMessageId) {
+                return null;
+            }
+            return copyOf(messagesById[message_id]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        if (!fitsColumn(message.getMessage_text())) {
+            return null;
+        }
+
+        // Foreign key on posted_by.
+        if (accountRepository.getAccountById(message.getPosted_by()) == null) {
+            return null;
+        }
+
+        lock.writeLock().lock();
+        try {
+            int message_id = ++lastMessageId;
+            if (message_id == messagesById.length) {
+                messagesById = Arrays.copyOf(messagesById, messagesById.length << 1);
+            }
+
+            messagesById[message_id] = new Message(message_id, message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+
+            messageIdsByAccount.add(message.getPosted_by(), message_id);
+
+            message.setMessage_id(message_id);
+            return message;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateMessageById(String message_text, int message_id) {
+        if (!fitsColumn(message_text)) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (message_id <= 0 || message_id > lastMessageId || messagesById[message_id] == null) {
+                return false;
+            }
+
+            Message existing = messagesById[message_id];
+            messagesById[message_id] = new Message(message_id, existing.getPosted_by(), message_text,
+                existing.getTime_posted_epoch());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteMessageById(int message_id) {
+        lock.writeLock().lock();
+        try {
+            if (message_id <= 0 || message_id > lastMessageId || messagesById[message_id] == null) {
+                return false;
+            }
+
+            int posted_by = messagesById[message_id].getPosted_by();
+            messagesById[message_id] = null;
+
+            messageIdsByAccount.remove(posted_by, message_id);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean fitsColumn(String message_text) {
+        return message_text == null || message_text.length() <= MAX_MESSAGE_TEXT_LENGTH;
+    }
+
+    private static Message copyOf(Message message) {
+        if (message == null) {
+            return null;
+        }
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+            message.getTime_posted_epoch());
+    }
+}
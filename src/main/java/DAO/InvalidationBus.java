@@ -0,0 +1,65 @@
+package DAO;
+
+/**
+ * Broadcasts cache invalidations between instances of the app that share storage.
+ *
+ * Each instance publishes the id of every row it writes, and every other instance on the bus applies it to its
+ * Listeners, e.g. CachingMessageRepository and CachingAccountRepository, with a bounded delay. A Listener never
+ * receives the invalidations of its own instance; the caches invalidate their own writes themselves.
+ *
+ * When an instance may have missed invalidations, because of a lost packet, a lost connection, a peer that went
+ * silent or a full send queue, its Listeners get invalidateAll() instead.
+ *
+ * Implementations: LoopbackInvalidationBus (in process, for tests), MulticastInvalidationBus (UDP multicast) and
+ * TcpInvalidationBus (a mesh of TCP connections to configured peers).
+ */
+public interface InvalidationBus extends AutoCloseable {
+
+    /**
+     * Receives the invalidations published by other instances.
+     */
+    interface Listener {
+        void invalidateAccount(int account_id);
+
+        void invalidateMessage(int message_id);
+
+        /**
+         * Invalidations may have been missed, drop everything.
+         */
+        void invalidateAll();
+    }
+
+    /**
+     * Tell the other instances that the account was written.
+     *
+     * @param account_id the id of the account.
+     */
+    void publishAccount(int account_id);
+
+    /**
+     * Tell the other instances that the message was written.
+     *
+     * @param message_id the id of the message.
+     */
+    void publishMessage(int message_id);
+
+    /**
+     * Apply the invalidations of the other instances to listener from now on.
+     *
+     * @param listener the listener.
+     */
+    void subscribe(Listener listener);
+
+    /**
+     * Stop applying invalidations to listener.
+     *
+     * @param listener a listener passed to subscribe.
+     */
+    void unsubscribe(Listener listener);
+
+    /**
+     * Stop publishing and receiving.
+     */
+    @Override
+    void close();
+}
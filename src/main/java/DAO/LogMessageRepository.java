@@ -0,0 +1,701 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.Message;
+import Util.IntHashMap;
+import Util.IntSetIndex;
+
+/**
+ * MessageRepository that stores messages in an append-only log of memory mapped segment files.
+ *
+ * Every change is a record appended to the newest segment, the active one: an insert or update is a PUT holding the
+ * whole message, a delete is a DELETE tombstone holding only message_id and posted_by. Nothing written is ever
+ * changed in place. When the active segment is full it is forced to disk and a new one is started; see LogSegment for
+ * the file layout.
+ *
+ * The only heap state is the index: a long[] from message_id to the location (segment id and offset) of the latest
+ * PUT, and an IntSetIndex from posted_by to message ids. It is rebuilt on startup by replaying every segment in
+ * order, so a later record for a message_id always wins over an earlier one. Replay stops at the first torn or
+ * corrupt record of a segment, which is what a crash in the middle of a write leaves behind.
+ *
+ * How soon a write reaches the disk is up to the FsyncPolicy.
+ *
+ * Updates and deletes leave dead records behind. A background thread compacts every sealed segment in which more than
+ * half of the bytes are dead, by copying its live records to the end of the active segment and deleting the file.
+ * Tombstones are copied as well, they still hide the PUT in an older segment, except from the oldest segment where
+ * there is nothing left to hide.
+ *
+ * Mirrors the message table: posted_by must refer to an account in the given AccountRepository (the foreign key) and
+ * message_text is at most 255 characters.
+ */
+public class LogMessageRepository implements MessageRepository, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogMessageRepository.class);
+
+    private static final int MAX_MESSAGE_TEXT_LENGTH = 255;
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 10;
+
+    /**
+     * Segments are checked for compaction this often.
+     */
+    private static final long COMPACTION_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Records copied per acquisition of the write lock during compaction, so writers are never held up for long.
+     */
+    private static final int COMPACTION_BATCH = 1024;
+
+    private static final long NO_LOCATION = -1;
+    private static final Pattern SEGMENT_FILE = Pattern.compile("messages-(\\d{10})\\.log");
+
+    private final AccountRepository accountRepository;
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final ScheduledExecutorService background;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<LogSegment> segments = new ArrayList<>();
+    private final IntHashMap<LogSegment> segmentsById = new IntHashMap<>();
+    private LogSegment active;
+    private long[] locationsById = newLocations(1024);
+    private final IntSetIndex messageIdsByAccount = new IntSetIndex();
+    private int lastMessageId;
+    private long appendedCount;
+
+    private final Lock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private long durableCount;
+    private boolean syncing;
+
+    /**
+     * Open the log in directory, with the default segment size and fsync interval.
+     *
+     * @param accountRepository the accounts that posted_by must refer to.
+     * @param directory the directory of the segment files, created if it does not exist.
+     * @param fsyncPolicy when writes are forced to disk.
+     */
+    public LogMessageRepository(AccountRepository accountRepository, Path directory, FsyncPolicy fsyncPolicy)
+            throws IOException {
+        this(accountRepository, directory, fsyncPolicy, DEFAULT_FSYNC_INTERVAL_MILLIS, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Open the log in directory, replaying the segments already there.
+     *
+     * @param accountRepository the accounts that posted_by must refer to.
+     * @param directory the directory of the segment files, created if it does not exist.
+     * @param fsyncPolicy when writes are forced to disk.
+     * @param fsyncIntervalMillis how often the PERIODIC policy forces writes, ignored by the others.
+     * @param segmentBytes the size of each segment file.
+     */
+    public LogMessageRepository(AccountRepository accountRepository, Path directory, FsyncPolicy fsyncPolicy,
+            long fsyncIntervalMillis, int segmentBytes) throws IOException {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("segmentBytes must be at least 4096: " + segmentBytes);
+        }
+
+        this.accountRepository = accountRepository;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+
+        Files.createDirectories(directory);
+        recover();
+
+        background = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "message-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(this::compactQuietly, COMPACTION_INTERVAL_MILLIS,
+            COMPACTION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+            background.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMillis, fsyncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return getMessagesAfter(0);
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for (int id = Math.max(message_id, 0) + 1; id <= lastMessageId; id++) {
+                long location = locationsById[id];
+                if (location != NO_LOCATION) {
+                    messages.add(read(location));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id) {
+        lock.readLock().lock();
+        try {
+            int[] ids = messageIdsByAccount.values(account_id);
+            List<Message> messages = new ArrayList<>(ids.length);
+            for (int message_id : ids) {
+                messages.add(read(locationsById[message_id]));
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        lock.readLock().lock();
+        try {
+            return messageIdsByAccount.count(account_id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message getMessageById(int message_id) {
+        lock.readLock().lock();
+        try {
+            if (message_id <= 0 || message_id > lastMessageId || locationsById[message_id] == NO_LOCATION) {
+                return null;
+            }
+            return read(locationsById[message_id]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        if (!fitsColumn(message.getMessage_text())) {
+            return null;
+        }
+
+        // Foreign key on posted_by.
+        if (accountRepository.getAccountById(message.getPosted_by()) == null) {
+            return null;
+        }
+
+        byte[] encodedText = encode(message.getMessage_text());
+        int message_id;
+        long appended;
+        LogSegment segment;
+
+        lock.writeLock().lock();
+        try {
+            message_id = lastMessageId + 1;
+            int offset = append(LogSegment.PUT, message_id, message.getPosted_by(), message.getTime_posted_epoch(),
+                encodedText);
+            lastMessageId = message_id;
+            applyPut(active, offset, message_id, message.getPosted_by());
+
+            appended = appendedCount;
+            segment = active;
+        } catch (IOException ex) {
+            logger.error("insertMessage threw an exception, posted_by: {}, message: {}", message.getPosted_by(), ex.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        awaitDurable(appended, segment);
+        message.setMessage_id(message_id);
+        return message;
+    }
+
+    /**
+     * Appends the whole batch under one acquisition of the write lock and waits for it to be durable once, so under
+     * the GROUP and PER_WRITE policies the batch shares a single force.
+     */
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        // Validate and encode outside the lock, like insertMessage.
+        boolean[] valid = new boolean[messages.size()];
+        byte[][] encodedTexts = new byte[messages.size()][];
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            valid[i] = fitsColumn(message.getMessage_text())
+                && accountRepository.getAccountById(message.getPosted_by()) != null;
+            encodedTexts[i] = encode(message.getMessage_text());
+        }
+
+        List<Message> inserted = new ArrayList<>(messages.size());
+        long appended;
+        LogSegment segment;
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                if (!valid[i]) {
+                    inserted.add(null);
+                    continue;
+                }
+
+                int message_id = lastMessageId + 1;
+                int offset = append(LogSegment.PUT, message_id, message.getPosted_by(),
+                    message.getTime_posted_epoch(), encodedTexts[i]);
+                lastMessageId = message_id;
+                applyPut(active, offset, message_id, message.getPosted_by());
+
+                message.setMessage_id(message_id);
+                inserted.add(message);
+            }
+
+            appended = appendedCount;
+            segment = active;
+        } catch (IOException ex) {
+            logger.error("insertMessages threw an exception, size: {}, message: {}", messages.size(), ex.getMessage());
+            // Whatever was appended before the failure stays in the log, report the rest as not inserted.
+            while (inserted.size() < messages.size()) {
+                inserted.add(null);
+            }
+            appended = appendedCount;
+            segment = active;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        awaitDurable(appended, segment);
+        return inserted;
+    }
+
+    @Override
+    public boolean updateMessageById(String message_text, int message_id) {
+        if (!fitsColumn(message_text)) {
+            return false;
+        }
+
+        byte[] encodedText = encode(message_text);
+        long appended;
+        LogSegment segment;
+
+        lock.writeLock().lock();
+        try {
+            if (message_id <= 0 || message_id > lastMessageId || locationsById[message_id] == NO_LOCATION) {
+                return false;
+            }
+
+            Message existing = read(locationsById[message_id]);
+            int offset = append(LogSegment.PUT, message_id, existing.getPosted_by(), existing.getTime_posted_epoch(),
+                encodedText);
+            applyPut(active, offset, message_id, existing.getPosted_by());
+
+            appended = appendedCount;
+            segment = active;
+        } catch (IOException ex) {
+            logger.error("updateMessageById threw an exception, message_id: {}, message: {}", message_id, ex.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        awaitDurable(appended, segment);
+        return true;
+    }
+
+    @Override
+    public boolean deleteMessageById(int message_id) {
+        long appended;
+        LogSegment segment;
+
+        lock.writeLock().lock();
+        try {
+            if (message_id <= 0 || message_id > lastMessageId || locationsById[message_id] == NO_LOCATION) {
+                return false;
+            }
+
+            int posted_by = postedBy(locationsById[message_id]);
+            append(LogSegment.DELETE, message_id, posted_by, 0, null);
+            applyDelete(message_id, posted_by);
+
+            appended = appendedCount;
+            segment = active;
+        } catch (IOException ex) {
+            logger.error("deleteMessageById threw an exception, message_id: {}, message: {}", message_id, ex.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        awaitDurable(appended, segment);
+        return true;
+    }
+
+    /**
+     * Stop the background threads, force the active segment and close every segment file.
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.writeLock().lock();
+        try {
+            active.force();
+            for (LogSegment segment : segments) {
+                segment.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compact every sealed segment in which more than half of the bytes are dead. The background thread calls this
+     * every second, calling it directly is only useful to reclaim space right away.
+     *
+     * @return the number of segments compacted.
+     */
+    public int compact() throws IOException {
+        List<LogSegment> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (LogSegment segment : segments) {
+                long written = segment.writePosition() - LogSegment.HEADER_SIZE;
+                if (segment != active && segment.liveBytes() * 2 < written) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (LogSegment segment : candidates) {
+            compact(segment);
+        }
+        return candidates.size();
+    }
+
+    private void compact(LogSegment segment) throws IOException {
+        // A sealed segment never changes, so its records can be listed without the lock.
+        int[][] offsets = {new int[256]};
+        int[] count = {0};
+        segment.forEachRecord((offset, type, message_id, posted_by, size) -> {
+            if (count[0] == offsets[0].length) {
+                offsets[0] = Arrays.copyOf(offsets[0], count[0] << 1);
+            }
+            offsets[0][count[0]++] = offset;
+        });
+
+        for (int start = 0; start < count[0]; start += COMPACTION_BATCH) {
+            int end = Math.min(start + COMPACTION_BATCH, count[0]);
+
+            lock.writeLock().lock();
+            try {
+                boolean oldest = segments.get(0) == segment;
+                for (int i = start; i < end; i++) {
+                    int offset = offsets[0][i];
+                    int message_id = segment.messageId(offset);
+
+                    if (segment.type(offset) == LogSegment.PUT) {
+                        // Only the latest PUT of a message is live, everything else was overwritten or deleted.
+                        if (message_id < locationsById.length
+                                && locationsById[message_id] == locationOf(segment.id, offset)) {
+                            int copy = appendCopy(segment, offset);
+                            segment.addLiveBytes(-segment.sizeOf(offset));
+                            locationsById[message_id] = locationOf(active.id, copy);
+                            active.addLiveBytes(active.sizeOf(copy));
+                        }
+                    } else if (!oldest) {
+                        appendCopy(segment, offset);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // The copies must be on disk before the originals go away.
+        sync();
+
+        lock.writeLock().lock();
+        try {
+            segments.remove(segment);
+            segmentsById.remove(segment.id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        segment.delete();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception ex) {
+            logger.error("compact threw an exception, directory: {}, message: {}", directory, ex.getMessage());
+        }
+    }
+
+    /**
+     * Wait until the write that made appendedCount reach appended is on disk, as the FsyncPolicy requires.
+     */
+    private void awaitDurable(long appended, LogSegment segment) {
+        switch (fsyncPolicy) {
+            case PER_WRITE:
+                segment.force();
+                break;
+            case GROUP:
+                syncLock.lock();
+                try {
+                    while (durableCount < appended) {
+                        if (syncing) {
+                            // Another writer is forcing, wait for it; its force may already cover this write.
+                            synced.awaitUninterruptibly();
+                        } else {
+                            syncing = true;
+                            syncLock.unlock();
+                            long forced = 0;
+                            try {
+                                forced = forceActive();
+                            } finally {
+                                syncLock.lock();
+                                syncing = false;
+                                durableCount = Math.max(durableCount, forced);
+                                synced.signalAll();
+                            }
+                        }
+                    }
+                } finally {
+                    syncLock.unlock();
+                }
+                break;
+            case PERIODIC:
+                break;
+        }
+    }
+
+    /**
+     * Force the active segment.
+     *
+     * @return the number of appends now known to be on disk. Earlier segments were forced when they were sealed.
+     */
+    private long forceActive() {
+        long appended;
+        LogSegment segment;
+        lock.readLock().lock();
+        try {
+            appended = appendedCount;
+            segment = active;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        segment.force();
+        return appended;
+    }
+
+    private void sync() {
+        long forced = forceActive();
+        syncLock.lock();
+        try {
+            durableCount = Math.max(durableCount, forced);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (Exception ex) {
+            logger.error("sync threw an exception, directory: {}, message: {}", directory, ex.getMessage());
+        }
+    }
+
+    /**
+     * Append a record to the active segment, starting a new one if it is full. Called with the write lock held.
+     *
+     * @return the offset of the record in the active segment.
+     */
+    private int append(byte type, int message_id, int posted_by, long time_posted_epoch, byte[] encodedText)
+            throws IOException {
+        if (!active.hasRoomFor(LogSegment.recordSize(encodedText))) {
+            roll();
+        }
+        appendedCount++;
+        return active.append(type, message_id, posted_by, time_posted_epoch, encodedText);
+    }
+
+    /**
+     * Copy a record to the active segment, starting a new one if it is full. Called with the write lock held.
+     *
+     * @return the offset of the copy in the active segment.
+     */
+    private int appendCopy(LogSegment source, int offset) throws IOException {
+        if (!active.hasRoomFor(source.sizeOf(offset))) {
+            roll();
+        }
+        appendedCount++;
+        return active.appendCopy(source, offset);
+    }
+
+    /**
+     * Seal the active segment and start a new one. Called with the write lock held.
+     */
+    private void roll() throws IOException {
+        active.force();
+        addSegment(LogSegment.create(segmentPath(active.id + 1), active.id + 1, segmentBytes, lastMessageId));
+    }
+
+    private void addSegment(LogSegment segment) {
+        segments.add(segment);
+        segmentsById.put(segment.id, segment);
+        active = segment;
+    }
+
+    /**
+     * Replay the segments in directory in order, rebuilding the index, and make the last one active.
+     */
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    ids.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        ids.sort(null);
+
+        for (int id : ids) {
+            LogSegment segment = LogSegment.open(segmentPath(id), id);
+            addSegment(segment);
+            lastMessageId = Math.max(lastMessageId, segment.firstLastMessageId());
+
+            segment.recover((offset, type, message_id, posted_by, size) -> {
+                lastMessageId = Math.max(lastMessageId, message_id);
+                if (type == LogSegment.PUT) {
+                    applyPut(segment, offset, message_id, posted_by);
+                } else {
+                    applyDelete(message_id, posted_by);
+                }
+            });
+        }
+
+        // Every id up to lastMessageId can be looked up, even those whose records were compacted away.
+        ensureCapacity(lastMessageId);
+
+        if (active == null) {
+            addSegment(LogSegment.create(segmentPath(1), 1, segmentBytes, 0));
+        } else if (active.capacity() != segmentBytes) {
+            // The segment size changed since the last run, keep the old segments as they are and start a new one.
+            roll();
+        }
+    }
+
+    /**
+     * Point message_id at the PUT record at offset, releasing the record it replaces.
+     */
+    private void applyPut(LogSegment segment, int offset, int message_id, int posted_by) {
+        ensureCapacity(message_id);
+
+        long previous = locationsById[message_id];
+        if (previous == NO_LOCATION) {
+            messageIdsByAccount.add(posted_by, message_id);
+        } else {
+            release(previous);
+        }
+
+        locationsById[message_id] = locationOf(segment.id, offset);
+        segment.addLiveBytes(segment.sizeOf(offset));
+    }
+
+    private void ensureCapacity(int message_id) {
+        if (message_id >= locationsById.length) {
+            long[] grown = newLocations(Math.max(locationsById.length << 1, message_id + 1));
+            System.arraycopy(locationsById, 0, grown, 0, locationsById.length);
+            locationsById = grown;
+        }
+    }
+
+    private void applyDelete(int message_id, int posted_by) {
+        if (message_id < locationsById.length && locationsById[message_id] != NO_LOCATION) {
+            release(locationsById[message_id]);
+            locationsById[message_id] = NO_LOCATION;
+            messageIdsByAccount.remove(posted_by, message_id);
+        }
+    }
+
+    private void release(long location) {
+        LogSegment segment = segmentsById.get(segmentIdOf(location));
+        segment.addLiveBytes(-segment.sizeOf(offsetOf(location)));
+    }
+
+    private Message read(long location) {
+        return segmentsById.get(segmentIdOf(location)).read(offsetOf(location));
+    }
+
+    private int postedBy(long location) {
+        return segmentsById.get(segmentIdOf(location)).postedBy(offsetOf(location));
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("messages-%010d.log", id));
+    }
+
+    private static long locationOf(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentIdOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static long[] newLocations(int length) {
+        long[] locations = new long[length];
+        Arrays.fill(locations, NO_LOCATION);
+        return locations;
+    }
+
+    private static byte[] encode(String message_text) {
+        return message_text == null ? null : message_text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean fitsColumn(String message_text) {
+        return message_text == null || message_text.length() <= MAX_MESSAGE_TEXT_LENGTH;
+    }
+}
@@ -0,0 +1,313 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import Model.Message;
+
+/**
+ * One file of the message log, memory mapped in full.
+ *
+ * A segment starts with a 16 byte header:
+ *
+ *   offset  0  int   MAGIC
+ *   offset  4  int   VERSION
+ *   offset  8  int   the highest message_id assigned when the segment was created
+ *   offset 12  int   unused
+ *
+ * followed by records:
+ *
+ *   int   payload length (0 marks the end of the written records, the file is zero filled)
+ *   int   CRC32 of the payload
+ *   byte  PUT or DELETE
+ *   int   message_id
+ *   int   posted_by
+ *   long  time_posted_epoch
+ *   int   message_text length in bytes, -1 for null
+ *   ...   message_text, UTF-8
+ *
+ * Only the owning LogMessageRepository writes to a segment, and only at its end; records once written never change.
+ */
+class LogSegment {
+
+    static final int MAGIC = 0x4D53474C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int FIXED_PAYLOAD_SIZE = 1 + 4 + 4 + 8 + 4;
+    private static final int NULL_TEXT = -1;
+
+    /**
+     * Receives the records of a segment in the order they were written.
+     */
+    interface RecordVisitor {
+        void visit(int offset, byte type, int message_id, int posted_by, int size);
+    }
+
+    final int id;
+    final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int firstLastMessageId;
+
+    private int writePosition;
+    private long liveBytes;
+
+    private LogSegment(int id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.firstLastMessageId = buffer.getInt(8);
+    }
+
+    /**
+     * Create a new, empty segment file.
+     *
+     * @param path the file to create, must not exist.
+     * @param id the segment id, also its position in the log.
+     * @param size the size of the file in bytes.
+     * @param lastMessageId the highest message_id assigned so far.
+     */
+    static LogSegment create(Path path, int id, int size, int lastMessageId) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, lastMessageId);
+        buffer.force();
+
+        LogSegment segment = new LogSegment(id, path, channel, buffer);
+        segment.writePosition = HEADER_SIZE;
+        return segment;
+    }
+
+    /**
+     * Open an existing segment file. The write position is found by recover().
+     *
+     * @param path the file to open.
+     * @param id the segment id.
+     */
+    static LogSegment open(Path path, int id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a message log segment: " + path);
+        }
+        return new LogSegment(id, path, channel, buffer);
+    }
+
+    /**
+     * Visit every intact record and position the segment for appends right after the last one. A torn or corrupt
+     * record, e.g. from a crash in the middle of a write, ends the segment.
+     *
+     * @param visitor receives each record.
+     */
+    void recover(RecordVisitor visitor) {
+        int position = forEachRecord(visitor);
+
+        // Clear whatever a torn write left behind, so the next append starts from zeroes.
+        for (int i = position; i < Math.min(position + RECORD_HEADER_SIZE, buffer.capacity()); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Visit every intact record without changing the segment.
+     *
+     * @param visitor receives each record.
+     * @return the offset right after the last intact record.
+     */
+    int forEachRecord(RecordVisitor visitor) {
+        CRC32 crc = new CRC32();
+        int position = HEADER_SIZE;
+
+        while (position + RECORD_HEADER_SIZE + FIXED_PAYLOAD_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < FIXED_PAYLOAD_SIZE || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(slice(position + RECORD_HEADER_SIZE, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+
+            int payload = position + RECORD_HEADER_SIZE;
+            int size = RECORD_HEADER_SIZE + length;
+            visitor.visit(position, buffer.get(payload), buffer.getInt(payload + 1), buffer.getInt(payload + 5), size);
+            position += size;
+        }
+
+        return position;
+    }
+
+    /**
+     * @return the number of bytes a record for this text takes up.
+     */
+    static int recordSize(byte[] encodedText) {
+        return RECORD_HEADER_SIZE + FIXED_PAYLOAD_SIZE + (encodedText == null ? 0 : encodedText.length);
+    }
+
+    /**
+     * @return true if a record of the given size fits in the remaining space.
+     */
+    boolean hasRoomFor(int size) {
+        return writePosition + size <= buffer.capacity();
+    }
+
+    /**
+     * Append a record. The caller must have checked hasRoomFor.
+     *
+     * @return the offset of the record in this segment.
+     */
+    int append(byte type, int message_id, int posted_by, long time_posted_epoch, byte[] encodedText) {
+        int offset = writePosition;
+        int payload = offset + RECORD_HEADER_SIZE;
+        int textLength = encodedText == null ? 0 : encodedText.length;
+        int length = FIXED_PAYLOAD_SIZE + textLength;
+
+        buffer.put(payload, type);
+        buffer.putInt(payload + 1, message_id);
+        buffer.putInt(payload + 5, posted_by);
+        buffer.putLong(payload + 9, time_posted_epoch);
+        buffer.putInt(payload + 17, encodedText == null ? NULL_TEXT : textLength);
+        if (textLength > 0) {
+            slice(payload + FIXED_PAYLOAD_SIZE, textLength).put(encodedText);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(slice(payload, length));
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        // The length goes in last, a record is not visible to recovery until it is complete.
+        buffer.putInt(offset, length);
+
+        writePosition = offset + RECORD_HEADER_SIZE + length;
+        return offset;
+    }
+
+    /**
+     * Append an exact copy of a record of another segment. The caller must have checked hasRoomFor.
+     *
+     * @return the offset of the copy in this segment.
+     */
+    int appendCopy(LogSegment source, int sourceOffset) {
+        int offset = writePosition;
+        int size = source.sizeOf(sourceOffset);
+
+        slice(offset + 4, size - 4).put(source.slice(sourceOffset + 4, size - 4));
+        buffer.putInt(offset, source.buffer.getInt(sourceOffset));
+
+        writePosition = offset + size;
+        return offset;
+    }
+
+    /**
+     * Read the PUT record at offset.
+     */
+    Message read(int offset) {
+        int payload = offset + RECORD_HEADER_SIZE;
+        int textLength = buffer.getInt(payload + 17);
+
+        String message_text = null;
+        if (textLength != NULL_TEXT) {
+            byte[] bytes = new byte[textLength];
+            slice(payload + FIXED_PAYLOAD_SIZE, textLength).get(bytes);
+            message_text = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return new Message(buffer.getInt(payload + 1), buffer.getInt(payload + 5), message_text,
+            buffer.getLong(payload + 9));
+    }
+
+    /**
+     * @return PUT or DELETE, the type of the record at offset.
+     */
+    byte type(int offset) {
+        return buffer.get(offset + RECORD_HEADER_SIZE);
+    }
+
+    /**
+     * @return the message_id of the record at offset.
+     */
+    int messageId(int offset) {
+        return buffer.getInt(offset + RECORD_HEADER_SIZE + 1);
+    }
+
+    /**
+     * @return the posted_by of the record at offset.
+     */
+    int postedBy(int offset) {
+        return buffer.getInt(offset + RECORD_HEADER_SIZE + 5);
+    }
+
+    /**
+     * @return the size in bytes of the record at offset.
+     */
+    int sizeOf(int offset) {
+        return RECORD_HEADER_SIZE + buffer.getInt(offset);
+    }
+
+    /**
+     * @return the highest message_id that had been assigned when this segment was created.
+     */
+    int firstLastMessageId() {
+        return firstLastMessageId;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    long liveBytes() {
+        return liveBytes;
+    }
+
+    void addLiveBytes(long delta) {
+        liveBytes += delta;
+    }
+
+    /**
+     * @return an independent view of length bytes at offset, leaving the shared buffer's position alone.
+     */
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset).limit(offset + length);
+        return view;
+    }
+
+    /**
+     * Flush the written records to the file.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
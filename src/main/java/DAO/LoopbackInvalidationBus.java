@@ -0,0 +1,68 @@
+package DAO;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InvalidationBus between instances in the same process, e.g. several services in a test standing in for several
+ * instances of the app. Every bus joined to a Network receives the packets of the others.
+ */
+public class LoopbackInvalidationBus extends PacketInvalidationBus {
+
+    /**
+     * The buses that see each other's packets.
+     */
+    public static class Network {
+        private final List<LoopbackInvalidationBus> buses = new CopyOnWriteArrayList<>();
+        private final AtomicInteger packetsToDrop = new AtomicInteger();
+
+        /**
+         * Lose the next packets that carry invalidations, the way a real network may. Heartbeats still get through.
+         *
+         * @param packets how many packets to lose.
+         */
+        public void dropNext(int packets) {
+            packetsToDrop.addAndGet(packets);
+        }
+
+        private void deliver(LoopbackInvalidationBus from, ByteBuffer packet) {
+            boolean heartbeat = packet.getShort(packet.position() + HEADER_SIZE - 2) == 0;
+            if (!heartbeat && packetsToDrop.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                return;
+            }
+            for (LoopbackInvalidationBus bus : buses) {
+                if (bus != from && !bus.closed) {
+                    bus.receive(packet.duplicate());
+                }
+            }
+        }
+    }
+
+    private final Network network;
+
+    /**
+     * Join a network.
+     *
+     * @param network the network to join.
+     * @param heartbeatMillis how often an idle bus tells the others where its seq is.
+     */
+    public LoopbackInvalidationBus(Network network, long heartbeatMillis) {
+        super(heartbeatMillis);
+        this.network = network;
+        network.buses.add(this);
+        start();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        network.buses.remove(this);
+    }
+
+    @Override
+    protected void send(ByteBuffer packet) {
+        network.deliver(this, packet);
+    }
+}
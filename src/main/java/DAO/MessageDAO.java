@@ -6,36 +6,64 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import Model.AccountSummary;
 import Model.Message;
 import Util.ConnectionUtil;
 
-public class MessageDAO {
+public class MessageDAO implements MessageRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageDAO.class);
 
+    /**
+     * The most ids bound in one IN (...) list, longer lists are queried in chunks.
+     */
+    static final int IN_LIST_CHUNK = 500;
+
+    private final Supplier<Connection> connections;
+
+    /**
+     * Default constructor, uses the database from ConnectionUtil.
+     */
+    public MessageDAO() {
+        this(ConnectionUtil::getConnection);
+    }
+
+    /**
+     * Constructor when the connections come from somewhere else, e.g. a read replica. Like ConnectionUtil's,
+     * they are not closed after use.
+     * 
+     * @param connections supplies a connection for each call.
+     */
+    public MessageDAO(Supplier<Connection> connections) {
+        this.connections = connections;
+    }
+
     /**
      * Retrieves all the Messages.
      * 
      * @return a list containing all the messages.
      */
+    @Override
     public List<Message> getAllMessages() {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
         List<Message> messages = new ArrayList<>();
 
-        try {
-            String query = "SELECT * FROM message";
+        String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message ORDER BY message_id";
 
-            PreparedStatement ps = conn.prepareStatement(query);
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
 
             ResultSet rs = ps.executeQuery();
 
             while(rs.next()) {
-                messages.add(getMessageFromResultSet(rs));
+                messages.add(RowMappers.toMessage(rs));
             }
         } catch (SQLException ex) {
             logger.error("getAllMessages threw an exception, message: {}", ex.getMessage());
@@ -44,26 +72,54 @@ public class MessageDAO {
         return messages;
     }
 
+    /**
+     * Retrieves the messages newer than a given one, a range scan of the primary key.
+     * 
+     * @param message_id the id of the newest message already seen, 0 for all.
+     * @return a list containing the messages with a greater message_id, in message_id order.
+     */
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        Connection conn = connections.get();
+        List<Message> messages = new ArrayList<>();
+
+        String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE message_id > ? ORDER BY message_id";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, message_id);
+
+            ResultSet rs = ps.executeQuery();
+
+            while(rs.next()) {
+                messages.add(RowMappers.toMessage(rs));
+            }
+        } catch (SQLException ex) {
+            logger.error("getMessagesAfter threw an exception, message_id: {}, message: {}", message_id, ex.getMessage());
+        }
+
+        return messages;
+    }
+
     /**
      * Retrieves all messages by account id.
      * 
      * @param account_id the account_id of the posts
      * @return a list containing all the messages
      */
+    @Override
     public List<Message> getAllMessagesByAccountId(int account_id) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
         List<Message> messages = new ArrayList<>();
 
-        try {
-            String query = "SELECT * FROM message WHERE posted_by = ?";
+        String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE posted_by = ? ORDER BY message_id";
 
-            PreparedStatement ps = conn.prepareStatement(query);
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setInt(1, account_id);
 
             ResultSet rs = ps.executeQuery();
 
             while(rs.next()) {
-                messages.add(getMessageFromResultSet(rs));
+                messages.add(RowMappers.toMessage(rs));
             }
         } catch (SQLException ex) {
             logger.error("getAllMessagesByAccountId threw an exception, account_id: {}, message: {}", account_id, ex.getMessage());
@@ -72,25 +128,117 @@ public class MessageDAO {
         return messages;
     }
 
+    /**
+     * Counts the messages by account id.
+     * 
+     * @param account_id the account_id of the posts
+     * @return the number of messages posted by the account, 0 if there are none or something went wrong.
+     */
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        Connection conn = connections.get();
+
+        String query = "SELECT COUNT(*) FROM message WHERE posted_by = ?";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, account_id);
+
+            ResultSet rs = ps.executeQuery();
+
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+        } catch (SQLException ex) {
+            logger.error("countMessagesByAccountId threw an exception, account_id: {}, message: {}", account_id, ex.getMessage());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Counts the messages of every account that posted in a range of time, in one GROUP BY.
+     * 
+     * @param from_epoch only messages with a time_posted_epoch at or after this.
+     * @param to_epoch only messages with a time_posted_epoch before this.
+     * @return the number of messages by posted_by, empty if there are none or something went wrong.
+     */
+    @Override
+    public Map<Integer, Integer> countMessagesPerAccount(long from_epoch, long to_epoch) {
+        Connection conn = connections.get();
+        Map<Integer, Integer> counts = new HashMap<>();
+
+        String query = "SELECT posted_by, COUNT(*) FROM message WHERE time_posted_epoch >= ? AND time_posted_epoch < ? GROUP BY posted_by";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setLong(1, from_epoch);
+            ps.setLong(2, to_epoch);
+
+            ResultSet rs = ps.executeQuery();
+
+            while(rs.next()) {
+                counts.put(rs.getInt(1), rs.getInt(2));
+            }
+        } catch (SQLException ex) {
+            logger.error("countMessagesPerAccount threw an exception, from_epoch: {}, to_epoch: {}, message: {}", from_epoch, to_epoch, ex.getMessage());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Counts the messages of some accounts and finds the newest time_posted_epoch of each, one GROUP BY per
+     * IN_LIST_CHUNK accounts.
+     * 
+     * @param account_ids the accounts.
+     * @return the summary of every account that has messages, by account_id, without usernames.
+     */
+    @Override
+    public Map<Integer, AccountSummary> summarizeMessagesByAccountIds(List<Integer> account_ids) {
+        Connection conn = connections.get();
+        Map<Integer, AccountSummary> summaries = new HashMap<>();
+
+        for (int from = 0; from < account_ids.size(); from += IN_LIST_CHUNK) {
+            List<Integer> chunk = account_ids.subList(from, Math.min(from + IN_LIST_CHUNK, account_ids.size()));
+            String query = "SELECT posted_by, COUNT(*), MAX(time_posted_epoch) FROM message WHERE posted_by IN ("
+                + placeholders(chunk.size()) + ") GROUP BY posted_by";
+
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setInt(i + 1, chunk.get(i));
+                }
+
+                ResultSet rs = ps.executeQuery();
+
+                while(rs.next()) {
+                    summaries.put(rs.getInt(1), new AccountSummary(rs.getInt(1), null, rs.getInt(2), rs.getLong(3)));
+                }
+            } catch (SQLException ex) {
+                logger.error("summarizeMessagesByAccountIds threw an exception, account_ids: {}, message: {}", chunk, ex.getMessage());
+            }
+        }
+
+        return summaries;
+    }
+
     /**
      * Retrieve a message by message_id.
      * 
      * @param message_id the id of the message.
      * @return the message if one exists, null if none exists.
      */
+    @Override
     public Message getMessageById(int message_id) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
 
-        try {
-            String query = "SELECT * FROM message WHERE message_id = ?";
-            
-            PreparedStatement ps = conn.prepareStatement(query);
+        String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE message_id = ?";
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setInt(1, message_id);
 
             ResultSet rs = ps.executeQuery();
             
             if (rs.next()) {
-                return getMessageFromResultSet(rs);
+                return RowMappers.toMessage(rs);
             }
         } catch (SQLException ex) {
             logger.error("getMessageById threw an exception, message_id: {}, messge: {}", message_id, ex.getMessage());
@@ -99,19 +247,54 @@ public class MessageDAO {
         return null;
     }
 
+    /**
+     * Retrieve many messages by message_id, one query per IN_LIST_CHUNK ids.
+     * 
+     * @param message_ids the ids of the messages.
+     * @return the messages that exist, by message_id.
+     */
+    @Override
+    public Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+        Connection conn = connections.get();
+        Map<Integer, Message> messages = new HashMap<>();
+
+        for (int from = 0; from < message_ids.size(); from += IN_LIST_CHUNK) {
+            List<Integer> chunk = message_ids.subList(from, Math.min(from + IN_LIST_CHUNK, message_ids.size()));
+            String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE message_id IN ("
+                + placeholders(chunk.size()) + ")";
+
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setInt(i + 1, chunk.get(i));
+                }
+
+                ResultSet rs = ps.executeQuery();
+
+                while(rs.next()) {
+                    Message message = RowMappers.toMessage(rs);
+                    messages.put(message.getMessage_id(), message);
+                }
+            } catch (SQLException ex) {
+                logger.error("getMessagesByIds threw an exception, message_ids: {}, message: {}", chunk, ex.getMessage());
+            }
+        }
+
+        return messages;
+    }
+
     /**
      * Attempts to insert the provided Message.
      * 
      * @param message the message to insert.
      * @return the message with the message_id set to the inserted id, null if something went wrong.
      */
+    @Override
     public Message insertMessage(Message message) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
 
-        try {
-            String query = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-            
-            PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+        String query = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+
+        try (PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, message.getPosted_by());
             ps.setString(2, message.getMessage_text());
             ps.setLong(3, message.getTime_posted_epoch());
@@ -120,7 +303,7 @@ public class MessageDAO {
 
             ResultSet rs = ps.getGeneratedKeys();
             if (rs.next()) {
-                int inserted_id = rs.getInt("message_id");
+                int inserted_id = rs.getInt(1);
                 message.setMessage_id(inserted_id);
 
                 return message;
@@ -132,6 +315,57 @@ public class MessageDAO {
         return null;
     }
 
+    /**
+     * Attempts to insert the provided Messages as one JDBC batch in a single transaction, so the whole batch pays for
+     * one commit. If the batch fails, e.g. one message violates the foreign key, it is rolled back and the messages
+     * are inserted one at a time so only the offending ones fail.
+     * 
+     * @param messages the messages to insert.
+     * @return a list of the same size, holding each message with the message_id set to the inserted id, or null
+     * where that message could not be inserted.
+     */
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        Connection conn = connections.get();
+
+        String query = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+
+        try (PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false);
+            try {
+                for (Message message : messages) {
+                    ps.setInt(1, message.getPosted_by());
+                    ps.setString(2, message.getMessage_text());
+                    ps.setLong(3, message.getTime_posted_epoch());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                List<Message> inserted = new ArrayList<>(messages.size());
+                ResultSet rs = ps.getGeneratedKeys();
+                for (Message message : messages) {
+                    if (!rs.next()) {
+                        throw new SQLException("Missing generated key for message: " + message);
+                    }
+                    message.setMessage_id(rs.getInt(1));
+                    inserted.add(message);
+                }
+
+                conn.commit();
+                return inserted;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            logger.error("insertMessages threw an exception, size: {}, message: {}", messages.size(), ex.getMessage());
+        }
+
+        return MessageRepository.super.insertMessages(messages);
+    }
+
     /**
      * Attempt to update a Message text by the given message_id.
      * 
@@ -139,13 +373,13 @@ public class MessageDAO {
      * @param message_id the id of the message to update.
      * @return true if the record was updated, false if: something went wrong, the message didn't exist, or no rows were affected.
      */
+    @Override
     public boolean updateMessageById(String message_text, int message_id) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
 
-        try {
-            String query = "UPDATE message SET message_text = ? WHERE message_id = ?";
+        String query = "UPDATE message SET message_text = ? WHERE message_id = ?";
 
-            PreparedStatement ps = conn.prepareStatement(query);
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setString(1, message_text);
             ps.setInt(2, message_id);
 
@@ -162,13 +396,13 @@ public class MessageDAO {
      * @param message_id the id of the message.
      * @return true if the record was deleted, false if: something went wrong, the message didn't exist, or no rows were affected.
      */
+    @Override
     public boolean deleteMessageById(int message_id) {
-        Connection conn = ConnectionUtil.getConnection();
+        Connection conn = connections.get();
 
-        try {
-            String query = "DELETE FROM message WHERE message_id = ?";
+        String query = "DELETE FROM message WHERE message_id = ?";
 
-            PreparedStatement ps = conn.prepareStatement(query);
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setInt(1, message_id);
 
             return ps.executeUpdate() > 0;
@@ -180,18 +414,13 @@ public class MessageDAO {
     }
 
     /**
-     * Helper method to extract the Message from the supplied ResultSet.
-     * 
-     * @param rs the ResultSet containing the message.
-     * @return the Message created from the supplied ResultSet.
-     * @throws SQLException
-     */
-    private Message getMessageFromResultSet(ResultSet rs) throws SQLException {
-        return new Message(
-            rs.getInt("message_id"), 
-            rs.getInt("posted_by"), 
-            rs.getString("message_text"), 
-            rs.getLong("time_posted_epoch")
-        );
+     * @return count question marks separated by commas, for an IN (...) list.
+     */
+    static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return placeholders.toString();
     }
 }
@@ -0,0 +1,173 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Model.AccountSummary;
+import Model.Message;
+
+/**
+ * Storage for Messages.
+ *
+ * MessageDAO is the JDBC implementation backed by the H2 database, InMemoryMessageRepository keeps everything in the
+ * process. Implementations must behave like the message table: ids are assigned in increasing order and never
+ * reused, posted_by must refer to an existing account, and message_text is at most 255 characters.
+ */
+public interface MessageRepository {
+
+    /**
+     * Retrieves all the Messages.
+     * 
+     * @return a list containing all the messages, in message_id order.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * Retrieves the messages newer than a given one, e.g. what a client that has seen up to message_id is missing.
+     * The default filters getAllMessages; implementations that can look up by message_id override this.
+     * 
+     * @param message_id the id of the newest message already seen, 0 for all.
+     * @return a list containing the messages with a greater message_id, in message_id order.
+     */
+    default List<Message> getMessagesAfter(int message_id) {
+        List<Message> messages = new ArrayList<>();
+        for (Message message : getAllMessages()) {
+            if (message.getMessage_id() > message_id) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves all messages by account id.
+     * 
+     * @param account_id the account_id of the posts
+     * @return a list containing all the messages, in message_id order.
+     */
+    List<Message> getAllMessagesByAccountId(int account_id);
+
+    /**
+     * Counts the messages by account id.
+     * 
+     * @param account_id the account_id of the posts
+     * @return the number of messages posted by the account, 0 if there are none.
+     */
+    int countMessagesByAccountId(int account_id);
+
+    /**
+     * Counts the messages of every account that posted in a range of time, e.g. to check counters kept elsewhere.
+     * The default counts getAllMessages; implementations that can group in the store override this.
+     * 
+     * @param from_epoch only messages with a time_posted_epoch at or after this.
+     * @param to_epoch only messages with a time_posted_epoch before this.
+     * @return the number of messages by posted_by, without the accounts that have none.
+     */
+    default Map<Integer, Integer> countMessagesPerAccount(long from_epoch, long to_epoch) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (Message message : getAllMessages()) {
+            if (message.getTime_posted_epoch() >= from_epoch && message.getTime_posted_epoch() < to_epoch) {
+                counts.merge(message.getPosted_by(), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the messages of some accounts and finds the newest time_posted_epoch of each. The default reads every
+     * account's messages; implementations that can group in the store override this.
+     * 
+     * @param account_ids the accounts.
+     * @return the summary of every account that has messages, by account_id, without usernames.
+     */
+    default Map<Integer, AccountSummary> summarizeMessagesByAccountIds(List<Integer> account_ids) {
+        Map<Integer, AccountSummary> summaries = new HashMap<>();
+        for (int account_id : account_ids) {
+            List<Message> messages = getAllMessagesByAccountId(account_id);
+            if (messages.isEmpty()) {
+                continue;
+            }
+            long latest = Long.MIN_VALUE;
+            for (Message message : messages) {
+                latest = Math.max(latest, message.getTime_posted_epoch());
+            }
+            summaries.put(account_id, new AccountSummary(account_id, null, messages.size(), latest));
+        }
+        return summaries;
+    }
+
+    /**
+     * Retrieve a message by message_id.
+     * 
+     * @param message_id the id of the message.
+     * @return the message if one exists, null if none exists.
+     */
+    Message getMessageById(int message_id);
+
+    /**
+     * Retrieve many messages by message_id, e.g. the messages of one page of a feed. The default looks them up one at
+     * a time; implementations that can look up many at once override this.
+     * 
+     * @param message_ids the ids of the messages.
+     * @return the messages that exist, by message_id.
+     */
+    default Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+        Map<Integer, Message> messages = new HashMap<>();
+        for (int message_id : message_ids) {
+            Message message = getMessageById(message_id);
+            if (message != null) {
+                messages.put(message_id, message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Attempts to insert the provided Message.
+     * 
+     * @param message the message to insert.
+     * @return the message with the message_id set to the inserted id, null if something went wrong.
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * Attempts to insert the provided Messages together, in order. Implementations that can make a whole batch
+     * durable at once (one transaction, one fsync) override this; the default inserts them one at a time.
+     * 
+     * @param messages the messages to insert.
+     * @return a list of the same size, holding each message with the message_id set to the inserted id, or null
+     * where that message could not be inserted.
+     */
+    default List<Message> insertMessages(List<Message> messages) {
+        List<Message> inserted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            inserted.add(insertMessage(message));
+        }
+        return inserted;
+    }
+
+    /**
+     * Attempt to update a Message text by the given message_id.
+     * 
+     * @param message_text the new text of the message.
+     * @param message_id the id of the message to update.
+     * @return true if the record was updated, false if: something went wrong, the message didn't exist, or no rows were affected.
+     */
+    boolean updateMessageById(String message_text, int message_id);
+
+    /**
+     * Attempt to delete a Message by the given message_id.
+     * @param message_id the id of the message.
+     * @return true if the record was deleted, false if: something went wrong, the message didn't exist, or no rows were affected.
+     */
+    boolean deleteMessageById(int message_id);
+
+    /**
+     * @return the ChangeStream the writes of this repository are captured to, null if they are not.
+     */
+    default ChangeStream getChangeStream() {
+        return null;
+    }
+}
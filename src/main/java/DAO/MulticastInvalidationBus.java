@@ -0,0 +1,89 @@
+package DAO;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * InvalidationBus over UDP multicast: every instance joins the same group and port, and each packet is one datagram
+ * to the group. Lost datagrams are caught by the seqs, see PacketInvalidationBus.
+ */
+public class MulticastInvalidationBus extends PacketInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(MulticastInvalidationBus.class);
+
+    /**
+     * How often an idle receiver checks whether the bus was closed.
+     */
+    private static final int CLOSE_CHECK_MILLIS = 100;
+
+    private final InetAddress group;
+    private final int port;
+    private final MulticastSocket socket;
+    private final Thread receiver;
+
+    /**
+     * Join the group and start sending and receiving.
+     *
+     * @param group the multicast group, e.g. 239.1.2.3.
+     * @param port the port every instance listens on.
+     * @param heartbeatMillis how often an idle instance tells the others where its seq is.
+     */
+    @SuppressWarnings("deprecation")
+    public MulticastInvalidationBus(InetAddress group, int port, long heartbeatMillis) throws IOException {
+        super(heartbeatMillis);
+        this.group = group;
+        this.port = port;
+        this.socket = new MulticastSocket(port);
+        this.socket.setSoTimeout(CLOSE_CHECK_MILLIS);
+        this.socket.joinGroup(group);
+        this.receiver = new Thread(this::receivePackets, "invalidation-receiver");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+        start();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void close() {
+        super.close();
+        try {
+            receiver.join();
+            socket.leaveGroup(group);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            logger.error("close threw an exception, group: {}, message: {}", group, ex.getMessage());
+        }
+        socket.close();
+    }
+
+    @Override
+    protected void send(ByteBuffer packet) throws IOException {
+        socket.send(new DatagramPacket(packet.array(), packet.position(), packet.remaining(), group, port));
+    }
+
+    private void receivePackets() {
+        byte[] buffer = new byte[MAX_PACKET_SIZE];
+        DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+        while (!closed) {
+            try {
+                datagram.setLength(buffer.length);
+                socket.receive(datagram);
+                receive(ByteBuffer.wrap(buffer, datagram.getOffset(), datagram.getLength()));
+            } catch (SocketTimeoutException ex) {
+                // Check whether the bus was closed.
+            } catch (IOException ex) {
+                if (!closed) {
+                    logger.error("receivePackets threw an exception, group: {}, message: {}", group, ex.getMessage());
+                }
+            }
+        }
+    }
+}
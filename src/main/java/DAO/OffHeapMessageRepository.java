@@ -0,0 +1,381 @@
+package DAO;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Message;
+import Util.IntSetIndex;
+
+/**
+ * MessageRepository that keeps messages outside the Java heap.
+ *
+ * Each message is a fixed 24 byte record in a direct ByteBuffer:
+ *
+ *   offset  0  int   message_id (0 once the message is deleted)
+ *   offset  4  int   posted_by
+ *   offset  8  long  time_posted_epoch
+ *   offset 16  int   offset of message_text in the text arena
+ *   offset 20  int   length of message_text in bytes
+ *
+ * and message_text is stored UTF-8 encoded in a second direct ByteBuffer, the text arena. Records are appended in
+ * message_id order and located through an int[] from message_id to record slot, and listed by account through an
+ * IntSetIndex from posted_by to message ids. The only heap state per message is primitive ints in those two
+ * structures; nothing is left for the garbage collector to trace. Message objects are created only when a message is
+ * read, right before it is serialized.
+ *
+ * Deletes clear the record's message_id and updates append the new text, so both leave garbage behind. Once garbage
+ * makes up more than half of the arenas they are compacted into fresh buffers, keeping the record order.
+ *
+ * Mirrors the message table: posted_by must refer to an account in the given AccountRepository (the foreign key) and
+ * message_text is at most 255 characters. A null message_text is stored with length -1.
+ */
+public class OffHeapMessageRepository implements MessageRepository {
+
+    private static final int MAX_MESSAGE_TEXT_LENGTH = 255;
+
+    static final int RECORD_SIZE = 24;
+    private static final int ID = 0;
+    private static final int POSTED_BY = 4;
+    private static final int TIME_POSTED_EPOCH = 8;
+    private static final int TEXT_OFFSET = 16;
+    private static final int TEXT_LENGTH = 20;
+
+    private static final int NO_SLOT = -1;
+    private static final int NULL_TEXT = -1;
+
+    /**
+     * Arenas smaller than this are never compacted, there is nothing worth reclaiming.
+     */
+    private static final int MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final AccountRepository accountRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer records;
+    private ByteBuffer text;
+    private int recordCount;
+    private int deadRecords;
+    private int deadTextBytes;
+
+    private int[] slotsById = new int[1024];
+    private final IntSetIndex messageIdsByAccount = new IntSetIndex();
+    private int lastMessageId;
+
+    /**
+     * @param accountRepository the accounts that posted_by must refer to.
+     */
+    public OffHeapMessageRepository(AccountRepository accountRepository) {
+        this(accountRepository, 1024, 64 * 1024);
+    }
+
+    /**
+     * @param accountRepository the accounts that posted_by must refer to.
+     * @param expectedMessages the number of records to allocate room for up front.
+     * @param expectedTextBytes the number of text bytes to allocate room for up front.
+     */
+    public OffHeapMessageRepository(AccountRepository accountRepository, int expectedMessages, int expectedTextBytes) {
+        this.accountRepository = accountRepository;
+        this.records = ByteBuffer.allocateDirect(Math.max(expectedMessages, 16) * RECORD_SIZE);
+        this.text = ByteBuffer.allocateDirect(Math.max(expectedTextBytes, 1024));
+        Arrays.fill(slotsById, NO_SLOT);
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>(recordCount - deadRecords);
+            for (int slot = 0; slot < recordCount; slot++) {
+                if (records.getInt(slot * RECORD_SIZE + ID) != 0) {
+                    messages.add(materialize(slot));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up each newer id through slotsById instead of scanning every record.
+     */
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for (int id = Math.max(message_id, 0) + 1; id <= lastMessageId; id++) {
+                int slot = slotsById[id];
+                if (slot != NO_SLOT) {
+                    messages.add(materialize(slot));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id) {
+        lock.readLock().lock();
+        try {
+            int[] ids = messageIdsByAccount.values(account_id);
+            List<Message> messages = new ArrayList<>(ids.length);
+            for (int message_id : ids) {
+                messages.add(materialize(slotsById[message_id]));
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        lock.readLock().lock();
+        try {
+            return messageIdsByAccount.count(account_id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message getMessageById(int message_id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(message_id);
+            return slot == NO_SLOT ? null : materialize(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        if (!fitsColumn(message.getMessage_text())) {
+            return null;
+        }
+
+        // Foreign key on posted_by.
+        if (accountRepository.getAccountById(message.getPosted_by()) == null) {
+            return null;
+        }
+
+        byte[] encoded = encode(message.getMessage_text());
+
+        lock.writeLock().lock();
+        try {
+            int message_id = ++lastMessageId;
+            if (message_id == slotsById.length) {
+                int oldLength = slotsById.length;
+                slotsById = Arrays.copyOf(slotsById, oldLength << 1);
+                Arrays.fill(slotsById, oldLength, slotsById.length, NO_SLOT);
+            }
+
+            int slot = recordCount++;
+            ensureRecordCapacity(recordCount);
+            int base = slot * RECORD_SIZE;
+            records.putInt(base + ID, message_id);
+            records.putInt(base + POSTED_BY, message.getPosted_by());
+            records.putLong(base + TIME_POSTED_EPOCH, message.getTime_posted_epoch());
+            writeText(base, encoded);
+            slotsById[message_id] = slot;
+            messageIdsByAccount.add(message.getPosted_by(), message_id);
+
+            message.setMessage_id(message_id);
+            return message;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateMessageById(String message_text, int message_id) {
+        if (!fitsColumn(message_text)) {
+            return false;
+        }
+
+        byte[] encoded = encode(message_text);
+
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(message_id);
+            if (slot == NO_SLOT) {
+                return false;
+            }
+
+            int base = slot * RECORD_SIZE;
+            deadTextBytes += Math.max(records.getInt(base + TEXT_LENGTH), 0);
+            writeText(base, encoded);
+
+            compactIfWorthwhile();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteMessageById(int message_id) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(message_id);
+            if (slot == NO_SLOT) {
+                return false;
+            }
+
+            int base = slot * RECORD_SIZE;
+            records.putInt(base + ID, 0);
+            messageIdsByAccount.remove(records.getInt(base + POSTED_BY), message_id);
+            deadRecords++;
+            deadTextBytes += Math.max(records.getInt(base + TEXT_LENGTH), 0);
+            slotsById[message_id] = NO_SLOT;
+
+            compactIfWorthwhile();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes of direct memory held by the arenas.
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) records.capacity() + text.capacity();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int slotOf(int message_id) {
+        if (message_id <= 0 || message_id > lastMessageId) {
+            return NO_SLOT;
+        }
+        return slotsById[message_id];
+    }
+
+    private Message materialize(int slot) {
+        int base = slot * RECORD_SIZE;
+        int length = records.getInt(base + TEXT_LENGTH);
+
+        String message_text = null;
+        if (length != NULL_TEXT) {
+            int offset = records.getInt(base + TEXT_OFFSET);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = text.get(offset + i);
+            }
+            message_text = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return new Message(records.getInt(base + ID), records.getInt(base + POSTED_BY), message_text,
+            records.getLong(base + TIME_POSTED_EPOCH));
+    }
+
+    /**
+     * Append the encoded text to the text arena and point the record at base to it.
+     */
+    private void writeText(int base, byte[] encoded) {
+        if (encoded == null) {
+            records.putInt(base + TEXT_OFFSET, 0);
+            records.putInt(base + TEXT_LENGTH, NULL_TEXT);
+            return;
+        }
+
+        ensureTextCapacity(text.position() + encoded.length);
+        records.putInt(base + TEXT_OFFSET, text.position());
+        records.putInt(base + TEXT_LENGTH, encoded.length);
+        text.put(encoded);
+    }
+
+    private void ensureRecordCapacity(int count) {
+        if ((long) count * RECORD_SIZE > records.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(grow(records.capacity(), (long) count * RECORD_SIZE));
+            grown.put(records.duplicate().position(0).limit((count - 1) * RECORD_SIZE));
+            records = grown;
+        }
+    }
+
+    private void ensureTextCapacity(long needed) {
+        if (needed > text.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(grow(text.capacity(), needed));
+            grown.put(text.flip());
+            text = grown;
+        }
+    }
+
+    private static int grow(int capacity, long needed) {
+        long grown = Math.max((long) capacity << 1, needed);
+        if (grown > Integer.MAX_VALUE - 8) {
+            if (needed > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("OffHeapMessageRepository arena is full");
+            }
+            grown = Integer.MAX_VALUE - 8;
+        }
+        return (int) grown;
+    }
+
+    /**
+     * Rewrite the live records and their text into fresh arenas once more than half of either arena is garbage.
+     */
+    private void compactIfWorthwhile() {
+        long recordBytes = (long) recordCount * RECORD_SIZE;
+        boolean recordsWasteful = recordBytes >= MIN_COMPACTION_BYTES && deadRecords * 2 > recordCount;
+        boolean textWasteful = text.position() >= MIN_COMPACTION_BYTES && deadTextBytes * 2 > text.position();
+        if (!recordsWasteful && !textWasteful) {
+            return;
+        }
+
+        int liveRecords = recordCount - deadRecords;
+        ByteBuffer compactRecords = ByteBuffer.allocateDirect(Math.max(liveRecords * 2, 16) * RECORD_SIZE);
+        ByteBuffer compactText = ByteBuffer.allocateDirect(Math.max((text.position() - deadTextBytes) * 2, 1024));
+
+        int next = 0;
+        for (int slot = 0; slot < recordCount; slot++) {
+            int base = slot * RECORD_SIZE;
+            int message_id = records.getInt(base + ID);
+            if (message_id == 0) {
+                continue;
+            }
+
+            int newBase = next * RECORD_SIZE;
+            compactRecords.putInt(newBase + ID, message_id);
+            compactRecords.putInt(newBase + POSTED_BY, records.getInt(base + POSTED_BY));
+            compactRecords.putLong(newBase + TIME_POSTED_EPOCH, records.getLong(base + TIME_POSTED_EPOCH));
+
+            int length = records.getInt(base + TEXT_LENGTH);
+            compactRecords.putInt(newBase + TEXT_LENGTH, length);
+            compactRecords.putInt(newBase + TEXT_OFFSET, compactText.position());
+            if (length > 0) {
+                int offset = records.getInt(base + TEXT_OFFSET);
+                compactText.put(text.duplicate().position(offset).limit(offset + length));
+            }
+
+            slotsById[message_id] = next++;
+        }
+
+        records = compactRecords;
+        text = compactText;
+        recordCount = next;
+        deadRecords = 0;
+        deadTextBytes = 0;
+    }
+
+    private static boolean fitsColumn(String message_text) {
+        return message_text == null || message_text.length() <= MAX_MESSAGE_TEXT_LENGTH;
+    }
+
+    private static byte[] encode(String message_text) {
+        return message_text == null ? null : message_text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,269 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The part of an InvalidationBus that does not depend on the transport: packets, sequence numbers, heartbeats and
+ * detecting missed invalidations. Subclasses send packets with send() and hand the ones they receive to receive().
+ *
+ * A packet is
+ *
+ *   int    MAGIC
+ *   long   the id of the sending instance, random per instance
+ *   long   the seq of the first entry, or for a heartbeat the seq the next entry will get
+ *   short  the number of entries, 0 for a heartbeat
+ *   then per entry
+ *   byte   ACCOUNT, MESSAGE or FLUSH
+ *   int    the id
+ *
+ * Every entry an instance sends gets the next seq, starting at 1. A receiver expects the seqs of each sender without
+ * gaps; a gap, or a first packet from a sender that has sent entries before, means packets were lost and the
+ * receiver flushes its Listeners. Publishing only queues the invalidation; one sender thread sends what is queued as
+ * soon as it is there, at most MAX_ENTRIES per packet, and sends a heartbeat after heartbeatMillis without entries,
+ * so the loss of the last packet is detected too. A sender not heard from for SILENT_HEARTBEATS heartbeats is
+ * dropped, with a flush, since its writes could no longer be seen.
+ *
+ * Invalidations therefore reach the other instances right away, and an instance that missed some flushes within
+ * about SILENT_HEARTBEATS * heartbeatMillis.
+ */
+public abstract class PacketInvalidationBus implements InvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketInvalidationBus.class);
+
+    static final int MAGIC = 0x494E5641;
+    static final int HEADER_SIZE = 4 + 8 + 8 + 2;
+    static final int ENTRY_SIZE = 1 + 4;
+
+    /**
+     * Most entries in one packet, so that a packet fits a 1500 byte MTU.
+     */
+    static final int MAX_ENTRIES = 256;
+    static final int MAX_PACKET_SIZE = HEADER_SIZE + MAX_ENTRIES * ENTRY_SIZE;
+
+    private static final byte ACCOUNT = 1;
+    private static final byte MESSAGE = 2;
+    private static final byte FLUSH = 3;
+
+    private static final int SILENT_HEARTBEATS = 3;
+    private static final int QUEUE_CAPACITY = 16384;
+
+    private static final class Sender {
+        long expectedSeq;
+        long lastHeardNanos;
+    }
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final long heartbeatMillis;
+    private final BlockingQueue<Long> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Long, Sender> senders = new HashMap<>();
+    private final Thread senderThread;
+    private long nextSeq = 1;
+    private volatile boolean overflowed;
+    protected volatile boolean closed;
+
+    /**
+     * @param heartbeatMillis how often an idle instance tells the others where its seq is.
+     */
+    protected PacketInvalidationBus(long heartbeatMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+        this.senderThread = new Thread(this::sendQueued, "invalidation-sender");
+        this.senderThread.setDaemon(true);
+    }
+
+    /**
+     * Start sending, once the subclass is ready for send().
+     */
+    protected void start() {
+        senderThread.start();
+    }
+
+    @Override
+    public void publishAccount(int account_id) {
+        publish(ACCOUNT, account_id);
+    }
+
+    @Override
+    public void publishMessage(int message_id) {
+        publish(MESSAGE, message_id);
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stop the sender thread; subclasses then close their sockets.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            senderThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Send a packet to every other instance.
+     *
+     * @param packet the packet, from its position to its limit.
+     */
+    protected abstract void send(ByteBuffer packet) throws IOException;
+
+    /**
+     * Apply a packet received from the transport. Packets of this instance and anything that is not a packet are
+     * ignored.
+     *
+     * @param packet the packet, from its position to its limit.
+     */
+    protected void receive(ByteBuffer packet) {
+        if (packet.remaining() < HEADER_SIZE || packet.getInt() != MAGIC) {
+            return;
+        }
+        long sender = packet.getLong();
+        long seq = packet.getLong();
+        int count = packet.getShort();
+        if (sender == nodeId || count < 0 || packet.remaining() < count * ENTRY_SIZE) {
+            return;
+        }
+
+        boolean flush;
+        long skip;
+        synchronized (senders) {
+            Sender state = senders.get(sender);
+            if (state == null) {
+                state = new Sender();
+                senders.put(sender, state);
+                flush = seq > 1;
+            } else {
+                flush = seq > state.expectedSeq;
+            }
+            skip = Math.max(0, state.expectedSeq - seq);
+            state.expectedSeq = Math.max(state.expectedSeq, seq + count);
+            state.lastHeardNanos = System.nanoTime();
+        }
+
+        if (flush) {
+            logger.error("missed invalidations from instance {} before seq {}, flushing the caches",
+                Long.toHexString(sender), seq);
+            invalidateAll();
+        }
+        for (int i = 0; i < count; i++) {
+            byte kind = packet.get();
+            int id = packet.getInt();
+            if (i < skip) {
+                // Already applied, e.g. a duplicate.
+                continue;
+            }
+            for (Listener listener : listeners) {
+                switch (kind) {
+                    case ACCOUNT:
+                        listener.invalidateAccount(id);
+                        break;
+                    case MESSAGE:
+                        listener.invalidateMessage(id);
+                        break;
+                    default:
+                        listener.invalidateAll();
+                        break;
+                }
+            }
+        }
+    }
+
+    private void publish(byte kind, int id) {
+        if (!queue.offer(((long) kind << 32) | (id & 0xFFFFFFFFL))) {
+            // The other instances cannot be told what was dropped, so they get told to flush instead.
+            overflowed = true;
+        }
+    }
+
+    private void sendQueued() {
+        ByteBuffer packet = ByteBuffer.allocate(MAX_PACKET_SIZE);
+        List<Long> entries = new ArrayList<>(MAX_ENTRIES);
+        while (!closed) {
+            try {
+                Long first = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    entries.add(first);
+                    queue.drainTo(entries, MAX_ENTRIES - 1);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (overflowed && entries.size() < MAX_ENTRIES) {
+                overflowed = false;
+                entries.add((long) FLUSH << 32);
+            }
+
+            packet.clear();
+            packet.putInt(MAGIC);
+            packet.putLong(nodeId);
+            packet.putLong(nextSeq);
+            packet.putShort((short) entries.size());
+            for (long entry : entries) {
+                packet.put((byte) (entry >>> 32));
+                packet.putInt((int) entry);
+            }
+            packet.flip();
+            nextSeq += entries.size();
+            entries.clear();
+
+            try {
+                send(packet);
+            } catch (IOException ex) {
+                // Receivers see the gap in the seqs on the next packet that gets through.
+                logger.error("send threw an exception, message: {}", ex.getMessage());
+            }
+            dropSilentSenders();
+        }
+    }
+
+    private void dropSilentSenders() {
+        long silentNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis * SILENT_HEARTBEATS);
+        long now = System.nanoTime();
+        boolean dropped = false;
+        synchronized (senders) {
+            Iterator<Sender> it = senders.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().lastHeardNanos > silentNanos) {
+                    it.remove();
+                    dropped = true;
+                }
+            }
+        }
+        if (dropped) {
+            logger.error("an instance went silent, flushing the caches");
+            invalidateAll();
+        }
+    }
+
+    private void invalidateAll() {
+        for (Listener listener : listeners) {
+            listener.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package DAO;
+
+/**
+ * How fresh the reads of the current thread must be when a ReplicaSet is in use.
+ *
+ * Every write gets a sequence number, the seq of its last event in the ChangeStream, and a thread always reads its
+ * own writes: its reads go to a replica that has applied its last write, or to the primary. Across requests the client carries that
+ * guarantee itself. Each response that wrote something has an X-Write-Seq header, and sending the value back as
+ * X-Read-After-Seq makes the reads of a later request wait for a replica that has applied it (read-your-writes for
+ * the client's session). X-Read-Consistency: primary sends every read of the request to the primary, and requests
+ * that write read from the primary anyway, so their checks never see stale data.
+ *
+ * The state is thread local; the controller sets it at the start of each request and clears it at the end.
+ */
+public final class ReadConsistency {
+
+    public static final String CONSISTENCY_HEADER = "X-Read-Consistency";
+    public static final String READ_AFTER_HEADER = "X-Read-After-Seq";
+    public static final String WRITE_SEQ_HEADER = "X-Write-Seq";
+
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<ReadConsistency> CURRENT = ThreadLocal.withInitial(ReadConsistency::new);
+
+    private boolean primary;
+    private long readAfterSeq;
+    private long lastWriteSeq;
+
+    private ReadConsistency() {
+    }
+
+    /**
+     * Start a request on the current thread.
+     *
+     * @param primary true to send every read of the request to the primary.
+     * @param readAfterSeq reads must see at least this write, 0 for any replica.
+     */
+    public static void beginRequest(boolean primary, long readAfterSeq) {
+        ReadConsistency current = CURRENT.get();
+        current.primary = primary;
+        current.readAfterSeq = readAfterSeq;
+        current.lastWriteSeq = 0;
+    }
+
+    /**
+     * End the request on the current thread.
+     *
+     * @return the sequence number of the last write of the request, 0 if it wrote nothing.
+     */
+    public static long endRequest() {
+        ReadConsistency current = CURRENT.get();
+        long lastWriteSeq = current.lastWriteSeq;
+        current.primary = false;
+        current.readAfterSeq = 0;
+        current.lastWriteSeq = 0;
+        return lastWriteSeq;
+    }
+
+    /**
+     * Make the rest of the reads of the current thread see at least this write, e.g. a list that is returned with the
+     * seq it is current as of.
+     *
+     * @param seq the sequence number of the write.
+     */
+    public static void readAfter(long seq) {
+        ReadConsistency current = CURRENT.get();
+        current.readAfterSeq = Math.max(current.readAfterSeq, seq);
+    }
+
+    /**
+     * Record a write made for the current thread's request, e.g. by a batch writer on its behalf, so the request's
+     * reads see it and its response carries it as X-Write-Seq.
+     *
+     * @param seq the sequence number of the write.
+     */
+    public static void wrote(long seq) {
+        ReadConsistency current = CURRENT.get();
+        current.lastWriteSeq = Math.max(current.lastWriteSeq, seq);
+    }
+
+    static ReadConsistency current() {
+        return CURRENT.get();
+    }
+
+    boolean readsPrimary() {
+        return primary;
+    }
+
+    /**
+     * @return the sequence number a replica must have applied to serve reads of this thread.
+     */
+    long requiredSeq() {
+        return Math.max(readAfterSeq, lastWriteSeq);
+    }
+}
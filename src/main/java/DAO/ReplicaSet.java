@@ -0,0 +1,382 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.ChangeEvent;
+import Util.ConnectionUtil;
+
+/**
+ * Read replicas of the H2 database of ConnectionUtil, the primary.
+ *
+ * Each replica is a private in-memory H2 database holding a copy of the account and message tables, except for the
+ * passwords, which stay on the primary (see AccountRepository.getAccountWithPassword). It starts from a
+ * snapshot of the primary taken at a position of the ChangeStream, and is then kept in sync by a per-replica thread
+ * that applies the events after that position in order, in batches of one transaction each. Each replica records
+ * the seq of the last event it applied.
+ *
+ * Reads go round robin to the replicas that have applied what the calling thread's ReadConsistency requires; if none
+ * has within maxWaitMillis the read goes to the primary. A replica that fails to apply a change is taken out of
+ * rotation for good rather than serve diverged data. Replica connections are kept per thread and never closed, like
+ * those of ConnectionUtil.
+ */
+public class ReplicaSet implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaSet.class);
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    /**
+     * Most changes applied in one replica transaction.
+     */
+    private static final int APPLY_BATCH = 256;
+
+    /**
+     * How often an idle applier checks whether the set was closed.
+     */
+    private static final long CLOSE_CHECK_MILLIS = 100;
+
+    /**
+     * Replication state of one replica, as reported by status().
+     */
+    public static class ReplicaStatus {
+        private final int replica;
+        private final boolean healthy;
+        private final long appliedSeq;
+        private final long lagChanges;
+        private final long lagMillis;
+
+        ReplicaStatus(int replica, boolean healthy, long appliedSeq, long lagChanges, long lagMillis) {
+            this.replica = replica;
+            this.healthy = healthy;
+            this.appliedSeq = appliedSeq;
+            this.lagChanges = lagChanges;
+            this.lagMillis = lagMillis;
+        }
+
+        public int getReplica() {
+            return replica;
+        }
+
+        /**
+         * @return false once the replica failed to apply a change and no longer serves reads.
+         */
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * @return the sequence number of the last change applied.
+         */
+        public long getAppliedSeq() {
+            return appliedSeq;
+        }
+
+        /**
+         * @return how many events of the change stream the replica has not applied yet.
+         */
+        public long getLagChanges() {
+            return lagChanges;
+        }
+
+        /**
+         * @return how long ago the oldest event not applied yet was published, 0 if the replica is caught up.
+         */
+        public long getLagMillis() {
+            return lagMillis;
+        }
+    }
+
+    private final class Replica {
+        final int index;
+        final String url;
+        final ThreadLocal<Connection> connections;
+        final MessageDAO messages;
+        final AccountDAO accounts;
+        final Thread applier;
+        volatile long appliedSeq;
+        volatile boolean healthy = true;
+
+        Replica(int index, String url) {
+            this.index = index;
+            this.url = url;
+            this.connections = ThreadLocal.withInitial(() -> open(url));
+            Supplier<Connection> connection = connections::get;
+            this.messages = new MessageDAO(connection);
+            this.accounts = new AccountDAO(connection);
+            this.applier = new Thread(this::applyChanges, "replica-" + index + "-applier");
+            this.applier.setDaemon(true);
+        }
+
+        private void applyChanges() {
+            Connection conn = connections.get();
+            while (!closed) {
+                List<ChangeEvent> batch = changes.read(appliedSeq, APPLY_BATCH);
+                if (batch == null) {
+                    healthy = false;
+                    logger.error("replica {} fell behind the change stream after seq {}, it no longer serves reads",
+                        index, appliedSeq);
+                    return;
+                }
+                if (batch.isEmpty()) {
+                    try {
+                        changes.await(appliedSeq, CLOSE_CHECK_MILLIS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+
+                if (healthy) {
+                    try {
+                        apply(conn, batch);
+                    } catch (SQLException ex) {
+                        healthy = false;
+                        logger.error("replica {} failed to apply changes up to seq {}, it no longer serves reads, message: {}",
+                            index, batch.get(batch.size() - 1).seq, ex.getMessage());
+                    }
+                }
+
+                appliedSeq = batch.get(batch.size() - 1).seq;
+
+                synchronized (applied) {
+                    applied.notifyAll();
+                }
+            }
+        }
+    }
+
+    private final String name = "replica" + instances.incrementAndGet();
+    private final ChangeStream changes;
+    private final long maxWaitMillis;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Object applied = new Object();
+    private volatile boolean closed;
+
+    /**
+     * Create the replicas from a snapshot of the primary and start applying changes.
+     *
+     * @param changes the stream the writes to the primary are captured to.
+     * @param replicaCount the number of replicas.
+     * @param maxWaitMillis how long a read waits for a replica to catch up before it goes to the primary.
+     */
+    public ReplicaSet(ChangeStream changes, int replicaCount, long maxWaitMillis) {
+        this.changes = changes;
+        this.maxWaitMillis = maxWaitMillis;
+
+        for (int i = 0; i < replicaCount; i++) {
+            replicas.add(new Replica(i, "jdbc:h2:mem:" + name + "_" + i + ";DB_CLOSE_DELAY=-1"));
+        }
+        long snapshotSeq = changes.exclusive(() -> {
+            try {
+                for (Replica replica : replicas) {
+                    snapshot(replica.connections.get());
+                }
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Could not create the read replicas", ex);
+            }
+        });
+
+        for (Replica replica : replicas) {
+            replica.appliedSeq = snapshotSeq;
+            replica.applier.start();
+        }
+    }
+
+    /**
+     * @return the replication state of every replica.
+     */
+    public List<ReplicaStatus> status() {
+        long published = changes.lastSeq();
+        long now = System.currentTimeMillis();
+
+        List<ReplicaStatus> status = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            long appliedSeq = Math.min(replica.appliedSeq, published);
+            long lagMillis = 0;
+            if (appliedSeq < published) {
+                List<ChangeEvent> oldest = changes.read(appliedSeq, 1);
+                lagMillis = oldest == null || oldest.isEmpty() ? 0 : Math.max(0, now - oldest.get(0).changed_at);
+            }
+            status.add(new ReplicaStatus(replica.index, replica.healthy, appliedSeq, published - appliedSeq, lagMillis));
+        }
+        return status;
+    }
+
+    /**
+     * Stop applying changes and drop the replica databases.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Replica replica : replicas) {
+            try {
+                replica.applier.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            try (Connection conn = open(replica.url); Statement st = conn.createStatement()) {
+                st.execute("SHUTDOWN");
+            } catch (SQLException ex) {
+                logger.error("close threw an exception, replica: {}, message: {}", replica.index, ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the MessageRepository of a replica fresh enough for the calling thread, null to read from the primary.
+     */
+    MessageRepository messageReader() {
+        Replica replica = route();
+        return replica == null ? null : replica.messages;
+    }
+
+    /**
+     * @return the AccountRepository of a replica fresh enough for the calling thread, null to read from the primary.
+     */
+    AccountRepository accountReader() {
+        Replica replica = route();
+        return replica == null ? null : replica.accounts;
+    }
+
+    private Replica route() {
+        ReadConsistency consistency = ReadConsistency.current();
+        if (consistency.readsPrimary() || replicas.isEmpty()) {
+            return null;
+        }
+
+        long requiredSeq = consistency.requiredSeq();
+        Replica replica = caughtUp(requiredSeq);
+        if (replica != null || maxWaitMillis <= 0) {
+            return replica;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        synchronized (applied) {
+            while ((replica = caughtUp(requiredSeq)) == null) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    applied.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        return replica;
+    }
+
+    /**
+     * @return the next replica in round robin order that is healthy and has applied requiredSeq, null if none has.
+     */
+    private Replica caughtUp(long requiredSeq) {
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.healthy && replica.appliedSeq >= requiredSeq) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static void snapshot(Connection replica) throws SQLException {
+        try (Statement st = replica.createStatement()) {
+            st.execute("CREATE TABLE account (account_id int PRIMARY KEY, username varchar(255), password varchar(255))");
+            st.execute("CREATE INDEX account_username ON account (username)");
+            st.execute("CREATE TABLE message (message_id int PRIMARY KEY, posted_by int, message_text varchar(255), "
+                + "time_posted_epoch bigint)");
+            st.execute("CREATE INDEX message_posted_by ON message (posted_by)");
+        }
+
+        Connection primary = ConnectionUtil.getConnection();
+        try (PreparedStatement select = primary.prepareStatement("SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM account");
+                PreparedStatement insert = replica.prepareStatement(
+                    "INSERT INTO account (" + RowMappers.ACCOUNT_COLUMNS + ") VALUES (?, ?, ?)")) {
+            ResultSet rs = select.executeQuery();
+            while (rs.next()) {
+                insert.setInt(1, rs.getInt(1));
+                insert.setString(2, rs.getString(2));
+                insert.setString(3, null);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement select = primary.prepareStatement("SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message");
+                PreparedStatement insert = replica.prepareStatement(
+                    "INSERT INTO message (" + RowMappers.MESSAGE_COLUMNS + ") VALUES (?, ?, ?, ?)")) {
+            ResultSet rs = select.executeQuery();
+            while (rs.next()) {
+                insert.setInt(1, rs.getInt(1));
+                insert.setInt(2, rs.getInt(2));
+                insert.setString(3, rs.getString(3));
+                insert.setLong(4, rs.getLong(4));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static void apply(Connection conn, List<ChangeEvent> batch) throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement mergeAccount = conn.prepareStatement(
+                    "MERGE INTO account (" + RowMappers.ACCOUNT_COLUMNS + ") KEY (account_id) VALUES (?, ?, ?)");
+                PreparedStatement mergeMessage = conn.prepareStatement(
+                    "MERGE INTO message (" + RowMappers.MESSAGE_COLUMNS + ") KEY (message_id) VALUES (?, ?, ?, ?)");
+                PreparedStatement deleteMessage = conn.prepareStatement("DELETE FROM message WHERE message_id = ?")) {
+            for (ChangeEvent change : batch) {
+                switch (change.type) {
+                    case ACCOUNT_CREATED:
+                        mergeAccount.setInt(1, change.account.getAccount_id());
+                        mergeAccount.setString(2, change.account.getUsername());
+                        mergeAccount.setString(3, null);
+                        mergeAccount.executeUpdate();
+                        break;
+                    case MESSAGE_CREATED:
+                    case MESSAGE_UPDATED:
+                        mergeMessage.setInt(1, change.message.getMessage_id());
+                        mergeMessage.setInt(2, change.message.getPosted_by());
+                        mergeMessage.setString(3, change.message.getMessage_text());
+                        mergeMessage.setLong(4, change.message.getTime_posted_epoch());
+                        mergeMessage.executeUpdate();
+                        break;
+                    case MESSAGE_DELETED:
+                        deleteMessage.setInt(1, change.message.getMessage_id());
+                        deleteMessage.executeUpdate();
+                        break;
+                }
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static Connection open(String url) {
+        try {
+            return DriverManager.getConnection(url, "sa", "sa");
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Could not connect to replica " + url, ex);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package DAO;
+
+import java.util.List;
+import java.util.Map;
+
+import Model.Account;
+
+/**
+ * AccountRepository that writes to the primary and reads from the replicas of a ReplicaSet, see ReplicaSet and
+ * ReadConsistency for which reads may go where. The primary must capture its writes to the ChangeStream the replicas
+ * follow.
+ */
+public class ReplicatedAccountRepository implements AccountRepository {
+
+    private final AccountRepository primary;
+    private final ReplicaSet replicaSet;
+
+    /**
+     * @param primary the primary database, e.g. a ChangeCapturingAccountRepository over AccountDAO.
+     * @param replicaSet the replicas to read from.
+     */
+    public ReplicatedAccountRepository(AccountRepository primary, ReplicaSet replicaSet) {
+        this.primary = primary;
+        this.replicaSet = replicaSet;
+    }
+
+    @Override
+    public Account getAccountById(int account_id) {
+        return reader().getAccountById(account_id);
+    }
+
+    @Override
+    public Map<Integer, Account> getAccountsByIds(List<Integer> account_ids) {
+        return reader().getAccountsByIds(account_ids);
+    }
+
+    @Override
+    public Account getAccountByUserame(String username) {
+        return reader().getAccountByUserame(username);
+    }
+
+    /**
+     * Always reads the primary, the replicas do not hold passwords.
+     */
+    @Override
+    public Account getAccountWithPassword(String username) {
+        return primary.getAccountWithPassword(username);
+    }
+
+    @Override
+    public Account insertAccount(Account account) {
+        return primary.insertAccount(account);
+    }
+
+    private AccountRepository reader() {
+        AccountRepository replica = replicaSet.accountReader();
+        return replica == null ? primary : replica;
+    }
+}
@@ -0,0 +1,104 @@
+package DAO;
+
+import java.util.List;
+import java.util.Map;
+
+import Model.AccountSummary;
+import Model.Message;
+
+/**
+ * MessageRepository that writes to the primary and reads from the replicas of a ReplicaSet, see ReplicaSet and
+ * ReadConsistency for which reads may go where. The primary must capture its writes to the ChangeStream the replicas
+ * follow.
+ */
+public class ReplicatedMessageRepository implements MessageRepository {
+
+    private final MessageRepository primary;
+    private final ReplicaSet replicaSet;
+
+    /**
+     * @param primary the primary database, e.g. a ChangeCapturingMessageRepository over MessageDAO.
+     * @param replicaSet the replicas to read from.
+     */
+    public ReplicatedMessageRepository(MessageRepository primary, ReplicaSet replicaSet) {
+        this.primary = primary;
+        this.replicaSet = replicaSet;
+    }
+
+    /**
+     * @return the replicas this repository reads from.
+     */
+    public ReplicaSet getReplicaSet() {
+        return replicaSet;
+    }
+
+    @Override
+    public ChangeStream getChangeStream() {
+        return primary.getChangeStream();
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return reader().getAllMessages();
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        return reader().getMessagesAfter(message_id);
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id) {
+        return reader().getAllMessagesByAccountId(account_id);
+    }
+
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        return reader().countMessagesByAccountId(account_id);
+    }
+
+    @Override
+    public Map<Integer, Integer> countMessagesPerAccount(long from_epoch, long to_epoch) {
+        return reader().countMessagesPerAccount(from_epoch, to_epoch);
+    }
+
+    @Override
+    public Map<Integer, AccountSummary> summarizeMessagesByAccountIds(List<Integer> account_ids) {
+        return reader().summarizeMessagesByAccountIds(account_ids);
+    }
+
+    @Override
+    public Message getMessageById(int message_id) {
+        return reader().getMessageById(message_id);
+    }
+
+    @Override
+    public Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+        return reader().getMessagesByIds(message_ids);
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        return primary.insertMessage(message);
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        return primary.insertMessages(messages);
+    }
+
+    @Override
+    public boolean updateMessageById(String message_text, int message_id) {
+        return primary.updateMessageById(message_text, message_id);
+    }
+
+    @Override
+    public boolean deleteMessageById(int message_id) {
+        return primary.deleteMessageById(message_id);
+    }
+
+    private MessageRepository reader() {
+        MessageRepository replica = replicaSet.messageReader();
+        return replica == null ? primary : replica;
+    }
+}
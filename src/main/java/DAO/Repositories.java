@@ -0,0 +1,228 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the storage engine used by the default service constructors.
+ *
+ * The engine is read once from the storage.engine system property, e.g. java -Dstorage.engine=memory Main:
+ *  jdbc    - (default) MessageDAO and AccountDAO against the H2 database from ConnectionUtil. With
+ *            storage.replicas=N (N > 0) reads go to N in-memory read replicas, see ReplicaSet; a read waits at most
+ *            storage.replicas.maxWaitMs (default 100) for a replica to catch up before it goes to the primary.
+ *  memory  - InMemoryMessageRepository and InMemoryAccountRepository, nothing leaves the process.
+ *  offheap - OffHeapMessageRepository, with message rows and text in direct memory, and InMemoryAccountRepository.
+ *  log     - LogMessageRepository, an append-only log of memory mapped files, and AccountDAO. Configured with
+ *            storage.log.dir (default messagelog), storage.log.fsync (per-write, group or periodic, default group),
+ *            storage.log.fsyncIntervalMs (default 10) and storage.log.segmentBytes (default 64MB).
+ *  sharded - ShardedMessageDAO, messages spread over storage.shards (default 4) H2 databases by posted_by, and
+ *            AccountDAO.
+ *
+ * Both repositories of an engine are created together and shared, since the message store checks posted_by against
+ * the account store of the same engine. Follows are stored next to the accounts: FollowDAO for the engines whose
+ * accounts are in H2, InMemoryFollowRepository for memory and offheap.
+ *
+ * Whatever the engine, every write is captured to one ChangeStream, see changeStream(). It keeps the newest
+ * changes.capacity (default 65536) events in memory. Setting changes.dir also spills them to that directory, keeping
+ * changes.segments (default 4) spill files of changes.segmentBytes (default 16MB); by default there is no spill.
+ *
+ * With cache.size=N (N > 0) point reads of messages and accounts are cached in N slots each, see
+ * CachingMessageRepository and CachingAccountRepository. When several instances share storage, invalidation.bus
+ * keeps their caches in sync, see InvalidationBus:
+ *  none      - (default) no bus, for a single instance.
+ *  multicast - MulticastInvalidationBus on invalidation.multicast.group (default 239.1.2.3) and
+ *              invalidation.multicast.port (default 4446).
+ *  tcp       - TcpInvalidationBus listening on invalidation.tcp.port (default 4447) and connecting to
+ *              invalidation.tcp.peers, a comma separated list of host:port.
+ * Idle instances send a heartbeat every invalidation.heartbeatMs (default 100).
+ */
+public final class Repositories {
+
+    public static final String ENGINE_PROPERTY = "storage.engine";
+    public static final String REPLICAS_PROPERTY = "storage.replicas";
+    public static final String REPLICAS_MAX_WAIT_PROPERTY = "storage.replicas.maxWaitMs";
+    public static final String LOG_DIR_PROPERTY = "storage.log.dir";
+    public static final String LOG_FSYNC_PROPERTY = "storage.log.fsync";
+    public static final String LOG_FSYNC_INTERVAL_PROPERTY = "storage.log.fsyncIntervalMs";
+    public static final String LOG_SEGMENT_BYTES_PROPERTY = "storage.log.segmentBytes";
+    public static final String CHANGES_DIR_PROPERTY = "changes.dir";
+    public static final String CHANGES_CAPACITY_PROPERTY = "changes.capacity";
+    public static final String CHANGES_SEGMENT_BYTES_PROPERTY = "changes.segmentBytes";
+    public static final String CHANGES_SEGMENTS_PROPERTY = "changes.segments";
+    public static final String CACHE_SIZE_PROPERTY = "cache.size";
+    public static final String INVALIDATION_BUS_PROPERTY = "invalidation.bus";
+    public static final String INVALIDATION_HEARTBEAT_PROPERTY = "invalidation.heartbeatMs";
+    public static final String INVALIDATION_MULTICAST_GROUP_PROPERTY = "invalidation.multicast.group";
+    public static final String INVALIDATION_MULTICAST_PORT_PROPERTY = "invalidation.multicast.port";
+    public static final String INVALIDATION_TCP_PORT_PROPERTY = "invalidation.tcp.port";
+    public static final String INVALIDATION_TCP_PEERS_PROPERTY = "invalidation.tcp.peers";
+
+    private static AccountRepository accountRepository;
+    private static MessageRepository messageRepository;
+    private static FollowRepository followRepository;
+    private static ChangeStream changeStream;
+    private static InvalidationBus invalidationBus;
+
+    private Repositories() {
+    }
+
+    /**
+     * @return the AccountRepository of the configured engine.
+     */
+    public static synchronized AccountRepository accountRepository() {
+        init();
+        return accountRepository;
+    }
+
+    /**
+     * @return the MessageRepository of the configured engine.
+     */
+    public static synchronized MessageRepository messageRepository() {
+        init();
+        return messageRepository;
+    }
+
+    /**
+     * @return the FollowRepository of the configured engine.
+     */
+    public static synchronized FollowRepository followRepository() {
+        init();
+        return followRepository;
+    }
+
+    /**
+     * @return the stream every write of the configured engine is captured to.
+     */
+    public static synchronized ChangeStream changeStream() {
+        init();
+        return changeStream;
+    }
+
+    /**
+     * @return the bus the writes of this instance are published to, null if there is none.
+     */
+    public static synchronized InvalidationBus invalidationBus() {
+        init();
+        return invalidationBus;
+    }
+
+    private static void init() {
+        if (accountRepository != null) {
+            return;
+        }
+
+        changeStream = openChangeStream();
+        invalidationBus = openInvalidationBus();
+        String engine = System.getProperty(ENGINE_PROPERTY, "jdbc");
+        switch (engine) {
+            case "jdbc":
+                accountRepository = new AccountDAO();
+                followRepository = new FollowDAO();
+                messageRepository = new MessageDAO();
+                break;
+            case "memory":
+                accountRepository = new InMemoryAccountRepository();
+                followRepository = new InMemoryFollowRepository();
+                messageRepository = new InMemoryMessageRepository(accountRepository);
+                break;
+            case "offheap":
+                accountRepository = new InMemoryAccountRepository();
+                followRepository = new InMemoryFollowRepository();
+                messageRepository = new OffHeapMessageRepository(accountRepository);
+                break;
+            case "log":
+                accountRepository = new AccountDAO();
+                followRepository = new FollowDAO();
+                messageRepository = openLog(accountRepository);
+                break;
+            case "sharded":
+                accountRepository = new AccountDAO();
+                followRepository = new FollowDAO();
+                messageRepository = new ShardedMessageDAO(accountRepository);
+                break;
+            default:
+                throw new IllegalStateException("Unknown " + ENGINE_PROPERTY + ": " + engine);
+        }
+
+        int cacheSize = Integer.getInteger(CACHE_SIZE_PROPERTY, 0);
+        if (cacheSize > 0) {
+            CachingAccountRepository accounts = new CachingAccountRepository(accountRepository, cacheSize);
+            CachingMessageRepository messages = new CachingMessageRepository(messageRepository, cacheSize);
+            if (invalidationBus != null) {
+                invalidationBus.subscribe(accounts);
+                invalidationBus.subscribe(messages);
+            }
+            accountRepository = accounts;
+            messageRepository = messages;
+        }
+
+        accountRepository = new ChangeCapturingAccountRepository(accountRepository, changeStream);
+        messageRepository = new ChangeCapturingMessageRepository(messageRepository, changeStream);
+
+        int replicas = Integer.getInteger(REPLICAS_PROPERTY, 0);
+        if (engine.equals("jdbc") && replicas > 0) {
+            ReplicaSet replicaSet = new ReplicaSet(changeStream, replicas, Long.getLong(REPLICAS_MAX_WAIT_PROPERTY, 100));
+            accountRepository = new ReplicatedAccountRepository(accountRepository, replicaSet);
+            messageRepository = new ReplicatedMessageRepository(messageRepository, replicaSet);
+        }
+    }
+
+    private static InvalidationBus openInvalidationBus() {
+        String bus = System.getProperty(INVALIDATION_BUS_PROPERTY, "none");
+        long heartbeatMillis = Long.getLong(INVALIDATION_HEARTBEAT_PROPERTY, 100);
+        try {
+            switch (bus) {
+                case "none":
+                    return null;
+                case "multicast":
+                    return new MulticastInvalidationBus(
+                        InetAddress.getByName(System.getProperty(INVALIDATION_MULTICAST_GROUP_PROPERTY, "239.1.2.3")),
+                        Integer.getInteger(INVALIDATION_MULTICAST_PORT_PROPERTY, 4446), heartbeatMillis);
+                case "tcp":
+                    List<InetSocketAddress> peers = new ArrayList<>();
+                    for (String peer : System.getProperty(INVALIDATION_TCP_PEERS_PROPERTY, "").split(",")) {
+                        if (!peer.isBlank()) {
+                            int colon = peer.lastIndexOf(':');
+                            peers.add(new InetSocketAddress(peer.substring(0, colon).trim(),
+                                Integer.parseInt(peer.substring(colon + 1).trim())));
+                        }
+                    }
+                    return new TcpInvalidationBus(Integer.getInteger(INVALIDATION_TCP_PORT_PROPERTY, 4447), peers,
+                        heartbeatMillis);
+                default:
+                    throw new IllegalStateException("Unknown " + INVALIDATION_BUS_PROPERTY + ": " + bus);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open the invalidation bus", ex);
+        }
+    }
+
+    private static ChangeStream openChangeStream() {
+        String directory = System.getProperty(CHANGES_DIR_PROPERTY, "");
+        try {
+            return new ChangeStream(Integer.getInteger(CHANGES_CAPACITY_PROPERTY, ChangeStream.DEFAULT_CAPACITY),
+                directory.isEmpty() ? null : Paths.get(directory),
+                Integer.getInteger(CHANGES_SEGMENT_BYTES_PROPERTY, ChangeStream.DEFAULT_SEGMENT_BYTES),
+                Integer.getInteger(CHANGES_SEGMENTS_PROPERTY, ChangeStream.DEFAULT_RETAINED_SEGMENTS));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open the change log", ex);
+        }
+    }
+
+    private static MessageRepository openLog(AccountRepository accountRepository) {
+        try {
+            return new LogMessageRepository(accountRepository,
+                Paths.get(System.getProperty(LOG_DIR_PROPERTY, "messagelog")),
+                FsyncPolicy.fromString(System.getProperty(LOG_FSYNC_PROPERTY, "group")),
+                Long.getLong(LOG_FSYNC_INTERVAL_PROPERTY, LogMessageRepository.DEFAULT_FSYNC_INTERVAL_MILLIS),
+                Integer.getInteger(LOG_SEGMENT_BYTES_PROPERTY, LogMessageRepository.DEFAULT_SEGMENT_BYTES));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open the message log", ex);
+        }
+    }
+}
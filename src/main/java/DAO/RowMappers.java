@@ -0,0 +1,52 @@
+package DAO;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * Column lists and row mapping shared by the JDBC DAOs.
+ *
+ * Every query selects the columns in exactly the order listed here, so rows are mapped by column index instead of
+ * by label. That skips the per-row label lookup in the driver and means a row allocates nothing but the model
+ * object and its strings.
+ */
+final class RowMappers {
+
+    /**
+     * Columns of the message table, in the order toMessage reads them.
+     */
+    static final String MESSAGE_COLUMNS = "message_id, posted_by, message_text, time_posted_epoch";
+
+    /**
+     * Columns of the account table, in the order toAccount reads them.
+     */
+    static final String ACCOUNT_COLUMNS = "account_id, username, password";
+
+    private RowMappers() {
+    }
+
+    /**
+     * Map the current row of a ResultSet selected with MESSAGE_COLUMNS.
+     *
+     * @param rs the ResultSet positioned on a message row.
+     * @return the Message created from the row.
+     * @throws SQLException
+     */
+    static Message toMessage(ResultSet rs) throws SQLException {
+        return new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+    }
+
+    /**
+     * Map the current row of a ResultSet selected with ACCOUNT_COLUMNS.
+     *
+     * @param rs the ResultSet positioned on an account row.
+     * @return the Account created from the row.
+     * @throws SQLException
+     */
+    static Account toAccount(ResultSet rs) throws SQLException {
+        return new Account(rs.getInt(1), rs.getString(2), rs.getString(3));
+    }
+}
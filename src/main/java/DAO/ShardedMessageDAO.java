@@ -0,0 +1,536 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.AccountSummary;
+import Model.Message;
+import Util.ShardConnectionUtil;
+
+/**
+ * MessageRepository that partitions messages across the H2 databases of ShardConnectionUtil by a hash of posted_by.
+ *
+ * Every message of an account lives in one shard, so inserts, listings and counts by account touch only that shard.
+ * Ids come from one sequence shared by the shards (see ShardConnectionUtil.nextMessageIds), so they increase in the
+ * order they are assigned as the MessageRepository contract requires, and shard i only holds ids with
+ * (message_id - 1) mod N == i, so lookups, updates and deletes by id go straight to it. getAllMessages queries every
+ * shard in parallel and merges the sorted results on message_id.
+ *
+ * The shards have no account table, so the foreign key on posted_by is checked against the given AccountRepository.
+ */
+public class ShardedMessageDAO implements MessageRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedMessageDAO.class);
+
+    private final AccountRepository accountRepository;
+    private final int shardCount;
+    private final ExecutorService shardExecutor;
+
+    /**
+     * @param accountRepository the accounts that posted_by must refer to.
+     */
+    public ShardedMessageDAO(AccountRepository accountRepository) {
+        this.accountRepository = accountRepository;
+        this.shardCount = ShardConnectionUtil.shardCount();
+
+        AtomicInteger threads = new AtomicInteger();
+        this.shardExecutor = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "message-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Retrieves all the Messages, querying every shard in parallel.
+     *
+     * @return a list containing all the messages, in message_id order.
+     */
+    @Override
+    public List<Message> getAllMessages() {
+        return getMessagesAfter(0);
+    }
+
+    /**
+     * Retrieves the messages newer than a given one, querying every shard in parallel.
+     *
+     * @param message_id the id of the newest message already seen, 0 for all.
+     * @return a list containing the messages with a greater message_id, in message_id order.
+     */
+    @Override
+    public List<Message> getMessagesAfter(int message_id) {
+        List<CompletableFuture<List<Message>>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int queried = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> getMessagesAfter(queried, message_id), shardExecutor));
+        }
+
+        List<List<Message>> shards = new ArrayList<>(shardCount);
+        for (CompletableFuture<List<Message>> future : futures) {
+            shards.add(future.join());
+        }
+        return merge(shards);
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int account_id) {
+        List<Message> messages = new ArrayList<>();
+
+        String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE posted_by = ? ORDER BY message_id";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shardOfAccount(account_id));
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, account_id);
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                messages.add(RowMappers.toMessage(rs));
+            }
+        } catch (SQLException ex) {
+            logger.error("getAllMessagesByAccountId threw an exception, account_id: {}, message: {}", account_id, ex.getMessage());
+        }
+
+        return messages;
+    }
+
+    @Override
+    public int countMessagesByAccountId(int account_id) {
+        String query = "SELECT COUNT(*) FROM message WHERE posted_by = ?";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shardOfAccount(account_id));
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, account_id);
+
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+        } catch (SQLException ex) {
+            logger.error("countMessagesByAccountId threw an exception, account_id: {}, message: {}", account_id, ex.getMessage());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Counts the messages of every account that posted in a range of time, grouping on every shard in parallel. An
+     * account's messages are all on one shard, so the shards' counts are disjoint.
+     * 
+     * @param from_epoch only messages with a time_posted_epoch at or after this.
+     * @param to_epoch only messages with a time_posted_epoch before this.
+     * @return the number of messages by posted_by.
+     */
+    @Override
+    public Map<Integer, Integer> countMessagesPerAccount(long from_epoch, long to_epoch) {
+        List<CompletableFuture<Map<Integer, Integer>>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int queried = shard;
+            futures.add(CompletableFuture.supplyAsync(
+                () -> countMessagesPerAccount(queried, from_epoch, to_epoch), shardExecutor));
+        }
+
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (CompletableFuture<Map<Integer, Integer>> future : futures) {
+            counts.putAll(future.join());
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the messages of some accounts and finds the newest time_posted_epoch of each, querying the shards of the
+     * accounts in parallel.
+     * 
+     * @param account_ids the accounts.
+     * @return the summary of every account that has messages, by account_id, without usernames.
+     */
+    @Override
+    public Map<Integer, AccountSummary> summarizeMessagesByAccountIds(List<Integer> account_ids) {
+        List<List<Integer>> idsByShard = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            idsByShard.add(new ArrayList<>());
+        }
+        for (int account_id : account_ids) {
+            idsByShard.get(shardOfAccount(account_id)).add(account_id);
+        }
+
+        List<CompletableFuture<Map<Integer, AccountSummary>>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int queried = shard;
+            if (!idsByShard.get(shard).isEmpty()) {
+                futures.add(CompletableFuture.supplyAsync(
+                    () -> summarizeMessagesByAccountIds(queried, idsByShard.get(queried)), shardExecutor));
+            }
+        }
+
+        Map<Integer, AccountSummary> summaries = new HashMap<>();
+        for (CompletableFuture<Map<Integer, AccountSummary>> future : futures) {
+            summaries.putAll(future.join());
+        }
+        return summaries;
+    }
+
+    @Override
+    public Message getMessageById(int message_id) {
+        if (message_id <= 0) {
+            return null;
+        }
+
+        String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE message_id = ?";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shardOfMessage(message_id));
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, message_id);
+
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                return RowMappers.toMessage(rs);
+            }
+        } catch (SQLException ex) {
+            logger.error("getMessageById threw an exception, message_id: {}, message: {}", message_id, ex.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieve many messages by message_id, querying the shards of the ids in parallel.
+     * 
+     * @param message_ids the ids of the messages.
+     * @return the messages that exist, by message_id.
+     */
+    @Override
+    public Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+        List<List<Integer>> idsByShard = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            idsByShard.add(new ArrayList<>());
+        }
+        for (int message_id : message_ids) {
+            if (message_id > 0) {
+                idsByShard.get(shardOfMessage(message_id)).add(message_id);
+            }
+        }
+
+        List<CompletableFuture<Map<Integer, Message>>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int queried = shard;
+            if (!idsByShard.get(shard).isEmpty()) {
+                futures.add(CompletableFuture.supplyAsync(
+                    () -> getMessagesByIds(queried, idsByShard.get(queried)), shardExecutor));
+            }
+        }
+
+        Map<Integer, Message> messages = new HashMap<>();
+        for (CompletableFuture<Map<Integer, Message>> future : futures) {
+            messages.putAll(future.join());
+        }
+        return messages;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        // Foreign key on posted_by.
+        if (accountRepository.getAccountById(message.getPosted_by()) == null) {
+            return null;
+        }
+
+        String query = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+        int shard = shardOfAccount(message.getPosted_by());
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shard);
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            int message_id = ShardConnectionUtil.nextMessageIds(shard, 1)[0];
+            ps.setInt(1, message_id);
+            ps.setInt(2, message.getPosted_by());
+            ps.setString(3, message.getMessage_text());
+            ps.setLong(4, message.getTime_posted_epoch());
+
+            ps.executeUpdate();
+
+            message.setMessage_id(message_id);
+            return message;
+        } catch (SQLException ex) {
+            logger.error("insertMessage threw an exception, message_obj: {}, message: {}", message, ex.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Splits the messages by shard and inserts each shard's part as one batch and transaction, all shards in
+     * parallel.
+     */
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        Message[] inserted = new Message[messages.size()];
+
+        List<List<Integer>> indexesByShard = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            indexesByShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            // Foreign key on posted_by, messages that fail it stay null.
+            if (accountRepository.getAccountById(message.getPosted_by()) != null) {
+                indexesByShard.get(shardOfAccount(message.getPosted_by())).add(i);
+            }
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            List<Integer> indexes = indexesByShard.get(shard);
+            if (!indexes.isEmpty()) {
+                int target = shard;
+                futures.add(CompletableFuture.runAsync(() -> insertBatch(target, messages, indexes, inserted),
+                    shardExecutor));
+            }
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.join();
+        }
+
+        return Arrays.asList(inserted);
+    }
+
+    @Override
+    public boolean updateMessageById(String message_text, int message_id) {
+        if (message_id <= 0) {
+            return false;
+        }
+
+        String query = "UPDATE message SET message_text = ? WHERE message_id = ?";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shardOfMessage(message_id));
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setString(1, message_text);
+            ps.setInt(2, message_id);
+
+            return ps.executeUpdate() > 0;
+        } catch (SQLException ex) {
+            logger.error("updateMessageById threw an exception, message_id: {}, message: {}", message_id, ex.getMessage());
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean deleteMessageById(int message_id) {
+        if (message_id <= 0) {
+            return false;
+        }
+
+        String query = "DELETE FROM message WHERE message_id = ?";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shardOfMessage(message_id));
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, message_id);
+
+            return ps.executeUpdate() > 0;
+        } catch (SQLException ex) {
+            logger.error("deleteMessageById threw an exception, message_id: {}, message: {}", message_id, ex.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the shard holding the messages of account_id.
+     */
+    int shardOfAccount(int account_id) {
+        // Spread consecutive account ids before reducing, so shard counts that share a factor with a pattern in the
+        // ids still balance.
+        return Math.floorMod(Integer.rotateLeft(account_id * 0x9E3779B9, 16), shardCount);
+    }
+
+    /**
+     * @return the shard that assigned message_id.
+     */
+    int shardOfMessage(int message_id) {
+        return (message_id - 1) % shardCount;
+    }
+
+    private List<Message> getMessagesAfter(int shard, int message_id) {
+        List<Message> messages = new ArrayList<>();
+
+        String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE message_id > ? ORDER BY message_id";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shard);
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setInt(1, message_id);
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                messages.add(RowMappers.toMessage(rs));
+            }
+        } catch (SQLException ex) {
+            logger.error("getMessagesAfter threw an exception, shard: {}, message_id: {}, message: {}", shard, message_id, ex.getMessage());
+        }
+
+        return messages;
+    }
+
+    private Map<Integer, Integer> countMessagesPerAccount(int shard, long from_epoch, long to_epoch) {
+        Map<Integer, Integer> counts = new HashMap<>();
+
+        String query = "SELECT posted_by, COUNT(*) FROM message WHERE time_posted_epoch >= ? AND time_posted_epoch < ? GROUP BY posted_by";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shard);
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            ps.setLong(1, from_epoch);
+            ps.setLong(2, to_epoch);
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                counts.put(rs.getInt(1), rs.getInt(2));
+            }
+        } catch (SQLException ex) {
+            logger.error("countMessagesPerAccount threw an exception, shard: {}, from_epoch: {}, to_epoch: {}, message: {}", shard, from_epoch, to_epoch, ex.getMessage());
+        }
+
+        return counts;
+    }
+
+    private Map<Integer, Message> getMessagesByIds(int shard, List<Integer> message_ids) {
+        Map<Integer, Message> messages = new HashMap<>();
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shard)) {
+            for (int from = 0; from < message_ids.size(); from += MessageDAO.IN_LIST_CHUNK) {
+                List<Integer> chunk = message_ids.subList(from,
+                    Math.min(from + MessageDAO.IN_LIST_CHUNK, message_ids.size()));
+                String query = "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE message_id IN ("
+                    + MessageDAO.placeholders(chunk.size()) + ")";
+
+                try (PreparedStatement ps = conn.prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setInt(i + 1, chunk.get(i));
+                    }
+
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        Message message = RowMappers.toMessage(rs);
+                        messages.put(message.getMessage_id(), message);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("getMessagesByIds threw an exception, shard: {}, message_ids: {}, message: {}", shard, message_ids, ex.getMessage());
+        }
+
+        return messages;
+    }
+
+    private Map<Integer, AccountSummary> summarizeMessagesByAccountIds(int shard, List<Integer> account_ids) {
+        Map<Integer, AccountSummary> summaries = new HashMap<>();
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shard)) {
+            for (int from = 0; from < account_ids.size(); from += MessageDAO.IN_LIST_CHUNK) {
+                List<Integer> chunk = account_ids.subList(from,
+                    Math.min(from + MessageDAO.IN_LIST_CHUNK, account_ids.size()));
+                String query = "SELECT posted_by, COUNT(*), MAX(time_posted_epoch) FROM message WHERE posted_by IN ("
+                    + MessageDAO.placeholders(chunk.size()) + ") GROUP BY posted_by";
+
+                try (PreparedStatement ps = conn.prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setInt(i + 1, chunk.get(i));
+                    }
+
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        summaries.put(rs.getInt(1),
+                            new AccountSummary(rs.getInt(1), null, rs.getInt(2), rs.getLong(3)));
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("summarizeMessagesByAccountIds threw an exception, shard: {}, account_ids: {}, message: {}", shard, account_ids, ex.getMessage());
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Insert messages.get(i) for every i in indexes into shard as one transaction, storing each result in
+     * inserted[i]. If the batch fails the messages are inserted one at a time, as in MessageDAO.insertMessages.
+     */
+    private void insertBatch(int shard, List<Message> messages, List<Integer> indexes, Message[] inserted) {
+        String query = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+
+        try (Connection conn = ShardConnectionUtil.getConnection(shard);
+                PreparedStatement ps = conn.prepareStatement(query)) {
+            int[] ids = ShardConnectionUtil.nextMessageIds(shard, indexes.size());
+            conn.setAutoCommit(false);
+            try {
+                for (int k = 0; k < ids.length; k++) {
+                    Message message = messages.get(indexes.get(k));
+                    ps.setInt(1, ids[k]);
+                    ps.setInt(2, message.getPosted_by());
+                    ps.setString(3, message.getMessage_text());
+                    ps.setLong(4, message.getTime_posted_epoch());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                conn.commit();
+                for (int k = 0; k < ids.length; k++) {
+                    Message message = messages.get(indexes.get(k));
+                    message.setMessage_id(ids[k]);
+                    inserted[indexes.get(k)] = message;
+                }
+                return;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            logger.error("insertMessages threw an exception, shard: {}, size: {}, message: {}", shard, indexes.size(), ex.getMessage());
+        }
+
+        for (int i : indexes) {
+            inserted[i] = insertMessage(messages.get(i));
+        }
+    }
+
+    /**
+     * k-way merge of lists that are each sorted by message_id.
+     */
+    private static List<Message> merge(List<List<Message>> sorted) {
+        int total = 0;
+        // Each cursor is {list index, position in that list}, ordered by the message_id at that position.
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(Math.max(1, sorted.size()),
+            (a, b) -> Integer.compare(sorted.get(a[0]).get(a[1]).getMessage_id(),
+                sorted.get(b[0]).get(b[1]).getMessage_id()));
+        for (int i = 0; i < sorted.size(); i++) {
+            total += sorted.get(i).size();
+            if (!sorted.get(i).isEmpty()) {
+                cursors.add(new int[] {i, 0});
+            }
+        }
+
+        List<Message> merged = new ArrayList<>(total);
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            List<Message> list = sorted.get(cursor[0]);
+            merged.add(list.get(cursor[1]));
+            if (++cursor[1] < list.size()) {
+                cursors.add(cursor);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,183 @@
+package DAO;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * InvalidationBus over a mesh of TCP connections: every instance listens on a port and connects to the port of every
+ * peer, and each packet is sent to every peer as a length prefixed frame.
+ *
+ * A connection that fails is dropped and reconnected by the next packet, heartbeats included; the peer sees the
+ * packets it missed in between as a gap in the seqs, see PacketInvalidationBus.
+ */
+public class TcpInvalidationBus extends PacketInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(TcpInvalidationBus.class);
+
+    /**
+     * How often an idle acceptor checks whether the bus was closed.
+     */
+    private static final int CLOSE_CHECK_MILLIS = 100;
+
+    private final class Peer {
+        final InetSocketAddress address;
+        Socket socket;
+        DataOutputStream out;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void send(ByteBuffer packet) {
+            try {
+                if (socket == null) {
+                    socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(address, connectTimeoutMillis);
+                    out = new DataOutputStream(socket.getOutputStream());
+                }
+                out.writeInt(packet.remaining());
+                out.write(packet.array(), packet.position(), packet.remaining());
+                out.flush();
+            } catch (IOException ex) {
+                disconnect();
+            }
+        }
+
+        void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    logger.error("disconnect threw an exception, peer: {}, message: {}", address, ex.getMessage());
+                }
+                socket = null;
+                out = null;
+            }
+        }
+    }
+
+    private final ServerSocket server;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final int connectTimeoutMillis;
+    private final Thread acceptor;
+
+    /**
+     * Listen on port and start sending to the peers.
+     *
+     * @param port the port to listen on for the connections of the peers.
+     * @param peers the addresses of the other instances.
+     * @param heartbeatMillis how often an idle instance tells the others where its seq is.
+     */
+    public TcpInvalidationBus(int port, List<InetSocketAddress> peers, long heartbeatMillis) throws IOException {
+        super(heartbeatMillis);
+        this.connectTimeoutMillis = (int) Math.max(1, heartbeatMillis);
+        for (InetSocketAddress address : peers) {
+            this.peers.add(new Peer(address));
+        }
+        this.server = new ServerSocket(port);
+        this.server.setSoTimeout(CLOSE_CHECK_MILLIS);
+        this.acceptor = new Thread(this::acceptPeers, "invalidation-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+        start();
+    }
+
+    /**
+     * @return the port this instance listens on.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            acceptor.join();
+            server.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            logger.error("close threw an exception, message: {}", ex.getMessage());
+        }
+        for (Peer peer : peers) {
+            peer.disconnect();
+        }
+        // Closing the sockets ends the blocked reads of their readers.
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                logger.error("close threw an exception, message: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Only the sender thread sends, so the peer connections need no lock.
+     */
+    @Override
+    protected void send(ByteBuffer packet) {
+        for (Peer peer : peers) {
+            peer.send(packet.duplicate());
+        }
+    }
+
+    private void acceptPeers() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                inbound.add(socket);
+                Thread reader = new Thread(() -> readPackets(socket), "invalidation-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (SocketTimeoutException ex) {
+                // Check whether the bus was closed.
+            } catch (IOException ex) {
+                if (!closed) {
+                    logger.error("acceptPeers threw an exception, message: {}", ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readPackets(Socket socket) {
+        byte[] buffer = new byte[MAX_PACKET_SIZE];
+        try (DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            while (!closed) {
+                int length = in.readInt();
+                if (length < 0 || length > buffer.length) {
+                    logger.error("readPackets got a frame of {} bytes from {}, dropping the connection", length,
+                        socket.getRemoteSocketAddress());
+                    return;
+                }
+                in.readFully(buffer, 0, length);
+                receive(ByteBuffer.wrap(buffer, 0, length));
+            }
+        } catch (IOException ex) {
+            // The peer went away; it reconnects on its next packet.
+        } finally {
+            inbound.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                logger.error("readPackets threw an exception, message: {}", ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * What anyone may see of an account, e.g. the author of a message: never the password.
+ */
+public class AccountProfile {
+
+    public int account_id;
+    public String username;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public AccountProfile() {
+    }
+
+    public AccountProfile(int account_id, String username) {
+        this.account_id = account_id;
+        this.username = username;
+    }
+
+    /**
+     * @param account an account.
+     * @return the profile of the account, null if account is null.
+     */
+    public static AccountProfile of(Account account) {
+        return account == null ? null : new AccountProfile(account.getAccount_id(), account.getUsername());
+    }
+
+    public int getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(int account_id) {
+        this.account_id = account_id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AccountProfile other = (AccountProfile) o;
+        return account_id == other.account_id && Objects.equals(username, other.username);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(account_id, username);
+    }
+
+    @Override
+    public String toString() {
+        return "AccountProfile{account_id=" + account_id + ", username=" + username + "}";
+    }
+}
@@ -0,0 +1,88 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * How many messages an account has posted and when it last did, as returned by GET /accounts/{account_id}/summary.
+ * Never holds the password.
+ */
+public class AccountSummary {
+
+    public int account_id;
+    public String username;
+    public int message_count;
+    /**
+     * The greatest time_posted_epoch of the account's messages, null if it has none.
+     */
+    public Long latest_time_posted_epoch;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public AccountSummary() {
+    }
+
+    public AccountSummary(int account_id, String username, int message_count, Long latest_time_posted_epoch) {
+        this.account_id = account_id;
+        this.username = username;
+        this.message_count = message_count;
+        this.latest_time_posted_epoch = latest_time_posted_epoch;
+    }
+
+    public int getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(int account_id) {
+        this.account_id = account_id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public int getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(int message_count) {
+        this.message_count = message_count;
+    }
+
+    public Long getLatest_time_posted_epoch() {
+        return latest_time_posted_epoch;
+    }
+
+    public void setLatest_time_posted_epoch(Long latest_time_posted_epoch) {
+        this.latest_time_posted_epoch = latest_time_posted_epoch;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AccountSummary other = (AccountSummary) o;
+        return account_id == other.account_id && message_count == other.message_count
+            && Objects.equals(username, other.username)
+            && Objects.equals(latest_time_posted_epoch, other.latest_time_posted_epoch);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(account_id, username, message_count, latest_time_posted_epoch);
+    }
+
+    @Override
+    public String toString() {
+        return "AccountSummary{account_id=" + account_id + ", username=" + username + ", message_count="
+            + message_count + ", latest_time_posted_epoch=" + latest_time_posted_epoch + "}";
+    }
+}
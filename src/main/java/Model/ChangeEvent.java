@@ -0,0 +1,122 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * One committed change to the account or message table, as published by the change stream.
+ *
+ * Carries the full row after the change; for MESSAGE_DELETED, the row as it was before the delete.
+ */
+public class ChangeEvent {
+
+    public enum Type {
+        ACCOUNT_CREATED, MESSAGE_CREATED, MESSAGE_UPDATED, MESSAGE_DELETED
+    }
+
+    /**
+     * Position in the change stream, starting at 1 and increasing by one per change without gaps.
+     */
+    public long seq;
+    public Type type;
+    /**
+     * When the change was published, in milliseconds since Jan 1, 1970.
+     */
+    public long changed_at;
+    /**
+     * The account without its password, for ACCOUNT_CREATED, otherwise null.
+     */
+    public Account account;
+    /**
+     * The message, for the MESSAGE_ types, otherwise null.
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public ChangeEvent() {
+    }
+
+    public ChangeEvent(long seq, Type type, long changed_at, Account account, Message message) {
+        this.seq = seq;
+        this.type = type;
+        this.changed_at = changed_at;
+        this.account = account;
+        this.message = message;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public long getChanged_at() {
+        return changed_at;
+    }
+
+    public void setChanged_at(long changed_at) {
+        this.changed_at = changed_at;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public void setAccount(Account account) {
+        this.account = account;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ChangeEvent other = (ChangeEvent) o;
+        return seq == other.seq && type == other.type && changed_at == other.changed_at
+            && sameAccount(account, other.account) && Objects.equals(message, other.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(seq, type, changed_at, account == null ? null : account.getAccount_id(), message);
+    }
+
+    /**
+     * Account.equals does not allow the null password of an event's account.
+     */
+    private static boolean sameAccount(Account a, Account b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getAccount_id() == b.getAccount_id() && Objects.equals(a.getUsername(), b.getUsername())
+            && Objects.equals(a.getPassword(), b.getPassword());
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{seq=" + seq + ", type=" + type + ", changed_at=" + changed_at + ", account=" + account
+            + ", message=" + message + "}";
+    }
+}
@@ -0,0 +1,74 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * An account's place on the leaderboard of most active posters, as listed by GET /leaderboard.
+ */
+public class LeaderboardEntry {
+
+    /**
+     * The place, 1 for the account with the most messages; accounts with as many messages are ranked by account_id.
+     */
+    public int rank;
+    public int account_id;
+    public int message_count;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public LeaderboardEntry() {
+    }
+
+    public LeaderboardEntry(int rank, int account_id, int message_count) {
+        this.rank = rank;
+        this.account_id = account_id;
+        this.message_count = message_count;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+
+    public int getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(int account_id) {
+        this.account_id = account_id;
+    }
+
+    public int getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(int message_count) {
+        this.message_count = message_count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        LeaderboardEntry other = (LeaderboardEntry) o;
+        return rank == other.rank && account_id == other.account_id && message_count == other.message_count;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rank, account_id, message_count);
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardEntry{rank=" + rank + ", account_id=" + account_id + ", message_count=" + message_count + "}";
+    }
+}
@@ -0,0 +1,116 @@
+package Model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Approximate activity of new messages, as returned by GET /analytics.
+ */
+public class MessageAnalytics {
+
+    /**
+     * When the figures were taken, in milliseconds since Jan 1, 1970.
+     */
+    public long as_of;
+    /**
+     * The estimated number of distinct accounts that posted, by window: 5m, 1h and 24h.
+     */
+    public Map<String, Long> distinct_posters = new LinkedHashMap<>();
+    /**
+     * The number of messages created, by window: 5m, 1h and 24h.
+     */
+    public Map<String, Long> messages = new LinkedHashMap<>();
+    /**
+     * The messages created in each of the last 60 seconds, oldest first, the current second last.
+     */
+    public long[] per_second = new long[0];
+    /**
+     * The messages created in each of the last 60 minutes, oldest first, the current minute last.
+     */
+    public long[] per_minute = new long[0];
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public MessageAnalytics() {
+    }
+
+    public MessageAnalytics(long as_of, Map<String, Long> distinct_posters, Map<String, Long> messages,
+            long[] per_second, long[] per_minute) {
+        this.as_of = as_of;
+        this.distinct_posters = distinct_posters;
+        this.messages = messages;
+        this.per_second = per_second;
+        this.per_minute = per_minute;
+    }
+
+    public long getAs_of() {
+        return as_of;
+    }
+
+    public void setAs_of(long as_of) {
+        this.as_of = as_of;
+    }
+
+    public Map<String, Long> getDistinct_posters() {
+        return distinct_posters;
+    }
+
+    public void setDistinct_posters(Map<String, Long> distinct_posters) {
+        this.distinct_posters = distinct_posters;
+    }
+
+    public Map<String, Long> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(Map<String, Long> messages) {
+        this.messages = messages;
+    }
+
+    public long[] getPer_second() {
+        return per_second;
+    }
+
+    public void setPer_second(long[] per_second) {
+        this.per_second = per_second;
+    }
+
+    public long[] getPer_minute() {
+        return per_minute;
+    }
+
+    public void setPer_minute(long[] per_minute) {
+        this.per_minute = per_minute;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MessageAnalytics other = (MessageAnalytics) o;
+        return as_of == other.as_of
+            && Objects.equals(distinct_posters, other.distinct_posters)
+            && Objects.equals(messages, other.messages)
+            && Arrays.equals(per_second, other.per_second)
+            && Arrays.equals(per_minute, other.per_minute);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(as_of, distinct_posters, messages, Arrays.hashCode(per_second),
+            Arrays.hashCode(per_minute));
+    }
+
+    @Override
+    public String toString() {
+        return "MessageAnalytics{as_of=" + as_of + ", distinct_posters=" + distinct_posters + ", messages=" + messages
+            + ", per_second=" + Arrays.toString(per_second) + ", per_minute=" + Arrays.toString(per_minute) + "}";
+    }
+}
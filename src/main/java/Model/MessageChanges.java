@@ -0,0 +1,93 @@
+package Model;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * What changed in the messages of an account since a client's cursor, as returned by
+ * GET /accounts/{account_id}/messages/changes.
+ *
+ * The client applies messages (created or edited, newest version) and deleted (ids, the tombstones) to what it has,
+ * and sends cursor back next time. If reset is true the cursor was too old or unknown, messages is the whole list
+ * and the client replaces what it has.
+ */
+public class MessageChanges {
+
+    /**
+     * The seq of the last change this covers and the epoch of the change stream it is a seq of, see
+     * ChangeStream.cursor().
+     */
+    public String cursor;
+    public boolean reset;
+    public List<Message> messages;
+    public List<Integer> deleted;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public MessageChanges() {
+    }
+
+    public MessageChanges(String cursor, boolean reset, List<Message> messages, List<Integer> deleted) {
+        this.cursor = cursor;
+        this.reset = reset;
+        this.messages = messages;
+        this.deleted = deleted;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<Integer> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<Integer> deleted) {
+        this.deleted = deleted;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MessageChanges other = (MessageChanges) o;
+        return Objects.equals(cursor, other.cursor) && reset == other.reset && Objects.equals(messages, other.messages)
+            && Objects.equals(deleted, other.deleted);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cursor, reset, messages, deleted);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChanges{cursor=" + cursor + ", reset=" + reset + ", messages=" + messages + ", deleted="
+            + deleted + "}";
+    }
+}
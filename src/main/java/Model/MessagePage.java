@@ -0,0 +1,65 @@
+package Model;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A list of messages together with their authors, as returned by the message listings when asked for ?embed=author.
+ *
+ * authors has every distinct posted_by of messages once, in the order they first appear, so a client renders the
+ * page without looking up accounts. An author whose account no longer exists is left out.
+ */
+public class MessagePage {
+
+    public List<Message> messages;
+    public List<AccountProfile> authors;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public MessagePage() {
+    }
+
+    public MessagePage(List<Message> messages, List<AccountProfile> authors) {
+        this.messages = messages;
+        this.authors = authors;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<AccountProfile> getAuthors() {
+        return authors;
+    }
+
+    public void setAuthors(List<AccountProfile> authors) {
+        this.authors = authors;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MessagePage other = (MessagePage) o;
+        return Objects.equals(messages, other.messages) && Objects.equals(authors, other.authors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(messages, authors);
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePage{messages=" + messages + ", authors=" + authors + "}";
+    }
+}
@@ -0,0 +1,92 @@
+package Model;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The answer to a long poll for new messages, as returned by GET /messages/poll.
+ *
+ * messages are the messages created after the client's cursor, in the order they were created, and cursor is the
+ * value to poll with next time. If reset is true the cursor was missing or too old, messages is the whole list and
+ * the client replaces what it has. authors is only set when asked for with ?embed=author, see MessagePage.
+ */
+public class MessagePoll {
+
+    /**
+     * The seq of the last change this covers and the epoch of the change stream it is a seq of, see
+     * ChangeStream.cursor().
+     */
+    public String cursor;
+    public boolean reset;
+    public List<Message> messages;
+    public List<AccountProfile> authors;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public MessagePoll() {
+    }
+
+    public MessagePoll(String cursor, boolean reset, List<Message> messages, List<AccountProfile> authors) {
+        this.cursor = cursor;
+        this.reset = reset;
+        this.messages = messages;
+        this.authors = authors;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<AccountProfile> getAuthors() {
+        return authors;
+    }
+
+    public void setAuthors(List<AccountProfile> authors) {
+        this.authors = authors;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MessagePoll other = (MessagePoll) o;
+        return Objects.equals(cursor, other.cursor) && reset == other.reset && Objects.equals(messages, other.messages)
+            && Objects.equals(authors, other.authors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cursor, reset, messages, authors);
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePoll{cursor=" + cursor + ", reset=" + reset + ", messages=" + messages + ", authors="
+            + authors + "}";
+    }
+}
@@ -0,0 +1,64 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * A term and how often it was used in a window, as listed by GET /trending.
+ */
+public class TrendingTerm {
+
+    public String term;
+    /**
+     * The estimated number of messages that used the term in the window, never below the true number.
+     */
+    public long count;
+
+    /**
+     * A default, no-args constructor for Jackson.
+     */
+    public TrendingTerm() {
+    }
+
+    public TrendingTerm(String term, long count) {
+        this.term = term;
+        this.count = count;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public void setTerm(String term) {
+        this.term = term;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TrendingTerm other = (TrendingTerm) o;
+        return count == other.count && Objects.equals(term, other.term);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(term, count);
+    }
+
+    @Override
+    public String toString() {
+        return "TrendingTerm{term=" + term + ", count=" + count + "}";
+    }
+}
@@ -1,26 +1,48 @@
 package Service;
 
-import DAO.AccountDAO;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import DAO.AccountRepository;
+import DAO.InvalidationBus;
+import DAO.Repositories;
 import Model.Account;
+import Model.AccountProfile;
 
 public class AccountService {
     
-    private AccountDAO accountDAO;
+    private AccountRepository accountRepository;
+    private InvalidationBus invalidationBus;
 
     /**
-     * Default constructor when no AccountDAO is provided.
+     * Default constructor when no AccountRepository is provided, uses the repository of the configured engine.
      */
     public AccountService() {
-        this.accountDAO = new AccountDAO();
+        this.accountRepository = Repositories.accountRepository();
+        this.invalidationBus = Repositories.invalidationBus();
     }
 
     /**
-     * Constructor when an AccountDAO is provided.
+     * Constructor when an AccountRepository is provided.
      * 
-     * @param accountDAO
+     * @param accountRepository
      */
-    public AccountService(AccountDAO accountDAO) {
-        this.accountDAO = accountDAO;
+    public AccountService(AccountRepository accountRepository) {
+        this.accountRepository = accountRepository;
+    }
+
+    /**
+     * Constructor when an AccountRepository and InvalidationBus are provided. Every new account is published to the
+     * bus, so that other instances drop what they cached of it.
+     * 
+     * @param accountRepository
+     * @param invalidationBus
+     */
+    public AccountService(AccountRepository accountRepository, InvalidationBus invalidationBus) {
+        this.accountRepository = accountRepository;
+        this.invalidationBus = invalidationBus;
     }
 
     /**
@@ -45,11 +67,15 @@ public class AccountService {
         }
 
         // Ensure account does not already exist.
-        if (accountDAO.getAccountByUserame(account.getUsername()) != null) {
+        if (accountRepository.getAccountByUserame(account.getUsername()) != null) {
             return null;
         }
 
-        return accountDAO.insertAccount(account);
+        Account registered = accountRepository.insertAccount(account);
+        if (registered != null && invalidationBus != null) {
+            invalidationBus.publishAccount(registered.getAccount_id());
+        }
+        return registered;
     }
 
     /**
@@ -63,7 +89,7 @@ public class AccountService {
      */
     public Account authenticate(Account account) {
         // Ensure account exists.
-        Account existingAccount = accountDAO.getAccountByUserame(account.getUsername());
+        Account existingAccount = accountRepository.getAccountWithPassword(account.getUsername());
         if (existingAccount == null) {
             return null;
         }
@@ -75,4 +101,21 @@ public class AccountService {
 
         return existingAccount;
     }
+
+    /**
+     * Get the profiles of many accounts at once, e.g. the authors of one page of messages.
+     * 
+     * @param account_ids the ids of the accounts, in any order and possibly repeated.
+     * @return the profiles in the order of account_ids, null for an account that doesn't exist.
+     */
+    public List<AccountProfile> getAccountProfiles(List<Integer> account_ids) {
+        // Look up each account once.
+        Map<Integer, Account> accounts = accountRepository.getAccountsByIds(
+            new ArrayList<>(new LinkedHashSet<>(account_ids)));
+        List<AccountProfile> profiles = new ArrayList<>(account_ids.size());
+        for (int account_id : account_ids) {
+            profiles.add(AccountProfile.of(accounts.get(account_id)));
+        }
+        return profiles;
+    }
 }
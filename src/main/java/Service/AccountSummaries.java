@@ -0,0 +1,239 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import DAO.ChangeStream;
+import DAO.InvalidationBus;
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import Model.AccountSummary;
+import Model.ChangeEvent;
+import Model.Message;
+
+/**
+ * The message_count and latest time_posted_epoch of accounts, e.g. for GET /accounts/{account_id}/summary, without
+ * reading an account's messages per request.
+ *
+ * An account's summary is read from the repository, with one GROUP BY per chunk of accounts, and then kept in memory
+ * and maintained from the ChangeStream. Every lookup first applies the events it has not seen; a write publishes its
+ * events before it returns, so a client that posted a message through this instance sees it counted. Deleting an
+ * account's latest message makes its summary be read again, as the next latest is not known.
+ *
+ * A summary read from the repository is only kept if every write of its account is in the events applied so far,
+ * none running or published since, see ChangeStream.settled(); otherwise it is read again, and after a few tries
+ * returned without being kept. When the change stream no longer holds the events after the ones applied, every
+ * summary is dropped and read again when next asked for.
+ *
+ * Writes of other instances sharing the storage are not in this stream. Their invalidations on the InvalidationBus
+ * make every kept summary be read again when next asked for, as they carry a message_id and not its account, so
+ * until one arrives a summary may miss them. At most capacity summaries are kept, the least recently used is dropped
+ * first. Thread safe: lookups and writes are applied under one lock.
+ *
+ * Reads summaries.capacity (default 100000) in fromSystemProperties.
+ */
+public class AccountSummaries implements InvalidationBus.Listener {
+
+    public static final String CAPACITY_PROPERTY = "summaries.capacity";
+
+    private static final int BATCH = 256;
+    private static final int LOAD_ATTEMPTS = 3;
+
+    private static final class Entry {
+        int count;
+        long latest;
+        /**
+         * The latest message was deleted, read again before use.
+         */
+        boolean stale;
+        /**
+         * The invalidation generation it was read in, read again before use in a later one.
+         */
+        long generation;
+    }
+
+    private final MessageRepository messageRepository;
+    private final ChangeStream changes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, Entry> entries;
+    private long cursor;
+    /**
+     * Bumped by every invalidation from another instance.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param messageRepository where the summaries are read from.
+     * @param changes the change stream of messageRepository.
+     * @param capacity the most summaries kept.
+     */
+    public AccountSummaries(MessageRepository messageRepository, ChangeStream changes, int capacity) {
+        this.messageRepository = messageRepository;
+        this.changes = changes;
+        this.cursor = changes.lastSeq();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return summaries configured by the summaries.* system properties.
+     */
+    public static AccountSummaries fromSystemProperties(MessageRepository messageRepository, ChangeStream changes) {
+        return new AccountSummaries(messageRepository, changes, Integer.getInteger(CAPACITY_PROPERTY, 100000));
+    }
+
+    /**
+     * @param account_ids the accounts, existing or not.
+     * @return the summary of every account, by account_id, without usernames; accounts with no messages have a
+     * message_count of 0.
+     */
+    public Map<Integer, AccountSummary> summarize(List<Integer> account_ids) {
+        Map<Integer, AccountSummary> summaries = new HashMap<>();
+        lock.lock();
+        try {
+            catchUp();
+            Set<Integer> missing = new LinkedHashSet<>();
+            for (int account_id : account_ids) {
+                Entry entry = entries.get(account_id);
+                if (current(entry)) {
+                    summaries.put(account_id, summary(account_id, entry.count, entry.latest));
+                } else {
+                    missing.add(account_id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                // Taken before loading, which may drop some of them to stay within capacity.
+                load(new ArrayList<>(missing), summaries);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return summaries;
+    }
+
+    @Override
+    public void invalidateAccount(int account_id) {
+        // Writing an account changes none of its summary.
+    }
+
+    @Override
+    public void invalidateMessage(int message_id) {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Read the summaries of accounts from the repository as of the newest change, with the lock held, and keep them.
+     *
+     * @param summaries where to put the summaries read, kept or not.
+     */
+    private void load(List<Integer> account_ids, Map<Integer, AccountSummary> summaries) {
+        List<Integer> unsettled = account_ids;
+        for (int attempt = 1; !unsettled.isEmpty(); attempt++) {
+            catchUp();
+            long seq = cursor;
+            long readGeneration = generation.get();
+            // Read a replica that has every change applied.
+            ReadConsistency.readAfter(seq);
+            Map<Integer, AccountSummary> read = messageRepository.summarizeMessagesByAccountIds(unsettled);
+            boolean invalidated = generation.get() != readGeneration;
+
+            List<Integer> retry = new ArrayList<>();
+            for (int account_id : unsettled) {
+                AccountSummary summary = read.get(account_id);
+                if (invalidated || !changes.settled(account_id, seq)) {
+                    // Written to while reading, the summary may or may not have the write.
+                    if (attempt < LOAD_ATTEMPTS) {
+                        retry.add(account_id);
+                    } else {
+                        summaries.put(account_id, summary != null ? summary : summary(account_id, 0, 0));
+                    }
+                    continue;
+                }
+                Entry entry = entries.get(account_id);
+                if (entry == null) {
+                    entry = new Entry();
+                    entries.put(account_id, entry);
+                }
+                entry.count = summary == null ? 0 : summary.message_count;
+                entry.latest = summary == null ? 0 : summary.latest_time_posted_epoch;
+                entry.stale = false;
+                entry.generation = readGeneration;
+                summaries.put(account_id, summary(account_id, entry.count, entry.latest));
+            }
+            unsettled = retry;
+        }
+    }
+
+    private boolean current(Entry entry) {
+        return entry != null && !entry.stale && entry.generation == generation.get();
+    }
+
+    /**
+     * Apply the writes the summaries have not seen yet, with the lock held.
+     */
+    private void catchUp() {
+        while (true) {
+            List<ChangeEvent> events = changes.read(cursor, BATCH);
+            if (events == null) {
+                // The stream no longer holds the next event, start over.
+                entries.clear();
+                cursor = changes.lastSeq();
+                return;
+            }
+            if (events.isEmpty()) {
+                return;
+            }
+            for (ChangeEvent event : events) {
+                apply(event);
+                cursor = event.seq;
+            }
+        }
+    }
+
+    private void apply(ChangeEvent event) {
+        Message message = event.message;
+        if (message == null) {
+            return;
+        }
+        Entry entry = entries.get(message.getPosted_by());
+        if (!current(entry)) {
+            // Read from the repository when asked for.
+            return;
+        }
+        switch (event.type) {
+            case MESSAGE_CREATED:
+                entry.latest = entry.count == 0 ? message.getTime_posted_epoch()
+                    : Math.max(entry.latest, message.getTime_posted_epoch());
+                entry.count++;
+                break;
+            case MESSAGE_DELETED:
+                entry.count--;
+                if (entry.count > 0 && message.getTime_posted_epoch() >= entry.latest) {
+                    entry.stale = true;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static AccountSummary summary(int account_id, int count, long latest) {
+        return new AccountSummary(account_id, null, count, count == 0 ? null : latest);
+    }
+}
@@ -0,0 +1,154 @@
+package Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import Model.Message;
+import Model.MessageAnalytics;
+import Util.HyperLogLog;
+
+/**
+ * How many messages were created and by how many distinct accounts, over the last 5 minutes, hour and day, e.g. for
+ * GET /analytics, without reading the message table.
+ *
+ * Every created message is counted in ring buffers of buckets: 60 seconds, 60 minutes and 24 hours. A minute or hour
+ * bucket also holds a HyperLogLog of the accounts that posted in it, so the distinct posters of a window are estimated
+ * by merging the sketches of its buckets, within about 2%. Memory is fixed at about 84 sketches of 4KB, however many
+ * messages and accounts there are; a bucket is reused once it has left every window.
+ *
+ * Windows are whole buckets, e.g. the hour window is the current minute and the 59 before it. Counts start when the
+ * service does, and edits and deletes do not change them. Thread safe.
+ */
+public class ActivityCounters {
+
+    private static final long SECOND_MILLIS = 1000;
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final long HOUR_MILLIS = 3_600_000;
+
+    private static final class Bucket {
+        long index = -1;
+        long count;
+        final HyperLogLog posters;
+
+        Bucket(boolean posters) {
+            this.posters = posters ? new HyperLogLog() : null;
+        }
+    }
+
+    private final LongSupplier clock;
+    private final Bucket[] seconds = new Bucket[60];
+    private final Bucket[] minutes = new Bucket[60];
+    private final Bucket[] hours = new Bucket[24];
+
+    /**
+     * Count against the system clock.
+     */
+    public ActivityCounters() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock the current time in milliseconds since Jan 1, 1970.
+     */
+    public ActivityCounters(LongSupplier clock) {
+        this.clock = clock;
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = new Bucket(false);
+        }
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = new Bucket(true);
+        }
+        for (int i = 0; i < hours.length; i++) {
+            hours[i] = new Bucket(true);
+        }
+    }
+
+    /**
+     * Count a message that was created.
+     *
+     * @param message the new message.
+     */
+    public void recorded(Message message) {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            bucket(seconds, now / SECOND_MILLIS).count++;
+            Bucket minute = bucket(minutes, now / MINUTE_MILLIS);
+            minute.count++;
+            minute.posters.add(message.getPosted_by());
+            Bucket hour = bucket(hours, now / HOUR_MILLIS);
+            hour.count++;
+            hour.posters.add(message.getPosted_by());
+        }
+    }
+
+    /**
+     * @return the counts as of now.
+     */
+    public synchronized MessageAnalytics snapshot() {
+        long now = clock.getAsLong();
+        long minute = now / MINUTE_MILLIS;
+        long hour = now / HOUR_MILLIS;
+
+        Map<String, Long> distinct_posters = new LinkedHashMap<>();
+        Map<String, Long> messages = new LinkedHashMap<>();
+        HyperLogLog posters = new HyperLogLog();
+        messages.put("5m", window(minutes, minute, 5, posters));
+        distinct_posters.put("5m", posters.estimate());
+        posters.clear();
+        messages.put("1h", window(minutes, minute, 60, posters));
+        distinct_posters.put("1h", posters.estimate());
+        posters.clear();
+        messages.put("24h", window(hours, hour, 24, posters));
+        distinct_posters.put("24h", posters.estimate());
+
+        return new MessageAnalytics(now, distinct_posters, messages,
+            counts(seconds, now / SECOND_MILLIS), counts(minutes, minute));
+    }
+
+    /**
+     * Sum the buckets of a window and merge their posters.
+     *
+     * @param current the index of the current bucket.
+     * @param length the number of buckets in the window, ending with the current one.
+     * @param posters where the posters of the window are merged into.
+     * @return the number of messages in the window.
+     */
+    private static long window(Bucket[] ring, long current, int length, HyperLogLog posters) {
+        long count = 0;
+        for (int i = 0; i < length; i++) {
+            Bucket bucket = ring[(int) Math.floorMod(current - i, (long) ring.length)];
+            if (bucket.index == current - i) {
+                count += bucket.count;
+                posters.merge(bucket.posters);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the count of every bucket of the ring, oldest first, ending with the current one.
+     */
+    private static long[] counts(Bucket[] ring, long current) {
+        long[] counts = new long[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            long index = current - ring.length + 1 + i;
+            Bucket bucket = ring[(int) Math.floorMod(index, (long) ring.length)];
+            counts[i] = bucket.index == index ? bucket.count : 0;
+        }
+        return counts;
+    }
+
+    private static Bucket bucket(Bucket[] ring, long index) {
+        Bucket bucket = ring[(int) Math.floorMod(index, (long) ring.length)];
+        if (bucket.index != index) {
+            // The slot last held a bucket that has left every window.
+            bucket.count = 0;
+            if (bucket.posters != null) {
+                bucket.posters.clear();
+            }
+            bucket.index = index;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,413 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.ChangeStream;
+import DAO.FollowRepository;
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import Model.ChangeEvent;
+import Model.Message;
+import Util.IntHashMap;
+import Util.IntSetIndex;
+
+/**
+ * Who follows whom, and the home timeline of every account: the newest messages of the accounts it follows, e.g. for
+ * GET /accounts/{account_id}/home.
+ *
+ * Timelines are written on fan-out: creating a message adds its id to the timeline of every follower of its author,
+ * so reading a home timeline is one lookup and a read of the messages on the page. A timeline is a sorted array of
+ * the newest timeline.capacity (default 800) ids; older ones fall off the end. Following an account adds its newest
+ * messages to the follower's timeline, and unfollowing takes them out again.
+ *
+ * Accounts with more than timeline.fanoutLimit (default 10000) followers are not fanned out, which would write to
+ * that many timelines per message. Their new messages go to an outbox of the same capacity instead, and a read merges
+ * the outboxes of the accounts the reader follows into its timeline.
+ *
+ * Follows are stored in a FollowRepository, and the follow graph and the timelines are built in memory from it and
+ * the messages on first use. From then on they follow the ChangeStream: every call first fans out the messages
+ * created, and takes out those deleted, since the last one. When the stream no longer holds those changes
+ * everything is built again. Thread safe: reads share a read lock, writes take the write lock.
+ *
+ * Reads timeline.capacity and timeline.fanoutLimit in fromSystemProperties.
+ */
+public class HomeTimelines {
+
+    public static final String CAPACITY_PROPERTY = "timeline.capacity";
+    public static final String FANOUT_LIMIT_PROPERTY = "timeline.fanoutLimit";
+
+    /**
+     * The newest message ids of a timeline or outbox, each packed with its author as message_id << 32 | posted_by,
+     * in ascending order.
+     */
+    private static final class Timeline {
+        long[] entries = new long[8];
+        int size;
+
+        /**
+         * @return false if the entry was already there, or is older than every entry of a full timeline.
+         */
+        boolean add(long entry, int capacity) {
+            int at = Arrays.binarySearch(entries, 0, size, entry);
+            if (at >= 0) {
+                return false;
+            }
+            at = -at - 1;
+            if (size == capacity) {
+                if (at == 0) {
+                    return false;
+                }
+                // Drop the oldest to make room.
+                System.arraycopy(entries, 1, entries, 0, at - 1);
+                entries[at - 1] = entry;
+                return true;
+            }
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, Math.min(size * 2, capacity));
+            }
+            System.arraycopy(entries, at, entries, at + 1, size - at);
+            entries[at] = entry;
+            size++;
+            return true;
+        }
+
+        void remove(int message_id) {
+            for (int i = 0; i < size; i++) {
+                if (messageId(entries[i]) == message_id) {
+                    System.arraycopy(entries, i + 1, entries, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        void removeAuthor(int posted_by) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (author(entries[i]) != posted_by) {
+                    entries[kept++] = entries[i];
+                }
+            }
+            size = kept;
+        }
+
+        /**
+         * @return the ids of at most limit of the newest entries older than before.
+         */
+        int[] idsBefore(int before, int limit) {
+            int at = Arrays.binarySearch(entries, 0, size, entry(before, 0));
+            at = at >= 0 ? at : -at - 1;
+            int[] ids = new int[Math.min(limit, at)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = messageId(entries[at - ids.length + i]);
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Most changes read from the change stream at once.
+     */
+    private static final int BATCH = 256;
+
+    private final MessageRepository messageRepository;
+    private final ChangeStream changes;
+    private final FollowRepository follows;
+    private final int capacity;
+    private final int fanoutLimit;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntSetIndex following = new IntSetIndex();
+    private final IntSetIndex followers = new IntSetIndex();
+    private final IntHashMap<Timeline> timelines = new IntHashMap<>();
+    private final IntHashMap<Timeline> outboxes = new IntHashMap<>();
+    /**
+     * The seq of the last change applied, negative until built.
+     */
+    private volatile long cursor = -1;
+
+    /**
+     * @param messageRepository where the messages of a timeline are read from.
+     * @param changes the change stream of messageRepository.
+     * @param follows where follows are stored.
+     * @param capacity the most message ids a timeline or outbox keeps.
+     * @param fanoutLimit accounts with more followers than this are read from their outbox instead.
+     */
+    public HomeTimelines(MessageRepository messageRepository, ChangeStream changes, FollowRepository follows,
+            int capacity, int fanoutLimit) {
+        this.messageRepository = messageRepository;
+        this.changes = changes;
+        this.follows = follows;
+        this.capacity = capacity;
+        this.fanoutLimit = fanoutLimit;
+    }
+
+    /**
+     * @return timelines configured by the timeline.* system properties.
+     */
+    public static HomeTimelines fromSystemProperties(MessageRepository messageRepository, ChangeStream changes,
+            FollowRepository follows) {
+        return new HomeTimelines(messageRepository, changes, follows,
+            Integer.getInteger(CAPACITY_PROPERTY, 800), Integer.getInteger(FANOUT_LIMIT_PROPERTY, 10000));
+    }
+
+    /**
+     * Make follower follow followee, and add the newest messages of followee to its timeline.
+     *
+     * @param follower the account_id of the follower.
+     * @param followee the account_id of the account to follow.
+     * @return false if follower already followed followee, or the follow could not be stored.
+     */
+    public boolean follow(int follower, int followee) {
+        catchUp();
+        if (!follows.insertFollow(follower, followee)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            following.add(follower, followee);
+            followers.add(followee, follower);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Read outside the lock; a message created meanwhile is fanned out too, and only added once.
+        List<Message> messages = messageRepository.getAllMessagesByAccountId(followee);
+        lock.writeLock().lock();
+        try {
+            if (!following.contains(follower, followee)) {
+                // Unfollowed meanwhile.
+                return true;
+            }
+            Timeline timeline = timeline(follower);
+            for (int i = messages.size() - 1; i >= 0 && i >= messages.size() - capacity; i--) {
+                Message message = messages.get(i);
+                timeline.add(entry(message.getMessage_id(), message.getPosted_by()), capacity);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Make follower stop following followee, and take the messages of followee out of its timeline.
+     *
+     * @param follower the account_id of the follower.
+     * @param followee the account_id of the followed account.
+     * @return false if follower did not follow followee, or the unfollow could not be stored.
+     */
+    public boolean unfollow(int follower, int followee) {
+        catchUp();
+        if (!follows.deleteFollow(follower, followee)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            following.remove(follower, followee);
+            followers.remove(followee, follower);
+            Timeline timeline = timelines.get(follower);
+            if (timeline != null) {
+                timeline.removeAuthor(followee);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param account_id the account.
+     * @return the account_ids it follows, in ascending order.
+     */
+    public int[] following(int account_id) {
+        catchUp();
+        lock.readLock().lock();
+        try {
+            return following.values(account_id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param account_id the reader.
+     * @param before only messages with a smaller message_id, Integer.MAX_VALUE for the first page.
+     * @param limit the most messages to return.
+     * @return the newest messages of the accounts the reader follows, newest first.
+     */
+    public List<Message> home(int account_id, int before, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        catchUp();
+        // The timeline and every outbox give at most limit candidates each.
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            Timeline timeline = timelines.get(account_id);
+            ids = timeline == null ? new int[0] : timeline.idsBefore(before, limit);
+            for (int followee : following.values(account_id)) {
+                Timeline outbox = outboxes.get(followee);
+                if (outbox != null) {
+                    int[] more = outbox.idsBefore(before, limit);
+                    ids = Arrays.copyOf(ids, ids.length + more.length);
+                    System.arraycopy(more, 0, ids, ids.length - more.length, more.length);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // A message fanned out before its author passed fanoutLimit may be in an outbox as well.
+        Arrays.sort(ids);
+
+        // The ids were taken from the change stream, so read a replica that has them.
+        ReadConsistency.readAfter(cursor);
+        List<Message> messages = new ArrayList<>(Math.min(limit, ids.length));
+        int next = ids.length - 1;
+        while (next >= 0 && messages.size() < limit) {
+            // Read the newest ids still needed at once; more only if some of them were deleted since.
+            List<Integer> page = new ArrayList<>(limit - messages.size());
+            for (; next >= 0 && page.size() < limit - messages.size(); next--) {
+                if (next + 1 >= ids.length || ids[next] != ids[next + 1]) {
+                    page.add(ids[next]);
+                }
+            }
+            Map<Integer, Message> found = page.isEmpty() ? Map.of() : messageRepository.getMessagesByIds(page);
+            for (int message_id : page) {
+                Message message = found.get(message_id);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Apply the changes the timelines have not seen yet, building them first if they are not built.
+     */
+    private void catchUp() {
+        if (cursor >= 0 && cursor == changes.lastSeq()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (cursor < 0) {
+                build();
+            }
+            while (true) {
+                List<ChangeEvent> events = changes.read(cursor, BATCH);
+                if (events == null) {
+                    // The stream no longer holds the next event, start over.
+                    build();
+                    continue;
+                }
+                if (events.isEmpty()) {
+                    return;
+                }
+                for (ChangeEvent event : events) {
+                    if (event.type == ChangeEvent.Type.MESSAGE_CREATED) {
+                        created(event.message);
+                    } else if (event.type == ChangeEvent.Type.MESSAGE_DELETED) {
+                        removed(event.message);
+                    }
+                    cursor = event.seq;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build the follow graph from the stored follows and the timelines from the messages of the followed accounts,
+     * with the write lock held. The messages read may already have changes after the cursor, applying those again
+     * leaves the timelines as they are.
+     */
+    private void build() {
+        following.clear();
+        followers.clear();
+        timelines.clear();
+        outboxes.clear();
+        long seq = changes.lastSeq();
+        // Read a replica that has every change up to the cursor applied.
+        ReadConsistency.readAfter(seq);
+        Set<Integer> followed = new HashSet<>();
+        for (Map.Entry<Integer, List<Integer>> entry : follows.getAllFollows().entrySet()) {
+            for (int followee : entry.getValue()) {
+                following.add(entry.getKey(), followee);
+                followers.add(followee, entry.getKey());
+            }
+            followed.addAll(entry.getValue());
+        }
+        for (int followee : followed) {
+            List<Message> messages = messageRepository.getAllMessagesByAccountId(followee);
+            for (int i = Math.max(0, messages.size() - capacity); i < messages.size(); i++) {
+                created(messages.get(i));
+            }
+        }
+        cursor = seq;
+    }
+
+    /**
+     * Fan a message that was created out to the followers of its author, with the write lock held.
+     */
+    private void created(Message message) {
+        long entry = entry(message.getMessage_id(), message.getPosted_by());
+        if (followers.count(message.getPosted_by()) > fanoutLimit) {
+            Timeline outbox = outboxes.get(message.getPosted_by());
+            if (outbox == null) {
+                outbox = new Timeline();
+                outboxes.put(message.getPosted_by(), outbox);
+            }
+            outbox.add(entry, capacity);
+            return;
+        }
+        for (int follower : followers.values(message.getPosted_by())) {
+            timeline(follower).add(entry, capacity);
+        }
+    }
+
+    /**
+     * Take a message that was deleted out of every timeline, with the write lock held.
+     */
+    private void removed(Message message) {
+        Timeline outbox = outboxes.get(message.getPosted_by());
+        if (outbox != null) {
+            outbox.remove(message.getMessage_id());
+        }
+        for (int follower : followers.values(message.getPosted_by())) {
+            Timeline timeline = timelines.get(follower);
+            if (timeline != null) {
+                timeline.remove(message.getMessage_id());
+            }
+        }
+    }
+
+    private Timeline timeline(int account_id) {
+        Timeline timeline = timelines.get(account_id);
+        if (timeline == null) {
+            timeline = new Timeline();
+            timelines.put(account_id, timeline);
+        }
+        return timeline;
+    }
+
+    private static long entry(int message_id, int posted_by) {
+        return (long) message_id << 32 | (posted_by & 0xFFFFFFFFL);
+    }
+
+    private static int messageId(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int author(long entry) {
+        return (int) entry;
+    }
+}
@@ -0,0 +1,342 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.ChangeStream;
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import Model.ChangeEvent;
+import Model.LeaderboardEntry;
+import Model.Message;
+import Util.IntHashMap;
+
+/**
+ * The accounts with the most messages, of all time and of the current day (by time_posted_epoch, UTC), e.g. for
+ * GET /leaderboard, without a GROUP BY per request.
+ *
+ * Every account has a counter per period, and the accounts are ordered by count in a concurrent skip list, so a page
+ * is read without a lock and a write moves one account. The counters follow the ChangeStream: every message the
+ * repository inserts or deletes, batched or not, is counted when the next page is read, which first applies the
+ * events it has not seen.
+ *
+ * The counters start from, and are periodically replaced by, one countMessagesPerAccount of the repository (a GROUP BY
+ * posted_by): on the first read, every leaderboard.reconcileMs (default 60000) on a background thread, when the day
+ * changes, and when the change stream no longer holds the events after the ones counted. A write that commits while
+ * the counts are read may be counted twice, until the next time.
+ *
+ * Reads leaderboard.reconcileMs in fromSystemProperties.
+ */
+public class Leaderboard {
+
+    private static final Logger logger = LoggerFactory.getLogger(Leaderboard.class);
+
+    public static final String RECONCILE_PROPERTY = "leaderboard.reconcileMs";
+
+    /**
+     * The periods GET /leaderboard can rank over.
+     */
+    public enum Period {
+        ALL("all"), DAY("day");
+
+        private final String name;
+
+        Period(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param name all or day.
+         * @return the period, null if there is none by that name.
+         */
+        public static Period of(String name) {
+            for (Period period : values()) {
+                if (period.name.equals(name)) {
+                    return period;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final int BATCH = 256;
+    private static final int RECONCILE_ATTEMPTS = 3;
+    private static final long DAY_SECONDS = 86400;
+
+    private static final class Counter {
+        int count;
+    }
+
+    /**
+     * The counters of one period. Only changed with the lock held; order may be read at any time.
+     */
+    private static final class Ranking {
+        final IntHashMap<Counter> counters = new IntHashMap<>();
+        /**
+         * (Integer.MAX_VALUE - count) << 32 | account_id, so that ascending order is most messages first.
+         */
+        final ConcurrentSkipListSet<Long> order = new ConcurrentSkipListSet<>();
+
+        void add(int account_id, int delta) {
+            Counter counter = counters.get(account_id);
+            int count = counter == null ? 0 : counter.count;
+            set(account_id, count + delta);
+        }
+
+        void set(int account_id, int count) {
+            Counter counter = counters.get(account_id);
+            if (counter != null && counter.count == count) {
+                return;
+            }
+            // Add before removing, so a concurrent read sees the account at least once.
+            if (count > 0) {
+                order.add(key(account_id, count));
+            }
+            if (counter != null) {
+                order.remove(key(account_id, counter.count));
+            }
+            if (count > 0) {
+                if (counter == null) {
+                    counter = new Counter();
+                    counters.put(account_id, counter);
+                }
+                counter.count = count;
+            } else if (counter != null) {
+                counters.remove(account_id);
+            }
+        }
+
+        void setAll(Map<Integer, Integer> counts) {
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                set(entry.getKey(), entry.getValue());
+            }
+            for (Long key : order) {
+                int account_id = accountId(key);
+                if (!counts.containsKey(account_id)) {
+                    set(account_id, 0);
+                }
+            }
+        }
+    }
+
+    private final MessageRepository messageRepository;
+    private final ChangeStream changes;
+    private final LongSupplier clock;
+    private final long reconcileMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Ranking allTime = new Ranking();
+    private final Ranking daily = new Ranking();
+    private long day;
+    private long cursor;
+    private volatile boolean started;
+    private ScheduledExecutorService reconciler;
+    private boolean closed;
+
+    /**
+     * @param messageRepository where the counts are reconciled from.
+     * @param changes the change stream of messageRepository.
+     * @param clock the current time in milliseconds since Jan 1, 1970, which decides the current day.
+     * @param reconcileMillis how often the counts are reconciled, 0 for only when they must be.
+     */
+    public Leaderboard(MessageRepository messageRepository, ChangeStream changes, LongSupplier clock,
+            long reconcileMillis) {
+        this.messageRepository = messageRepository;
+        this.changes = changes;
+        this.clock = clock;
+        this.reconcileMillis = reconcileMillis;
+    }
+
+    /**
+     * @return a leaderboard against the system clock, configured by the leaderboard.* system properties.
+     */
+    public static Leaderboard fromSystemProperties(MessageRepository messageRepository, ChangeStream changes) {
+        return new Leaderboard(messageRepository, changes, System::currentTimeMillis,
+            Long.getLong(RECONCILE_PROPERTY, 60000));
+    }
+
+    /**
+     * @param period the period to rank over.
+     * @param offset how many of the most active accounts to skip.
+     * @param limit the most accounts to return.
+     * @return the accounts with the most messages in the period, most first.
+     */
+    public List<LeaderboardEntry> top(Period period, int offset, int limit) {
+        refresh();
+        Ranking ranking = period == Period.DAY ? daily : allTime;
+
+        List<LeaderboardEntry> entries = new ArrayList<>(Math.max(Math.min(limit, 1000), 0));
+        Set<Integer> seen = new HashSet<>();
+        int rank = 0;
+        for (Long key : ranking.order) {
+            if (entries.size() >= limit) {
+                break;
+            }
+            if (!seen.add(accountId(key))) {
+                // Seen between an update's add and remove.
+                continue;
+            }
+            rank++;
+            if (rank > offset) {
+                entries.add(new LeaderboardEntry(rank, accountId(key), count(key)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Stop reconciling in the background; a reconcile that is running finishes first.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (reconciler != null) {
+                reconciler.shutdown();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply the writes the counters have not seen yet. If the counters are busy being reconciled, answer from them as
+     * they are rather than wait.
+     */
+    private void refresh() {
+        if (!started) {
+            lock.lock();
+            try {
+                if (!started) {
+                    reconcile();
+                    startReconciler();
+                    started = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (lock.tryLock()) {
+            try {
+                catchUp();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void catchUp() {
+        if (today() != day) {
+            reconcile();
+            return;
+        }
+        while (true) {
+            List<ChangeEvent> events = changes.read(cursor, BATCH);
+            if (events == null) {
+                // The stream no longer holds the next event.
+                reconcile();
+                return;
+            }
+            if (events.isEmpty()) {
+                return;
+            }
+            for (ChangeEvent event : events) {
+                apply(event);
+                cursor = event.seq;
+            }
+        }
+    }
+
+    private void apply(ChangeEvent event) {
+        Message message = event.message;
+        int delta;
+        switch (event.type) {
+            case MESSAGE_CREATED:
+                delta = 1;
+                break;
+            case MESSAGE_DELETED:
+                delta = -1;
+                break;
+            default:
+                return;
+        }
+        allTime.add(message.getPosted_by(), delta);
+        if (Math.floorDiv(message.getTime_posted_epoch(), DAY_SECONDS) == day) {
+            daily.add(message.getPosted_by(), delta);
+        }
+    }
+
+    /**
+     * Replace the counters with the counts of the repository as of the newest change, with the lock held.
+     */
+    private void reconcile() {
+        for (int attempt = 1; ; attempt++) {
+            long seq = changes.lastSeq();
+            long today = today();
+            // Read a replica that has every change counted.
+            ReadConsistency.readAfter(seq);
+            Map<Integer, Integer> all = messageRepository.countMessagesPerAccount(Long.MIN_VALUE, Long.MAX_VALUE);
+            Map<Integer, Integer> ofToday = messageRepository.countMessagesPerAccount(today * DAY_SECONDS,
+                (today + 1) * DAY_SECONDS);
+            if (changes.lastSeq() != seq && attempt < RECONCILE_ATTEMPTS) {
+                // Written to while counting, count again.
+                continue;
+            }
+            allTime.setAll(all);
+            daily.setAll(ofToday);
+            day = today;
+            cursor = seq;
+            return;
+        }
+    }
+
+    private void startReconciler() {
+        if (reconcileMillis <= 0 || closed) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leaderboard-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            lock.lock();
+            ReadConsistency.beginRequest(false, 0);
+            try {
+                reconcile();
+            } catch (RuntimeException ex) {
+                logger.error("reconcile threw an exception, message: {}", ex.getMessage());
+            } finally {
+                ReadConsistency.endRequest();
+                lock.unlock();
+            }
+        }, reconcileMillis, reconcileMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private long today() {
+        return Math.floorDiv(clock.getAsLong() / 1000, DAY_SECONDS);
+    }
+
+    private static long key(int account_id, int count) {
+        return (long) (Integer.MAX_VALUE - count) << 32 | account_id;
+    }
+
+    private static int accountId(long key) {
+        return (int) key;
+    }
+
+    private static int count(long key) {
+        return Integer.MAX_VALUE - (int) (key >>> 32);
+    }
+}
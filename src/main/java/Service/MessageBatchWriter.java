@@ -0,0 +1,219 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import Model.Message;
+
+/**
+ * Write-behind buffer for message inserts.
+ *
+ * Callers submit messages to a bounded queue and get a future back. A single writer thread takes the first waiting
+ * message, keeps collecting until it has maxBatchSize messages or maxDelayMicros have passed, and hands the batch to
+ * MessageRepository.insertMessages, which commits it at once. Each future is completed only after that returns, with
+ * the inserted message (message_id set) or null if it could not be inserted, so a caller that waits on its future
+ * keeps the same acknowledgement as a direct insert; the commit is just shared with the other messages of the batch.
+ * The future also carries the sequence number of the batch's write, which the writer thread cannot record for the
+ * caller's request itself (see ReadConsistency.wrote).
+ *
+ * When the queue is full submit blocks, which pushes back on the request threads instead of buffering without bound.
+ *
+ * Enabled in the default MessageService constructors with -Dmessages.batch.size=N (N > 1), which share one writer
+ * per repositories (see MessageFeatures). Also reads messages.batch.delayMicros (default 1000) and
+ * messages.batch.queue (default 10000).
+ */
+public class MessageBatchWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageBatchWriter.class);
+
+    public static final String BATCH_SIZE_PROPERTY = "messages.batch.size";
+    public static final String BATCH_DELAY_PROPERTY = "messages.batch.delayMicros";
+    public static final String QUEUE_CAPACITY_PROPERTY = "messages.batch.queue";
+
+    private static final long CLOSE_CHECK_MILLIS = 100;
+
+    /**
+     * The outcome of a submitted message.
+     */
+    public static class Inserted {
+        /**
+         * The inserted message, null if it could not be inserted.
+         */
+        public final Message message;
+        /**
+         * The sequence number of the batch's write, 0 if it was not captured to a ChangeStream.
+         */
+        public final long writeSeq;
+
+        Inserted(Message message, long writeSeq) {
+            this.message = message;
+            this.writeSeq = writeSeq;
+        }
+    }
+
+    /**
+     * A message waiting to be inserted, and the future of its caller.
+     */
+    private static class PendingInsert {
+        final Message message;
+        final CompletableFuture<Inserted> future = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+
+    private final MessageRepository messageRepository;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingInsert> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Start a writer thread for messageRepository.
+     *
+     * @param messageRepository where batches are inserted.
+     * @param queueCapacity how many messages may wait before submit blocks.
+     * @param maxBatchSize the most messages inserted together.
+     * @param maxDelayMicros how long the first message of a batch waits for more to join it.
+     */
+    public MessageBatchWriter(MessageRepository messageRepository, int queueCapacity, int maxBatchSize,
+            long maxDelayMicros) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+
+        this.messageRepository = messageRepository;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        writer = new Thread(this::run, "message-batch-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param messageRepository where batches are inserted.
+     * @return a writer configured from the messages.batch.* system properties, null if batching is not enabled.
+     */
+    public static MessageBatchWriter fromSystemProperties(MessageRepository messageRepository) {
+        int maxBatchSize = Integer.getInteger(BATCH_SIZE_PROPERTY, 1);
+        if (maxBatchSize <= 1) {
+            return null;
+        }
+        return new MessageBatchWriter(messageRepository, Integer.getInteger(QUEUE_CAPACITY_PROPERTY, 10000),
+            maxBatchSize, Long.getLong(BATCH_DELAY_PROPERTY, 1000));
+    }
+
+    /**
+     * Queue a message for insertion, blocking while the queue is full.
+     *
+     * @param message the message to insert.
+     * @return a future completed with the inserted message, or null if it could not be inserted, and the sequence
+     * number of the write once its batch is committed.
+     */
+    public CompletableFuture<Inserted> submit(Message message) {
+        PendingInsert pending = new PendingInsert(message);
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("MessageBatchWriter is closed"));
+            return pending.future;
+        }
+
+        try {
+            queue.put(pending);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(ex);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Stop accepting messages, insert everything already queued and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        // A submit that raced with close may have queued after the writer's last look.
+        List<PendingInsert> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        for (PendingInsert pending : abandoned) {
+            pending.future.completeExceptionally(new IllegalStateException("MessageBatchWriter is closed"));
+        }
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                // The writer is never interrupted, an interrupt can close the file channels of the database under it;
+                // instead it wakes up periodically to notice close().
+                PendingInsert first = queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Take whatever is already queued without waiting, then wait out the rest of the delay.
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingInsert next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            insert(batch);
+            batch.clear();
+        }
+    }
+
+    private void insert(List<PendingInsert> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingInsert pending : batch) {
+            messages.add(pending.message);
+        }
+
+        // The batch is written on behalf of the requests that submitted it; its seq goes back to them with the result.
+        ReadConsistency.beginRequest(false, 0);
+        try {
+            List<Message> inserted = messageRepository.insertMessages(messages);
+            long writeSeq = ReadConsistency.endRequest();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(new Inserted(inserted.get(i), writeSeq));
+            }
+        } catch (RuntimeException ex) {
+            ReadConsistency.endRequest();
+            logger.error("insertMessages threw an exception, size: {}, message: {}", batch.size(), ex.getMessage());
+            for (PendingInsert pending : batch) {
+                pending.future.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import DAO.AccountRepository;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.FollowRepository;
+import DAO.InMemoryFollowRepository;
+import DAO.InvalidationBus;
+import DAO.MessageRepository;
+import DAO.Repositories;
+
+/**
+ * The in-process features built over one pair of repositories: the feed, long polls, search, tags, trending tags,
+ * activity counters, home timelines, the leaderboard and account summaries.
+ *
+ * They follow the ChangeStream of the message repository, so there is one set per pair of repositories rather than
+ * one per MessageService: shared() is built once over the repositories of Repositories, over() once for any other
+ * pair, and every MessageService of the same repositories uses the same set. A message repository that does not
+ * capture its writes is wrapped in a ChangeCapturingMessageRepository over a stream of its own, and the features
+ * follow that one. Features that cache what other instances may write, the account summaries, are subscribed to the
+ * InvalidationBus of every MessageService that uses them. Follows are stored in the FollowRepository of Repositories
+ * for shared(), and in the process for any other pair.
+ *
+ * Each MessageService releases the set it got when it is closed. The last one to do so closes the set: its threads
+ * are stopped, it is unsubscribed from the buses and dropped, and the next MessageService of the repositories builds
+ * a new one.
+ */
+final class MessageFeatures {
+
+    private static MessageFeatures shared;
+    private static final List<MessageFeatures> built = new ArrayList<>();
+
+    /**
+     * Where to write messages so that the features see them.
+     */
+    final MessageRepository messageRepository;
+    final AccountRepository accountRepository;
+    /**
+     * The message repository the features were asked for, before it was wrapped.
+     */
+    private final MessageRepository origin;
+    final ChangeStream changes;
+    final MessageFeed feed;
+    final MessageWaiters waiters;
+    final MessageSearch search;
+    final MessageTags tags;
+    final TrendingTags trending;
+    final ActivityCounters activity;
+    final HomeTimelines timelines;
+    final Leaderboard leaderboard;
+    final AccountSummaries summaries;
+    private final Set<InvalidationBus> buses = new HashSet<>();
+    private MessageBatchWriter batchWriter;
+    private boolean batchWriterBuilt;
+    /**
+     * How many MessageServices use the features.
+     */
+    private int users;
+
+    /**
+     * @param messageRepository the messages, wrapped if it does not capture its writes.
+     * @param accountRepository the accounts, e.g. to resolve @mentions.
+     * @param follows where the follows of the home timelines are stored.
+     */
+    private MessageFeatures(MessageRepository messageRepository, AccountRepository accountRepository,
+            FollowRepository follows) {
+        this.origin = messageRepository;
+        ChangeStream changes = messageRepository.getChangeStream();
+        if (changes == null) {
+            changes = new ChangeStream();
+            messageRepository = new ChangeCapturingMessageRepository(messageRepository, changes);
+        }
+        this.messageRepository = messageRepository;
+        this.accountRepository = accountRepository;
+        this.changes = changes;
+        this.feed = MessageFeed.fromSystemProperties(changes);
+        this.waiters = MessageWaiters.fromSystemProperties(messageRepository, changes);
+        this.search = new MessageSearch(messageRepository, changes);
+        this.tags = new MessageTags(messageRepository, accountRepository, changes);
+        this.trending = new TrendingTags();
+        this.activity = new ActivityCounters();
+        this.timelines = HomeTimelines.fromSystemProperties(messageRepository, changes, follows);
+        this.leaderboard = Leaderboard.fromSystemProperties(messageRepository, changes);
+        this.summaries = AccountSummaries.fromSystemProperties(messageRepository, changes);
+    }
+
+    /**
+     * Apply the invalidations of other instances on a bus, once per bus.
+     *
+     * @param bus the bus.
+     */
+    synchronized void subscribe(InvalidationBus bus) {
+        if (buses.add(bus)) {
+            bus.subscribe(summaries);
+        }
+    }
+
+    /**
+     * @return the batch writer configured by the messages.batch.* system properties, built on first use, null if
+     * batching is not enabled.
+     */
+    synchronized MessageBatchWriter batchWriter() {
+        if (!batchWriterBuilt) {
+            batchWriter = MessageBatchWriter.fromSystemProperties(messageRepository);
+            batchWriterBuilt = true;
+        }
+        return batchWriter;
+    }
+
+    /**
+     * Give back features got from shared() or over(), e.g. because the MessageService is closed, closing them if no
+     * MessageService uses them anymore.
+     *
+     * @param features the features.
+     */
+    static synchronized void release(MessageFeatures features) {
+        if (--features.users > 0) {
+            return;
+        }
+        built.remove(features);
+        if (shared == features) {
+            shared = null;
+        }
+        features.close();
+    }
+
+    /**
+     * @return the features of the repositories of the configured engine, built on first use. Give them back with
+     * release().
+     */
+    static synchronized MessageFeatures shared() {
+        if (shared == null) {
+            shared = over(Repositories.messageRepository(), Repositories.accountRepository(),
+                Repositories.followRepository());
+        } else {
+            shared.users++;
+        }
+        return shared;
+    }
+
+    /**
+     * @return the features of these repositories, built on first use. Give them back with release().
+     */
+    static synchronized MessageFeatures over(MessageRepository messageRepository,
+            AccountRepository accountRepository) {
+        return over(messageRepository, accountRepository, new InMemoryFollowRepository());
+    }
+
+    private static MessageFeatures over(MessageRepository messageRepository, AccountRepository accountRepository,
+            FollowRepository follows) {
+        for (MessageFeatures features : built) {
+            if (features.origin == messageRepository && features.accountRepository == accountRepository) {
+                features.users++;
+                return features;
+            }
+        }
+        MessageFeatures features = new MessageFeatures(messageRepository, accountRepository, follows);
+        features.users = 1;
+        built.add(features);
+        return features;
+    }
+
+    /**
+     * Stop the threads of the features, including the batch writer, and unsubscribe them from the buses.
+     */
+    private void close() {
+        feed.close();
+        waiters.close();
+        leaderboard.close();
+        synchronized (this) {
+            for (InvalidationBus bus : buses) {
+                bus.unsubscribe(summaries);
+            }
+            buses.clear();
+            if (batchWriter != null) {
+                // Inserts what is already queued first.
+                batchWriter.close();
+            }
+        }
+    }
+}
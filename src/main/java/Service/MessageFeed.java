@@ -0,0 +1,331 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.ChangeStream;
+import Model.ChangeEvent;
+
+/**
+ * Pushes message writes to subscribers as they happen, e.g. the clients of GET /feed.
+ *
+ * There is one buffer for all subscribers: the ChangeStream every write goes through. Each subscriber only has a
+ * cursor into it, the seq of the last event it was sent, so a new write costs nothing per subscriber until it is
+ * sent. One dispatcher thread waits for new events and hands every subscriber that is behind to a small pool of
+ * workers, which send it what it has not seen, at most one worker per subscriber at a time. A slow subscriber holds
+ * back only itself: its cursor stays where it is while it drains (backpressure), and once it is more than maxLag
+ * events behind it is evicted rather than let it pin old events or a worker. A subscriber can also resume from a
+ * seq, as long as the stream still holds it.
+ *
+ * Threads are started by the first subscriber, so services that never stream cost nothing, and stopped by close().
+ *
+ * Reads feed.maxLag (default 10000) and feed.workers (default 4) in fromSystemProperties.
+ */
+public class MessageFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageFeed.class);
+
+    public static final String MAX_LAG_PROPERTY = "feed.maxLag";
+    public static final String WORKERS_PROPERTY = "feed.workers";
+
+    /**
+     * Most events read from the stream at once for one subscriber.
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * How long the dispatcher waits for new events before it checks on idle subscribers.
+     */
+    private static final long DISPATCH_WAIT_MILLIS = 1000;
+
+    /**
+     * How often an idle subscriber gets a ping, so that clients that went away are noticed.
+     */
+    private static final long PING_MILLIS = 15000;
+
+    /**
+     * How long close() waits for the workers to finish their sends.
+     */
+    private static final long CLOSE_WAIT_MILLIS = 1000;
+
+    /**
+     * Where the events of one subscriber go. Called by one worker thread at a time.
+     */
+    public interface Sink {
+        /**
+         * @param event a MESSAGE_ event.
+         * @return false if the subscriber went away.
+         */
+        boolean send(ChangeEvent event);
+
+        /**
+         * Tell the subscriber the feed is still there.
+         */
+        void ping();
+
+        /**
+         * End the subscription.
+         *
+         * @param reason why, e.g. "slow consumer".
+         */
+        void close(String reason);
+    }
+
+    /**
+     * One subscriber and its cursor.
+     */
+    public final class Subscription {
+        private final int posted_by;
+        private final Sink sink;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private volatile long cursor;
+        private volatile boolean pingDue;
+        private volatile String evictedFor;
+        private volatile boolean cancelled;
+
+        private Subscription(long cursor, int posted_by, Sink sink) {
+            this.cursor = cursor;
+            this.posted_by = posted_by;
+            this.sink = sink;
+        }
+
+        /**
+         * @return the seq of the last event sent or skipped.
+         */
+        public long getCursor() {
+            return cursor;
+        }
+
+        /**
+         * Stop sending, e.g. because the subscriber went away.
+         */
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Close the sink, once.
+         */
+        private void end(String reason) {
+            if (ended.compareAndSet(false, true)) {
+                sink.close(reason);
+            }
+        }
+
+        private boolean wants(ChangeEvent event) {
+            return event.message != null && (posted_by == 0 || event.message.getPosted_by() == posted_by);
+        }
+    }
+
+    private final ChangeStream changes;
+    private final int maxLag;
+    private final int workerCount;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private ExecutorService workers;
+    private Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * @param changes the stream to feed from.
+     * @param maxLag how many events a subscriber may fall behind before it is evicted.
+     * @param workerCount how many subscribers are sent to at the same time.
+     */
+    public MessageFeed(ChangeStream changes, int maxLag, int workerCount) {
+        this.changes = changes;
+        this.maxLag = maxLag;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * @return a feed from changes configured by the feed.* system properties.
+     */
+    public static MessageFeed fromSystemProperties(ChangeStream changes) {
+        return new MessageFeed(changes, Integer.getInteger(MAX_LAG_PROPERTY, 10000),
+            Integer.getInteger(WORKERS_PROPERTY, 4));
+    }
+
+    /**
+     * Start sending to a subscriber.
+     *
+     * @param afterSeq the seq of the last event the subscriber has, negative for only events from now on.
+     * @param posted_by only send messages of this account, 0 for all.
+     * @param sink where to send.
+     * @return the subscription.
+     * @throws IllegalStateException if the feed is closed.
+     */
+    public Subscription subscribe(long afterSeq, int posted_by, Sink sink) {
+        startThreads();
+        Subscription subscription = new Subscription(afterSeq < 0 ? changes.lastSeq() : afterSeq, posted_by, sink);
+        subscriptions.add(subscription);
+        schedule(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return the number of subscribers.
+     */
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Stop the threads and close every subscription.
+     */
+    public void close() {
+        ExecutorService workers;
+        synchronized (this) {
+            closed = true;
+            workers = this.workers;
+            if (dispatcher != null) {
+                dispatcher.interrupt();
+            }
+        }
+        List<Subscription> closing = new ArrayList<>(subscriptions);
+        for (Subscription subscription : closing) {
+            subscription.evictedFor = "shutdown";
+            subscription.cancel();
+        }
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(CLOSE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Subscription subscription : closing) {
+            subscription.end("shutdown");
+        }
+    }
+
+    private synchronized void startThreads() {
+        if (closed) {
+            throw new IllegalStateException("MessageFeed is closed");
+        }
+        if (workers != null) {
+            return;
+        }
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "message-feed-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = new Thread(this::dispatch, "message-feed-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void dispatch() {
+        long seen = changes.lastSeq();
+        long lastPingNanos = System.nanoTime();
+        while (true) {
+            try {
+                changes.await(seen, DISPATCH_WAIT_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            seen = changes.lastSeq();
+
+            boolean ping = System.nanoTime() - lastPingNanos > TimeUnit.MILLISECONDS.toNanos(PING_MILLIS);
+            if (ping) {
+                lastPingNanos = System.nanoTime();
+            }
+            for (Subscription subscription : subscriptions) {
+                if (seen - subscription.cursor > maxLag) {
+                    evict(subscription, "slow consumer");
+                } else if (subscription.cursor < seen || ping) {
+                    subscription.pingDue |= ping;
+                    schedule(subscription);
+                }
+            }
+        }
+    }
+
+    private void schedule(Subscription subscription) {
+        if (subscription.scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(() -> drain(subscription));
+            } catch (RejectedExecutionException ex) {
+                // Closed, close() ends the subscription.
+                subscription.scheduled.set(false);
+            }
+        }
+    }
+
+    private void evict(Subscription subscription, String reason) {
+        logger.error("evicting a feed subscriber at seq {} of {}, reason: {}", subscription.cursor,
+            changes.lastSeq(), reason);
+        subscription.evictedFor = reason;
+        subscription.cancel();
+        // The worker sending to it, if any, closes it once its send returns.
+        schedule(subscription);
+    }
+
+    /**
+     * Send a subscriber what it has not seen; runs on a worker, one per subscriber at a time.
+     */
+    private void drain(Subscription subscription) {
+        try {
+            boolean sent = false;
+            while (!subscription.cancelled) {
+                List<ChangeEvent> events = changes.read(subscription.cursor, BATCH);
+                if (events == null) {
+                    // The stream no longer holds what the subscriber needs next.
+                    subscription.evictedFor = "resync";
+                    subscription.cancel();
+                    break;
+                }
+                if (events.isEmpty()) {
+                    break;
+                }
+                for (ChangeEvent event : events) {
+                    if (subscription.cancelled) {
+                        break;
+                    }
+                    if (subscription.wants(event)) {
+                        if (!subscription.sink.send(event)) {
+                            subscription.cancel();
+                            break;
+                        }
+                        sent = true;
+                    }
+                    subscription.cursor = event.seq;
+                }
+            }
+
+            if (subscription.evictedFor != null) {
+                subscription.end(subscription.evictedFor);
+                return;
+            }
+            if (subscription.pingDue && !subscription.cancelled) {
+                subscription.pingDue = false;
+                if (!sent) {
+                    subscription.sink.ping();
+                }
+            }
+        } catch (RuntimeException ex) {
+            logger.error("drain threw an exception, message: {}", ex.getMessage());
+            subscription.cancel();
+        } finally {
+            subscription.scheduled.set(false);
+        }
+
+        // An event may have arrived after the last read but before scheduled was cleared.
+        if (!subscription.cancelled && subscription.cursor < changes.lastSeq()) {
+            schedule(subscription);
+        }
+    }
+}
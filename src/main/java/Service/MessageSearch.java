@@ -0,0 +1,449 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.ChangeStream;
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import Model.ChangeEvent;
+import Model.Message;
+import Util.IntHashMap;
+import Util.PostingList;
+
+/**
+ * Full-text search over message_text with an in-process inverted index, e.g. for GET /messages/search.
+ *
+ * message_text is split into words (runs of letters and digits, lower cased) and every word maps to the ids of the
+ * messages that contain it, a PostingList. The index also keeps the words of each message in order, and its
+ * time_posted_epoch, so queries are answered from memory and only the page of results is read from the repository.
+ *
+ * Queries are words, "quoted phrases" and OR: words and phrases next to each other must all match (AND), and OR
+ * separates alternatives, e.g. `coffee "new york" OR tea`. Results are ordered newest first, by time_posted_epoch and
+ * then message_id, and paged with offset and limit; only offset + limit results are ranked, in a bounded heap.
+ *
+ * The index is built from the repository on the first search and then follows the ChangeStream: every search first
+ * applies the creates, updates and deletes it has not seen, so a client sees its own writes, whichever MessageService
+ * made them. When the stream no longer holds the events after the ones applied, the index is built again. An update
+ * or delete does not rewrite the posting lists of the words the message lost: matches are checked against the
+ * current words of the message, and a list is compacted once half of it is stale.
+ *
+ * Thread safe: searches share a read lock, applying changes takes the write lock.
+ */
+public class MessageSearch {
+
+    /**
+     * Longer words are cut to this many characters.
+     */
+    private static final int MAX_WORD_LENGTH = 64;
+
+    private static final String OR = "OR";
+
+    /**
+     * Most changes read from the change stream at once.
+     */
+    private static final int BATCH = 256;
+
+    private static final class Term {
+        final int id;
+        final PostingList postings = new PostingList();
+        int stale;
+
+        Term(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Doc {
+        final int message_id;
+        final long time_posted_epoch;
+        final int[] terms;
+
+        Doc(int message_id, long time_posted_epoch, int[] terms) {
+            this.message_id = message_id;
+            this.time_posted_epoch = time_posted_epoch;
+            this.terms = terms;
+        }
+
+        boolean contains(int term) {
+            for (int t : terms) {
+                if (t == term) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean containsPhrase(int[] phrase) {
+            for (int start = 0; start + phrase.length <= terms.length; start++) {
+                int i = 0;
+                while (i < phrase.length && terms[start + i] == phrase[i]) {
+                    i++;
+                }
+                if (i == phrase.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final Comparator<Doc> OLDEST_FIRST = Comparator
+        .comparingLong((Doc doc) -> doc.time_posted_epoch)
+        .thenComparingInt(doc -> doc.message_id);
+
+    private final MessageRepository messageRepository;
+    private final ChangeStream changes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Term> termsByWord = new HashMap<>();
+    private final List<Term> termsById = new ArrayList<>();
+    private final IntHashMap<Doc> docs = new IntHashMap<>();
+    private boolean built;
+    /**
+     * The seq of the last change applied.
+     */
+    private volatile long cursor = -1;
+
+    /**
+     * @param messageRepository where the messages are read from, to build the index and to return results.
+     * @param changes the change stream of messageRepository.
+     */
+    public MessageSearch(MessageRepository messageRepository, ChangeStream changes) {
+        this.messageRepository = messageRepository;
+        this.changes = changes;
+    }
+
+    /**
+     * Find messages.
+     *
+     * @param query words, "quoted phrases" and OR.
+     * @param offset how many of the newest results to skip.
+     * @param limit the most results to return.
+     * @return the results, newest first, empty if nothing matches.
+     */
+    public List<Message> search(String query, int offset, int limit) {
+        List<List<String[]>> clauses = parse(query);
+        if (clauses.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        catchUp();
+
+        int[] page;
+        lock.readLock().lock();
+        try {
+            IntHashMap<Doc> matches = new IntHashMap<>();
+            for (List<String[]> clause : clauses) {
+                match(clause, matches);
+            }
+            page = rank(matches, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Read the page at once, and keep it in rank order.
+        List<Integer> message_ids = new ArrayList<>(page.length);
+        for (int message_id : page) {
+            message_ids.add(message_id);
+        }
+        Map<Integer, Message> found = message_ids.isEmpty() ? Map.of()
+            : messageRepository.getMessagesByIds(message_ids);
+        List<Message> messages = new ArrayList<>(page.length);
+        for (int message_id : page) {
+            Message message = found.get(message_id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Split text into lower cased words: runs of letters and digits, at most MAX_WORD_LENGTH long.
+     *
+     * @param text the text.
+     * @return the words, in order.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (word.length() < MAX_WORD_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Parse a query into clauses to OR, each a list of phrases to AND, a single word being a phrase of one.
+     */
+    private static List<List<String[]>> parse(String query) {
+        List<List<String[]>> clauses = new ArrayList<>();
+        if (query == null) {
+            return clauses;
+        }
+        List<String[]> clause = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int end;
+            String part;
+            if (c == '"') {
+                end = query.indexOf('"', i + 1);
+                end = end < 0 ? query.length() : end;
+                part = query.substring(i + 1, end);
+                end++;
+            } else {
+                end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end)) && query.charAt(end) != '"') {
+                    end++;
+                }
+                part = query.substring(i, end);
+                if (part.equals(OR)) {
+                    if (!clause.isEmpty()) {
+                        clauses.add(clause);
+                        clause = new ArrayList<>();
+                    }
+                    i = end;
+                    continue;
+                }
+            }
+            List<String> words = words(part);
+            if (!words.isEmpty()) {
+                clause.add(words.toArray(new String[0]));
+            }
+            i = end;
+        }
+        if (!clause.isEmpty()) {
+            clauses.add(clause);
+        }
+        return clauses;
+    }
+
+    /**
+     * Apply the changes the index has not seen yet, building it first if it is not built.
+     */
+    private void catchUp() {
+        if (cursor >= 0 && cursor == changes.lastSeq()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!built) {
+                build();
+            }
+            while (true) {
+                List<ChangeEvent> events = changes.read(cursor, BATCH);
+                if (events == null) {
+                    // The stream no longer holds the next event, start over.
+                    build();
+                    continue;
+                }
+                if (events.isEmpty()) {
+                    return;
+                }
+                for (ChangeEvent event : events) {
+                    apply(event);
+                    cursor = event.seq;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build the index from the repository, with the write lock held. The messages read may already have changes after
+     * the cursor, applying those again leaves the index as it is.
+     */
+    private void build() {
+        termsByWord.clear();
+        termsById.clear();
+        docs.clear();
+        long seq = changes.lastSeq();
+        // Read a replica that has every change up to the cursor applied.
+        ReadConsistency.readAfter(seq);
+        for (Message message : messageRepository.getAllMessages()) {
+            put(message);
+        }
+        cursor = seq;
+        built = true;
+    }
+
+    private void apply(ChangeEvent event) {
+        Message message = event.message;
+        if (message == null) {
+            return;
+        }
+        switch (event.type) {
+            case MESSAGE_CREATED:
+            case MESSAGE_UPDATED:
+                put(message);
+                break;
+            case MESSAGE_DELETED:
+                Doc doc = docs.remove(message.getMessage_id());
+                if (doc != null) {
+                    markStale(doc, null);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void put(Message message) {
+        List<String> words = words(message.getMessage_text());
+        int[] terms = new int[words.size()];
+        for (int i = 0; i < terms.length; i++) {
+            Term term = termsByWord.get(words.get(i));
+            if (term == null) {
+                term = new Term(termsById.size());
+                termsById.add(term);
+                termsByWord.put(words.get(i), term);
+            }
+            terms[i] = term.id;
+        }
+        Doc doc = new Doc(message.getMessage_id(), message.getTime_posted_epoch(), terms);
+
+        Doc old = docs.put(doc.message_id, doc);
+        for (int term : terms) {
+            if (old == null || !old.contains(term)) {
+                Term added = termsById.get(term);
+                if (!added.postings.add(doc.message_id)) {
+                    // It was left in the list when the message lost the word, and is current again.
+                    added.stale = Math.max(0, added.stale - 1);
+                }
+            }
+        }
+        if (old != null) {
+            markStale(old, doc);
+        }
+    }
+
+    /**
+     * Count the words of old that current no longer has as stale in their posting lists, and compact the lists that
+     * are half stale.
+     */
+    private void markStale(Doc old, Doc current) {
+        int[] terms = old.terms.clone();
+        Arrays.sort(terms);
+        for (int i = 0; i < terms.length; i++) {
+            if ((i > 0 && terms[i] == terms[i - 1]) || (current != null && current.contains(terms[i]))) {
+                continue;
+            }
+            Term term = termsById.get(terms[i]);
+            if (++term.stale * 2 > term.postings.size()) {
+                term.postings.retain(message_id -> {
+                    Doc doc = docs.get(message_id);
+                    return doc != null && doc.contains(term.id);
+                });
+                term.stale = 0;
+            }
+        }
+    }
+
+    /**
+     * Add the docs that match every phrase of a clause to matches.
+     */
+    private void match(List<String[]> clause, IntHashMap<Doc> matches) {
+        List<int[]> phrases = new ArrayList<>(clause.size());
+        List<Term> terms = new ArrayList<>();
+        for (String[] words : clause) {
+            int[] phrase = new int[words.length];
+            for (int i = 0; i < words.length; i++) {
+                Term term = termsByWord.get(words[i]);
+                if (term == null) {
+                    // A word no message has.
+                    return;
+                }
+                phrase[i] = term.id;
+                terms.add(term);
+            }
+            phrases.add(phrase);
+        }
+
+        terms.sort(Comparator.comparingInt(term -> term.postings.size()));
+        int[] candidates = terms.get(0).postings.toArray();
+        for (int i = 1; i < terms.size() && candidates.length > 0; i++) {
+            candidates = intersect(candidates, terms.get(i).postings.toArray());
+        }
+
+        for (int message_id : candidates) {
+            Doc doc = docs.get(message_id);
+            if (doc == null || matches.containsKey(message_id)) {
+                continue;
+            }
+            boolean matched = true;
+            for (int[] phrase : phrases) {
+                // Also drops stale postings, whose message no longer has the word.
+                if (phrase.length == 1 ? !doc.contains(phrase[0]) : !doc.containsPhrase(phrase)) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                matches.put(message_id, doc);
+            }
+        }
+    }
+
+    /**
+     * @return the message ids of the page of matches, newest first.
+     */
+    private static int[] rank(IntHashMap<Doc> matches, int offset, int limit) {
+        int wanted = (int) Math.min(Integer.MAX_VALUE - 1, (long) offset + limit);
+        PriorityQueue<Doc> newest = new PriorityQueue<>(Math.min(wanted, 1024) + 1, OLDEST_FIRST);
+        matches.forEachValue(doc -> {
+            if (newest.size() < wanted) {
+                newest.add(doc);
+            } else if (OLDEST_FIRST.compare(doc, newest.peek()) > 0) {
+                newest.poll();
+                newest.add(doc);
+            }
+        });
+
+        int[] page = new int[Math.max(0, newest.size() - offset)];
+        for (int i = newest.size() - 1; i >= 0; i--) {
+            Doc doc = newest.poll();
+            if (i >= offset) {
+                page[i - offset] = doc.message_id;
+            }
+        }
+        return page;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+}
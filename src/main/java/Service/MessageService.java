@@ -1,53 +1,148 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
-import DAO.AccountDAO;
-import DAO.MessageDAO;
+import DAO.AccountRepository;
+import DAO.ChangeStream;
+import DAO.InvalidationBus;
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import DAO.ReplicaSet;
+import DAO.ReplicatedMessageRepository;
+import DAO.Repositories;
+import Model.Account;
+import Model.AccountProfile;
+import Model.AccountSummary;
+import Model.ChangeEvent;
+import Model.LeaderboardEntry;
 import Model.Message;
+import Model.MessageAnalytics;
+import Model.MessageChanges;
+import Model.MessagePage;
+import Model.MessagePoll;
+import Model.TrendingTerm;
 
-public class MessageService {
+public class MessageService implements AutoCloseable {
+
+    /**
+     * Most changes read from the change stream at once.
+     */
+    private static final int CHANGES_BATCH = 256;
     
-    private MessageDAO messageDAO;
-    private AccountDAO accountDAO;
+    private MessageFeatures features;
+    private MessageRepository messageRepository;
+    private AccountRepository accountRepository;
+    private MessageBatchWriter batchWriter;
+    private InvalidationBus invalidationBus;
+    private MessageFeed feed;
+    private ChangeStream changes;
+    private MessageWaiters waiters;
+    private MessageSearch search;
+    private MessageTags tags;
+    private TrendingTags trending;
+    private ActivityCounters activity;
+    private HomeTimelines timelines;
+    private Leaderboard leaderboard;
+    private AccountSummaries summaries;
 
     /**
-     * Default constructor when no MessageDAO is provided.
+     * Default constructor when no MessageRepository is provided, uses the repositories of the configured engine.
      */
     public MessageService() {
-        this.messageDAO = new MessageDAO();
-        this.accountDAO = new AccountDAO();
+        this(MessageFeatures.shared(), Repositories.invalidationBus());
     }
 
     /**
-     * Constructor when an MessageDAO is provided.
+     * Constructor when a MessageRepository is provided.
      * 
-     * @param messageDAO
+     * @param messageRepository
      */
-    public MessageService(MessageDAO messageDAO) {
-        this.messageDAO = messageDAO;
-        this.accountDAO = new AccountDAO();
+    public MessageService(MessageRepository messageRepository) {
+        this(messageRepository, Repositories.accountRepository());
     }
 
     /**
-     * Constructor when an AccountDAO is provided.
+     * Constructor when an AccountRepository is provided.
      * 
-     * @param accountDAO
+     * @param accountRepository
      */
-    public MessageService(AccountDAO accountDAO) {
-        this.messageDAO = new MessageDAO();
-        this.accountDAO = accountDAO;
+    public MessageService(AccountRepository accountRepository) {
+        this(MessageFeatures.over(Repositories.messageRepository(), accountRepository),
+            Repositories.invalidationBus());
     }
 
     /**
-     * Constructor when a MessageDAO and AccountDAO are provided.
+     * Constructor when a MessageRepository and AccountRepository are provided.
      * 
-     * @param messageDAO
-     * @param accountDAO
+     * @param messageRepository
+     * @param accountRepository
      */
-    public MessageService(MessageDAO messageDAO, AccountDAO accountDAO) {
-        this.messageDAO = messageDAO;
-        this.accountDAO = accountDAO;
+    public MessageService(MessageRepository messageRepository, AccountRepository accountRepository) {
+        this(messageRepository, accountRepository, null);
+    }
+
+    /**
+     * Constructor when a MessageRepository, AccountRepository and MessageBatchWriter are provided. New messages go
+     * through the batch writer, which must insert into the same MessageRepository. If that repository does not
+     * capture its writes to a ChangeStream, the inserts of the batch writer are not seen by the features that follow
+     * the stream, see MessageFeatures.
+     * 
+     * @param messageRepository
+     * @param accountRepository
+     * @param batchWriter
+     */
+    public MessageService(MessageRepository messageRepository, AccountRepository accountRepository,
+            MessageBatchWriter batchWriter) {
+        this(messageRepository, accountRepository, batchWriter, null);
+    }
+
+    /**
+     * Constructor when a MessageRepository, AccountRepository, MessageBatchWriter and InvalidationBus are provided.
+     * Every successful write is published to the bus, so that other instances drop what they cached of it.
+     * 
+     * @param messageRepository
+     * @param accountRepository
+     * @param batchWriter the batch writer, null to insert one message at a time.
+     * @param invalidationBus
+     */
+    public MessageService(MessageRepository messageRepository, AccountRepository accountRepository,
+            MessageBatchWriter batchWriter, InvalidationBus invalidationBus) {
+        this(MessageFeatures.over(messageRepository, accountRepository), batchWriter, invalidationBus);
+    }
+
+    /**
+     * Uses the batch writer of the features, shared by the services of the same repositories.
+     */
+    private MessageService(MessageFeatures features, InvalidationBus invalidationBus) {
+        this(features, features.batchWriter(), invalidationBus);
+    }
+
+    private MessageService(MessageFeatures features, MessageBatchWriter batchWriter,
+            InvalidationBus invalidationBus) {
+        this.features = features;
+        this.messageRepository = features.messageRepository;
+        this.accountRepository = features.accountRepository;
+        this.batchWriter = batchWriter;
+        this.invalidationBus = invalidationBus;
+        this.changes = features.changes;
+        this.feed = features.feed;
+        this.waiters = features.waiters;
+        this.search = features.search;
+        this.tags = features.tags;
+        this.trending = features.trending;
+        this.activity = features.activity;
+        this.timelines = features.timelines;
+        this.leaderboard = features.leaderboard;
+        this.summaries = features.summaries;
+        if (invalidationBus != null) {
+            features.subscribe(invalidationBus);
+        }
     }
 
     /**
@@ -56,7 +151,7 @@ public class MessageService {
      * @return a list containing all the messages, the list is empty if there are no messages.
      */
     public List<Message> getAllMessages() {
-        return messageDAO.getAllMessages();
+        return messageRepository.getAllMessages();
     }
     
     /**
@@ -66,7 +161,7 @@ public class MessageService {
      * @return a list containing all the messages, the list is empty if there are no messages.
      */
     public List<Message> getAllMessagesByAccountId(int account_id) {
-        return messageDAO.getAllMessagesByAccountId(account_id);
+        return messageRepository.getAllMessagesByAccountId(account_id);
     }
 
     /**
@@ -76,11 +171,54 @@ public class MessageService {
      * @return the message if one exists, null if none exists.
      */
     public Message getMessageById(int message_id) {
-        return messageDAO.getMessageById(message_id);
+        return messageRepository.getMessageById(message_id);
     }
 
     /**
-     * Create a new message.
+     * Get many messages by message_id at once, e.g. the messages of one page of a feed.
+     * 
+     * @param message_ids the ids of the messages, in any order and possibly repeated.
+     * @return the messages in the order of message_ids, null for a message that doesn't exist.
+     */
+    public List<Message> getMessagesByIds(List<Integer> message_ids) {
+        // Look up each message once.
+        Map<Integer, Message> messages = messageRepository.getMessagesByIds(
+            new ArrayList<>(new LinkedHashSet<>(message_ids)));
+        List<Message> result = new ArrayList<>(message_ids.size());
+        for (int message_id : message_ids) {
+            result.add(messages.get(message_id));
+        }
+        return result;
+    }
+
+    /**
+     * Add the authors to a list of messages, looking up every distinct posted_by once, in one call.
+     *
+     * @param messages the messages, may contain nulls.
+     * @return the messages and the profiles of their authors, in the order the authors first appear.
+     */
+    public MessagePage withAuthors(List<Message> messages) {
+        Set<Integer> account_ids = new LinkedHashSet<>();
+        for (Message message : messages) {
+            if (message != null) {
+                account_ids.add(message.getPosted_by());
+            }
+        }
+        Map<Integer, Account> accounts = account_ids.isEmpty() ? Map.of()
+            : accountRepository.getAccountsByIds(new ArrayList<>(account_ids));
+        List<AccountProfile> authors = new ArrayList<>(accounts.size());
+        for (int account_id : account_ids) {
+            Account account = accounts.get(account_id);
+            if (account != null) {
+                authors.add(AccountProfile.of(account));
+            }
+        }
+        return new MessagePage(messages, authors);
+    }
+
+    /**
+     * Create a new message. With a MessageBatchWriter the insert is committed together with other concurrent ones,
+     * this still returns only once the message is committed.
      * Requirements:
      *  message_text is not blank
      *  0 < message_text.length < 255
@@ -96,11 +234,28 @@ public class MessageService {
         }
 
         // Ensure posted_by has an existing user.
-        if (accountDAO.getAccountById(message.getPosted_by()) == null) {
+        if (accountRepository.getAccountById(message.getPosted_by()) == null) {
             return null;
         }
-        
-        return messageDAO.insertMessage(message);
+
+        Message created;
+        if (batchWriter != null) {
+            MessageBatchWriter.Inserted inserted = batchWriter.submit(message).join();
+            ReadConsistency.wrote(inserted.writeSeq);
+            created = inserted.message;
+        } else {
+            created = messageRepository.insertMessage(message);
+        }
+        if (created != null) {
+            invalidate(created.getMessage_id());
+            if (trending != null) {
+                trending.recorded(created);
+            }
+            if (activity != null) {
+                activity.recorded(created);
+            }
+        }
+        return created;
     }
 
     /**
@@ -115,7 +270,7 @@ public class MessageService {
      */
     public Message updateMessageById(String message_text, int message_id) {
         // Ensure the message exists.
-        Message existingMessage = messageDAO.getMessageById(message_id);
+        Message existingMessage = messageRepository.getMessageById(message_id);
         if (existingMessage == null) {
             return null;
         }
@@ -126,12 +281,14 @@ public class MessageService {
         }
 
         // Attempt the update.
-        if (!messageDAO.updateMessageById(message_text, message_id)) {
+        if (!messageRepository.updateMessageById(message_text, message_id)) {
             return null;
         }
+        invalidate(message_id);
 
-        // Return the updated message.
-        return getMessageById(message_id);
+        // Return the updated message, only its text changed.
+        return new Message(message_id, existingMessage.getPosted_by(), message_text,
+            existingMessage.getTime_posted_epoch());
     }
 
     /**
@@ -144,19 +301,329 @@ public class MessageService {
      */
     public Message deleteMessageById(int message_id) {
         // Ensure the message exists.
-        Message existingMessage = messageDAO.getMessageById(message_id);
+        Message existingMessage = messageRepository.getMessageById(message_id);
         if (existingMessage == null) {
             return null;
         }
 
         // Ensure we successfully deleted the message.
-        if (!messageDAO.deleteMessageById(message_id)) {
+        if (!messageRepository.deleteMessageById(message_id)) {
             return null;
         }
+        invalidate(message_id);
 
         return existingMessage;
     }
 
+    /**
+     * Stream message writes to a subscriber as they happen, see MessageFeed.
+     * 
+     * @param afterSeq the seq of the last event the subscriber has, negative for only writes from now on.
+     * @param posted_by only stream messages of this account, 0 for all.
+     * @param sink where to send the events.
+     * @return the subscription, null if this service has no feed.
+     */
+    public MessageFeed.Subscription subscribeToFeed(long afterSeq, int posted_by, MessageFeed.Sink sink) {
+        if (feed == null) {
+            return null;
+        }
+        return feed.subscribe(afterSeq, posted_by, sink);
+    }
+
+    /**
+     * Search message_text, see MessageSearch.
+     * 
+     * @param query words, "quoted phrases" and OR.
+     * @param offset how many of the newest results to skip.
+     * @param limit the most results to return.
+     * @return the matching messages, newest first, null if this service cannot search.
+     */
+    public List<Message> searchMessages(String query, int offset, int limit) {
+        if (search == null) {
+            return null;
+        }
+        return search.search(query, offset, limit);
+    }
+
+    /**
+     * Get the messages with a #tag, see MessageTags.
+     * 
+     * @param tag the tag, with or without the #.
+     * @param after only messages with a greater message_id, 0 for the first page.
+     * @param limit the most messages to return.
+     * @return the messages, in message_id order, null if this service does not index tags.
+     */
+    public List<Message> getMessagesByTag(String tag, int after, int limit) {
+        if (tags == null) {
+            return null;
+        }
+        return tags.getMessagesByTag(tag, after, limit);
+    }
+
+    /**
+     * Get the messages that @mention an account, see MessageTags.
+     * 
+     * @param account_id the mentioned account.
+     * @param after only messages with a greater message_id, 0 for the first page.
+     * @param limit the most messages to return.
+     * @return the messages, in message_id order, null if this service does not index mentions.
+     */
+    public List<Message> getMessagesMentioning(int account_id, int after, int limit) {
+        if (tags == null) {
+            return null;
+        }
+        return tags.getMessagesMentioning(account_id, after, limit);
+    }
+
+    /**
+     * Get the most used #tags of new messages in a window, see TrendingTags.
+     * 
+     * @param window the window to rank over.
+     * @param limit the most tags to return.
+     * @return the tags, most used first, null if this service does not count tags.
+     */
+    public List<TrendingTerm> getTrendingTags(TrendingTags.Window window, int limit) {
+        if (trending == null) {
+            return null;
+        }
+        return trending.top(window, limit);
+    }
+
+    /**
+     * Make an account follow another, see HomeTimelines.
+     * Requirements:
+     *  both accounts exist.
+     *  an account cannot follow itself.
+     * 
+     * @param account_id the follower.
+     * @param followee_id the account to follow.
+     * @return the account_ids the follower now follows, null if: an account doesn't exist, they are the same account,
+     * this service keeps no timelines.
+     */
+    public List<Integer> follow(int account_id, int followee_id) {
+        if (timelines == null || account_id == followee_id || accountRepository.getAccountById(account_id) == null
+                || accountRepository.getAccountById(followee_id) == null) {
+            return null;
+        }
+        timelines.follow(account_id, followee_id);
+        return getFollowing(account_id);
+    }
+
+    /**
+     * Make an account stop following another, see HomeTimelines.
+     * 
+     * @param account_id the follower.
+     * @param followee_id the followed account.
+     * @return the account_ids the follower still follows, null if the follower doesn't exist or this service keeps no
+     * timelines.
+     */
+    public List<Integer> unfollow(int account_id, int followee_id) {
+        if (timelines == null || accountRepository.getAccountById(account_id) == null) {
+            return null;
+        }
+        timelines.unfollow(account_id, followee_id);
+        return getFollowing(account_id);
+    }
+
+    /**
+     * Get the accounts an account follows.
+     * 
+     * @param account_id the follower.
+     * @return the account_ids it follows in ascending order, null if this service keeps no timelines.
+     */
+    public List<Integer> getFollowing(int account_id) {
+        if (timelines == null) {
+            return null;
+        }
+        List<Integer> following = new ArrayList<>();
+        for (int followee_id : timelines.following(account_id)) {
+            following.add(followee_id);
+        }
+        return following;
+    }
+
+    /**
+     * Get the home timeline of an account, the newest messages of the accounts it follows, see HomeTimelines.
+     * 
+     * @param account_id the reader.
+     * @param before only messages with a smaller message_id, Integer.MAX_VALUE for the first page.
+     * @param limit the most messages to return.
+     * @return the messages, newest first, null if the account doesn't exist or this service keeps no timelines.
+     */
+    public List<Message> getHomeTimeline(int account_id, int before, int limit) {
+        if (timelines == null || accountRepository.getAccountById(account_id) == null) {
+            return null;
+        }
+        return timelines.home(account_id, before, limit);
+    }
+
+    /**
+     * Get how many messages an account has posted and when it last did, see AccountSummaries.
+     * 
+     * @param account_id the account.
+     * @return the summary, null if the account doesn't exist or this service keeps no summaries.
+     */
+    public AccountSummary getAccountSummary(int account_id) {
+        List<AccountSummary> summaries = getAccountSummaries(List.of(account_id));
+        return summaries == null ? null : summaries.get(0);
+    }
+
+    /**
+     * Get how many messages each of some accounts has posted and when it last did, see AccountSummaries.
+     * 
+     * @param account_ids the accounts.
+     * @return the summaries in the order of account_ids, null for an account that doesn't exist; null if this service
+     * keeps no summaries.
+     */
+    public List<AccountSummary> getAccountSummaries(List<Integer> account_ids) {
+        if (summaries == null) {
+            return null;
+        }
+        Map<Integer, AccountSummary> counts = summaries.summarize(account_ids);
+        Map<Integer, Account> accounts = accountRepository.getAccountsByIds(
+            new ArrayList<>(new LinkedHashSet<>(account_ids)));
+        List<AccountSummary> result = new ArrayList<>(account_ids.size());
+        for (int account_id : account_ids) {
+            Account account = accounts.get(account_id);
+            AccountSummary count = counts.get(account_id);
+            result.add(account == null || count == null ? null
+                : new AccountSummary(account_id, account.getUsername(), count.message_count,
+                    count.latest_time_posted_epoch));
+        }
+        return result;
+    }
+
+    /**
+     * Get the accounts with the most messages, see Leaderboard.
+     * 
+     * @param period all time, or the current day.
+     * @param offset how many of the most active accounts to skip.
+     * @param limit the most accounts to return.
+     * @return the accounts, most messages first, null if this service keeps no leaderboard.
+     */
+    public List<LeaderboardEntry> getLeaderboard(Leaderboard.Period period, int offset, int limit) {
+        if (leaderboard == null) {
+            return null;
+        }
+        return leaderboard.top(period, offset, limit);
+    }
+
+    /**
+     * Get how many messages were created and by how many accounts, see ActivityCounters.
+     * 
+     * @return the counts as of now, null if this service does not count messages.
+     */
+    public MessageAnalytics getAnalytics() {
+        if (activity == null) {
+            return null;
+        }
+        return activity.snapshot();
+    }
+
+    /**
+     * Wait for messages created after a client's cursor, the last change it has seen, see MessageWaiters.
+     * 
+     * @param cursor the client's cursor, null for none.
+     * @param timeoutMillis how long to wait at most.
+     * @return the new messages and the next cursor as soon as there are some, no messages after the timeout, the
+     * whole list if the cursor is missing, too old or of another epoch, null if this service cannot wait.
+     * @throws IllegalArgumentException if cursor is not a cursor.
+     */
+    public CompletableFuture<MessagePoll> waitForMessages(String cursor, long timeoutMillis) {
+        if (waiters == null) {
+            return null;
+        }
+        return waiters.await(cursor, timeoutMillis);
+    }
+
+    /**
+     * Get what changed in the messages of an account since a cursor, the seq of the last change the client has.
+     * Deletes are reported as tombstones for as long as the change stream holds them. No cursor, one the stream no
+     * longer holds, or one of another epoch of the stream, e.g. from before a restart that lost it, resets the client:
+     * it gets the whole list.
+     * 
+     * @param account_id the account id to filter for.
+     * @param cursor the cursor the client got last time, null for none.
+     * @return the changes, with the cursor to send next time, null if this service has no change stream.
+     * @throws IllegalArgumentException if cursor is not a cursor.
+     */
+    public MessageChanges getMessageChangesByAccountId(int account_id, String cursor) {
+        if (changes == null) {
+            return null;
+        }
+
+        long lastSeq = changes.lastSeq();
+        long cursorSeq = cursor == null ? -1 : changes.seqOf(cursor);
+        if (cursorSeq >= 0 && cursorSeq <= lastSeq) {
+            // Newest version of each changed message, in the order they first changed.
+            Map<Integer, Message> changed = new LinkedHashMap<>();
+            List<Integer> deleted = new ArrayList<>();
+            long seq = cursorSeq;
+            while (seq < lastSeq) {
+                List<ChangeEvent> events = changes.read(seq, CHANGES_BATCH);
+                if (events == null || events.isEmpty()) {
+                    // The stream no longer holds the cursor.
+                    break;
+                }
+                for (ChangeEvent event : events) {
+                    seq = event.seq;
+                    if (event.message == null || event.message.getPosted_by() != account_id) {
+                        continue;
+                    }
+                    if (event.type == ChangeEvent.Type.MESSAGE_DELETED) {
+                        changed.remove(event.message.getMessage_id());
+                        deleted.add(event.message.getMessage_id());
+                    } else {
+                        changed.put(event.message.getMessage_id(), event.message);
+                    }
+                }
+            }
+            if (seq >= lastSeq) {
+                return new MessageChanges(changes.cursor(seq), false, new ArrayList<>(changed.values()), deleted);
+            }
+        }
+
+        // The list must be at least as new as the cursor it is returned with, also when it is read from a replica.
+        ReadConsistency.readAfter(lastSeq);
+        return new MessageChanges(changes.cursor(lastSeq), true,
+            messageRepository.getAllMessagesByAccountId(account_id), new ArrayList<>());
+    }
+
+    /**
+     * Get the replication state of the read replicas.
+     * 
+     * @return the state of each replica, null if messages are not read from replicas.
+     */
+    public List<ReplicaSet.ReplicaStatus> getReplicaStatus() {
+        if (!(messageRepository instanceof ReplicatedMessageRepository)) {
+            return null;
+        }
+        return ((ReplicatedMessageRepository) messageRepository).getReplicaSet().status();
+    }
+
+    /**
+     * Give back the features this service shares with the other services of its repositories, which are closed once
+     * none of them uses them, see MessageFeatures. The service must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (features != null) {
+            MessageFeatures.release(features);
+            features = null;
+        }
+    }
+
+    /**
+     * Helper method to tell other instances that a message was written, if there is an InvalidationBus.
+     * 
+     * @param message_id the id of the message.
+     */
+    private void invalidate(int message_id) {
+        if (invalidationBus != null) {
+            invalidationBus.publishMessage(message_id);
+        }
+    }
+
     /**
      * Helper method to ensure Message.message_text is valid.
      * Requirements:
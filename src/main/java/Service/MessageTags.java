@@ -0,0 +1,321 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.AccountRepository;
+import DAO.ChangeStream;
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import Model.Account;
+import Model.ChangeEvent;
+import Model.Message;
+import Util.IntHashMap;
+import Util.IntSetIndex;
+
+/**
+ * The #tags and @mentions of messages, e.g. for GET /tags/{tag}/messages and GET /accounts/{account_id}/mentions.
+ *
+ * A tag is a # followed by letters, digits and underscores, at the start of the text or after any other character;
+ * tags are lower cased, so #Java and #java are the same tag. A mention is an @ followed by the username of an existing
+ * account, looked up when the message is written: an @name nobody has registered is not a mention, not even once
+ * someone does.
+ *
+ * Both are extracted once, when a message is written, into IntSetIndexes from the tag, or the mentioned account_id,
+ * to the sorted ids of the messages; a lookup is a binary search in that set and a copy of one page of it. The tags
+ * and mentions of every message are kept too, so an edit or delete removes exactly the ones it no longer has.
+ *
+ * The index is built from the repository on the first lookup and then follows the ChangeStream: every lookup first
+ * applies the creates, updates and deletes it has not seen, and when the stream no longer holds them the index is
+ * built again. Thread safe: lookups share a read lock; one thread at a time applies changes, looking up mentions
+ * before it takes the write lock to index them.
+ */
+public class MessageTags {
+
+    /**
+     * Longer tags and usernames are cut to this many characters.
+     */
+    private static final int MAX_NAME_LENGTH = 64;
+
+    /**
+     * Most changes read from the change stream at once.
+     */
+    private static final int BATCH = 256;
+
+    private static final class Extracted {
+        final String[] tags;
+        final int[] mentions;
+
+        Extracted(String[] tags, int[] mentions) {
+            this.tags = tags;
+            this.mentions = mentions;
+        }
+    }
+
+    private final MessageRepository messageRepository;
+    private final AccountRepository accountRepository;
+    private final ChangeStream changes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Held by the thread applying changes.
+     */
+    private final ReentrantLock applying = new ReentrantLock();
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final IntSetIndex messageIdsByTag = new IntSetIndex();
+    private final IntSetIndex messageIdsByMention = new IntSetIndex();
+    private final IntHashMap<Extracted> extractedByMessage = new IntHashMap<>();
+    private int nextTagId = 1;
+    /**
+     * The seq of the last change applied, negative until built.
+     */
+    private volatile long cursor = -1;
+
+    /**
+     * @param messageRepository where the messages are read from, to build the index and to return results.
+     * @param accountRepository where mentioned usernames are looked up.
+     * @param changes the change stream of messageRepository.
+     */
+    public MessageTags(MessageRepository messageRepository, AccountRepository accountRepository,
+            ChangeStream changes) {
+        this.messageRepository = messageRepository;
+        this.accountRepository = accountRepository;
+        this.changes = changes;
+    }
+
+    /**
+     * @param tag the tag, with or without the #, in any case.
+     * @param after only messages with a greater message_id, 0 for the first page.
+     * @param limit the most messages to return.
+     * @return the messages with the tag, in message_id order.
+     */
+    public List<Message> getMessagesByTag(String tag, int after, int limit) {
+        String name = tag.startsWith("#") ? tag.substring(1) : tag;
+        name = name.toLowerCase();
+        catchUp();
+
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            Integer tagId = tagIds.get(name);
+            ids = tagId == null ? new int[0] : messageIdsByTag.valuesAfter(tagId, after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return read(ids);
+    }
+
+    /**
+     * @param account_id the mentioned account.
+     * @param after only messages with a greater message_id, 0 for the first page.
+     * @param limit the most messages to return.
+     * @return the messages mentioning the account, in message_id order.
+     */
+    public List<Message> getMessagesMentioning(int account_id, int after, int limit) {
+        catchUp();
+
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            ids = messageIdsByMention.valuesAfter(account_id, after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return read(ids);
+    }
+
+    /**
+     * @param text a message_text.
+     * @return the distinct tags of the text, lower cased and without the #, in order.
+     */
+    static Set<String> tags(String text) {
+        Set<String> tags = new LinkedHashSet<>();
+        for (String tag : names(text, '#')) {
+            tags.add(tag.toLowerCase());
+        }
+        return tags;
+    }
+
+    /**
+     * @param text a message_text.
+     * @return the distinct @names of the text, without the @, in order.
+     */
+    static Set<String> mentions(String text) {
+        return names(text, '@');
+    }
+
+    private static Set<String> names(String text, char marker) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != marker || (i > 0 && isNameChar(text.charAt(i - 1)))) {
+                continue;
+            }
+            int end = i + 1;
+            while (end < text.length() && isNameChar(text.charAt(end))) {
+                end++;
+            }
+            if (end > i + 1) {
+                names.add(text.substring(i + 1, Math.min(end, i + 1 + MAX_NAME_LENGTH)));
+            }
+            i = end - 1;
+        }
+        return names;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private Extracted extract(String text) {
+        Set<String> tags = tags(text);
+        List<Integer> mentions = new ArrayList<>();
+        for (String username : mentions(text)) {
+            Account account = accountRepository.getAccountByUserame(username);
+            if (account != null && !mentions.contains(account.getAccount_id())) {
+                mentions.add(account.getAccount_id());
+            }
+        }
+        int[] mentioned = new int[mentions.size()];
+        for (int i = 0; i < mentioned.length; i++) {
+            mentioned[i] = mentions.get(i);
+        }
+        return new Extracted(tags.toArray(new String[0]), mentioned);
+    }
+
+    /**
+     * Apply the changes the index has not seen yet, building it first if it is not built.
+     */
+    private void catchUp() {
+        if (cursor >= 0 && cursor == changes.lastSeq()) {
+            return;
+        }
+        applying.lock();
+        try {
+            if (cursor < 0) {
+                build();
+            }
+            while (true) {
+                List<ChangeEvent> events = changes.read(cursor, BATCH);
+                if (events == null) {
+                    // The stream no longer holds the next event, start over.
+                    build();
+                    continue;
+                }
+                if (events.isEmpty()) {
+                    return;
+                }
+                // Look up the mentions before locking.
+                List<Extracted> extracted = new ArrayList<>(events.size());
+                for (ChangeEvent event : events) {
+                    boolean written = event.type == ChangeEvent.Type.MESSAGE_CREATED
+                        || event.type == ChangeEvent.Type.MESSAGE_UPDATED;
+                    extracted.add(written ? extract(event.message.getMessage_text()) : null);
+                }
+                lock.writeLock().lock();
+                try {
+                    for (int i = 0; i < events.size(); i++) {
+                        ChangeEvent event = events.get(i);
+                        if (event.message != null) {
+                            put(event.message.getMessage_id(), extracted.get(i));
+                        }
+                    }
+                    cursor = events.get(events.size() - 1).seq;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } finally {
+            applying.unlock();
+        }
+    }
+
+    /**
+     * Build the index from the repository, with applying held. The messages read may already have changes after the
+     * cursor, applying those again leaves the index as it is.
+     */
+    private void build() {
+        long seq = changes.lastSeq();
+        // Read a replica that has every change up to the cursor applied.
+        ReadConsistency.readAfter(seq);
+        List<Message> messages = messageRepository.getAllMessages();
+        List<Extracted> extracted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            extracted.add(extract(message.getMessage_text()));
+        }
+
+        lock.writeLock().lock();
+        try {
+            tagIds.clear();
+            messageIdsByTag.clear();
+            messageIdsByMention.clear();
+            extractedByMessage.clear();
+            for (int i = 0; i < messages.size(); i++) {
+                put(messages.get(i).getMessage_id(), extracted.get(i));
+            }
+            cursor = seq;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace what is indexed for a message.
+     *
+     * @param extracted the tags and mentions it has now, null for none.
+     */
+    private void put(int message_id, Extracted extracted) {
+        Extracted old = extracted == null
+            ? extractedByMessage.remove(message_id)
+            : extractedByMessage.put(message_id, extracted);
+        if (old != null) {
+            for (String tag : old.tags) {
+                int tagId = tagIds.get(tag);
+                messageIdsByTag.remove(tagId, message_id);
+                if (messageIdsByTag.count(tagId) == 0) {
+                    tagIds.remove(tag);
+                }
+            }
+            for (int account_id : old.mentions) {
+                messageIdsByMention.remove(account_id, message_id);
+            }
+        }
+        if (extracted != null) {
+            for (String tag : extracted.tags) {
+                Integer tagId = tagIds.get(tag);
+                if (tagId == null) {
+                    tagId = nextTagId++;
+                    tagIds.put(tag, tagId);
+                }
+                messageIdsByTag.add(tagId, message_id);
+            }
+            for (int account_id : extracted.mentions) {
+                messageIdsByMention.add(account_id, message_id);
+            }
+        }
+    }
+
+    /**
+     * Read the messages of a page at once, in the order of ids, without those deleted since they were indexed.
+     */
+    private List<Message> read(int[] ids) {
+        List<Integer> message_ids = new ArrayList<>(ids.length);
+        for (int message_id : ids) {
+            message_ids.add(message_id);
+        }
+        Map<Integer, Message> found = message_ids.isEmpty() ? Map.of()
+            : messageRepository.getMessagesByIds(message_ids);
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (int message_id : ids) {
+            Message message = found.get(message_id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+}
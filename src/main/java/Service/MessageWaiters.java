@@ -0,0 +1,306 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.ChangeStream;
+import DAO.MessageRepository;
+import DAO.ReadConsistency;
+import Model.ChangeEvent;
+import Model.Message;
+import Model.MessagePoll;
+
+/**
+ * Long polls for new messages, e.g. the clients of GET /messages/poll: a client with a cursor, the seq of the last
+ * change it has seen, waits until a message is created after it, or a timeout.
+ *
+ * The cursor is a position in the ChangeStream rather than a message_id: ids are assigned before their writes commit,
+ * so concurrent writes can become visible out of id order, but every message created after the cursor is in the
+ * stream after it, whatever its id.
+ *
+ * A waiting client is only a cursor and a future in a set, it holds no thread and no connection. One dispatcher thread
+ * waits for new events and hands every waiter that is behind to a few workers, which read the events after its
+ * cursor from the stream, at most one worker per waiter at a time. The messages created since, with later edits
+ * applied and without those deleted since, complete its future; a waiter with none just moves its cursor. The timeout
+ * is a timer. An idle client therefore costs nothing until something is written.
+ *
+ * A poll without a cursor, or with one the stream no longer holds or of another epoch of the stream, is a reset: it
+ * returns the whole list at once, read from a replica that has caught up with the stream as of the cursor it is
+ * returned with.
+ *
+ * Threads are started by the first poll and stopped by close(). Reads poll.workers (default 2) and poll.maxTimeoutMs
+ * (default 60000) in fromSystemProperties.
+ */
+public class MessageWaiters {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWaiters.class);
+
+    public static final String WORKERS_PROPERTY = "poll.workers";
+    public static final String MAX_TIMEOUT_PROPERTY = "poll.maxTimeoutMs";
+
+    /**
+     * The longest a client may wait, unless configured otherwise.
+     */
+    public static final long DEFAULT_MAX_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Most events read from the stream at once for one waiter.
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * How long the dispatcher waits for new events before it looks at the waiters again.
+     */
+    private static final long DISPATCH_WAIT_MILLIS = 1000;
+
+    private static final class Waiter {
+        final CompletableFuture<MessagePoll> result = new CompletableFuture<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile long cursor;
+
+        Waiter(long cursor) {
+            this.cursor = cursor;
+        }
+    }
+
+    private final MessageRepository messageRepository;
+    private final ChangeStream changes;
+    private final int workerCount;
+    private final long maxTimeoutMillis;
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+    private ExecutorService workers;
+    private Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * @param messageRepository where to read the whole list from on a reset.
+     * @param changes the change stream of messageRepository.
+     * @param workerCount how many waiters are read for at the same time.
+     */
+    public MessageWaiters(MessageRepository messageRepository, ChangeStream changes, int workerCount) {
+        this(messageRepository, changes, workerCount, DEFAULT_MAX_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param messageRepository where to read the whole list from on a reset.
+     * @param changes the change stream of messageRepository.
+     * @param workerCount how many waiters are read for at the same time.
+     * @param maxTimeoutMillis the longest a client may wait.
+     */
+    public MessageWaiters(MessageRepository messageRepository, ChangeStream changes, int workerCount,
+            long maxTimeoutMillis) {
+        this.messageRepository = messageRepository;
+        this.changes = changes;
+        this.workerCount = workerCount;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+    }
+
+    /**
+     * @return the configured poll.maxTimeoutMs, the longest a client may wait.
+     */
+    public static long maxTimeoutFromSystemProperties() {
+        return Long.getLong(MAX_TIMEOUT_PROPERTY, DEFAULT_MAX_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return waiters configured by the poll.* system properties.
+     */
+    public static MessageWaiters fromSystemProperties(MessageRepository messageRepository, ChangeStream changes) {
+        return new MessageWaiters(messageRepository, changes, Integer.getInteger(WORKERS_PROPERTY, 2),
+            maxTimeoutFromSystemProperties());
+    }
+
+    /**
+     * Wait for messages created after a cursor.
+     *
+     * @param cursor the cursor of the last change the client has seen, see ChangeStream.cursor(), null for none.
+     * @param timeoutMillis how long to wait, cut to the longest a client may wait.
+     * @return the messages created after cursor as soon as there are some, no messages and the cursor to poll with
+     * next after the timeout, or right away the whole list if there is no cursor or the stream does not hold it.
+     * @throws IllegalArgumentException if cursor is not a cursor.
+     * @throws IllegalStateException if the waiters are closed.
+     */
+    public CompletableFuture<MessagePoll> await(String cursor, long timeoutMillis) {
+        long cursorSeq = cursor == null ? -1 : changes.seqOf(cursor);
+        if (cursorSeq < 0 || cursorSeq > changes.lastSeq()) {
+            return CompletableFuture.completedFuture(reset());
+        }
+
+        Waiter waiter = new Waiter(cursorSeq);
+        MessagePoll poll = scan(waiter);
+        if (poll != null) {
+            return CompletableFuture.completedFuture(poll);
+        }
+
+        startThreads();
+        waiters.add(waiter);
+        waiter.result.whenComplete((result, ex) -> waiters.remove(waiter));
+        long timeout = Math.max(0, Math.min(timeoutMillis, maxTimeoutMillis));
+        CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS)
+            .execute(() -> waiter.result.complete(timedOut(waiter)));
+        // A message created since the scan may have been dispatched before the waiter was added.
+        if (waiter.cursor < changes.lastSeq()) {
+            schedule(waiter);
+        }
+        return waiter.result;
+    }
+
+    /**
+     * @return the number of clients waiting.
+     */
+    public int waiterCount() {
+        return waiters.size();
+    }
+
+    /**
+     * Stop the threads and answer every waiting client as if its timeout had passed.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (workers == null) {
+                return;
+            }
+            dispatcher.interrupt();
+            workers.shutdown();
+        }
+        for (Waiter waiter : waiters) {
+            waiter.result.complete(timedOut(waiter));
+        }
+    }
+
+    private synchronized void startThreads() {
+        if (closed) {
+            throw new IllegalStateException("MessageWaiters is closed");
+        }
+        if (workers != null) {
+            return;
+        }
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "message-poll-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = new Thread(this::dispatch, "message-poll-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void dispatch() {
+        long seen = changes.lastSeq();
+        while (true) {
+            try {
+                changes.await(seen, DISPATCH_WAIT_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            seen = changes.lastSeq();
+            for (Waiter waiter : waiters) {
+                if (waiter.cursor < seen) {
+                    schedule(waiter);
+                }
+            }
+        }
+    }
+
+    private void schedule(Waiter waiter) {
+        if (waiter.scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(() -> drain(waiter));
+            } catch (RejectedExecutionException ex) {
+                // Closed, close() answers the waiter.
+                waiter.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Read the events a waiter has not seen; runs on a worker, which has no request of its own, one per waiter at a
+     * time.
+     */
+    private void drain(Waiter waiter) {
+        ReadConsistency.beginRequest(false, 0);
+        try {
+            if (!waiter.result.isDone()) {
+                MessagePoll poll = scan(waiter);
+                if (poll != null) {
+                    waiter.result.complete(poll);
+                }
+            }
+        } catch (RuntimeException ex) {
+            logger.error("drain threw an exception, cursor: {}, message: {}", waiter.cursor, ex.getMessage());
+            waiter.result.completeExceptionally(ex);
+        } finally {
+            ReadConsistency.endRequest();
+            waiter.scheduled.set(false);
+        }
+
+        // An event may have arrived after the last read but before scheduled was cleared.
+        if (!waiter.result.isDone() && waiter.cursor < changes.lastSeq()) {
+            schedule(waiter);
+        }
+    }
+
+    /**
+     * Read the events after a waiter's cursor up to the newest one.
+     *
+     * @return the messages created after the cursor, null if there are none and the cursor was moved past what was
+     * read, or a reset if the stream no longer holds the cursor.
+     */
+    private MessagePoll scan(Waiter waiter) {
+        long lastSeq = changes.lastSeq();
+        Map<Integer, Message> created = new LinkedHashMap<>();
+        long seq = waiter.cursor;
+        while (seq < lastSeq) {
+            List<ChangeEvent> events = changes.read(seq, BATCH);
+            if (events == null) {
+                return reset();
+            }
+            if (events.isEmpty()) {
+                break;
+            }
+            for (ChangeEvent event : events) {
+                seq = event.seq;
+                if (event.message == null) {
+                    continue;
+                }
+                int message_id = event.message.getMessage_id();
+                if (event.type == ChangeEvent.Type.MESSAGE_CREATED) {
+                    created.put(message_id, event.message);
+                } else if (event.type == ChangeEvent.Type.MESSAGE_UPDATED) {
+                    created.replace(message_id, event.message);
+                } else if (event.type == ChangeEvent.Type.MESSAGE_DELETED) {
+                    created.remove(message_id);
+                }
+            }
+        }
+        waiter.cursor = seq;
+        return created.isEmpty() ? null
+            : new MessagePoll(changes.cursor(seq), false, new ArrayList<>(created.values()), null);
+    }
+
+    private MessagePoll timedOut(Waiter waiter) {
+        return new MessagePoll(changes.cursor(waiter.cursor), false, List.of(), null);
+    }
+
+    private MessagePoll reset() {
+        long lastSeq = changes.lastSeq();
+        // The list must be at least as new as the cursor it is returned with, also when it is read from a replica.
+        ReadConsistency.readAfter(lastSeq);
+        return new MessagePoll(changes.cursor(lastSeq), true, messageRepository.getAllMessages(), null);
+    }
+}
@@ -0,0 +1,194 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import Model.Message;
+import Model.TrendingTerm;
+import Util.CountMinSketch;
+import Util.HeavyHitters;
+
+/**
+ * The most used #tags of new messages over the last 5 minutes, hour and day, e.g. for GET /trending.
+ *
+ * Every created message counts each of its tags once, in the bucket of the current minute and of the current hour:
+ * 60 minute buckets cover the 5 minute and hour windows, 24 hour buckets the day. A bucket holds a CountMinSketch,
+ * the count of every tag in fixed memory, and the HeavyHitters among them by that count. A window's candidates are
+ * the tags that were among the most used of one of its buckets, and each is ranked by the sum of its sketch counts
+ * over the window's buckets; counts may be a little high, never low. Memory is fixed at about 84 buckets of 16KB
+ * plus HEAVY_HITTERS tags each, whatever the number of distinct tags.
+ *
+ * Windows are whole buckets, e.g. the hour window is the current minute and the 59 before it. A ranking is cached
+ * for RESULT_TTL_MILLIS, so answers are served from memory and lag new messages by at most that.
+ *
+ * Edits and deletes do not change the counts: a tag trends with the messages that were posted with it. Thread safe.
+ */
+public class TrendingTags {
+
+    /**
+     * The windows GET /trending can rank over.
+     */
+    public enum Window {
+        FIVE_MINUTES("5m", 5, false), HOUR("1h", 60, false), DAY("24h", 24, true);
+
+        private final String name;
+        private final int buckets;
+        private final boolean hours;
+
+        Window(String name, int buckets, boolean hours) {
+            this.name = name;
+            this.buckets = buckets;
+            this.hours = hours;
+        }
+
+        /**
+         * @param name 5m, 1h or 24h.
+         * @return the window, null if there is none by that name.
+         */
+        public static Window of(String name) {
+            for (Window window : values()) {
+                if (window.name.equals(name)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The most tags a ranking holds.
+     */
+    public static final int MAX_LIMIT = 100;
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1024;
+    private static final int HEAVY_HITTERS = 100;
+    private static final long RESULT_TTL_MILLIS = 1000;
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final long HOUR_MILLIS = 3_600_000;
+
+    private static final class Bucket {
+        long index = -1;
+        final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        final HeavyHitters top = new HeavyHitters(HEAVY_HITTERS);
+    }
+
+    private static final class Ranking {
+        final long computedAt;
+        final List<TrendingTerm> terms;
+
+        Ranking(long computedAt, List<TrendingTerm> terms) {
+            this.computedAt = computedAt;
+            this.terms = terms;
+        }
+    }
+
+    private static final Comparator<TrendingTerm> MOST_USED_FIRST = Comparator
+        .comparingLong((TrendingTerm term) -> term.count).reversed()
+        .thenComparing(term -> term.term);
+
+    private final LongSupplier clock;
+    private final Bucket[] minutes = new Bucket[60];
+    private final Bucket[] hours = new Bucket[24];
+    private final Ranking[] rankings = new Ranking[Window.values().length];
+
+    /**
+     * Count against the system clock.
+     */
+    public TrendingTags() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock the current time in milliseconds since Jan 1, 1970.
+     */
+    public TrendingTags(LongSupplier clock) {
+        this.clock = clock;
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = new Bucket();
+        }
+        for (int i = 0; i < hours.length; i++) {
+            hours[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Count the tags of a message that was created.
+     *
+     * @param message the new message.
+     */
+    public void recorded(Message message) {
+        Set<String> tags = MessageTags.tags(message.getMessage_text());
+        if (tags.isEmpty()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        synchronized (this) {
+            Bucket minute = bucket(minutes, now / MINUTE_MILLIS);
+            Bucket hour = bucket(hours, now / HOUR_MILLIS);
+            for (String tag : tags) {
+                long hash = CountMinSketch.hash(tag);
+                minute.top.offer(tag, minute.sketch.add(hash, 1));
+                hour.top.offer(tag, hour.sketch.add(hash, 1));
+            }
+        }
+    }
+
+    /**
+     * @param window the window to rank over.
+     * @param limit the most tags to return, at most MAX_LIMIT.
+     * @return the most used tags of the window, most used first.
+     */
+    public List<TrendingTerm> top(Window window, int limit) {
+        long now = clock.getAsLong();
+        Ranking ranking = rankings[window.ordinal()];
+        if (ranking == null || now - ranking.computedAt >= RESULT_TTL_MILLIS || now < ranking.computedAt) {
+            ranking = new Ranking(now, rank(window, now));
+            rankings[window.ordinal()] = ranking;
+        }
+        return new ArrayList<>(ranking.terms.subList(0, Math.min(Math.max(limit, 0), ranking.terms.size())));
+    }
+
+    private synchronized List<TrendingTerm> rank(Window window, long now) {
+        Bucket[] ring = window.hours ? hours : minutes;
+        long current = now / (window.hours ? HOUR_MILLIS : MINUTE_MILLIS);
+        List<Bucket> buckets = new ArrayList<>(window.buckets);
+        for (int i = 0; i < window.buckets; i++) {
+            Bucket bucket = ring[(int) Math.floorMod(current - i, (long) ring.length)];
+            if (bucket.index == current - i) {
+                buckets.add(bucket);
+            }
+        }
+
+        Set<String> candidates = new HashSet<>();
+        for (Bucket bucket : buckets) {
+            bucket.top.forEachKey(candidates::add);
+        }
+        List<TrendingTerm> terms = new ArrayList<>(candidates.size());
+        for (String tag : candidates) {
+            long hash = CountMinSketch.hash(tag);
+            long count = 0;
+            for (Bucket bucket : buckets) {
+                count += bucket.sketch.estimate(hash);
+            }
+            terms.add(new TrendingTerm(tag, count));
+        }
+        terms.sort(MOST_USED_FIRST);
+        return terms.size() > MAX_LIMIT ? new ArrayList<>(terms.subList(0, MAX_LIMIT)) : terms;
+    }
+
+    private static Bucket bucket(Bucket[] ring, long index) {
+        Bucket bucket = ring[(int) Math.floorMod(index, (long) ring.length)];
+        if (bucket.index != index) {
+            // The slot last held a bucket that has left every window.
+            bucket.sketch.clear();
+            bucket.top.clear();
+            bucket.index = index;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,125 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Approximate counts of a stream of keys in fixed memory, however many distinct keys there are.
+ *
+ * There are depth rows of width counters; a key has one counter per row, and its estimate is the smallest of them.
+ * Keys are hashed to 64 bits and the two halves pick the counters, row i taking low + i * high, so keys only share
+ * every counter if their whole 64 bit hashes are equal. Other keys that share a counter can only add to it, so an estimate is never below the true count,
+ * and with conservative update (raising only the counters that are at the minimum) it is over by at most about
+ * e * total / width with probability 1 - e^-depth.
+ *
+ * Memory: depth * width * 4 bytes.
+ *
+ * This class is not thread safe, callers are expected to guard it with their own lock.
+ */
+public class CountMinSketch {
+
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+
+    private final int depth;
+    private final int mask;
+    private final int[] counters;
+    private long total;
+
+    /**
+     * @param depth the number of rows, e.g. 4.
+     * @param width the counters per row, rounded up to a power of two.
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        int capacity = Integer.highestOneBit(Math.max(width, 2) - 1) << 1;
+        this.mask = capacity - 1;
+        this.counters = new int[depth * capacity];
+    }
+
+    /**
+     * Count a key.
+     *
+     * @param hash the 64 bit hash of the key, e.g. hash(String).
+     * @param count how many times to count it.
+     * @return the new estimate of the key.
+     */
+    public int add(long hash, int count) {
+        int estimate = estimate(hash);
+        int target = estimate + count;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            if (counters[index] < target) {
+                counters[index] = target;
+            }
+        }
+        total += count;
+        return target;
+    }
+
+    /**
+     * @param hash the 64 bit hash of the key.
+     * @return at least the number of times the key was counted, usually exactly that.
+     */
+    public int estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * (mask + 1) + ((h1 + row * h2) & mask)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return the sum of all counts.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Hash a key to 64 bits: its UTF-8 bytes through the body of MurmurHash3 x64, 8 bytes at a time, and the 64 bit
+     * finalizer.
+     *
+     * @param key the key, e.g. a tag.
+     * @return the hash.
+     */
+    public static long hash(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long h = 0;
+        int i = 0;
+        for (; i + 8 <= bytes.length; i += 8) {
+            long k = 0;
+            for (int b = 7; b >= 0; b--) {
+                k = (k << 8) | (bytes[i + b] & 0xFF);
+            }
+            h ^= mixKey(k);
+            h = Long.rotateLeft(h, 27) * 5 + 0x52DCE729;
+        }
+        long k = 0;
+        for (int b = bytes.length - 1; b >= i; b--) {
+            k = (k << 8) | (bytes[b] & 0xFF);
+        }
+        h ^= mixKey(k);
+        h ^= bytes.length;
+        return HyperLogLog.fmix64(h);
+    }
+
+    private static long mixKey(long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        return k;
+    }
+
+    /**
+     * Forget every count.
+     */
+    public void clear() {
+        Arrays.fill(counters, 0);
+        total = 0;
+    }
+}
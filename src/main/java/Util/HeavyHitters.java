@@ -0,0 +1,91 @@
+package Util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The keys with the largest counts in a stream, tracked in a fixed number of slots, given each key's count as it
+ * changes, e.g. its estimate from a CountMinSketch just after counting it.
+ *
+ * A tracked key has its count updated. An untracked key takes a free slot, or replaces the tracked key with the
+ * smallest count if its own count is larger. With counts from a sketch, the keys tracked are the ones with the largest
+ * estimates, whatever order they came in, so a key that is frequent overall is found even among many more distinct
+ * keys than slots. Most keys of a long tail are below the smallest tracked count, and are turned away in O(1) against
+ * a cached lower bound of it; only a replacement scans the slots.
+ *
+ * This class is not thread safe, callers are expected to guard it with their own lock.
+ */
+public class HeavyHitters {
+
+    private final int capacity;
+    private final Map<String, long[]> counts;
+    private long smallestBound;
+
+    /**
+     * @param capacity the number of keys tracked, in the hundreds at most.
+     */
+    public HeavyHitters(int capacity) {
+        this.capacity = capacity;
+        this.counts = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Give the current count of a key.
+     *
+     * @param key the key.
+     * @param count its count, never less than what was given for it before.
+     */
+    public void offer(String key, long count) {
+        long[] tracked = counts.get(key);
+        if (tracked != null) {
+            tracked[0] = count;
+            return;
+        }
+        if (counts.size() < capacity) {
+            counts.put(key, new long[] {count});
+            smallestBound = counts.size() == capacity ? smallest() : 0;
+            return;
+        }
+        if (count <= smallestBound) {
+            return;
+        }
+
+        String smallestKey = null;
+        long smallestCount = Long.MAX_VALUE;
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            if (entry.getValue()[0] < smallestCount) {
+                smallestKey = entry.getKey();
+                smallestCount = entry.getValue()[0];
+            }
+        }
+        if (count > smallestCount) {
+            counts.remove(smallestKey);
+            counts.put(key, new long[] {count});
+        }
+        smallestBound = smallest();
+    }
+
+    /**
+     * @param action called with every tracked key.
+     */
+    public void forEachKey(Consumer<String> action) {
+        counts.keySet().forEach(action);
+    }
+
+    /**
+     * Forget every key.
+     */
+    public void clear() {
+        counts.clear();
+        smallestBound = 0;
+    }
+
+    private long smallest() {
+        long smallest = Long.MAX_VALUE;
+        for (long[] count : counts.values()) {
+            smallest = Math.min(smallest, count[0]);
+        }
+        return smallest;
+    }
+}
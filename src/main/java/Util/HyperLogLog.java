@@ -0,0 +1,92 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * An approximate count of distinct values in fixed memory (HyperLogLog), e.g. of the accounts that posted.
+ *
+ * A value is hashed to 64 bits; the first PRECISION bits pick one of 2^PRECISION registers, and the register keeps
+ * the longest run of leading zeros seen in the rest, plus one. The harmonic mean of the registers estimates how many
+ * distinct hashes were seen, with a standard error of 1.04 / sqrt(2^PRECISION), about 1.6%. Small counts, while many
+ * registers are still zero, are estimated by linear counting instead, which is close to exact.
+ *
+ * Sketches merge by taking the larger of each register, so one per time bucket can be combined into any window.
+ *
+ * Memory: 2^PRECISION bytes, 4KB.
+ *
+ * This class is not thread safe, callers are expected to guard it with their own lock.
+ */
+public class HyperLogLog {
+
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * Count a value.
+     *
+     * @param value the value, e.g. an account_id.
+     */
+    public void add(long value) {
+        long hash = fmix64(value);
+        int register = (int) (hash >>> (64 - PRECISION));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), 64 - PRECISION) + 1;
+        if (registers[register] < rank) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * Count every value other counted too.
+     *
+     * @param other another sketch.
+     */
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] < other.registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct values counted.
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Forget every value.
+     */
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    /**
+     * The 64 bit finalizer of MurmurHash3, so that consecutive ids spread over every register.
+     */
+    static long fmix64(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
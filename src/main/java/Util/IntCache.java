@@ -0,0 +1,97 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size, direct mapped cache from int keys to values, e.g. message_id to Message.
+ *
+ * Each key has exactly one slot, picked by hashing the key, and a put simply replaces whatever the slot held, so the
+ * cache never grows and needs no eviction bookkeeping. Reads and writes are lock free.
+ *
+ * A read-through caller takes a stamp() before loading the value and passes it to put(): if anything was invalidated
+ * in between, the value it loaded may predate the invalidation, and put() drops it rather than cache a stale value.
+ * invalidateAll() is O(1), it moves the cache to a new generation and entries of older ones are misses.
+ *
+ * This class is thread safe.
+ */
+public class IntCache<V> {
+
+    private static final class Entry<V> {
+        final int key;
+        final V value;
+        final long generation;
+
+        Entry(int key, V value, long generation) {
+            this.key = key;
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry<V>> slots;
+    private final int mask;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    public IntCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the cached value of key, null if it is not cached.
+     */
+    public V get(int key) {
+        Entry<V> entry = slots.get(IntHashMap.mix(key) & mask);
+        return entry != null && entry.key == key && entry.generation == generation.get() ? entry.value : null;
+    }
+
+    /**
+     * @return the stamp to pass to put() for a value loaded after this call.
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Cache a value, unless something was invalidated since stamp was taken.
+     *
+     * @param key the key.
+     * @param value the value, not null.
+     * @param stamp the stamp() taken before the value was loaded.
+     */
+    public void put(int key, V value, long stamp) {
+        int slot = IntHashMap.mix(key) & mask;
+        Entry<V> entry = new Entry<>(key, value, generation.get());
+        slots.set(slot, entry);
+        // Checked after the write, so an invalidation racing with it either sees the entry or bumps the stamp.
+        if (invalidations.get() != stamp) {
+            slots.compareAndSet(slot, entry, null);
+        }
+    }
+
+    /**
+     * Drop the cached value of key, if any.
+     */
+    public void invalidate(int key) {
+        invalidations.incrementAndGet();
+        int slot = IntHashMap.mix(key) & mask;
+        Entry<V> entry = slots.get(slot);
+        if (entry != null && entry.key == key) {
+            slots.compareAndSet(slot, entry, null);
+        }
+    }
+
+    /**
+     * Drop every cached value.
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        generation.incrementAndGet();
+    }
+}
@@ -0,0 +1,197 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * An open addressing hash map from primitive int keys to objects.
+ *
+ * Keys are stored in an int[] next to the values, so lookups and inserts never box the key. Collisions are
+ * resolved with linear probing and removals use backward shift deletion, so there are no tombstones to clean up.
+ *
+ * This class is not thread safe, callers are expected to guard it with their own lock.
+ *
+ * @param <V> the value type.
+ */
+public class IntHashMap<V> {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    /**
+     * Create a map with room for 16 entries before the first resize.
+     */
+    public IntHashMap() {
+        this(16);
+    }
+
+    /**
+     * Create a map with room for the expected number of entries before the first resize.
+     *
+     * @param expectedSize the number of entries expected.
+     */
+    public IntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @param key the key to look up.
+     * @return the value mapped to key, null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = indexOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * @param key the key to look up.
+     * @return true if key is mapped to a value.
+     */
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Map key to value, replacing any existing mapping.
+     *
+     * @param key the key.
+     * @param value the value, must not be null.
+     * @return the previous value, null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntHashMap does not store null values");
+        }
+
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            allocateAndRehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the mapping for key.
+     *
+     * @param key the key.
+     * @return the removed value, null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        V previous = (V) values[slot];
+        size--;
+
+        // Shift back any entries that probed past the freed slot, so lookups never stop early.
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (values[next] != null) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry unless its home slot lies cyclically in (free, next].
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = null;
+
+        return previous;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every entry, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Call action for every value, in no particular order.
+     *
+     * @param action the action to run.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    private int indexOf(int key) {
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void allocateAndRehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spread sequential ids across the table, they would otherwise fill it in long runs.
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
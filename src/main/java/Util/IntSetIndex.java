@@ -0,0 +1,247 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A multimap from int keys to sorted sets of ints, e.g. posted_by to the ids of that account's messages.
+ *
+ * The table uses open addressing over three parallel arrays (keys, value arrays, value counts), so neither keys nor
+ * values are ever boxed and there is no entry object per key. Each set is a sorted int[] that grows by doubling;
+ * adding a value larger than every value in its set, which is what increasing message ids do, is an append.
+ *
+ * Memory per entry, on a 64-bit JVM with compressed oops:
+ *  per key:    4 (key) + 4 (set reference) + 4 (count) bytes in the table, divided by the 0.6 load factor,
+ *              plus a 16 byte int[] header, roughly 36 bytes.
+ *  per value:  4 bytes, plus up to 4 more of unused capacity until the set next doubles.
+ *
+ * This class is not thread safe, callers are expected to guard it with their own lock.
+ */
+public class IntSetIndex {
+
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int INITIAL_SET_CAPACITY = 4;
+    private static final int[] EMPTY = new int[0];
+
+    private int[] keys;
+    private int[][] sets;
+    private int[] counts;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    /**
+     * Create an index with room for 16 keys before the first resize.
+     */
+    public IntSetIndex() {
+        this(16);
+    }
+
+    /**
+     * Create an index with room for the expected number of keys before the first resize.
+     *
+     * @param expectedKeys the number of keys expected.
+     */
+    public IntSetIndex(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedKeys / LOAD_FACTOR), 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Add value to the set of key.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return true if the value was added, false if it was already present.
+     */
+    public boolean add(int key, int value) {
+        int slot = IntHashMap.mix(key) & mask;
+        while (sets[slot] != null) {
+            if (keys[slot] == key) {
+                return addToSet(slot, value);
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        sets[slot] = new int[INITIAL_SET_CAPACITY];
+        sets[slot][0] = value;
+        counts[slot] = 1;
+        if (++size > resizeAt) {
+            allocateAndRehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Remove value from the set of key, dropping the key once its set is empty.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return true if the value was removed, false if it was not present.
+     */
+    public boolean remove(int key, int value) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return false;
+        }
+
+        int[] set = sets[slot];
+        int count = counts[slot];
+        int i = Arrays.binarySearch(set, 0, count, value);
+        if (i < 0) {
+            return false;
+        }
+
+        System.arraycopy(set, i + 1, set, i, count - i - 1);
+        if (--counts[slot] == 0) {
+            removeSlot(slot);
+        }
+        return true;
+    }
+
+    /**
+     * @param key the key.
+     * @param value the value.
+     * @return true if value is in the set of key.
+     */
+    public boolean contains(int key, int value) {
+        int slot = indexOf(key);
+        return slot >= 0 && Arrays.binarySearch(sets[slot], 0, counts[slot], value) >= 0;
+    }
+
+    /**
+     * @param key the key.
+     * @return the number of values in the set of key, 0 if there are none.
+     */
+    public int count(int key) {
+        int slot = indexOf(key);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * @param key the key.
+     * @return a copy of the set of key in ascending order, empty if there are none.
+     */
+    public int[] values(int key) {
+        int slot = indexOf(key);
+        return slot < 0 ? EMPTY : Arrays.copyOf(sets[slot], counts[slot]);
+    }
+
+    /**
+     * A range of the set of key, found by binary search, e.g. one page of ids after the last one a client has.
+     *
+     * @param key the key.
+     * @param after only values greater than this.
+     * @param limit the most values to return.
+     * @return a copy of at most limit values greater than after, in ascending order, empty if there are none.
+     */
+    public int[] valuesAfter(int key, int after, int limit) {
+        int slot = indexOf(key);
+        if (slot < 0 || limit <= 0) {
+            return EMPTY;
+        }
+        int from = Arrays.binarySearch(sets[slot], 0, counts[slot], after);
+        from = from >= 0 ? from + 1 : -from - 1;
+        return Arrays.copyOfRange(sets[slot], from, from + Math.min(limit, counts[slot] - from));
+    }
+
+    /**
+     * @return the number of keys with a non-empty set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every key, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(sets, null);
+        size = 0;
+    }
+
+    private boolean addToSet(int slot, int value) {
+        int[] set = sets[slot];
+        int count = counts[slot];
+
+        int at;
+        if (count == 0 || set[count - 1] < value) {
+            at = count;
+        } else {
+            int i = Arrays.binarySearch(set, 0, count, value);
+            if (i >= 0) {
+                return false;
+            }
+            at = -i - 1;
+        }
+
+        if (count == set.length) {
+            set = Arrays.copyOf(set, count << 1);
+            sets[slot] = set;
+        }
+        System.arraycopy(set, at, set, at + 1, count - at);
+        set[at] = value;
+        counts[slot] = count + 1;
+        return true;
+    }
+
+    private int indexOf(int key) {
+        int slot = IntHashMap.mix(key) & mask;
+        while (sets[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Free slot, shifting back any entries that probed past it, as in IntHashMap.remove.
+     */
+    private void removeSlot(int slot) {
+        size--;
+
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (sets[next] != null) {
+            int home = IntHashMap.mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                sets[free] = sets[next];
+                counts[free] = counts[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        sets[free] = null;
+        counts[free] = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        sets = new int[capacity][];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void allocateAndRehash(int capacity) {
+        int[] oldKeys = keys;
+        int[][] oldSets = sets;
+        int[] oldCounts = counts;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSets[i] != null) {
+                int slot = IntHashMap.mix(oldKeys[i]) & mask;
+                while (sets[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                sets[slot] = oldSets[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
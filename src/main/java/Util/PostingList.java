@@ -0,0 +1,134 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A sorted set of ints stored compressed, e.g. the ids of the messages that contain a word.
+ *
+ * Values are kept in increasing order as the difference to the previous value (the first one as is), each written as
+ * a varint: 7 bits per byte, low bits first, with the high bit set on every byte but the last. Message ids are
+ * assigned in increasing order, so neighbouring values are close and most gaps take one or two bytes instead of the
+ * four of an int[]. Adding a value larger than every value in the set, which is what new message ids do, is an
+ * append; anything else rewrites the list.
+ *
+ * Memory per value: usually 1 to 2 bytes, plus up to as much again of unused capacity until the buffer next doubles.
+ *
+ * This class is not thread safe, callers are expected to guard it with their own lock.
+ */
+public class PostingList {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int[] EMPTY = new int[0];
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length;
+    private int size;
+    private int last;
+
+    /**
+     * Add a value.
+     *
+     * @param value the value, at least 0.
+     * @return true if the value was added, false if it was already present.
+     */
+    public boolean add(int value) {
+        if (size == 0 || value > last) {
+            append(value);
+            return true;
+        }
+        int[] values = toArray();
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0) {
+            return false;
+        }
+        int insertAt = -index - 1;
+        int[] added = new int[values.length + 1];
+        System.arraycopy(values, 0, added, 0, insertAt);
+        added[insertAt] = value;
+        System.arraycopy(values, insertAt, added, insertAt + 1, values.length - insertAt);
+        encode(added, added.length);
+        return true;
+    }
+
+    /**
+     * Keep only the values that pass the filter.
+     *
+     * @param filter tells which values to keep.
+     * @return the number of values removed.
+     */
+    public int retain(IntPredicate filter) {
+        int[] values = toArray();
+        int kept = 0;
+        for (int value : values) {
+            if (filter.test(value)) {
+                values[kept++] = value;
+            }
+        }
+        encode(values, kept);
+        return values.length - kept;
+    }
+
+    /**
+     * @return the values, in increasing order.
+     */
+    public int[] toArray() {
+        if (size == 0) {
+            return EMPTY;
+        }
+        int[] values = new int[size];
+        int position = 0;
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += delta;
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes the values take, without unused capacity.
+     */
+    public int encodedBytes() {
+        return length;
+    }
+
+    private void append(int value) {
+        int delta = size == 0 ? value : value - last;
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, length + 5));
+        }
+        while ((delta & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        bytes[length++] = (byte) delta;
+        last = value;
+        size++;
+    }
+
+    private void encode(int[] values, int count) {
+        bytes = new byte[Math.max(INITIAL_CAPACITY, count * 2)];
+        length = 0;
+        size = 0;
+        last = 0;
+        for (int i = 0; i < count; i++) {
+            append(values[i]);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * Connections to the message shards, the companion of ConnectionUtil for ShardedMessageDAO.
+ *
+ * Each shard is its own H2 database file, ./h2/shard0 to ./h2/shardN-1, holding only a message table; accounts stay
+ * in the database of ConnectionUtil. Unlike ConnectionUtil's data source every shard has a real connection pool, so
+ * callers must close the connections they get. The number of shards is read once from the storage.shards system
+ * property (default 4).
+ *
+ * Message ids come from one sequence, kept in shard 0, so they increase in the order they are assigned whatever the
+ * shard: value g of the sequence becomes id g * N + i + 1 in shard i, which keeps ids unique and lets the shard of a
+ * message be computed from its id. Each shard records the shard count it was created with, and opening it with a
+ * different count fails rather than misroute messages.
+ */
+public class ShardConnectionUtil {
+
+    public static final String SHARDS_PROPERTY = "storage.shards";
+
+    private static final String URL_FORMAT = "jdbc:h2:./h2/shard%d;";
+    private static final String USERNAME = "sa";
+    private static final String PASSWORD = "sa";
+
+    /**
+     * Connections kept open per shard.
+     */
+    private static final int MAX_CONNECTIONS_PER_SHARD = 16;
+
+    private static final String SEQUENCE = "message_id_seq";
+
+    private static volatile JdbcConnectionPool[] pools;
+
+    private ShardConnectionUtil() {
+    }
+
+    /**
+     * @return the number of shards.
+     */
+    public static int shardCount() {
+        return pools().length;
+    }
+
+    /**
+     * @param shard the shard, 0 to shardCount() - 1.
+     * @return a pooled connection to the shard, to be closed by the caller.
+     */
+    public static Connection getConnection(int shard) throws SQLException {
+        return pools()[shard].getConnection();
+    }
+
+    /**
+     * Assign new message ids in a shard. Ids are taken from the sequence shared by every shard, so each one is greater
+     * than any id assigned before it in any shard.
+     *
+     * @param shard the shard the messages go to.
+     * @param count the number of ids.
+     * @return count ids, in increasing order.
+     */
+    public static int[] nextMessageIds(int shard, int count) throws SQLException {
+        JdbcConnectionPool[] pools = pools();
+        int[] ids = new int[count];
+        try (Connection conn = pools[0].getConnection(); Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT NEXT VALUE FOR " + SEQUENCE + " FROM SYSTEM_RANGE(1, " + count
+                    + ")")) {
+            for (int k = 0; k < count; k++) {
+                if (!rs.next()) {
+                    throw new SQLException("Missing sequence value in a range of " + count);
+                }
+                long id = rs.getLong(1) * pools.length + shard + 1;
+                if (id > Integer.MAX_VALUE) {
+                    throw new SQLException("Message ids are exhausted");
+                }
+                ids[k] = (int) id;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * For testing, drop and recreate the message table of every shard, and start the ids over.
+     */
+    public static void resetShards() {
+        JdbcConnectionPool[] pools = pools();
+        for (int shard = 0; shard < pools.length; shard++) {
+            try (Connection conn = pools[shard].getConnection(); Statement st = conn.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS message");
+                createTables(st, shard, pools.length);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        try (Connection conn = pools[0].getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DROP SEQUENCE IF EXISTS " + SEQUENCE);
+            createSequence(pools);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static JdbcConnectionPool[] pools() {
+        JdbcConnectionPool[] opened = pools;
+        if (opened == null) {
+            synchronized (ShardConnectionUtil.class) {
+                if (pools == null) {
+                    pools = open();
+                }
+                opened = pools;
+            }
+        }
+        return opened;
+    }
+
+    private static JdbcConnectionPool[] open() {
+        int shardCount = Integer.getInteger(SHARDS_PROPERTY, 4);
+        if (shardCount < 1) {
+            throw new IllegalStateException(SHARDS_PROPERTY + " must be positive: " + shardCount);
+        }
+
+        JdbcConnectionPool[] created = new JdbcConnectionPool[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            created[shard] = JdbcConnectionPool.create(String.format(URL_FORMAT, shard), USERNAME, PASSWORD);
+            created[shard].setMaxConnections(MAX_CONNECTIONS_PER_SHARD);
+
+            try (Connection conn = created[shard].getConnection(); Statement st = conn.createStatement()) {
+                createTables(st, shard, shardCount);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not open message shard " + shard, e);
+            }
+        }
+
+        try {
+            createSequence(created);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not open the message id sequence", e);
+        }
+        return created;
+    }
+
+    /**
+     * Create the id sequence in shard 0 if it does not exist, starting past every id already in the shards, e.g. those
+     * of shards created before there was a sequence.
+     */
+    private static void createSequence(JdbcConnectionPool[] pools) throws SQLException {
+        long maxId = 0;
+        for (JdbcConnectionPool pool : pools) {
+            try (Connection conn = pool.getConnection(); Statement st = conn.createStatement();
+                    ResultSet rs = st.executeQuery("SELECT MAX(message_id) FROM message")) {
+                if (rs.next()) {
+                    maxId = Math.max(maxId, rs.getLong(1));
+                }
+            }
+        }
+
+        long start = (maxId + pools.length - 1) / pools.length;
+        try (Connection conn = pools[0].getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE + " START WITH " + start);
+        }
+    }
+
+    private static void createTables(Statement st, int shard, int shardCount) throws SQLException {
+        st.execute("CREATE TABLE IF NOT EXISTS shard_info (shard int, shard_count int)");
+        try (ResultSet rs = st.executeQuery("SELECT shard, shard_count FROM shard_info")) {
+            if (!rs.next()) {
+                st.execute("INSERT INTO shard_info (shard, shard_count) VALUES (" + shard + ", " + shardCount + ")");
+            } else if (rs.getInt(1) != shard || rs.getInt(2) != shardCount) {
+                throw new SQLException("Shard " + shard + " of " + shardCount + " was created as shard " + rs.getInt(1)
+                    + " of " + rs.getInt(2));
+            }
+        }
+
+        st.execute("CREATE TABLE IF NOT EXISTS message ("
+            + "message_id int PRIMARY KEY, "
+            + "posted_by int, "
+            + "message_text varchar(255), "
+            + "time_posted_epoch bigint)");
+        st.execute("CREATE INDEX IF NOT EXISTS message_posted_by ON message (posted_by)");
+    }
+}
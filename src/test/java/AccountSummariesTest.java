@@ -0,0 +1,154 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.MessageRepository;
+import Model.Account;
+import Model.AccountSummary;
+import Model.Message;
+import Service.AccountSummaries;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Keeps message counts and latest times with AccountSummaries, following the change stream of in-memory repositories,
+ * and once through the endpoints.
+ */
+public class AccountSummariesTest {
+    InMemoryMessageRepository storage;
+    MessageRepository messageRepository;
+    ChangeStream changes;
+    AccountSummaries summaries;
+
+    /**
+     * Before every test, register two accounts and post a message before any summary is read.
+     */
+    @Before
+    public void setUp() throws Exception {
+        InMemoryAccountRepository accountRepository = new InMemoryAccountRepository();
+        accountRepository.insertAccount(new Account("testuser1", "password"));
+        accountRepository.insertAccount(new Account("other", "password"));
+        storage = new InMemoryMessageRepository(accountRepository);
+        changes = new ChangeStream(8, null);
+        messageRepository = new ChangeCapturingMessageRepository(storage, changes);
+        summaries = new AccountSummaries(messageRepository, changes, 100);
+
+        post(1, 100);
+    }
+
+    /**
+     * Inserts and deletes after a summary was read change it, deleting the latest message finds the one before.
+     */
+    @Test
+    public void followsInsertsAndDeletes() {
+        Assert.assertEquals(summary(1, 1, 100L), summaries.summarize(List.of(1)).get(1));
+        Assert.assertEquals(summary(2, 0, null), summaries.summarize(List.of(2)).get(2));
+
+        post(1, 300);
+        post(1, 200);
+        post(2, 50);
+        Assert.assertEquals(summary(1, 3, 300L), summaries.summarize(List.of(1)).get(1));
+        Assert.assertEquals(summary(2, 1, 50L), summaries.summarize(List.of(2)).get(2));
+
+        messageRepository.deleteMessageById(2);
+        messageRepository.deleteMessageById(4);
+        Assert.assertEquals(summary(1, 2, 200L), summaries.summarize(List.of(1)).get(1));
+        Assert.assertEquals(summary(2, 0, null), summaries.summarize(List.of(2)).get(2));
+    }
+
+    /**
+     * When the change stream has dropped events the summaries have not seen, they are read again.
+     */
+    @Test
+    public void readsAgainAfterAGap() {
+        Assert.assertEquals(summary(1, 1, 100L), summaries.summarize(List.of(1, 2)).get(1));
+
+        storage.insertMessage(new Message(1, "not captured", 400));
+        for (int i = 0; i < 20; i++) {
+            post(2, 10);
+        }
+        Assert.assertEquals(summary(1, 2, 400L), summaries.summarize(List.of(1, 2)).get(1));
+        Assert.assertEquals(summary(2, 20, 10L), summaries.summarize(List.of(1, 2)).get(2));
+    }
+
+    /**
+     * Only capacity summaries are kept, and an invalidation from another instance makes the kept ones be read again.
+     */
+    @Test
+    public void keepsFewAndReadsAgainWhenInvalidated() {
+        AccountSummaries summaries = new AccountSummaries(messageRepository, changes, 1);
+        Assert.assertEquals(summary(2, 0, null), summaries.summarize(List.of(2)).get(2));
+
+        // Written by another instance, only known through its invalidation.
+        storage.insertMessage(new Message(2, "elsewhere", 500));
+        Assert.assertEquals(summary(2, 0, null), summaries.summarize(List.of(2)).get(2));
+        summaries.invalidateMessage(2);
+        Assert.assertEquals(summary(2, 1, 500L), summaries.summarize(List.of(2)).get(2));
+
+        // Account 2 is dropped to keep account 1, and read again.
+        Assert.assertEquals(summary(1, 1, 100L), summaries.summarize(List.of(1)).get(1));
+        storage.insertMessage(new Message(2, "elsewhere", 700));
+        Assert.assertEquals(summary(2, 2, 700L), summaries.summarize(List.of(2)).get(2));
+    }
+
+    /**
+     * GET /accounts/{account_id}/summary returns one summary with the username, GET /accounts/summaries?ids= many,
+     * in order, with null for an account that doesn't exist.
+     */
+    @Test
+    public void endpoints() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        try {
+            HttpClient webClient = HttpClient.newHttpClient();
+            AccountSummary expected = new AccountSummary(1, "testuser1", 1, 1669947792L);
+
+            HttpRequest one = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/summary"))
+                .build();
+            HttpResponse<String> response = webClient.send(one, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(expected, new ObjectMapper().readValue(response.body(), AccountSummary.class));
+
+            HttpRequest many = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/summaries?ids=9,1"))
+                .build();
+            response = webClient.send(many, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(Arrays.asList(null, expected),
+                new ObjectMapper().readValue(response.body(), new TypeReference<List<AccountSummary>>(){}));
+
+            HttpRequest unknown = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9/summary"))
+                .build();
+            Assert.assertEquals(404, webClient.send(unknown, HttpResponse.BodyHandlers.ofString()).statusCode());
+        } finally {
+            app.stop();
+        }
+    }
+
+    private void post(int posted_by, long time_posted_epoch) {
+        messageRepository.insertMessage(new Message(posted_by, "text", time_posted_epoch));
+    }
+
+    private static AccountSummary summary(int account_id, int message_count, Long latest_time_posted_epoch) {
+        return new AccountSummary(account_id, null, message_count, latest_time_posted_epoch);
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Message;
+import Model.MessageAnalytics;
+import Service.ActivityCounters;
+
+/**
+ * Counts new messages and their distinct posters with ActivityCounters against a clock the test moves.
+ */
+public class ActivityCountersTest {
+    AtomicLong now;
+    ActivityCounters activity;
+
+    @Before
+    public void setUp() {
+        // The start of a minute.
+        now = new AtomicLong(1669947780000L);
+        activity = new ActivityCounters(now::get);
+    }
+
+    /**
+     * Messages are counted per second and per minute, and in every window that covers them.
+     */
+    @Test
+    public void countsMessagesPerSecondAndMinute() {
+        post(1);
+        post(2);
+        now.addAndGet(1000);
+        post(1);
+
+        MessageAnalytics analytics = activity.snapshot();
+        Assert.assertEquals(Map.of("5m", 3L, "1h", 3L, "24h", 3L), analytics.messages);
+        Assert.assertEquals(Map.of("5m", 2L, "1h", 2L, "24h", 2L), analytics.distinct_posters);
+        Assert.assertEquals(60, analytics.per_second.length);
+        Assert.assertEquals(1, analytics.per_second[59]);
+        Assert.assertEquals(2, analytics.per_second[58]);
+        Assert.assertEquals(3, analytics.per_minute[59]);
+    }
+
+    /**
+     * Each window only counts the messages of its last 5 minutes, hour or day.
+     */
+    @Test
+    public void windowsForgetOldMessages() {
+        post(1);
+        now.addAndGet(10 * 60_000);
+        post(2);
+
+        MessageAnalytics analytics = activity.snapshot();
+        Assert.assertEquals(Map.of("5m", 1L, "1h", 2L, "24h", 2L), analytics.messages);
+        Assert.assertEquals(0, analytics.per_second[0]);
+        Assert.assertEquals(1, analytics.per_minute[49]);
+
+        now.addAndGet(2 * 3_600_000);
+        analytics = activity.snapshot();
+        Assert.assertEquals(Map.of("5m", 0L, "1h", 0L, "24h", 2L), analytics.messages);
+        Assert.assertEquals(Map.of("5m", 0L, "1h", 0L, "24h", 2L), analytics.distinct_posters);
+
+        now.addAndGet(25 * 3_600_000);
+        Assert.assertEquals(Map.of("5m", 0L, "1h", 0L, "24h", 0L), activity.snapshot().messages);
+    }
+
+    /**
+     * Distinct posters are estimated within a few percent, however many messages each of them posted.
+     */
+    @Test
+    public void estimatesDistinctPosters() {
+        for (int i = 0; i < 100000; i++) {
+            post(i % 20000 + 1);
+        }
+
+        long estimate = activity.snapshot().distinct_posters.get("1h");
+        Assert.assertTrue("estimate " + estimate, Math.abs(estimate - 20000) < 20000 * 0.05);
+    }
+
+    private void post(int posted_by) {
+        activity.recorded(new Message(1, posted_by, "text", 1669947780));
+    }
+}
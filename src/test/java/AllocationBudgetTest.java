@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Allocation budgets for every route in SocialMediaController.
+ *
+ * A before/after handler pair samples the per-thread allocation counter of the Jetty thread serving the request, so
+ * the measurement covers exactly the handler pipeline (body parsing, service and DAO calls, JSON serialization) and
+ * none of the client's allocations. Each test warms a route up, then fails if the median bytes allocated per
+ * request exceeds the budget recorded in src/test/resources/allocation-budgets.properties. The median keeps the
+ * occasional request that pays for a one-off allocation (a cache resize, class loading) from failing the build.
+ *
+ * When a change legitimately moves a route's allocation, update its budget in the same commit. The measured value
+ * is printed by every test to make that easy.
+ */
+public class AllocationBudgetTest {
+    private static final int WARMUP_REQUESTS = 300;
+    private static final int MEASURED_REQUESTS = 200;
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    Properties budgets;
+
+    com.sun.management.ThreadMXBean threadMXBean;
+    long[] samples = new long[MEASURED_REQUESTS];
+    volatile int sampleCount = -1;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with the allocation sampling handlers attached,
+     * and load the recorded budgets.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        budgets = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.before(ctx -> ctx.attribute("allocatedBefore",
+            threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId())));
+        app.after(ctx -> {
+            Long before = ctx.attribute("allocatedBefore");
+            long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            // Requests are sent one at a time, so only one handler thread writes here at once.
+            if (sampleCount >= 0) {
+                samples[sampleCount++] = allocated;
+            }
+        });
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Test
+    public void registerWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("POST /register", i -> post("register",
+            "{\"username\": \"budgetuser" + i + "\", \"password\": \"password\"}"));
+    }
+
+    @Test
+    public void loginWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("POST /login", i -> post("login",
+            "{\"username\": \"testuser1\", \"password\": \"password\"}"));
+    }
+
+    @Test
+    public void createMessageWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("POST /messages", i -> post("messages",
+            "{\"posted_by\":1, \"message_text\": \"budget message " + i + "\", \"time_posted_epoch\": 1669947792}"));
+    }
+
+    @Test
+    public void retrieveAllMessagesWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /messages", i -> get("messages"));
+    }
+
+    @Test
+    public void retrieveMessageByIdWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /messages/{message_id}", i -> get("messages/1"));
+    }
+
+    @Test
+    public void retrieveAllMessagesForUserWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /accounts/{account_id}/messages", i -> get("accounts/1/messages"));
+    }
+
+    @Test
+    public void updateMessageWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("PATCH /messages/{message_id}", i -> HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/messages/1"))
+            .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated " + i + "\"}"))
+            .header("Content-Type", "application/json")
+            .build());
+    }
+
+    @Test
+    public void deleteMessageWithinBudget() throws IOException, InterruptedException {
+        // Give every delete an existing message, message 1 comes from SocialMedia.sql.
+        for (int i = 0; i < WARMUP_REQUESTS + MEASURED_REQUESTS; i++) {
+            send(post("messages",
+                "{\"posted_by\":1, \"message_text\": \"to delete\", \"time_posted_epoch\": 1669947792}"));
+        }
+
+        assertWithinBudget("DELETE /messages/{message_id}", i -> HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/messages/" + (i + 2)))
+            .DELETE()
+            .build());
+    }
+
+    @Test
+    public void messageChangesWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /accounts/{account_id}/messages/changes", i -> get("accounts/1/messages/changes"));
+    }
+
+    @Test
+    public void messagePollWithinBudget() throws IOException, InterruptedException {
+        // Without a cursor the poll answers right away.
+        assertWithinBudget("GET /messages/poll", i -> get("messages/poll"));
+    }
+
+    @Test
+    public void messageSearchWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /messages/search", i -> get("messages/search?q=test"));
+    }
+
+    @Test
+    public void messagesByTagWithinBudget() throws IOException, InterruptedException {
+        send(post("messages",
+            "{\"posted_by\":1, \"message_text\": \"#budget for @testuser1\", \"time_posted_epoch\": 1669947792}"));
+
+        assertWithinBudget("GET /tags/{tag}/messages", i -> get("tags/budget/messages"));
+    }
+
+    @Test
+    public void mentionsWithinBudget() throws IOException, InterruptedException {
+        send(post("messages",
+            "{\"posted_by\":1, \"message_text\": \"#budget for @testuser1\", \"time_posted_epoch\": 1669947792}"));
+
+        assertWithinBudget("GET /accounts/{account_id}/mentions", i -> get("accounts/1/mentions"));
+    }
+
+    @Test
+    public void trendingWithinBudget() throws IOException, InterruptedException {
+        send(post("messages",
+            "{\"posted_by\":1, \"message_text\": \"#budget\", \"time_posted_epoch\": 1669947792}"));
+
+        assertWithinBudget("GET /trending", i -> get("trending"));
+    }
+
+    @Test
+    public void analyticsWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /analytics", i -> get("analytics"));
+    }
+
+    @Test
+    public void homeTimelineWithinBudget() throws IOException, InterruptedException {
+        send(post("register", "{\"username\": \"budgetuser\", \"password\": \"password\"}"));
+        send(HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/accounts/2/following/1"))
+            .PUT(HttpRequest.BodyPublishers.noBody())
+            .build());
+        // Fill the first page, so it does not depend on what earlier tests left in the timelines.
+        for (int i = 0; i < 30; i++) {
+            send(post("messages",
+                "{\"posted_by\":1, \"message_text\": \"home " + i + "\", \"time_posted_epoch\": 1669947792}"));
+        }
+
+        assertWithinBudget("GET /accounts/{account_id}/home", i -> get("accounts/2/home"));
+    }
+
+    @Test
+    public void leaderboardWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /leaderboard", i -> get("leaderboard"));
+    }
+
+    @Test
+    public void accountSummaryWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /accounts/{account_id}/summary", i -> get("accounts/1/summary"));
+    }
+
+    @Test
+    public void accountSummariesWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /accounts/summaries", i -> get("accounts/summaries?ids=1,2,3"));
+    }
+
+    @Test
+    public void messagesByIdsWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /messages/batch", i -> get("messages/batch?ids=1,2,3"));
+    }
+
+    @Test
+    public void accountsByIdsWithinBudget() throws IOException, InterruptedException {
+        assertWithinBudget("GET /accounts/batch", i -> get("accounts/batch?ids=1,2,3"));
+    }
+
+    /**
+     * Builds the i-th request for a route.
+     */
+    interface RequestFactory {
+        HttpRequest build(int i);
+    }
+
+    private void assertWithinBudget(String route, RequestFactory factory) throws IOException, InterruptedException {
+        String budgetValue = budgets.getProperty(route);
+        Assert.assertNotNull("No allocation budget recorded for " + route, budgetValue);
+        long budget = Long.parseLong(budgetValue.trim());
+
+        int i = 0;
+        for (; i < WARMUP_REQUESTS; i++) {
+            send(factory.build(i));
+        }
+
+        sampleCount = 0;
+        for (; i < WARMUP_REQUESTS + MEASURED_REQUESTS; i++) {
+            send(factory.build(i));
+        }
+
+        Assert.assertEquals(MEASURED_REQUESTS, sampleCount);
+        Arrays.sort(samples);
+        long perRequest = samples[MEASURED_REQUESTS / 2];
+        System.out.println(route + " allocated " + perRequest + " bytes/request, budget " + budget);
+
+        Assert.assertTrue(route + " allocated " + perRequest + " bytes/request, over its budget of " + budget,
+            perRequest <= budget);
+    }
+
+    private void send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private static HttpRequest get(String path) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .build();
+    }
+
+    private static HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+    }
+}
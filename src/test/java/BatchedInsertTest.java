@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.MessageDAO;
+import DAO.ReadConsistency;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageBatchWriter;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Runs POST /messages through a MessageBatchWriter and checks that every request is still acknowledged with its own
+ * committed message.
+ */
+public class BatchedInsertTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    MessageDAO messageDAO;
+    MessageBatchWriter batchWriter;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with batched inserts, and create a new webClient
+     * and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        AccountDAO accountDAO = new AccountDAO();
+        batchWriter = new MessageBatchWriter(messageDAO, 1000, 16, 1000);
+        socialMediaController = new SocialMediaController(new AccountService(accountDAO),
+            new MessageService(messageDAO, accountDAO, batchWriter));
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        app.stop();
+        batchWriter.close();
+    }
+
+    /**
+     * Concurrent creates each get a 200 with a distinct message_id, and every one of them is committed.
+     */
+    @Test
+    public void concurrentCreatesAreAllAcknowledged() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"posted_by\":1, \"message_text\": \"batched " + i + "\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+            responses.add(webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (CompletableFuture<HttpResponse<String>> future : responses) {
+            HttpResponse<String> response = future.join();
+            Assert.assertEquals(200, response.statusCode());
+            Message created = objectMapper.readValue(response.body(), Message.class);
+            Assert.assertTrue(created.getMessage_text().startsWith("batched "));
+            ids.add(created.getMessage_id());
+        }
+        Assert.assertEquals(64, ids.size());
+
+        HttpRequest getAll = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages")).build();
+        List<Message> messages = objectMapper.readValue(webClient.send(getAll, HttpResponse.BodyHandlers.ofString()).body(),
+            new TypeReference<List<Message>>() {});
+        Assert.assertEquals(65, messages.size());
+    }
+
+    /**
+     * A message that violates the foreign key fails on its own, the rest of its batch is still inserted.
+     */
+    @Test
+    public void failedMessageDoesNotFailItsBatch() {
+        List<Message> inserted = messageDAO.insertMessages(List.of(
+            new Message(1, "first", 1669947792),
+            new Message(3, "no such account", 1669947793),
+            new Message(1, "third", 1669947794)));
+
+        Assert.assertEquals(3, inserted.size());
+        Assert.assertNotNull(inserted.get(0));
+        Assert.assertNull(inserted.get(1));
+        Assert.assertNotNull(inserted.get(2));
+        Assert.assertEquals(new Message(inserted.get(2).getMessage_id(), 1, "third", 1669947794),
+            messageDAO.getMessageById(inserted.get(2).getMessage_id()));
+        Assert.assertEquals(3, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * The seq of a batched write comes back with the inserted message and is recorded for the request that created
+     * it, not for the writer thread.
+     */
+    @Test
+    public void writeSeqReachesTheRequest() throws InterruptedException {
+        ChangeStream changes = new ChangeStream();
+        ChangeCapturingMessageRepository messages = new ChangeCapturingMessageRepository(messageDAO, changes);
+        AccountDAO accountDAO = new AccountDAO();
+        try (MessageBatchWriter writer = new MessageBatchWriter(messages, 10, 4, 1000)) {
+            MessageBatchWriter.Inserted inserted = writer.submit(new Message(1, "captured", 1669947792)).join();
+            Assert.assertEquals("captured", inserted.message.getMessage_text());
+            Assert.assertEquals(changes.lastSeq(), inserted.writeSeq);
+
+            MessageService messageService = new MessageService(messages, accountDAO, writer);
+            ReadConsistency.beginRequest(false, 0);
+            Assert.assertNotNull(messageService.createMessage(new Message(1, "second", 1669947793)));
+            Assert.assertEquals(changes.lastSeq(), ReadConsistency.endRequest());
+            Assert.assertEquals(inserted.writeSeq + 1, changes.lastSeq());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package Benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the JMH benchmarks in this package.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=MessageJsonBenchmark
+ *
+ * Every run attaches the GC profiler so the results include gc.alloc.rate.norm (bytes allocated per operation)
+ * next to the timings.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+
+        Options options = new OptionsBuilder()
+            .include(include)
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,365 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SynchronizedHistogram;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Self-contained open-loop load generator.
+ *
+ * Resets and seeds the H2 database, starts the app from SocialMediaController.startAPI() on an ephemeral port and
+ * fires requests at a constant arrival rate, regardless of how quickly earlier requests complete. Every request
+ * has an intended start time on that fixed schedule, and its response time is measured from the intended start
+ * rather than from when it was actually sent, so a stalled server is charged for the requests that queued up behind
+ * the stall (coordinated omission correction). The uncorrected service time is reported next to it.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec@load -Dload.rate=500 -Dload.duration=60
+ *
+ * Configuration (system properties):
+ *  load.rate       requests per second, default 200.
+ *  load.duration   measured seconds, default 30.
+ *  load.warmup     seconds of load before measuring starts, default 5.
+ *  load.accounts   accounts seeded before the run, default 100.
+ *  load.messages   messages seeded before the run, default 10000.
+ *  load.mix        comma separated operation=weight pairs, default DEFAULT_MIX.
+ */
+public class LoadHarness {
+
+    public static final String DEFAULT_MIX =
+        "register=2,login=10,create=20,readAll=1,readOne=40,readByAccount=20,update=5,delete=2";
+
+    private static final String SEED_PASSWORD = "password";
+
+    /**
+     * The operations the harness can issue, keyed by the name used in load.mix.
+     */
+    enum Operation {
+        REGISTER("register", "POST /register"),
+        LOGIN("login", "POST /login"),
+        CREATE("create", "POST /messages"),
+        READ_ALL("readAll", "GET /messages"),
+        READ_ONE("readOne", "GET /messages/{message_id}"),
+        READ_BY_ACCOUNT("readByAccount", "GET /accounts/{account_id}/messages"),
+        UPDATE("update", "PATCH /messages/{message_id}"),
+        DELETE("delete", "DELETE /messages/{message_id}");
+
+        final String key;
+        final String route;
+
+        Operation(String key, String route) {
+            this.key = key;
+            this.route = route;
+        }
+
+        static Operation fromKey(String key) {
+            for (Operation op : values()) {
+                if (op.key.equals(key)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation in load.mix: " + key);
+        }
+    }
+
+    /**
+     * Latency and outcome counters for a single operation.
+     */
+    static class OperationStats {
+        // One hour, in microseconds, with 3 significant digits.
+        final Histogram responseTime = new SynchronizedHistogram(TimeUnit.HOURS.toMicros(1), 3);
+        final Histogram serviceTime = new SynchronizedHistogram(TimeUnit.HOURS.toMicros(1), 3);
+        final AtomicLong non2xx = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    private final int rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int seedAccounts;
+    private final int seedMessages;
+    private final Operation[] schedule;
+
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final AtomicInteger registered = new AtomicInteger();
+    private final AtomicInteger highestMessageId = new AtomicInteger();
+
+    public LoadHarness(int rate, int durationSeconds, int warmupSeconds, int seedAccounts, int seedMessages, String mix) {
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.seedAccounts = seedAccounts;
+        this.seedMessages = seedMessages;
+        this.schedule = parseMix(mix);
+
+        if (rate <= 0 || durationSeconds <= 0 || seedAccounts <= 0) {
+            throw new IllegalArgumentException("load.rate, load.duration and load.accounts must be positive");
+        }
+
+        for (Operation op : Operation.values()) {
+            stats.put(op, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness(
+            Integer.getInteger("load.rate", 200),
+            Integer.getInteger("load.duration", 30),
+            Integer.getInteger("load.warmup", 5),
+            Integer.getInteger("load.accounts", 100),
+            Integer.getInteger("load.messages", 10000),
+            System.getProperty("load.mix", DEFAULT_MIX)
+        );
+
+        harness.run();
+    }
+
+    /**
+     * Seed the database, start the app, drive the load and print the report.
+     */
+    public void run() throws InterruptedException, SQLException {
+        seedDatabase();
+
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(0);
+
+        try {
+            String baseUrl = "http://localhost:" + app.port();
+            System.out.printf("Driving %d req/s for %ds (+%ds warmup) against %s%n",
+                rate, durationSeconds, warmupSeconds, baseUrl);
+
+            drive(baseUrl);
+            report();
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * Issue requests on a fixed schedule until the run is over, then wait for the stragglers.
+     */
+    private void drive(String baseUrl) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+        SplittableRandom random = new SplittableRandom(42);
+        Phaser outstanding = new Phaser(1);
+
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        for (long i = 0; ; i++) {
+            long intendedStart = start + (long) (i * intervalNanos);
+            if (intendedStart >= end) {
+                break;
+            }
+
+            long now;
+            while ((now = System.nanoTime()) < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+
+            Operation op = schedule[random.nextInt(schedule.length)];
+            HttpRequest request = buildRequest(baseUrl, op, random);
+            boolean measured = intendedStart >= measureFrom;
+            long sentAt = System.nanoTime();
+
+            outstanding.register();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+                long done = System.nanoTime();
+                if (measured) {
+                    OperationStats opStats = stats.get(op);
+                    if (ex != null) {
+                        opStats.errors.incrementAndGet();
+                    } else {
+                        if (response.statusCode() / 100 != 2) {
+                            opStats.non2xx.incrementAndGet();
+                        }
+                        opStats.responseTime.recordValue(TimeUnit.NANOSECONDS.toMicros(done - intendedStart));
+                        opStats.serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(done - sentAt));
+                    }
+                }
+                outstanding.arriveAndDeregister();
+            });
+        }
+
+        try {
+            outstanding.awaitAdvanceInterruptibly(outstanding.arrive(), 30, TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+            System.out.printf("%d requests still outstanding after 30s, reporting without them%n",
+                outstanding.getUnarrivedParties());
+        }
+    }
+
+    private HttpRequest buildRequest(String baseUrl, Operation op, SplittableRandom random) {
+        // Seeded accounts have ids 2..seedAccounts+1, account 1 comes from SocialMedia.sql.
+        int accountId = 1 + random.nextInt(seedAccounts + 1);
+        int messageId = 1 + random.nextInt(highestMessageId.get());
+
+        switch (op) {
+            case REGISTER:
+                return post(baseUrl + "/register",
+                    "{\"username\":\"load" + registered.incrementAndGet() + "\",\"password\":\"" + SEED_PASSWORD + "\"}");
+            case LOGIN:
+                return post(baseUrl + "/login",
+                    "{\"username\":\"seed" + (2 + random.nextInt(seedAccounts)) + "\",\"password\":\"" + SEED_PASSWORD + "\"}");
+            case CREATE:
+                highestMessageId.incrementAndGet();
+                return post(baseUrl + "/messages",
+                    "{\"posted_by\":" + accountId + ",\"message_text\":\"load message " + random.nextInt()
+                        + "\",\"time_posted_epoch\":" + System.currentTimeMillis() / 1000 + "}");
+            case READ_ALL:
+                return get(baseUrl + "/messages");
+            case READ_ONE:
+                return get(baseUrl + "/messages/" + messageId);
+            case READ_BY_ACCOUNT:
+                return get(baseUrl + "/accounts/" + accountId + "/messages");
+            case UPDATE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                        "{\"message_text\":\"updated " + random.nextInt() + "\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            case DELETE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId)).DELETE().build();
+            default:
+                throw new IllegalStateException("Unhandled operation " + op);
+        }
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+
+    private static HttpRequest post(String url, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+    }
+
+    /**
+     * Reset the database and insert seedAccounts accounts (named seed{account_id}) and seedMessages messages
+     * spread across them.
+     */
+    private void seedDatabase() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        Connection conn = ConnectionUtil.getConnection();
+
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO account (username, password) VALUES (?, ?)")) {
+            for (int i = 0; i < seedAccounts; i++) {
+                // account ids continue from the one account in SocialMedia.sql.
+                ps.setString(1, "seed" + (i + 2));
+                ps.setString(2, SEED_PASSWORD);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < seedMessages; i++) {
+                ps.setInt(1, 2 + i % Math.max(seedAccounts, 1));
+                ps.setString(2, "seed message " + i);
+                ps.setLong(3, 1669947792L + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        // One message comes from SocialMedia.sql.
+        highestMessageId.set(seedMessages + 1);
+    }
+
+    private void report() {
+        System.out.printf("%n%-38s %8s %9s %6s %6s   %9s %9s %9s %9s   %9s %9s%n",
+            "route", "count", "req/s", "non2xx", "errors",
+            "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "svc p50", "svc p99");
+
+        for (Operation op : Operation.values()) {
+            OperationStats opStats = stats.get(op);
+            Histogram rt = opStats.responseTime;
+            Histogram st = opStats.serviceTime;
+            if (rt.getTotalCount() == 0 && opStats.errors.get() == 0) {
+                continue;
+            }
+
+            System.out.printf("%-38s %8d %9.1f %6d %6d   %9.2f %9.2f %9.2f %9.2f   %9.2f %9.2f%n",
+                op.route,
+                rt.getTotalCount(),
+                rt.getTotalCount() / (double) durationSeconds,
+                opStats.non2xx.get(),
+                opStats.errors.get(),
+                millis(rt.getValueAtPercentile(50)),
+                millis(rt.getValueAtPercentile(99)),
+                millis(rt.getValueAtPercentile(99.9)),
+                millis(rt.getMaxValue()),
+                millis(st.getValueAtPercentile(50)),
+                millis(st.getValueAtPercentile(99)));
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    /**
+     * Expand "op=weight,..." into a lookup table where each operation appears weight times, so picking a uniformly
+     * random slot picks operations in proportion to their weights.
+     */
+    private static Operation[] parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        int total = 0;
+
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Malformed load.mix entry: " + entry);
+            }
+
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.fromKey(parts[0].trim()), weight);
+                total += weight;
+            }
+        }
+
+        if (total == 0) {
+            throw new IllegalArgumentException("load.mix has no operations with a positive weight: " + mix);
+        }
+
+        Operation[] schedule = new Operation[total];
+        int i = 0;
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            for (int w = 0; w < entry.getValue(); w++) {
+                schedule[i++] = entry.getKey();
+            }
+        }
+
+        return schedule;
+    }
+}
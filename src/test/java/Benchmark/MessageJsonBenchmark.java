@@ -0,0 +1,91 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import Model.Message;
+import io.javalin.json.JavalinJackson;
+
+/**
+ * Serialization of message listings, as returned by GET /messages and GET /accounts/{account_id}/messages.
+ *
+ * The mapper param selects how the work is done:
+ *  javalin     - JavalinJackson.toJsonString, which is what Context.json() uses.
+ *  mapper      - a shared ObjectMapper, as in SocialMediaController.
+ *  writer      - an ObjectWriter prebuilt for the exact type, skipping the per-call type resolution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageJsonBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    @Param({"javalin", "mapper", "writer"})
+    public String mapper;
+
+    private List<Message> messages;
+
+    private JavalinJackson javalinJackson;
+    private ObjectMapper objectMapper;
+    private ObjectWriter listWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messages = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            messages.add(new Message(i, i % 100, "benchmark message number " + i, 1669947792L + i));
+        }
+
+        javalinJackson = new JavalinJackson();
+        objectMapper = new ObjectMapper();
+        listWriter = objectMapper.writerFor(new TypeReference<List<Message>>() {});
+    }
+
+    @Benchmark
+    public String serializeList() throws JsonProcessingException {
+        switch (mapper) {
+            case "javalin":
+                return javalinJackson.toJsonString(messages, List.class);
+            case "mapper":
+                return objectMapper.writeValueAsString(messages);
+            default:
+                return listWriter.writeValueAsString(messages);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeListBytes() throws JsonProcessingException {
+        switch (mapper) {
+            case "javalin":
+                return javalinJackson.toJsonString(messages, List.class).getBytes();
+            case "mapper":
+                return objectMapper.writeValueAsBytes(messages);
+            default:
+                return listWriter.writeValueAsBytes(messages);
+        }
+    }
+}
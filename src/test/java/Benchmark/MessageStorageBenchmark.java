@@ -0,0 +1,121 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.AccountRepository;
+import DAO.FsyncPolicy;
+import DAO.InMemoryAccountRepository;
+import DAO.LogMessageRepository;
+import DAO.MessageDAO;
+import DAO.MessageRepository;
+import DAO.ShardedMessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.ShardConnectionUtil;
+
+/**
+ * Compares insert and point read throughput of the H2 file database (MessageDAO), the sharded H2 databases
+ * (ShardedMessageDAO, storage.shards of them) and the message log (LogMessageRepository) under each FsyncPolicy.
+ *
+ * Inserts run on 8 threads, so GROUP has concurrent writers to batch, and are spread over ACCOUNTS accounts, so
+ * they reach every shard. The sharded and log engines check posted_by against an InMemoryAccountRepository, so only
+ * message storage is measured; H2 checks it with its own foreign key.
+ *
+ * Resets the app's H2 database and the shards, like LoadHarness.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageStorageBenchmark {
+
+    private static final int SEED_MESSAGES = 10000;
+    private static final int ACCOUNTS = 16;
+
+    @Param({"h2", "sharded", "log-per-write", "log-group", "log-periodic"})
+    public String engine;
+
+    private MessageRepository messages;
+    private int[] seededIds;
+    private Path logDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        AccountRepository accounts;
+        if (engine.equals("h2")) {
+            ConnectionUtil.resetTestDatabase();
+            accounts = new AccountDAO();
+        } else {
+            accounts = new InMemoryAccountRepository();
+            accounts.insertAccount(new Account("testuser1", "password"));
+        }
+        for (int i = 2; i <= ACCOUNTS; i++) {
+            accounts.insertAccount(new Account("benchuser" + i, "password"));
+        }
+
+        if (engine.equals("h2")) {
+            messages = new MessageDAO();
+        } else if (engine.equals("sharded")) {
+            ShardConnectionUtil.resetShards();
+            messages = new ShardedMessageDAO(accounts);
+        } else {
+            logDirectory = Files.createTempDirectory("message-log-bench");
+            messages = new LogMessageRepository(accounts, logDirectory,
+                FsyncPolicy.fromString(engine.substring("log-".length())));
+        }
+
+        // Sharded ids are not dense, so point reads pick from the ids actually assigned.
+        seededIds = new int[SEED_MESSAGES];
+        for (int i = 0; i < SEED_MESSAGES; i++) {
+            seededIds[i] = messages.insertMessage(
+                new Message(1 + i % ACCOUNTS, "benchmark message number " + i, 1669947792L + i)).getMessage_id();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (logDirectory != null) {
+            ((LogMessageRepository) messages).close();
+            try (Stream<Path> files = Files.walk(logDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Message insert() {
+        int posted_by = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messages.insertMessage(new Message(posted_by, "benchmark message", 1669947792L));
+    }
+
+    @Benchmark
+    public Message getById() {
+        return messages.getMessageById(seededIds[ThreadLocalRandom.current().nextInt(SEED_MESSAGES)]);
+    }
+}
@@ -0,0 +1,82 @@
+package Benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import Model.Account;
+import Model.Message;
+import io.javalin.json.JavalinJackson;
+
+/**
+ * Deserialization of the request bodies sent to POST /register, POST /login and POST /messages.
+ *
+ * The mapper param has the same meaning as in MessageJsonBenchmark, with "reader" using prebuilt ObjectReaders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    private static final String MESSAGE_BODY = "{\"posted_by\":1, \"message_text\": \"hello message\", "
+        + "\"time_posted_epoch\": 1669947792}";
+    private static final String ACCOUNT_BODY = "{\"username\": \"testuser1\", \"password\": \"password\"}";
+
+    @Param({"javalin", "mapper", "reader"})
+    public String mapper;
+
+    private JavalinJackson javalinJackson;
+    private ObjectMapper objectMapper;
+    private ObjectReader messageReader;
+    private ObjectReader accountReader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        javalinJackson = new JavalinJackson();
+        objectMapper = new ObjectMapper();
+        messageReader = objectMapper.readerFor(Message.class);
+        accountReader = objectMapper.readerFor(Account.class);
+    }
+
+    @Benchmark
+    public Message deserializeMessage() throws JsonProcessingException {
+        switch (mapper) {
+            case "javalin":
+                return javalinJackson.fromJsonString(MESSAGE_BODY, Message.class);
+            case "mapper":
+                return objectMapper.readValue(MESSAGE_BODY, Message.class);
+            default:
+                return messageReader.readValue(MESSAGE_BODY);
+        }
+    }
+
+    @Benchmark
+    public Account deserializeAccount() throws JsonProcessingException {
+        switch (mapper) {
+            case "javalin":
+                return javalinJackson.fromJsonString(ACCOUNT_BODY, Account.class);
+            case "mapper":
+                return objectMapper.readValue(ACCOUNT_BODY, Account.class);
+            default:
+                return accountReader.readValue(ACCOUNT_BODY);
+        }
+    }
+}
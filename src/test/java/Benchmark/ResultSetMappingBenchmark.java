@@ -0,0 +1,121 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+
+/**
+ * Compares mapping message rows by column label (what MessageDAO.getMessageFromResultSet does) against mapping
+ * them by column index, for SELECT * and for an explicit column list.
+ *
+ * Uses a private in-memory H2 database so the numbers are not skewed by the file database used by the app.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSetMappingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int rows;
+
+    private Connection conn;
+    private PreparedStatement selectAll;
+    private PreparedStatement selectColumns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:h2:mem:mapping_bench;DB_CLOSE_DELAY=-1", "sa", "sa");
+
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS message");
+            st.execute("CREATE TABLE message (message_id int primary key auto_increment, posted_by int, "
+                + "message_text varchar(255), time_posted_epoch bigint)");
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                ps.setInt(1, i % 100);
+                ps.setString(2, "benchmark message number " + i);
+                ps.setLong(3, 1669947792L + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        selectAll = conn.prepareStatement("SELECT * FROM message");
+        selectColumns = conn.prepareStatement(
+            "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE message");
+        }
+        conn.close();
+    }
+
+    @Benchmark
+    public List<Message> selectStarByName() throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        try (ResultSet rs = selectAll.executeQuery()) {
+            while (rs.next()) {
+                messages.add(new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                ));
+            }
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public List<Message> selectStarByIndex() throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        try (ResultSet rs = selectAll.executeQuery()) {
+            while (rs.next()) {
+                messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            }
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public List<Message> selectColumnsByIndex() throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        try (ResultSet rs = selectColumns.executeQuery()) {
+            while (rs.next()) {
+                messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            }
+        }
+        return messages;
+    }
+}
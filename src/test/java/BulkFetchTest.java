@@ -0,0 +1,131 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.CachingMessageRepository;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import Model.Account;
+import Model.AccountProfile;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Fetches messages and accounts by lists of ids through GET /messages/batch and GET /accounts/batch, and through
+ * CachingMessageRepository.
+ */
+public class BulkFetchTest {
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, start the app and register a second account.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        send("POST", "register", "{\"username\": \"other\", \"password\": \"secret\"}");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Messages come back in the order asked for, repeats included, with null for the ones that don't exist.
+     */
+    @Test
+    public void messagesInRequestOrder() throws Exception {
+        send("POST", "messages", "{\"posted_by\":2, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}");
+        Message first = new Message(1, 1, "test message 1", 1669947792);
+        Message second = new Message(2, 2, "second", 1669947793);
+
+        HttpResponse<String> response = send("GET", "messages/batch?ids=2,7,1,2", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(Arrays.asList(second, null, first, second),
+            objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Accounts come back as account_id and username only, never the password.
+     */
+    @Test
+    public void accountsWithoutPasswords() throws Exception {
+        HttpResponse<String> response = send("GET", "accounts/batch?ids=2,3,1", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.body().contains("password"));
+        Assert.assertEquals(
+            Arrays.asList(new AccountProfile(2, "other"), null, new AccountProfile(1, "testuser1")),
+            objectMapper.readValue(response.body(), new TypeReference<List<AccountProfile>>(){}));
+    }
+
+    /**
+     * A missing or malformed list of ids is a bad request.
+     */
+    @Test
+    public void badIds() throws Exception {
+        Assert.assertEquals(400, send("GET", "messages/batch", null).statusCode());
+        Assert.assertEquals(400, send("GET", "accounts/batch?ids=1,x", null).statusCode());
+    }
+
+    /**
+     * The cache answers the ids it holds and asks its delegate for all the others in one call.
+     */
+    @Test
+    public void cacheFetchesMissesTogether() {
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        List<List<Integer>> calls = new ArrayList<>();
+        InMemoryMessageRepository storage = new InMemoryMessageRepository(accounts) {
+            @Override
+            public Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+                calls.add(message_ids);
+                return super.getMessagesByIds(message_ids);
+            }
+        };
+        for (int i = 0; i < 4; i++) {
+            storage.insertMessage(new Message(1, "message " + i, 1669947792));
+        }
+        CachingMessageRepository cache = new CachingMessageRepository(storage, 16);
+        cache.getMessageById(2);
+
+        Map<Integer, Message> messages = cache.getMessagesByIds(List.of(1, 2, 3, 9));
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals(List.of(List.of(1, 3, 9)), calls);
+
+        cache.getMessagesByIds(List.of(1, 3));
+        Assert.assertEquals(1, calls.size());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.ChangeCapturingAccountRepository;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import Model.Account;
+import Model.ChangeEvent;
+import Model.Message;
+
+/**
+ * Checks that writes come out of the change stream in order, and that a subscriber can resume from any seq the ring
+ * buffer or the spill still holds, also after a restart.
+ */
+public class ChangeStreamTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path directory;
+    InMemoryAccountRepository accountStore;
+    InMemoryMessageRepository messageStore;
+    ChangeStream changes;
+    ChangeCapturingAccountRepository accounts;
+    ChangeCapturingMessageRepository messages;
+
+    /**
+     * Before every test, open a stream whose ring buffer holds only 4 events, so that older ones come from the spill.
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        accountStore = new InMemoryAccountRepository();
+        messageStore = new InMemoryMessageRepository(accountStore);
+        open(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        changes.close();
+    }
+
+    /**
+     * Every write is one event with the whole row, in the order of the writes.
+     */
+    @Test
+    public void writesAreStreamedInOrder() {
+        accounts.insertAccount(new Account("testuser1", "password"));
+        messages.insertMessage(new Message(1, "first", 1669947792));
+        messages.updateMessageById("first, updated", 1);
+        messages.deleteMessageById(1);
+        Assert.assertFalse(messages.deleteMessageById(1));
+
+        List<ChangeEvent> events = changes.read(0, 100);
+
+        Assert.assertEquals(List.of(1L, 2L, 3L, 4L), seqs(events));
+        Assert.assertEquals(ChangeEvent.Type.ACCOUNT_CREATED, events.get(0).type);
+        assertAccount(1, "testuser1", events.get(0).account);
+        Assert.assertNull(events.get(0).message);
+        Assert.assertEquals(ChangeEvent.Type.MESSAGE_CREATED, events.get(1).type);
+        Assert.assertEquals(new Message(1, 1, "first, updated", 1669947792), events.get(2).message);
+        Assert.assertEquals(ChangeEvent.Type.MESSAGE_DELETED, events.get(3).type);
+        Assert.assertEquals(new Message(1, 1, "first, updated", 1669947792), events.get(3).message);
+        Assert.assertEquals(4, changes.lastSeq());
+    }
+
+    /**
+     * A subscriber resumes after the last seq it has, from the ring buffer for recent events and from the spill for
+     * older ones.
+     */
+    @Test
+    public void readResumesFromSeq() {
+        accounts.insertAccount(new Account("testuser1", "password"));
+        for (int i = 0; i < 9; i++) {
+            messages.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+
+        Assert.assertEquals(List.of(9L, 10L), seqs(changes.read(8, 100)));
+        Assert.assertEquals(List.of(3L, 4L, 5L), seqs(changes.read(2, 3)));
+        Assert.assertEquals(List.of(), changes.read(10, 100));
+        Assert.assertEquals(1, changes.firstSeq());
+
+        List<ChangeEvent> all = changes.read(0, 100);
+        Assert.assertEquals(10, all.size());
+        Assert.assertEquals(new Message(3, 1, "message 2", 1669947794), all.get(3).message);
+    }
+
+    /**
+     * Without a spill, events that fell out of the ring buffer are gone and read() says so.
+     */
+    @Test
+    public void readPastTheRingWithoutSpillIsAGap() throws IOException {
+        changes.close();
+        open(null);
+        accounts.insertAccount(new Account("testuser1", "password"));
+        for (int i = 0; i < 9; i++) {
+            messages.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+
+        Assert.assertNull(changes.read(0, 100));
+        Assert.assertEquals(7, changes.firstSeq());
+        Assert.assertEquals(List.of(7L, 8L, 9L, 10L), seqs(changes.read(6, 100)));
+    }
+
+    /**
+     * After a restart the stream continues from the last spilled seq, and subscribers can still read every event.
+     */
+    @Test
+    public void reopenContinuesFromTheSpill() throws IOException {
+        accounts.insertAccount(new Account("testuser1", "password"));
+        for (int i = 0; i < 5; i++) {
+            messages.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+
+        long epoch = changes.epoch();
+        changes.close();
+        open(directory);
+
+        Assert.assertEquals(epoch, changes.epoch());
+        Assert.assertEquals(6, changes.lastSeq());
+        Assert.assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), seqs(changes.read(0, 100)));
+
+        accounts.insertAccount(new Account("testuser2", "password"));
+        Assert.assertEquals(7, changes.lastSeq());
+        assertAccount(2, "testuser2", changes.read(6, 100).get(0).account);
+    }
+
+    /**
+     * A stream reopened after a crash, which may have lost events it had handed out, starts a new epoch, so its
+     * cursors are not mistaken for those from before.
+     */
+    @Test
+    public void reopenAfterACrashStartsANewEpoch() throws IOException {
+        accounts.insertAccount(new Account("testuser1", "password"));
+        ChangeStream crashed = changes;
+        String cursor = crashed.cursor(crashed.lastSeq());
+        Assert.assertEquals(1, crashed.seqOf(cursor));
+
+        // Opened again without closing it.
+        open(directory);
+        Assert.assertNotEquals(crashed.epoch(), changes.epoch());
+        Assert.assertEquals(-1, changes.seqOf(cursor));
+        crashed.close();
+    }
+
+    /**
+     * A write only holds up later writes to the same account's messages, and each is published once it commits; an
+     * account is only settled once its running write is.
+     */
+    @Test
+    public void writesForOtherAccountsDoNotWait() throws Exception {
+        accounts.insertAccount(new Account("testuser1", "password"));
+        accounts.insertAccount(new Account("testuser2", "password"));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ChangeCapturingMessageRepository blocking = new ChangeCapturingMessageRepository(
+            new InMemoryMessageRepository(accountStore) {
+                @Override
+                public Message insertMessage(Message message) {
+                    if (message.getPosted_by() == 1) {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return super.insertMessage(message);
+                }
+            }, changes);
+
+        CompletableFuture<Message> slow = CompletableFuture.supplyAsync(
+            () -> blocking.insertMessage(new Message(1, "slow", 1669947792)));
+        Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        Assert.assertNotNull(CompletableFuture.supplyAsync(
+            () -> blocking.insertMessage(new Message(2, "fast", 1669947793))).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, changes.lastSeq());
+        Assert.assertFalse(changes.settled(1, 3));
+        Assert.assertTrue(changes.settled(2, 3));
+
+        release.countDown();
+        Assert.assertEquals("slow", slow.get(5, TimeUnit.SECONDS).getMessage_text());
+        Assert.assertFalse(changes.settled(1, 3));
+        Assert.assertTrue(changes.settled(1, 4));
+        List<ChangeEvent> events = changes.read(2, 100);
+        Assert.assertEquals("fast", events.get(0).message.getMessage_text());
+        Assert.assertEquals("slow", events.get(1).message.getMessage_text());
+    }
+
+    /**
+     * The events of a write get contiguous seqs, also when it is bigger than the ring buffer and waits for the
+     * spiller while other writes are publishing.
+     */
+    @Test
+    public void batchSeqsAreContiguous() throws Exception {
+        accounts.insertAccount(new Account("testuser1", "password"));
+        accounts.insertAccount(new Account("testuser2", "password"));
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(new Message(1, "batch " + i, 1669947792));
+        }
+
+        CompletableFuture<Void> singles = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 200; i++) {
+                messages.insertMessage(new Message(2, "single " + i, 1669947792));
+            }
+        });
+        for (int round = 0; round < 20; round++) {
+            messages.insertMessages(batch.stream().map(message -> new Message(message.getPosted_by(),
+                message.getMessage_text(), message.getTime_posted_epoch())).collect(Collectors.toList()));
+        }
+        singles.get(10, TimeUnit.SECONDS);
+
+        List<ChangeEvent> events = changes.read(0, 10000);
+        Assert.assertEquals(2 + 200 + 200, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).message != null && events.get(i).message.getMessage_text().equals("batch 0")) {
+                for (int k = 1; k < 10; k++) {
+                    Assert.assertEquals("batch " + k, events.get(i + k).message.getMessage_text());
+                }
+            }
+        }
+    }
+
+    /**
+     * Account events leave the password out, so it is never spilled.
+     */
+    @Test
+    public void passwordsAreNotSpilled() throws IOException {
+        accounts.insertAccount(new Account("testuser1", "not-in-the-spill"));
+        assertAccount(1, "testuser1", changes.read(0, 1).get(0).account);
+
+        changes.close();
+        open(directory);
+        assertAccount(1, "testuser1", changes.read(0, 1).get(0).account);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Assert.assertFalse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+                    .contains("not-in-the-spill"));
+            }
+        }
+    }
+
+    /**
+     * Account.equals needs a password, which account events never have.
+     */
+    private static void assertAccount(int account_id, String username, Account account) {
+        Assert.assertEquals(account_id, account.getAccount_id());
+        Assert.assertEquals(username, account.getUsername());
+        Assert.assertNull(account.getPassword());
+    }
+
+    private void open(Path spill) throws IOException {
+        changes = new ChangeStream(4, spill);
+        accounts = new ChangeCapturingAccountRepository(accountStore, changes);
+        messages = new ChangeCapturingMessageRepository(messageStore, changes);
+    }
+
+    private static List<Long> seqs(List<ChangeEvent> events) {
+        return events.stream().map(ChangeEvent::getSeq).collect(Collectors.toList());
+    }
+}
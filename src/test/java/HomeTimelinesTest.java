@@ -0,0 +1,232 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.FollowRepository;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryFollowRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.MessageRepository;
+import Model.Account;
+import Model.Message;
+import Service.HomeTimelines;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Follows accounts and reads home timelines through HomeTimelines over in-memory repositories, whose writes it
+ * follows through a ChangeStream, and once through the endpoints.
+ */
+public class HomeTimelinesTest {
+    InMemoryAccountRepository accountRepository;
+    ChangeStream changes;
+    MessageRepository messageRepository;
+    FollowRepository follows;
+
+    /**
+     * Before every test, register three accounts.
+     */
+    @Before
+    public void setUp() {
+        accountRepository = new InMemoryAccountRepository();
+        accountRepository.insertAccount(new Account("testuser1", "password"));
+        accountRepository.insertAccount(new Account("other", "password"));
+        accountRepository.insertAccount(new Account("third", "password"));
+        changes = new ChangeStream();
+        messageRepository = new ChangeCapturingMessageRepository(new InMemoryMessageRepository(accountRepository),
+            changes);
+        follows = new InMemoryFollowRepository();
+    }
+
+    /**
+     * New messages are fanned out to the followers of their author, newest first.
+     */
+    @Test
+    public void fansOutNewMessages() {
+        HomeTimelines timelines = new HomeTimelines(messageRepository, changes, follows, 10, 100);
+        timelines.follow(2, 1);
+        timelines.follow(2, 3);
+
+        post(1);
+        post(3);
+        post(2);
+        post(1);
+
+        Assert.assertEquals(List.of(4, 2, 1), ids(timelines.home(2, Integer.MAX_VALUE, 10)));
+        Assert.assertEquals(List.of(), ids(timelines.home(1, Integer.MAX_VALUE, 10)));
+    }
+
+    /**
+     * Following adds the messages the account already has, unfollowing takes them out again.
+     */
+    @Test
+    public void followBackfillsAndUnfollowRemoves() {
+        HomeTimelines timelines = new HomeTimelines(messageRepository, changes, follows, 10, 100);
+        post(1);
+        post(3);
+        post(1);
+
+        timelines.follow(2, 1);
+        Assert.assertEquals(List.of(3, 1), ids(timelines.home(2, Integer.MAX_VALUE, 10)));
+        timelines.follow(2, 3);
+        Assert.assertEquals(List.of(3, 2, 1), ids(timelines.home(2, Integer.MAX_VALUE, 10)));
+
+        timelines.unfollow(2, 1);
+        Assert.assertEquals(List.of(2), ids(timelines.home(2, Integer.MAX_VALUE, 10)));
+        Assert.assertArrayEquals(new int[] {3}, timelines.following(2));
+    }
+
+    /**
+     * Accounts with more followers than the fan-out limit are merged in from their outbox when read, and timelines
+     * only keep their newest capacity messages.
+     */
+    @Test
+    public void readsLargeAccountsFromTheirOutbox() {
+        HomeTimelines timelines = new HomeTimelines(messageRepository, changes, follows, 3, 1);
+        timelines.follow(2, 1);
+        timelines.follow(3, 1);
+        timelines.follow(2, 3);
+
+        post(1);
+        post(3);
+        post(1);
+        post(3);
+        post(3);
+
+        Assert.assertEquals(List.of(5, 4, 3, 2, 1), ids(timelines.home(2, Integer.MAX_VALUE, 10)));
+        Assert.assertEquals(List.of(3, 1), ids(timelines.home(3, Integer.MAX_VALUE, 10)));
+
+        post(3);
+        // Message 2 fell off the timeline of account 2.
+        Assert.assertEquals(List.of(6, 5, 4, 3, 1), ids(timelines.home(2, Integer.MAX_VALUE, 10)));
+    }
+
+    /**
+     * before and limit page through a timeline, and deleted messages leave it.
+     */
+    @Test
+    public void pagesAndDeletes() {
+        HomeTimelines timelines = new HomeTimelines(messageRepository, changes, follows, 10, 100);
+        timelines.follow(2, 1);
+        for (int i = 0; i < 5; i++) {
+            post(1);
+        }
+
+        messageRepository.deleteMessageById(4);
+
+        Assert.assertEquals(List.of(5, 3), ids(timelines.home(2, Integer.MAX_VALUE, 2)));
+        Assert.assertEquals(List.of(2, 1), ids(timelines.home(2, 3, 2)));
+        Assert.assertEquals(List.of(), ids(timelines.home(2, 1, 2)));
+    }
+
+    /**
+     * Follows are stored, so timelines built again from them have the same messages.
+     */
+    @Test
+    public void rebuildsFromStoredFollows() {
+        HomeTimelines timelines = new HomeTimelines(messageRepository, changes, follows, 10, 100);
+        timelines.follow(2, 1);
+        timelines.follow(2, 3);
+        timelines.unfollow(2, 3);
+        post(1);
+        post(3);
+        post(1);
+
+        HomeTimelines restarted = new HomeTimelines(messageRepository, changes, follows, 10, 100);
+        Assert.assertArrayEquals(new int[] {1}, restarted.following(2));
+        Assert.assertEquals(List.of(3, 1), ids(restarted.home(2, Integer.MAX_VALUE, 10)));
+        Assert.assertEquals(ids(timelines.home(2, Integer.MAX_VALUE, 10)),
+            ids(restarted.home(2, Integer.MAX_VALUE, 10)));
+    }
+
+    /**
+     * An account cannot follow itself.
+     */
+    @Test
+    public void cannotFollowItself() {
+        MessageService messageService = new MessageService(messageRepository, accountRepository);
+        Assert.assertNull(messageService.follow(1, 1));
+        Assert.assertEquals(List.of(), messageService.getFollowing(1));
+    }
+
+    /**
+     * PUT /accounts/{account_id}/following/{followee_id} follows an account, GET /accounts/{account_id}/home reads the
+     * timeline.
+     */
+    @Test
+    public void endpoints() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        try {
+            HttpClient webClient = HttpClient.newHttpClient();
+            HttpRequest register = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"follower\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+            webClient.send(register, HttpResponse.BodyHandlers.ofString());
+
+            HttpRequest follow = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/following/1"))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build();
+            HttpResponse<String> followResponse = webClient.send(follow, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, followResponse.statusCode());
+            Assert.assertEquals(List.of(1),
+                new ObjectMapper().readValue(followResponse.body(), new TypeReference<List<Integer>>(){}));
+
+            HttpRequest create = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"posted_by\":1, \"message_text\": \"hello followers\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+            webClient.send(create, HttpResponse.BodyHandlers.ofString());
+
+            HttpRequest home = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/home"))
+                .build();
+            HttpResponse<String> response = webClient.send(home, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(
+                List.of(new Message(2, 1, "hello followers", 1669947793), new Message(1, 1, "test message 1", 1669947792)),
+                new ObjectMapper().readValue(response.body(), new TypeReference<List<Message>>(){}));
+
+            HttpRequest unknown = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/following/9"))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build();
+            Assert.assertEquals(404, webClient.send(unknown, HttpResponse.BodyHandlers.ofString()).statusCode());
+        } finally {
+            app.stop();
+        }
+    }
+
+    private void post(int posted_by) {
+        messageRepository.insertMessage(new Message(posted_by, "text", 1669947792));
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountRepository;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.MessageRepository;
+import DAO.OffHeapMessageRepository;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import io.javalin.Javalin;
+
+/**
+ * Runs the API against each in-process storage engine, seeded with the same rows as SocialMedia.sql, and checks that
+ * it keeps the semantics of the H2 tables.
+ */
+@RunWith(Parameterized.class)
+public class InMemoryStorageTest {
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        Function<AccountRepository, MessageRepository> memory = InMemoryMessageRepository::new;
+        Function<AccountRepository, MessageRepository> offheap = OffHeapMessageRepository::new;
+        return Arrays.asList(new Object[][] {{"memory", memory}, {"offheap", offheap}});
+    }
+
+    @Parameter(0)
+    public String engine;
+
+    @Parameter(1)
+    public Function<AccountRepository, MessageRepository> messageRepositoryFactory;
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, seed fresh in-memory repositories, restart the Javalin app, and create a new webClient and
+     * ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        MessageRepository messages = messageRepositoryFactory.apply(accounts);
+        accounts.insertAccount(new Account("testuser1", "password"));
+        messages.insertMessage(new Message(1, "test message 1", 1669947792));
+
+        socialMediaController = new SocialMediaController(new AccountService(accounts),
+            new MessageService(messages, accounts));
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Registering assigns the next account id, registering the same username again fails.
+     */
+    @Test
+    public void registerAssignsIdsAndEnforcesUniqueUsername() throws IOException, InterruptedException {
+        String body = "{\"username\": \"user\", \"password\": \"password\"}";
+
+        HttpResponse<String> response = send("POST", "register", body);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Account(2, "user", "password"), objectMapper.readValue(response.body(), Account.class));
+
+        HttpResponse<String> duplicate = send("POST", "register", body);
+        Assert.assertEquals(400, duplicate.statusCode());
+    }
+
+    /**
+     * Creating a message for an account that does not exist fails, like the foreign key on posted_by.
+     */
+    @Test
+    public void createMessageRequiresExistingAccount() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "messages",
+            "{\"posted_by\":3, \"message_text\": \"message test\", \"time_posted_epoch\": 1669947792}");
+
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+
+    /**
+     * Message ids keep increasing after a delete, and the per-account listing follows inserts and deletes.
+     */
+    @Test
+    public void deletedIdsAreNotReused() throws IOException, InterruptedException {
+        send("POST", "messages", "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}");
+
+        HttpResponse<String> deleted = send("DELETE", "messages/2", null);
+        Assert.assertEquals(new Message(2, 1, "second", 1669947793),
+            objectMapper.readValue(deleted.body(), Message.class));
+
+        HttpResponse<String> created = send("POST", "messages",
+            "{\"posted_by\":1, \"message_text\": \"third\", \"time_posted_epoch\": 1669947794}");
+        Assert.assertEquals(new Message(3, 1, "third", 1669947794),
+            objectMapper.readValue(created.body(), Message.class));
+
+        HttpResponse<String> listing = send("GET", "accounts/1/messages", null);
+        List<Message> messages = objectMapper.readValue(listing.body(), new TypeReference<List<Message>>() {});
+        Assert.assertEquals(List.of(
+            new Message(1, 1, "test message 1", 1669947792),
+            new Message(3, 1, "third", 1669947794)), messages);
+    }
+
+    /**
+     * Updating replaces only the text, and the update is visible to later reads.
+     */
+    @Test
+    public void updateMessageKeepsOtherFields() throws IOException, InterruptedException {
+        HttpResponse<String> updated = send("PATCH", "messages/1", "{\"message_text\": \"updated message\"}");
+        Assert.assertEquals(200, updated.statusCode());
+
+        HttpResponse<String> read = send("GET", "messages/1", null);
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792),
+            objectMapper.readValue(read.body(), Message.class));
+    }
+
+    /**
+     * getMessagesAfter returns the newer messages in message_id order and skips deleted ones.
+     */
+    @Test
+    public void messagesAfterSkipDeleted() {
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        MessageRepository messages = messageRepositoryFactory.apply(accounts);
+        accounts.insertAccount(new Account("testuser1", "password"));
+        for (int i = 1; i <= 5; i++) {
+            messages.insertMessage(new Message(1, "message " + i, 1669947791 + i));
+        }
+        messages.deleteMessageById(4);
+
+        Assert.assertEquals(List.of(new Message(3, 1, "message 3", 1669947794),
+            new Message(5, 1, "message 5", 1669947796)), messages.getMessagesAfter(2));
+        Assert.assertEquals(4, messages.getMessagesAfter(0).size());
+        Assert.assertEquals(List.of(), messages.getMessagesAfter(5));
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
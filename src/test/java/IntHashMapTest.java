@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntHashMap;
+
+/**
+ * Probes, resizes and removes entries of IntHashMap, also where a run of entries wraps around the end of the table.
+ */
+public class IntHashMapTest {
+
+    /**
+     * Slots in a new IntHashMap, before its first resize.
+     */
+    private static final int CAPACITY = 32;
+
+    /**
+     * Zero, negative and extreme keys are ordinary keys.
+     */
+    @Test
+    public void zeroAndNegativeKeys() {
+        IntHashMap<String> map = new IntHashMap<>();
+        int[] keys = {0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE, -42};
+        for (int key : keys) {
+            Assert.assertNull(map.put(key, "value " + key));
+        }
+
+        Assert.assertEquals(keys.length, map.size());
+        for (int key : keys) {
+            Assert.assertTrue(map.containsKey(key));
+            Assert.assertEquals("value " + key, map.get(key));
+        }
+        Assert.assertEquals("value 0", map.put(0, "zero"));
+        Assert.assertEquals("zero", map.remove(0));
+        Assert.assertFalse(map.containsKey(0));
+        Assert.assertEquals("value -1", map.get(-1));
+        Assert.assertEquals(keys.length - 1, map.size());
+    }
+
+    /**
+     * Removing an entry from a run that wraps from the last slot to the first shifts the rest of the run back, so
+     * every remaining key is still found and the removed one is not.
+     */
+    @Test
+    public void removeFromAWrappedRun() {
+        // Three keys whose home is the last slot fill it and the first two; one whose home is slot 0 goes third.
+        List<Integer> homeLast = keysWithHome(CAPACITY - 1, 3);
+        int homeFirst = keysWithHome(0, 1).get(0);
+
+        for (int removed = 0; removed < homeLast.size(); removed++) {
+            IntHashMap<Integer> map = new IntHashMap<>();
+            for (int key : homeLast) {
+                map.put(key, key);
+            }
+            map.put(homeFirst, homeFirst);
+
+            Assert.assertEquals(homeLast.get(removed), map.remove(homeLast.get(removed)));
+            Assert.assertNull(map.get(homeLast.get(removed)));
+            Assert.assertNull(map.remove(homeLast.get(removed)));
+            for (int key : homeLast) {
+                if (key != homeLast.get(removed)) {
+                    Assert.assertEquals(Integer.valueOf(key), map.get(key));
+                }
+            }
+            Assert.assertEquals(Integer.valueOf(homeFirst), map.get(homeFirst));
+            Assert.assertEquals(3, map.size());
+
+            // The freed slot is reused, and the run still holds together.
+            map.put(homeLast.get(removed), -1);
+            Assert.assertEquals(Integer.valueOf(-1), map.get(homeLast.get(removed)));
+            Assert.assertEquals(Integer.valueOf(homeFirst), map.remove(homeFirst));
+            for (int key : homeLast) {
+                Assert.assertTrue(map.containsKey(key));
+            }
+        }
+    }
+
+    /**
+     * Entries survive the resizes of a map filled far past its initial capacity, with removals mixed in.
+     */
+    @Test
+    public void resizesUnderLoad() {
+        IntHashMap<Integer> map = new IntHashMap<>(4);
+        for (int key = -5000; key < 5000; key++) {
+            map.put(key, key * 2);
+            if (key % 3 == 0) {
+                Assert.assertEquals(Integer.valueOf(key * 2), map.remove(key));
+            }
+        }
+
+        int size = 0;
+        for (int key = -5000; key < 5000; key++) {
+            if (key % 3 == 0) {
+                Assert.assertFalse(map.containsKey(key));
+            } else {
+                Assert.assertEquals(Integer.valueOf(key * 2), map.get(key));
+                size++;
+            }
+        }
+        Assert.assertEquals(size, map.size());
+
+        List<Integer> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        Assert.assertEquals(size, values.size());
+    }
+
+    /**
+     * Random puts and removes over a small key range, which makes long runs, agree with a HashMap.
+     */
+    @Test
+    public void agreesWithHashMap() {
+        Random random = new Random(42);
+        IntHashMap<Integer> map = new IntHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(200) - 100;
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Assert.assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+
+        Assert.assertEquals(expected.size(), map.size());
+        for (int key = -100; key < 100; key++) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+        map.clear();
+        Assert.assertEquals(0, map.size());
+        Assert.assertNull(map.get(expected.keySet().iterator().next()));
+    }
+
+    /**
+     * @return count keys whose home slot in a table of CAPACITY slots is slot, the same hash as IntHashMap.
+     */
+    static List<Integer> keysWithHome(int slot, int count) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 1; keys.size() < count; key++) {
+            int h = key * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & (CAPACITY - 1)) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
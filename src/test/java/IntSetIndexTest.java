@@ -0,0 +1,124 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntSetIndex;
+
+/**
+ * Adds, removes and pages through the sets of IntSetIndex, also where a run of keys wraps around the end of the table.
+ */
+public class IntSetIndexTest {
+
+    /**
+     * valuesAfter returns at most limit values greater than after, from anywhere in the set.
+     */
+    @Test
+    public void valuesAfter() {
+        IntSetIndex index = new IntSetIndex();
+        for (int value : new int[] {7, 3, -2, 0, 11, 5}) {
+            Assert.assertTrue(index.add(1, value));
+        }
+        Assert.assertFalse(index.add(1, 5));
+
+        Assert.assertArrayEquals(new int[] {-2, 0, 3, 5, 7, 11}, index.values(1));
+        Assert.assertArrayEquals(new int[] {-2, 0, 3}, index.valuesAfter(1, Integer.MIN_VALUE, 3));
+        Assert.assertArrayEquals(new int[] {5, 7}, index.valuesAfter(1, 3, 2));
+        Assert.assertArrayEquals(new int[] {5, 7, 11}, index.valuesAfter(1, 4, 100));
+        Assert.assertArrayEquals(new int[] {0, 3}, index.valuesAfter(1, -1, 2));
+        Assert.assertArrayEquals(new int[] {}, index.valuesAfter(1, 11, 100));
+        Assert.assertArrayEquals(new int[] {}, index.valuesAfter(1, 0, 0));
+        Assert.assertArrayEquals(new int[] {}, index.valuesAfter(2, 0, 100));
+    }
+
+    /**
+     * Zero and negative keys are ordinary keys, and a key whose set empties is dropped.
+     */
+    @Test
+    public void zeroAndNegativeKeys() {
+        IntSetIndex index = new IntSetIndex();
+        index.add(0, 1);
+        index.add(-1, 2);
+        index.add(Integer.MIN_VALUE, 3);
+
+        Assert.assertEquals(3, index.size());
+        Assert.assertTrue(index.contains(0, 1));
+        Assert.assertFalse(index.contains(0, 2));
+        Assert.assertArrayEquals(new int[] {2}, index.valuesAfter(-1, 0, 10));
+
+        Assert.assertFalse(index.remove(0, 2));
+        Assert.assertTrue(index.remove(0, 1));
+        Assert.assertEquals(0, index.count(0));
+        Assert.assertEquals(2, index.size());
+        Assert.assertArrayEquals(new int[] {3}, index.values(Integer.MIN_VALUE));
+    }
+
+    /**
+     * Dropping a key from a run that wraps from the last slot to the first shifts the rest of the run back, so the
+     * sets of every remaining key are still found.
+     */
+    @Test
+    public void dropKeyFromAWrappedRun() {
+        // The same default table size and hash as IntHashMap.
+        List<Integer> homeLast = IntHashMapTest.keysWithHome(31, 3);
+        int homeFirst = IntHashMapTest.keysWithHome(0, 1).get(0);
+
+        for (int dropped : homeLast) {
+            IntSetIndex index = new IntSetIndex();
+            for (int key : homeLast) {
+                index.add(key, key);
+                index.add(key, -key);
+            }
+            index.add(homeFirst, 1);
+
+            Assert.assertTrue(index.remove(dropped, dropped));
+            Assert.assertTrue(index.remove(dropped, -dropped));
+            Assert.assertEquals(0, index.count(dropped));
+            Assert.assertFalse(index.contains(dropped, dropped));
+            for (int key : homeLast) {
+                if (key != dropped) {
+                    Assert.assertArrayEquals(new int[] {-key, key}, index.values(key));
+                }
+            }
+            Assert.assertArrayEquals(new int[] {1}, index.values(homeFirst));
+            Assert.assertEquals(3, index.size());
+        }
+    }
+
+    /**
+     * Random adds and removes over many keys, which resize the table and grow the sets, agree with a TreeMap of
+     * TreeSets, also for valuesAfter.
+     */
+    @Test
+    public void agreesWithTreeSetsUnderLoad() {
+        Random random = new Random(42);
+        IntSetIndex index = new IntSetIndex(4);
+        Map<Integer, TreeSet<Integer>> expected = new TreeMap<>();
+
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(500) - 250;
+            int value = random.nextInt(100) - 50;
+            TreeSet<Integer> set = expected.computeIfAbsent(key, k -> new TreeSet<>());
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(set.remove(value), index.remove(key, value));
+            } else {
+                Assert.assertEquals(set.add(value), index.add(key, value));
+            }
+            if (set.isEmpty()) {
+                expected.remove(key);
+            }
+        }
+
+        Assert.assertEquals(expected.size(), index.size());
+        for (int key = -250; key < 250; key++) {
+            TreeSet<Integer> set = expected.getOrDefault(key, new TreeSet<>());
+            Assert.assertArrayEquals(set.stream().mapToInt(Integer::intValue).toArray(), index.values(key));
+            Assert.assertArrayEquals(set.tailSet(0, false).stream().limit(5).mapToInt(Integer::intValue).toArray(),
+                index.valuesAfter(key, 0, 5));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.CachingAccountRepository;
+import DAO.CachingMessageRepository;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.InvalidationBus;
+import DAO.LoopbackInvalidationBus;
+import DAO.TcpInvalidationBus;
+import Model.Account;
+import Model.Message;
+import Service.MessageService;
+
+/**
+ * Runs two instances of the services against shared storage, each with its own caches, and checks that a write on
+ * one reaches the cache of the other through the bus, also when packets are lost.
+ */
+public class InvalidationBusTest {
+    InMemoryAccountRepository accountStore;
+    InMemoryMessageRepository messageStore;
+    LoopbackInvalidationBus.Network network;
+    LoopbackInvalidationBus busA;
+    LoopbackInvalidationBus busB;
+    MessageService serviceA;
+    MessageService serviceB;
+
+    /**
+     * Before every test, store two messages and start both instances on a loopback network with 20ms heartbeats.
+     */
+    @Before
+    public void setUp() {
+        accountStore = new InMemoryAccountRepository();
+        accountStore.insertAccount(new Account("testuser1", "password"));
+        messageStore = new InMemoryMessageRepository(accountStore);
+        messageStore.insertMessage(new Message(1, "test message 1", 1669947792));
+        messageStore.insertMessage(new Message(1, "test message 2", 1669947793));
+
+        network = new LoopbackInvalidationBus.Network();
+        busA = new LoopbackInvalidationBus(network, 20);
+        busB = new LoopbackInvalidationBus(network, 20);
+        serviceA = instance(busA);
+        serviceB = instance(busB);
+    }
+
+    @After
+    public void tearDown() {
+        busA.close();
+        busB.close();
+    }
+
+    /**
+     * An update on one instance drops the message from the cache of the other.
+     */
+    @Test
+    public void updateInvalidatesTheOtherInstance() throws InterruptedException {
+        Assert.assertEquals("test message 1", serviceB.getMessageById(1).getMessage_text());
+
+        serviceA.updateMessageById("updated", 1);
+
+        Assert.assertEquals("updated", awaitText(serviceB, 1, "updated"));
+    }
+
+    /**
+     * A lost packet shows up as a gap in the seqs of the next heartbeat, and the other instance flushes everything it
+     * cached, including messages it was never told about.
+     */
+    @Test
+    public void lostPacketFlushesTheCache() throws InterruptedException {
+        Assert.assertEquals("test message 1", serviceB.getMessageById(1).getMessage_text());
+        Assert.assertEquals("test message 2", serviceB.getMessageById(2).getMessage_text());
+        // Let B hear from A before anything is lost.
+        Thread.sleep(100);
+
+        network.dropNext(1);
+        serviceA.updateMessageById("updated", 1);
+        // Changed behind both caches, only a flush makes B see it.
+        messageStore.updateMessageById("changed directly", 2);
+
+        Assert.assertEquals("changed directly", awaitText(serviceB, 2, "changed directly"));
+        Assert.assertEquals("updated", serviceB.getMessageById(1).getMessage_text());
+    }
+
+    /**
+     * Invalidations travel between TCP peers.
+     */
+    @Test
+    public void tcpPeersReceiveInvalidations() throws IOException, InterruptedException {
+        BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+        try (TcpInvalidationBus first = new TcpInvalidationBus(47801, List.of(new InetSocketAddress("localhost", 47802)), 20);
+                TcpInvalidationBus second = new TcpInvalidationBus(47802,
+                    List.of(new InetSocketAddress("localhost", 47801)), 20)) {
+            second.subscribe(new InvalidationBus.Listener() {
+                @Override
+                public void invalidateAccount(int account_id) {
+                }
+
+                @Override
+                public void invalidateMessage(int message_id) {
+                    received.add(message_id);
+                }
+
+                @Override
+                public void invalidateAll() {
+                }
+            });
+
+            first.publishMessage(7);
+
+            Assert.assertEquals(Integer.valueOf(7), received.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private MessageService instance(InvalidationBus bus) {
+        CachingAccountRepository accounts = new CachingAccountRepository(accountStore, 64);
+        CachingMessageRepository messages = new CachingMessageRepository(messageStore, 64);
+        bus.subscribe(accounts);
+        bus.subscribe(messages);
+        return new MessageService(messages, accounts, null, bus);
+    }
+
+    /**
+     * @return the text of the message once it is the expected one, or after a second.
+     */
+    private static String awaitText(MessageService service, int message_id, String expected)
+            throws InterruptedException {
+        String text = null;
+        for (int attempt = 0; attempt < 50; attempt++) {
+            text = service.getMessageById(message_id).getMessage_text();
+            if (text.equals(expected)) {
+                break;
+            }
+            Thread.sleep(20);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,152 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.MessageRepository;
+import Model.Account;
+import Model.LeaderboardEntry;
+import Model.Message;
+import Service.Leaderboard;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Ranks accounts by message count with Leaderboard, following the change stream of in-memory repositories, against a
+ * clock the test moves, and once through the endpoint.
+ */
+public class LeaderboardTest {
+    static final long DAY = 1669939200L;
+
+    InMemoryMessageRepository storage;
+    MessageRepository messageRepository;
+    AtomicLong now;
+    Leaderboard leaderboard;
+
+    /**
+     * Before every test, register three accounts and start the day.
+     */
+    @Before
+    public void setUp() throws Exception {
+        InMemoryAccountRepository accountRepository = new InMemoryAccountRepository();
+        accountRepository.insertAccount(new Account("testuser1", "password"));
+        accountRepository.insertAccount(new Account("other", "password"));
+        accountRepository.insertAccount(new Account("third", "password"));
+        storage = new InMemoryMessageRepository(accountRepository);
+        ChangeStream changes = new ChangeStream(8, null);
+        messageRepository = new ChangeCapturingMessageRepository(storage, changes);
+        now = new AtomicLong(DAY * 1000 + 3_600_000);
+        leaderboard = new Leaderboard(messageRepository, changes, now::get, 0);
+    }
+
+    /**
+     * Accounts are ranked by their number of messages, ties by account_id, and offset and limit page through them.
+     */
+    @Test
+    public void ranksAndPages() {
+        post(2, DAY);
+        Assert.assertEquals(List.of(new LeaderboardEntry(1, 2, 1)), leaderboard.top(Leaderboard.Period.ALL, 0, 10));
+
+        post(3, DAY);
+        post(3, DAY);
+        post(1, DAY);
+        Assert.assertEquals(List.of(
+                new LeaderboardEntry(1, 3, 2), new LeaderboardEntry(2, 1, 1), new LeaderboardEntry(3, 2, 1)),
+            leaderboard.top(Leaderboard.Period.ALL, 0, 10));
+        Assert.assertEquals(List.of(new LeaderboardEntry(2, 1, 1)), leaderboard.top(Leaderboard.Period.ALL, 1, 1));
+
+        messageRepository.deleteMessageById(2);
+        messageRepository.deleteMessageById(3);
+        Assert.assertEquals(List.of(new LeaderboardEntry(1, 1, 1), new LeaderboardEntry(2, 2, 1)),
+            leaderboard.top(Leaderboard.Period.ALL, 0, 10));
+    }
+
+    /**
+     * The day period only counts messages posted on the current day, and starts over when the day changes.
+     */
+    @Test
+    public void countsTheCurrentDay() {
+        post(1, DAY - 1);
+        post(2, DAY);
+        Assert.assertEquals(List.of(new LeaderboardEntry(1, 2, 1)), leaderboard.top(Leaderboard.Period.DAY, 0, 10));
+
+        post(1, DAY + 10);
+        post(3, DAY + 86400);
+        Assert.assertEquals(List.of(new LeaderboardEntry(1, 1, 1), new LeaderboardEntry(2, 2, 1)),
+            leaderboard.top(Leaderboard.Period.DAY, 0, 10));
+
+        now.addAndGet(86_400_000);
+        Assert.assertEquals(List.of(new LeaderboardEntry(1, 3, 1)), leaderboard.top(Leaderboard.Period.DAY, 0, 10));
+        Assert.assertEquals(List.of(new LeaderboardEntry(1, 1, 2), new LeaderboardEntry(2, 2, 1),
+                new LeaderboardEntry(3, 3, 1)),
+            leaderboard.top(Leaderboard.Period.ALL, 0, 10));
+    }
+
+    /**
+     * When the change stream has dropped events the counters have not seen, they are reconciled with the repository,
+     * which also picks up writes the stream never saw.
+     */
+    @Test
+    public void reconcilesAfterAGap() {
+        post(1, DAY);
+        Assert.assertEquals(List.of(new LeaderboardEntry(1, 1, 1)), leaderboard.top(Leaderboard.Period.ALL, 0, 10));
+
+        storage.insertMessage(new Message(3, "not captured", DAY));
+        for (int i = 0; i < 20; i++) {
+            post(2, DAY);
+        }
+        Assert.assertEquals(List.of(
+                new LeaderboardEntry(1, 2, 20), new LeaderboardEntry(2, 1, 1), new LeaderboardEntry(3, 3, 1)),
+            leaderboard.top(Leaderboard.Period.ALL, 0, 10));
+    }
+
+    /**
+     * GET /leaderboard returns a page of the ranking as JSON.
+     */
+    @Test
+    public void endpoint() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        try {
+            HttpClient webClient = HttpClient.newHttpClient();
+            HttpRequest create = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"posted_by\":1, \"message_text\": \"again\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+            webClient.send(create, HttpResponse.BodyHandlers.ofString());
+
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/leaderboard?period=all&limit=5"))
+                .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(List.of(new LeaderboardEntry(1, 1, 2)),
+                new ObjectMapper().readValue(response.body(), new TypeReference<List<LeaderboardEntry>>(){}));
+        } finally {
+            app.stop();
+        }
+    }
+
+    private void post(int posted_by, long time_posted_epoch) {
+        messageRepository.insertMessage(new Message(posted_by, "text", time_posted_epoch));
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.FsyncPolicy;
+import DAO.InMemoryAccountRepository;
+import DAO.LogMessageRepository;
+import Model.Account;
+import Model.Message;
+
+/**
+ * Checks that the message log comes back the same after a restart, after compaction and after a torn write.
+ */
+public class LogStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    InMemoryAccountRepository accounts;
+    Path directory;
+    LogMessageRepository messages;
+
+    /**
+     * Before every test, open an empty log with small segments so that a few hundred messages span several files.
+     */
+    @Before
+    public void setUp() throws IOException {
+        accounts = new InMemoryAccountRepository();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        directory = folder.getRoot().toPath();
+        messages = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        messages.close();
+    }
+
+    /**
+     * Inserts, updates and deletes survive a restart, and ids continue after the highest one ever assigned.
+     */
+    @Test
+    public void reopenReplaysTheLog() throws IOException {
+        messages.insertMessage(new Message(1, "first", 1669947792));
+        messages.insertMessage(new Message(1, "second", 1669947793));
+        messages.insertMessage(new Message(1, "third", 1669947794));
+        messages.updateMessageById("first, updated", 1);
+        messages.deleteMessageById(3);
+
+        reopen();
+
+        Assert.assertEquals(List.of(
+            new Message(1, 1, "first, updated", 1669947792),
+            new Message(2, 1, "second", 1669947793)), messages.getAllMessages());
+        Assert.assertEquals(2, messages.countMessagesByAccountId(1));
+        Assert.assertNull(messages.getMessageById(3));
+
+        Message created = messages.insertMessage(new Message(1, "fourth", 1669947795));
+        Assert.assertEquals(4, created.getMessage_id());
+    }
+
+    /**
+     * Compaction deletes segments that are mostly dead records without changing what can be read, before or after a
+     * restart.
+     */
+    @Test
+    public void compactionKeepsLiveMessages() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            messages.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int id = 1; id <= 200; id++) {
+                messages.updateMessageById("message " + id + " round " + round, id);
+            }
+        }
+        for (int id = 1; id <= 200; id += 2) {
+            messages.deleteMessageById(id);
+        }
+        List<Message> expected = messages.getAllMessages();
+        messages.compact();
+
+        // 100 live messages and their tombstones fit in a few 4KB segments.
+        Assert.assertTrue(segmentFiles().size() <= 4);
+        Assert.assertEquals(expected, messages.getAllMessages());
+
+        reopen();
+
+        Assert.assertEquals(expected, messages.getAllMessages());
+        Assert.assertEquals(100, messages.countMessagesByAccountId(1));
+        Assert.assertEquals(201, messages.insertMessage(new Message(1, "new", 1669947792)).getMessage_id());
+    }
+
+    /**
+     * A record that was only partly written when the process died is dropped, and everything before it is kept.
+     */
+    @Test
+    public void tornRecordIsDroppedOnRecovery() throws IOException {
+        messages.insertMessage(new Message(1, "complete", 1669947792));
+        messages.insertMessage(new Message(1, "torn", 1669947793));
+        messages.close();
+
+        // Damage the last byte of the text of the second record, as if the write never finished.
+        Path segment = segmentFiles().get(0);
+        int firstRecord = 8 + 21 + "complete".length();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(16 + firstRecord + 8 + 21 + "torn".length() - 1);
+            file.write('x');
+        }
+
+        messages = open();
+
+        Assert.assertEquals(List.of(new Message(1, 1, "complete", 1669947792)), messages.getAllMessages());
+        Assert.assertEquals(2, messages.insertMessage(new Message(1, "again", 1669947794)).getMessage_id());
+    }
+
+    private LogMessageRepository open() throws IOException {
+        return new LogMessageRepository(accounts, directory, FsyncPolicy.GROUP, 10, 4096);
+    }
+
+    private void reopen() throws IOException {
+        messages.close();
+        messages = open();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageChanges;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Syncs the messages of an account through GET /accounts/{account_id}/messages/changes.
+ */
+public class MessageChangesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A first sync gets the whole list; the next one only the newest version of what was created or edited since,
+     * and the ids of what was deleted.
+     */
+    @Test
+    public void deltaSinceCursor() throws IOException, InterruptedException {
+        MessageChanges full = changes("accounts/1/messages/changes");
+        Assert.assertTrue(full.reset);
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), full.messages);
+
+        send("POST", "register", "{\"username\": \"user\", \"password\": \"password\"}");
+        send("POST", "messages", "{\"posted_by\":1, \"message_text\": \"new\", \"time_posted_epoch\": 1669947793}");
+        send("POST", "messages", "{\"posted_by\":2, \"message_text\": \"other\", \"time_posted_epoch\": 1669947794}");
+        send("PATCH", "messages/2", "{\"message_text\": \"edited\"}");
+        send("DELETE", "messages/1", null);
+
+        MessageChanges delta = changes("accounts/1/messages/changes?since=" + full.cursor);
+        Assert.assertFalse(delta.reset);
+        Assert.assertEquals(List.of(new Message(2, 1, "edited", 1669947793)), delta.messages);
+        Assert.assertEquals(List.of(1), delta.deleted);
+        Assert.assertNotEquals(full.cursor, delta.cursor);
+
+        MessageChanges none = changes("accounts/1/messages/changes?since=" + delta.cursor);
+        Assert.assertFalse(none.reset);
+        Assert.assertEquals(List.of(), none.messages);
+        Assert.assertEquals(List.of(), none.deleted);
+        Assert.assertEquals(delta.cursor, none.cursor);
+    }
+
+    /**
+     * A cursor past the end of the stream gets the whole list.
+     */
+    @Test
+    public void unknownCursorResets() throws IOException, InterruptedException {
+        MessageChanges full = changes("accounts/1/messages/changes");
+        String epoch = full.cursor.substring(0, full.cursor.indexOf('-'));
+        long seq = Long.parseLong(full.cursor.substring(full.cursor.indexOf('-') + 1));
+
+        MessageChanges reset = changes("accounts/1/messages/changes?since=" + epoch + "-" + (seq + 1000));
+        Assert.assertTrue(reset.reset);
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), reset.messages);
+        Assert.assertEquals(full.cursor, reset.cursor);
+    }
+
+    /**
+     * A cursor of another epoch of the stream, e.g. from before a restart that started the seqs over, gets the whole
+     * list even once the stream has a change with its seq.
+     */
+    @Test
+    public void cursorOfAnotherEpochResets() throws IOException, InterruptedException {
+        send("POST", "messages", "{\"posted_by\":1, \"message_text\": \"new\", \"time_posted_epoch\": 1669947793}");
+        MessageChanges full = changes("accounts/1/messages/changes");
+        String epoch = full.cursor.substring(0, full.cursor.indexOf('-'));
+        String otherEpoch = Long.toHexString(Long.parseUnsignedLong(epoch, 16) + 1);
+
+        MessageChanges reset = changes("accounts/1/messages/changes?since=" + otherEpoch + "-1");
+        Assert.assertTrue(reset.reset);
+        Assert.assertEquals(2, reset.messages.size());
+        Assert.assertEquals(full.cursor, reset.cursor);
+    }
+
+    /**
+     * A since that is not a cursor is a 400.
+     */
+    @Test
+    public void malformedCursorIs400() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("GET", "accounts/1/messages/changes?since=12", null).statusCode());
+    }
+
+    private MessageChanges changes(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", path, null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessageChanges.class);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,127 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import Model.Account;
+import Model.AccountProfile;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Lists messages with their authors through ?embed=author, and through MessageService over in-memory repositories.
+ */
+public class MessageEmbedTest {
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, start the app, register a second account and post a message from each.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        send("POST", "register", "{\"username\": \"other\", \"password\": \"secret\"}");
+        send("POST", "messages", "{\"posted_by\":2, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}");
+        send("POST", "messages", "{\"posted_by\":1, \"message_text\": \"third\", \"time_posted_epoch\": 1669947794}");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * GET /messages?embed=author has every author once, in the order they first appear, never with the password.
+     */
+    @Test
+    public void listsAuthorsOnce() throws Exception {
+        HttpResponse<String> response = send("GET", "messages?embed=author", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.body().contains("password"));
+        Assert.assertEquals(new MessagePage(
+                List.of(new Message(1, 1, "test message 1", 1669947792), new Message(2, 2, "second", 1669947793),
+                    new Message(3, 1, "third", 1669947794)),
+                List.of(new AccountProfile(1, "testuser1"), new AccountProfile(2, "other"))),
+            objectMapper.readValue(response.body(), MessagePage.class));
+    }
+
+    /**
+     * Without embed the listings are plain lists, an unknown embed is a bad request.
+     */
+    @Test
+    public void embedIsOptional() throws Exception {
+        HttpResponse<String> response = send("GET", "accounts/2/messages", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(List.of(new Message(2, 2, "second", 1669947793)),
+            objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+
+        response = send("GET", "accounts/2/messages?embed=author", null);
+        Assert.assertEquals(List.of(new AccountProfile(2, "other")),
+            objectMapper.readValue(response.body(), MessagePage.class).authors);
+
+        Assert.assertEquals(400, send("GET", "messages?embed=password", null).statusCode());
+        Assert.assertEquals(400, send("GET", "messages/batch?ids=1&embed=", null).statusCode());
+    }
+
+    /**
+     * The authors of a page, with nulls for missing messages, are looked up in one call with each account once.
+     */
+    @Test
+    public void looksUpDistinctAuthorsTogether() {
+        List<List<Integer>> calls = new ArrayList<>();
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository() {
+            @Override
+            public Map<Integer, Account> getAccountsByIds(List<Integer> account_ids) {
+                calls.add(account_ids);
+                return super.getAccountsByIds(account_ids);
+            }
+        };
+        accounts.insertAccount(new Account("testuser1", "password"));
+        accounts.insertAccount(new Account("other", "password"));
+        MessageService messageService = new MessageService(new InMemoryMessageRepository(accounts), accounts);
+
+        List<Message> messages = Arrays.asList(new Message(1, 2, "a", 1), null, new Message(2, 1, "b", 2),
+            new Message(3, 2, "c", 3), new Message(4, 9, "d", 4));
+        MessagePage page = messageService.withAuthors(messages);
+        Assert.assertEquals(List.of(new AccountProfile(2, "other"), new AccountProfile(1, "testuser1")), page.authors);
+        Assert.assertEquals(List.of(List.of(2, 1, 9)), calls);
+
+        Assert.assertEquals(List.of(), messageService.withAuthors(List.of()).authors);
+        Assert.assertEquals(1, calls.size());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import Model.Account;
+import Model.ChangeEvent;
+import Model.Message;
+import Service.MessageFeed;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Subscribes to GET /feed and checks that message writes arrive as Server-Sent Events.
+ */
+public class MessageFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Stream<String> feed;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        if (feed != null) {
+            feed.close();
+        }
+        app.stop();
+    }
+
+    /**
+     * Creating, updating and deleting a message each send one event, named after the change, with the message as
+     * data and its seq as id.
+     */
+    @Test
+    public void writesAreStreamed() throws Exception {
+        BlockingQueue<String[]> events = subscribe("feed", null);
+
+        HttpResponse<String> created = send("POST", "messages",
+            "{\"posted_by\":1, \"message_text\": \"streamed\", \"time_posted_epoch\": 1669947793}");
+        send("PATCH", "messages/2", "{\"message_text\": \"updated\"}");
+        send("DELETE", "messages/2", null);
+
+        String[] event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals("message_created", event[0]);
+        Assert.assertEquals(new Message(2, 1, "streamed", 1669947793), objectMapper.readValue(event[1], Message.class));
+        Assert.assertEquals(created.headers().firstValue("X-Write-Seq").orElseThrow(), event[2]);
+
+        event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals("message_updated", event[0]);
+        Assert.assertEquals(new Message(2, 1, "updated", 1669947793), objectMapper.readValue(event[1], Message.class));
+
+        event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals("message_deleted", event[0]);
+        Assert.assertEquals(new Message(2, 1, "updated", 1669947793), objectMapper.readValue(event[1], Message.class));
+    }
+
+    /**
+     * ?posted_by= only streams the messages of that account.
+     */
+    @Test
+    public void postedByFiltersTheFeed() throws Exception {
+        send("POST", "register", "{\"username\": \"user\", \"password\": \"password\"}");
+        BlockingQueue<String[]> events = subscribe("feed?posted_by=2", null);
+
+        send("POST", "messages", "{\"posted_by\":1, \"message_text\": \"by 1\", \"time_posted_epoch\": 1669947793}");
+        send("POST", "messages", "{\"posted_by\":2, \"message_text\": \"by 2\", \"time_posted_epoch\": 1669947794}");
+
+        String[] event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals("message_created", event[0]);
+        Assert.assertEquals(new Message(3, 2, "by 2", 1669947794), objectMapper.readValue(event[1], Message.class));
+    }
+
+    /**
+     * A client that reconnects with Last-Event-ID gets what it missed.
+     */
+    @Test
+    public void lastEventIdResumes() throws Exception {
+        HttpResponse<String> created = send("POST", "messages",
+            "{\"posted_by\":1, \"message_text\": \"missed\", \"time_posted_epoch\": 1669947793}");
+        long seq = Long.parseLong(created.headers().firstValue("X-Write-Seq").orElseThrow());
+
+        BlockingQueue<String[]> events = subscribe("feed", Long.toString(seq - 1));
+
+        String[] event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals("message_created", event[0]);
+        Assert.assertEquals(new Message(2, 1, "missed", 1669947793), objectMapper.readValue(event[1], Message.class));
+        Assert.assertEquals(Long.toString(seq), event[2]);
+    }
+
+    /**
+     * A subscriber that stops reading is evicted once it is more than maxLag events behind, without holding up the
+     * others.
+     */
+    @Test
+    public void slowConsumerIsEvicted() throws InterruptedException {
+        ChangeStream changes = new ChangeStream();
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        ChangeCapturingMessageRepository messages = new ChangeCapturingMessageRepository(
+            new InMemoryMessageRepository(accounts), changes);
+        MessageFeed messageFeed = new MessageFeed(changes, 4, 2);
+
+        CountDownLatch unblock = new CountDownLatch(1);
+        BlockingQueue<String> slowClosed = new LinkedBlockingQueue<>();
+        BlockingQueue<ChangeEvent> fast = new LinkedBlockingQueue<>();
+        messageFeed.subscribe(-1, 0, new MessageFeed.Sink() {
+            @Override
+            public boolean send(ChangeEvent event) {
+                try {
+                    unblock.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+
+            @Override
+            public void ping() {
+            }
+
+            @Override
+            public void close(String reason) {
+                slowClosed.add(reason);
+            }
+        });
+        messageFeed.subscribe(-1, 0, new MessageFeed.Sink() {
+            @Override
+            public boolean send(ChangeEvent event) {
+                return fast.add(event);
+            }
+
+            @Override
+            public void ping() {
+            }
+
+            @Override
+            public void close(String reason) {
+            }
+        });
+
+        // One at a time, so that only the blocked subscriber falls behind.
+        for (int i = 0; i < 10; i++) {
+            messages.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+            Assert.assertNotNull(fast.poll(5, TimeUnit.SECONDS));
+        }
+        for (int attempt = 0; attempt < 50 && messageFeed.subscriberCount() > 1; attempt++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, messageFeed.subscriberCount());
+
+        unblock.countDown();
+        Assert.assertEquals("slow consumer", slowClosed.poll(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Open the feed and collect its events, each as {event, data, id}.
+     */
+    private BlockingQueue<String[]> subscribe(String path, String lastEventId)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        HttpResponse<Stream<String>> response = webClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines())
+            .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.statusCode());
+        feed = response.body();
+
+        BlockingQueue<String[]> events = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> {
+            String[] event = new String[3];
+            Iterator<String> lines = feed.iterator();
+            try {
+                while (lines.hasNext()) {
+                    String line = lines.next();
+                    if (line.startsWith("event: ")) {
+                        event[0] = line.substring("event: ".length());
+                    } else if (line.startsWith("data: ")) {
+                        event[1] = line.substring("data: ".length());
+                    } else if (line.startsWith("id: ")) {
+                        event[2] = line.substring("id: ".length());
+                    } else if (line.isEmpty() && event[0] != null) {
+                        events.add(event);
+                        event = new String[3];
+                    }
+                }
+            } catch (RuntimeException ex) {
+                // The feed was closed.
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        // Give the subscription time to register before the test writes.
+        Thread.sleep(200);
+        return events;
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import Model.Account;
+import Model.Message;
+import Model.MessagePoll;
+import Service.MessageService;
+import Service.MessageWaiters;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Long polls GET /messages/poll for messages created after the cursor of the last poll.
+ */
+public class MessagePollTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Without a cursor the messages that already exist are returned right away, as a reset.
+     */
+    @Test
+    public void existingMessagesReturnRightAway() throws Exception {
+        HttpResponse<String> response = poll("messages/poll").get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(200, response.statusCode());
+        MessagePoll result = result(response);
+        Assert.assertTrue(result.reset);
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), result.messages);
+    }
+
+    /**
+     * A poll with nothing new waits, and returns the new message as soon as it is created.
+     */
+    @Test
+    public void waitsForNewMessage() throws Exception {
+        String cursor = result(poll("messages/poll").get(5, TimeUnit.SECONDS)).cursor;
+        CompletableFuture<HttpResponse<String>> pending = poll("messages/poll?since=" + cursor + "&timeout=10000");
+        Thread.sleep(300);
+        Assert.assertFalse(pending.isDone());
+
+        HttpRequest create = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/messages"))
+            .POST(HttpRequest.BodyPublishers.ofString(
+                "{\"posted_by\":1, \"message_text\": \"new\", \"time_posted_epoch\": 1669947793}"))
+            .header("Content-Type", "application/json")
+            .build();
+        webClient.send(create, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = pending.get(2, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.statusCode());
+        MessagePoll result = result(response);
+        Assert.assertFalse(result.reset);
+        Assert.assertEquals(List.of(new Message(2, 1, "new", 1669947793)), result.messages);
+        Assert.assertNotEquals(cursor, result.cursor);
+    }
+
+    /**
+     * A poll with nothing new returns no messages and the same cursor after its timeout.
+     */
+    @Test
+    public void timesOutWithNoMessages() throws Exception {
+        String cursor = result(poll("messages/poll").get(5, TimeUnit.SECONDS)).cursor;
+        HttpResponse<String> response = poll("messages/poll?since=" + cursor + "&timeout=200").get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new MessagePoll(cursor, false, List.of(), null), result(response));
+    }
+
+    /**
+     * A negative timeout, or a since that is not a cursor, is a 400.
+     */
+    @Test
+    public void badParamsAre400() throws Exception {
+        String cursor = result(poll("messages/poll").get(5, TimeUnit.SECONDS)).cursor;
+        Assert.assertEquals(400, poll("messages/poll?since=" + cursor + "&timeout=-1").get(5, TimeUnit.SECONDS)
+            .statusCode());
+        Assert.assertEquals(400, poll("messages/poll?since=12").get(5, TimeUnit.SECONDS).statusCode());
+    }
+
+    /**
+     * A cursor of another epoch of the stream, e.g. from before a restart that started the seqs over, is a reset.
+     */
+    @Test
+    public void cursorOfAnotherEpochResets() throws Exception {
+        String cursor = result(poll("messages/poll").get(5, TimeUnit.SECONDS)).cursor;
+        String epoch = cursor.substring(0, cursor.indexOf('-'));
+        String otherEpoch = Long.toHexString(Long.parseUnsignedLong(epoch, 16) + 1);
+
+        MessagePoll result = result(poll("messages/poll?since=" + otherEpoch + "-0&timeout=10000")
+            .get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(result.reset);
+        Assert.assertEquals(cursor, result.cursor);
+    }
+
+    /**
+     * A timeout longer than the longest allowed is cut to it.
+     */
+    @Test
+    public void timeoutIsCutToTheMaximum() throws Exception {
+        ChangeStream changes = new ChangeStream();
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        MessageWaiters waiters = new MessageWaiters(
+            new ChangeCapturingMessageRepository(new InMemoryMessageRepository(accounts), changes), changes, 1, 100);
+
+        MessagePoll result = waiters.await(changes.cursor(0), Long.MAX_VALUE).get(2, TimeUnit.SECONDS);
+        Assert.assertEquals(new MessagePoll(changes.cursor(0), false, List.of(), null), result);
+        waiters.close();
+    }
+
+    /**
+     * A message created after the cursor is returned even with a smaller id than one the client already has, as
+     * with concurrent writes that commit out of id order.
+     */
+    @Test
+    public void cursorIsTheStreamNotTheId() throws Exception {
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        ChangeStream changes = new ChangeStream();
+        ChangeCapturingMessageRepository messages = new ChangeCapturingMessageRepository(
+            new InMemoryMessageRepository(accounts) {
+                @Override
+                public Message insertMessage(Message message) {
+                    // Count ids down, like a write that took its id before the one committed ahead of it.
+                    Message inserted = super.insertMessage(message);
+                    return new Message(10 - inserted.getMessage_id(), inserted.getPosted_by(),
+                        inserted.getMessage_text(), inserted.getTime_posted_epoch());
+                }
+            }, changes);
+        MessageWaiters waiters = new MessageWaiters(messages, changes, 1);
+
+        messages.insertMessage(new Message(1, "id 9", 1669947792));
+        CompletableFuture<MessagePoll> pending = waiters.await(changes.cursor(changes.lastSeq()), 10000);
+        Assert.assertFalse(pending.isDone());
+
+        messages.insertMessage(new Message(1, "id 8", 1669947793));
+        MessagePoll result = pending.get(2, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of(new Message(8, 1, "id 8", 1669947793)), result.messages);
+        Assert.assertEquals(changes.cursor(changes.lastSeq()), result.cursor);
+    }
+
+    /**
+     * Closing the last MessageService of some repositories answers its waiting polls and drops the features, so the
+     * next MessageService of the repositories starts over from a new change stream.
+     */
+    @Test
+    public void closingTheLastServiceEndsItsPolls() throws Exception {
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        InMemoryMessageRepository messages = new InMemoryMessageRepository(accounts);
+        MessageService first = new MessageService(messages, accounts);
+        MessageService second = new MessageService(messages, accounts);
+        first.createMessage(new Message(1, "before", 1669947792));
+
+        String cursor = second.waitForMessages(null, 0).get(2, TimeUnit.SECONDS).cursor;
+        CompletableFuture<MessagePoll> pending = second.waitForMessages(cursor, 10000);
+        first.close();
+        Thread.sleep(100);
+        Assert.assertFalse(pending.isDone());
+
+        second.close();
+        Assert.assertEquals(new MessagePoll(cursor, false, List.of(), null), pending.get(2, TimeUnit.SECONDS));
+
+        try (MessageService next = new MessageService(messages, accounts)) {
+            Assert.assertTrue(next.waitForMessages(cursor, 0).get(2, TimeUnit.SECONDS).reset);
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> poll(String path) {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .build();
+        return webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private MessagePoll result(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), MessagePoll.class);
+    }
+}
@@ -0,0 +1,181 @@
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.MessageRepository;
+import Model.Account;
+import Model.Message;
+import Service.MessageSearch;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Searches message_text through MessageSearch over an in-memory repository, whose writes it follows through a
+ * ChangeStream, and once through GET /messages/search.
+ */
+public class MessageSearchTest {
+    MessageRepository messageRepository;
+    MessageSearch search;
+
+    /**
+     * Before every test, store a few messages, the first of them before the index is built.
+     */
+    @Before
+    public void setUp() {
+        InMemoryAccountRepository accountRepository = new InMemoryAccountRepository();
+        accountRepository.insertAccount(new Account("testuser1", "password"));
+        ChangeStream changes = new ChangeStream();
+        messageRepository = new ChangeCapturingMessageRepository(new InMemoryMessageRepository(accountRepository),
+            changes);
+        search = new MessageSearch(messageRepository, changes);
+
+        create("Coffee in New York", 1000);
+        // Builds the index.
+        Assert.assertEquals(List.of(), search.search("nothing", 0, 10));
+        create("york is new to me", 1001);
+        create("Tea, then coffee", 1002);
+        create("Just tea", 999);
+    }
+
+    /**
+     * Words next to each other must all match, newest first by time_posted_epoch.
+     */
+    @Test
+    public void wordsAreAnded() {
+        Assert.assertEquals(List.of(3, 1), ids(search.search("coffee", 0, 10)));
+        Assert.assertEquals(List.of(2, 1), ids(search.search("new YORK", 0, 10)));
+        Assert.assertEquals(List.of(3), ids(search.search("tea coffee", 0, 10)));
+        Assert.assertEquals(List.of(), ids(search.search("tea unknown", 0, 10)));
+    }
+
+    /**
+     * A quoted phrase only matches its words in that order, next to each other.
+     */
+    @Test
+    public void phrasesMatchInOrder() {
+        Assert.assertEquals(List.of(1), ids(search.search("\"new york\"", 0, 10)));
+        Assert.assertEquals(List.of(2), ids(search.search("\"york is\" new", 0, 10)));
+    }
+
+    /**
+     * OR separates alternatives.
+     */
+    @Test
+    public void orUnites() {
+        Assert.assertEquals(List.of(3, 1, 4), ids(search.search("coffee OR just", 0, 10)));
+        Assert.assertEquals(List.of(3, 2, 1), ids(search.search("\"new york\" OR york OR tea coffee", 0, 10)));
+    }
+
+    /**
+     * offset and limit page through the results.
+     */
+    @Test
+    public void pages() {
+        for (int i = 0; i < 30; i++) {
+            create("page " + i, 2000 + i);
+        }
+        List<Integer> all = ids(search.search("page", 0, 100));
+        Assert.assertEquals(30, all.size());
+        Assert.assertEquals(all.subList(0, 10), ids(search.search("page", 0, 10)));
+        Assert.assertEquals(all.subList(10, 20), ids(search.search("page", 10, 10)));
+        Assert.assertEquals(all.subList(25, 30), ids(search.search("page", 25, 10)));
+        Assert.assertEquals(List.of(), ids(search.search("page", 30, 10)));
+    }
+
+    /**
+     * Updates and deletes take effect, also once the stale postings are compacted away.
+     */
+    @Test
+    public void updatesAndDeletesAreIndexed() {
+        messageRepository.updateMessageById("decaf now", 1);
+        Assert.assertEquals(List.of(3), ids(search.search("coffee", 0, 10)));
+        Assert.assertEquals(List.of(1), ids(search.search("decaf", 0, 10)));
+
+        messageRepository.updateMessageById("coffee again", 1);
+        Assert.assertEquals(List.of(3, 1), ids(search.search("coffee", 0, 10)));
+
+        messageRepository.deleteMessageById(3);
+        Assert.assertEquals(List.of(1), ids(search.search("coffee", 0, 10)));
+        Assert.assertEquals(List.of(4), ids(search.search("tea", 0, 10)));
+    }
+
+    /**
+     * Services over the same repositories search one index, which sees what any of them wrote.
+     */
+    @Test
+    public void servicesShareTheIndex() {
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        InMemoryMessageRepository messages = new InMemoryMessageRepository(accounts);
+        MessageService writer = new MessageService(messages, accounts);
+        MessageService reader = new MessageService(messages, accounts);
+
+        writer.createMessage(new Message(1, "shared words", 1000));
+        Assert.assertEquals(List.of(1), ids(reader.searchMessages("shared", 0, 10)));
+        writer.deleteMessageById(1);
+        Assert.assertEquals(List.of(), ids(reader.searchMessages("shared", 0, 10)));
+    }
+
+    /**
+     * GET /messages/search returns the matching messages as JSON.
+     */
+    @Test
+    public void searchEndpoint() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        try {
+            HttpClient webClient = HttpClient.newHttpClient();
+            HttpRequest create = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"posted_by\":1, \"message_text\": \"searchable words here\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+            webClient.send(create, HttpResponse.BodyHandlers.ofString());
+
+            String q = URLEncoder.encode("\"searchable words\" OR nothing", StandardCharsets.UTF_8);
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=" + q))
+                .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            Assert.assertEquals(200, response.statusCode());
+            List<Message> messages = new ObjectMapper().readValue(response.body(), new TypeReference<List<Message>>(){});
+            Assert.assertEquals(List.of(new Message(2, 1, "searchable words here", 1669947793)), messages);
+        } finally {
+            app.stop();
+        }
+    }
+
+    private void create(String text, long time_posted_epoch) {
+        messageRepository.insertMessage(new Message(1, text, time_posted_epoch));
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+}
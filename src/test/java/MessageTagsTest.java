@@ -0,0 +1,169 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.MessageRepository;
+import Model.Account;
+import Model.Message;
+import Service.MessageTags;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Looks up messages by #tag and @mention through MessageTags over in-memory repositories, whose writes it follows
+ * through a ChangeStream, and once through the endpoints.
+ */
+public class MessageTagsTest {
+    MessageRepository messageRepository;
+    MessageTags tags;
+
+    /**
+     * Before every test, register two accounts and store a message before the index is built.
+     */
+    @Before
+    public void setUp() {
+        InMemoryAccountRepository accountRepository = new InMemoryAccountRepository();
+        accountRepository.insertAccount(new Account("testuser1", "password"));
+        accountRepository.insertAccount(new Account("other", "password"));
+        ChangeStream changes = new ChangeStream();
+        messageRepository = new ChangeCapturingMessageRepository(new InMemoryMessageRepository(accountRepository),
+            changes);
+        tags = new MessageTags(messageRepository, accountRepository, changes);
+
+        create("#Java and #java again, mail a#b, hi @testuser1 and @nobody");
+        // Builds the index.
+        Assert.assertEquals(List.of(1), ids(tags.getMessagesByTag("java", 0, 10)));
+    }
+
+    /**
+     * Tags are case insensitive and need a boundary before the #; mentions are of existing usernames only.
+     */
+    @Test
+    public void extractsTagsAndMentions() {
+        Assert.assertEquals(List.of(1), ids(tags.getMessagesByTag("#JAVA", 0, 10)));
+        Assert.assertEquals(List.of(), ids(tags.getMessagesByTag("b", 0, 10)));
+        Assert.assertEquals(List.of(1), ids(tags.getMessagesMentioning(1, 0, 10)));
+        Assert.assertEquals(List.of(), ids(tags.getMessagesMentioning(2, 0, 10)));
+    }
+
+    /**
+     * An edit replaces the tags and mentions of the message, a delete drops them.
+     */
+    @Test
+    public void editsAndDeletesUpdateTheIndex() {
+        create("#java with @other");
+        messageRepository.updateMessageById("now #kotlin for @other", 1);
+
+        Assert.assertEquals(List.of(2), ids(tags.getMessagesByTag("java", 0, 10)));
+        Assert.assertEquals(List.of(1), ids(tags.getMessagesByTag("kotlin", 0, 10)));
+        Assert.assertEquals(List.of(), ids(tags.getMessagesMentioning(1, 0, 10)));
+        Assert.assertEquals(List.of(1, 2), ids(tags.getMessagesMentioning(2, 0, 10)));
+
+        messageRepository.deleteMessageById(2);
+        Assert.assertEquals(List.of(), ids(tags.getMessagesByTag("java", 0, 10)));
+        Assert.assertEquals(List.of(1), ids(tags.getMessagesMentioning(2, 0, 10)));
+    }
+
+    /**
+     * after and limit page through the messages of a tag.
+     */
+    @Test
+    public void pagesByMessageId() {
+        for (int i = 0; i < 5; i++) {
+            create("#paged " + i);
+        }
+        Assert.assertEquals(List.of(2, 3), ids(tags.getMessagesByTag("paged", 0, 2)));
+        Assert.assertEquals(List.of(4, 5), ids(tags.getMessagesByTag("paged", 3, 2)));
+        Assert.assertEquals(List.of(6), ids(tags.getMessagesByTag("paged", 5, 2)));
+        Assert.assertEquals(List.of(), ids(tags.getMessagesByTag("paged", 6, 2)));
+    }
+
+    /**
+     * The messages of a page are read in one call, and returned in message_id order.
+     */
+    @Test
+    public void readsAPageAtOnce() {
+        List<List<Integer>> calls = new ArrayList<>();
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        ChangeStream changes = new ChangeStream();
+        MessageRepository messages = new ChangeCapturingMessageRepository(new InMemoryMessageRepository(accounts) {
+            @Override
+            public Map<Integer, Message> getMessagesByIds(List<Integer> message_ids) {
+                calls.add(message_ids);
+                return super.getMessagesByIds(message_ids);
+            }
+        }, changes);
+        MessageTags tags = new MessageTags(messages, accounts, changes);
+        for (int i = 0; i < 4; i++) {
+            messages.insertMessage(new Message(1, "#batched " + i, 1669947792));
+        }
+        messages.deleteMessageById(2);
+
+        Assert.assertEquals(List.of(1, 3, 4), ids(tags.getMessagesByTag("batched", 0, 10)));
+        Assert.assertEquals(List.of(List.of(1, 3, 4)), calls);
+    }
+
+    /**
+     * GET /tags/{tag}/messages and GET /accounts/{account_id}/mentions return the messages as JSON.
+     */
+    @Test
+    public void endpoints() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        try {
+            HttpClient webClient = HttpClient.newHttpClient();
+            HttpRequest create = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"posted_by\":1, \"message_text\": \"#hello @testuser1\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+            webClient.send(create, HttpResponse.BodyHandlers.ofString());
+            List<Message> expected = List.of(new Message(2, 1, "#hello @testuser1", 1669947793));
+
+            for (String path : List.of("tags/hello/messages", "accounts/1/mentions")) {
+                HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/" + path))
+                    .build();
+                HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+                Assert.assertEquals(200, response.statusCode());
+                Assert.assertEquals(expected,
+                    new ObjectMapper().readValue(response.body(), new TypeReference<List<Message>>(){}));
+            }
+        } finally {
+            app.stop();
+        }
+    }
+
+    private void create(String text) {
+        messageRepository.insertMessage(new Message(1, text, 1669947792));
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.ChangeCapturingAccountRepository;
+import DAO.ChangeCapturingMessageRepository;
+import DAO.ChangeStream;
+import DAO.MessageDAO;
+import DAO.ReplicaSet;
+import DAO.ReplicatedAccountRepository;
+import DAO.ReplicatedMessageRepository;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Runs the API with reads going to two read replicas and checks the consistency the headers ask for.
+ */
+public class ReadReplicaTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    ReplicaSet replicaSet;
+
+    /**
+     * Before every test, reset the database, start replicas from it, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        ChangeStream changes = new ChangeStream();
+        replicaSet = new ReplicaSet(changes, 2, 1000);
+        ReplicatedAccountRepository accounts = new ReplicatedAccountRepository(
+            new ChangeCapturingAccountRepository(new AccountDAO(), changes), replicaSet);
+        ReplicatedMessageRepository messages = new ReplicatedMessageRepository(
+            new ChangeCapturingMessageRepository(new MessageDAO(), changes), replicaSet);
+        socialMediaController = new SocialMediaController(new AccountService(accounts),
+            new MessageService(messages, accounts));
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        app.stop();
+        replicaSet.close();
+    }
+
+    /**
+     * The replicas start with the rows already in the database.
+     */
+    @Test
+    public void replicasStartFromSnapshot() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", "messages/1", null, null);
+
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+            objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Every write returns X-Write-Seq, and a read sent with it as X-Read-After-Seq sees the write.
+     */
+    @Test
+    public void readAfterWriteSeesTheWrite() throws IOException, InterruptedException {
+        HttpResponse<String> registered = send("POST", "register",
+            "{\"username\": \"user\", \"password\": \"password\"}", null);
+        String registerSeq = registered.headers().firstValue("X-Write-Seq").orElseThrow();
+
+        HttpResponse<String> created = send("POST", "messages",
+            "{\"posted_by\":2, \"message_text\": \"replicated\", \"time_posted_epoch\": 1669947793}", registerSeq);
+        Assert.assertEquals(200, created.statusCode());
+        String createSeq = created.headers().firstValue("X-Write-Seq").orElseThrow();
+        Assert.assertTrue(Long.parseLong(createSeq) > Long.parseLong(registerSeq));
+
+        HttpResponse<String> updated = send("PATCH", "messages/2", "{\"message_text\": \"updated\"}", null);
+        String updateSeq = updated.headers().firstValue("X-Write-Seq").orElseThrow();
+
+        HttpResponse<String> listing = send("GET", "accounts/2/messages", null, updateSeq);
+        List<Message> messages = objectMapper.readValue(listing.body(), new TypeReference<List<Message>>() {});
+        Assert.assertEquals(List.of(new Message(2, 2, "updated", 1669947793)), messages);
+
+        HttpResponse<String> deleted = send("DELETE", "messages/2", null, null);
+        String deleteSeq = deleted.headers().firstValue("X-Write-Seq").orElseThrow();
+        Assert.assertEquals("", send("GET", "messages/2", null, deleteSeq).body());
+    }
+
+    /**
+     * Logins check the password on the primary, the replicas never get it.
+     */
+    @Test
+    public void loginReadsThePrimary() throws IOException, InterruptedException {
+        HttpResponse<String> registered = send("POST", "register",
+            "{\"username\": \"user\", \"password\": \"password\"}", null);
+        String registerSeq = registered.headers().firstValue("X-Write-Seq").orElseThrow();
+        Assert.assertEquals(200, send("GET", "accounts/batch?ids=2", null, registerSeq).statusCode());
+
+        HttpResponse<String> login = send("POST", "login", "{\"username\": \"user\", \"password\": \"password\"}",
+            null);
+        Assert.assertEquals(200, login.statusCode());
+        Assert.assertEquals(new Account(2, "user", "password"), objectMapper.readValue(login.body(), Account.class));
+        Assert.assertEquals(401, send("POST", "login", "{\"username\": \"user\", \"password\": \"wrong\"}",
+            null).statusCode());
+    }
+
+    /**
+     * Reads do not return X-Write-Seq, and GET /replication reports every replica caught up once it applied the
+     * writes.
+     */
+    @Test
+    public void replicationReportsLag() throws IOException, InterruptedException {
+        HttpResponse<String> created = send("POST", "messages",
+            "{\"posted_by\":1, \"message_text\": \"replicated\", \"time_posted_epoch\": 1669947793}", null);
+        long createSeq = Long.parseLong(created.headers().firstValue("X-Write-Seq").orElseThrow());
+
+        HttpResponse<String> read = send("GET", "messages", null, Long.toString(createSeq));
+        Assert.assertTrue(read.headers().firstValue("X-Write-Seq").isEmpty());
+
+        JsonNode status = null;
+        for (int attempt = 0; attempt < 50; attempt++) {
+            status = objectMapper.readTree(send("GET", "replication", null, null).body());
+            if (status.get(0).get("appliedSeq").asLong() == createSeq
+                    && status.get(1).get("appliedSeq").asLong() == createSeq) {
+                break;
+            }
+            Thread.sleep(20);
+        }
+
+        Assert.assertEquals(2, status.size());
+        for (JsonNode replica : status) {
+            Assert.assertTrue(replica.get("healthy").asBoolean());
+            Assert.assertEquals(createSeq, replica.get("appliedSeq").asLong());
+            Assert.assertEquals(0, replica.get("lagChanges").asLong());
+            Assert.assertEquals(0, replica.get("lagMillis").asLong());
+        }
+    }
+
+    private HttpResponse<String> send(String method, String path, String body, String readAfterSeq)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json");
+        if (readAfterSeq != null) {
+            request.header("X-Read-After-Seq", readAfterSeq);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
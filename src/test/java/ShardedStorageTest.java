@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.ShardedMessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.ShardConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Runs the API against ShardedMessageDAO with accounts spread over every shard.
+ */
+public class ShardedStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and the shards, restart the Javalin app, and create a new webClient and
+     * ObjectMapper for interacting locally on the web. Accounts 2 to 9 are registered on top of testuser1.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        ShardConnectionUtil.resetShards();
+        AccountDAO accountDAO = new AccountDAO();
+        socialMediaController = new SocialMediaController(new AccountService(accountDAO),
+            new MessageService(new ShardedMessageDAO(accountDAO), accountDAO));
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (int i = 2; i <= 9; i++) {
+            send("POST", "register", "{\"username\": \"user" + i + "\", \"password\": \"password\"}");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Messages of every account get distinct ids that increase in posting order across the shards, are listed per
+     * account in posting order, and all of them are listed together in message_id order.
+     */
+    @Test
+    public void messagesAreListedAcrossShards() throws IOException, InterruptedException {
+        Set<Integer> ids = new HashSet<>();
+        int lastId = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int account = 1; account <= 9; account++) {
+                int id = create(account, "message " + round + " of " + account).getMessage_id();
+                Assert.assertTrue(id > lastId);
+                lastId = id;
+                ids.add(id);
+            }
+        }
+        Assert.assertEquals(27, ids.size());
+
+        List<Message> all = objectMapper.readValue(send("GET", "messages", null).body(),
+            new TypeReference<List<Message>>() {});
+        Assert.assertEquals(27, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            Assert.assertTrue(all.get(i - 1).getMessage_id() < all.get(i).getMessage_id());
+        }
+
+        for (int account = 1; account <= 9; account++) {
+            List<Message> messages = objectMapper.readValue(send("GET", "accounts/" + account + "/messages", null).body(),
+                new TypeReference<List<Message>>() {});
+            List<String> texts = new ArrayList<>();
+            for (Message message : messages) {
+                Assert.assertEquals(account, message.getPosted_by());
+                texts.add(message.getMessage_text());
+            }
+            Assert.assertEquals(List.of("message 0 of " + account, "message 1 of " + account,
+                "message 2 of " + account), texts);
+        }
+    }
+
+    /**
+     * Reads, updates and deletes by message_id reach the shard that holds the message.
+     */
+    @Test
+    public void operationsByIdFindTheirShard() throws IOException, InterruptedException {
+        for (int account = 1; account <= 9; account++) {
+            Message created = create(account, "message of " + account);
+            int id = created.getMessage_id();
+
+            Assert.assertEquals(created, objectMapper.readValue(send("GET", "messages/" + id, null).body(),
+                Message.class));
+
+            HttpResponse<String> updated = send("PATCH", "messages/" + id, "{\"message_text\": \"updated\"}");
+            Assert.assertEquals(200, updated.statusCode());
+            Assert.assertEquals("updated", objectMapper.readValue(updated.body(), Message.class).getMessage_text());
+
+            HttpResponse<String> deleted = send("DELETE", "messages/" + id, null);
+            Assert.assertEquals(id, objectMapper.readValue(deleted.body(), Message.class).getMessage_id());
+            Assert.assertEquals("", send("GET", "messages/" + id, null).body());
+        }
+    }
+
+    /**
+     * A batch of message ids spread over every shard comes back in the order asked for.
+     */
+    @Test
+    public void batchesFindTheirShards() throws IOException, InterruptedException {
+        List<Message> created = new ArrayList<>();
+        for (int account = 1; account <= 9; account++) {
+            created.add(create(account, "message of " + account));
+        }
+        List<Message> expected = new ArrayList<>();
+        StringBuilder ids = new StringBuilder("999");
+        expected.add(null);
+        for (int i = created.size() - 1; i >= 0; i--) {
+            ids.append(',').append(created.get(i).getMessage_id());
+            expected.add(created.get(i));
+        }
+
+        List<Message> batch = objectMapper.readValue(send("GET", "messages/batch?ids=" + ids, null).body(),
+            new TypeReference<List<Message>>() {});
+        Assert.assertEquals(expected, batch);
+    }
+
+    /**
+     * Creating a message for an account that does not exist fails, the shards check the foreign key through the
+     * account table.
+     */
+    @Test
+    public void createMessageRequiresExistingAccount() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "messages",
+            "{\"posted_by\":42, \"message_text\": \"message test\", \"time_posted_epoch\": 1669947792}");
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * The messages after the newest id a client has are exactly those created after it, whatever their shards, also
+     * when they were inserted as a batch.
+     */
+    @Test
+    public void messagesAfterAnIdAreThoseCreatedLater() {
+        AccountDAO accountDAO = new AccountDAO();
+        ShardedMessageDAO messageDAO = new ShardedMessageDAO(accountDAO);
+        int seen = 0;
+        for (int account = 1; account <= 9; account++) {
+            seen = messageDAO.insertMessage(new Message(account, "before", 1669947792)).getMessage_id();
+        }
+
+        List<Message> batch = new ArrayList<>();
+        for (int account = 9; account >= 1; account--) {
+            batch.add(new Message(account, "after", 1669947793));
+        }
+        messageDAO.insertMessages(batch);
+
+        List<Message> after = messageDAO.getMessagesAfter(seen);
+        Assert.assertEquals(9, after.size());
+        for (Message message : after) {
+            Assert.assertEquals("after", message.getMessage_text());
+        }
+    }
+
+    private Message create(int account, String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "messages",
+            "{\"posted_by\":" + account + ", \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:8080/" + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Message;
+import Model.TrendingTerm;
+import Service.TrendingTags;
+
+/**
+ * Ranks the #tags of new messages with TrendingTags against a clock the test moves.
+ */
+public class TrendingTagsTest {
+    AtomicLong now;
+    TrendingTags trending;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong(1669947792000L);
+        trending = new TrendingTags(now::get);
+    }
+
+    /**
+     * Tags are ranked by how many messages used them, a message counting each of its tags once.
+     */
+    @Test
+    public void ranksByUse() {
+        post("#java is #fun #Java");
+        post("more #java and #fun");
+        post("#java");
+        post("#other");
+
+        Assert.assertEquals(List.of(new TrendingTerm("java", 3), new TrendingTerm("fun", 2)),
+            trending.top(TrendingTags.Window.HOUR, 2));
+    }
+
+    /**
+     * Tags whose String.hashCode() is the same are still counted apart.
+     */
+    @Test
+    public void equalHashCodesDoNotShareCounts() {
+        Assert.assertEquals("an".hashCode(), "c0".hashCode());
+        post("#an");
+        post("#an");
+        post("#c0");
+
+        Assert.assertEquals(List.of(new TrendingTerm("an", 2), new TrendingTerm("c0", 1)),
+            trending.top(TrendingTags.Window.HOUR, 10));
+    }
+
+    /**
+     * Each window only counts the messages of its last 5 minutes, hour or day.
+     */
+    @Test
+    public void windowsForgetOldMessages() {
+        post("#early");
+        now.addAndGet(10 * 60_000);
+        post("#late");
+
+        Assert.assertEquals(List.of(new TrendingTerm("late", 1)), trending.top(TrendingTags.Window.FIVE_MINUTES, 10));
+        Assert.assertEquals(List.of(new TrendingTerm("early", 1), new TrendingTerm("late", 1)),
+            trending.top(TrendingTags.Window.HOUR, 10));
+
+        now.addAndGet(2 * 3_600_000);
+        Assert.assertEquals(List.of(), trending.top(TrendingTags.Window.HOUR, 10));
+        Assert.assertEquals(List.of(new TrendingTerm("early", 1), new TrendingTerm("late", 1)),
+            trending.top(TrendingTags.Window.DAY, 10));
+
+        now.addAndGet(25 * 3_600_000);
+        Assert.assertEquals(List.of(), trending.top(TrendingTags.Window.DAY, 10));
+    }
+
+    /**
+     * A tag used often stands out among far more distinct tags than there are counters.
+     */
+    @Test
+    public void findsHeavyHittersAmongManyTags() {
+        for (int i = 0; i < 20000; i++) {
+            trending.recorded(new Message(1, 1, "#tag" + i, 1669947792));
+            if (i % 200 == 0) {
+                trending.recorded(new Message(1, 1, "#hot", 1669947792));
+            }
+        }
+
+        List<TrendingTerm> top = trending.top(TrendingTags.Window.HOUR, 1);
+        Assert.assertEquals("hot", top.get(0).term);
+        Assert.assertTrue(top.get(0).count >= 100);
+    }
+
+    private void post(String text) {
+        trending.recorded(new Message(1, 1, text, 1669947792));
+        // Let the next ranking see it.
+        now.addAndGet(1000);
+    }
+}